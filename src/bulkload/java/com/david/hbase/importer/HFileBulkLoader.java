@@ -0,0 +1,314 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.RatingsSchema;
+import com.david.hbase.schema.TimeIndexFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.HStoreFile;
+import org.apache.hadoop.hbase.regionserver.StoreFileWriter;
+import org.apache.hadoop.hbase.tool.BulkLoadHFiles;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 离线批量导入：把评分数据按目标表的 Region 分桶、排序后直接写成 HFile，
+ * 再通过 BulkLoadHFiles 交给 RegionServer 加载，完全绕过 WAL、MemStore flush 和由此引起的 Compaction。
+ *
+ * 内存有界：缓冲的 Cell 数超过 bulkload.spill.cells 时，把每个 Region 桶排序后各写出一个 HFile，
+ * 同一个 Region 可以有多个 HFile。Connection/Configuration 由外部传入，
+ * 可以直接使用 HBase mini cluster 的连接运行。
+ *
+ * 需要 hbase-server，使用 -Pbulkload 编译运行：
+ * mvn -Pbulkload compile exec:java -Dexec.mainClass=com.david.hbase.importer.HFileBulkLoader
+ */
+public class HFileBulkLoader {
+    private static final Logger logger = LoggerFactory.getLogger(HFileBulkLoader.class);
+
+    private final Connection connection;
+    private final Configuration conf;
+    private final Path stagingDir;
+    private final long spillCells;
+    // 所有 Cell 使用同一个版本时间戳，重复导入时新数据覆盖旧数据
+    private final long cellTimestamp = System.currentTimeMillis();
+
+    private final ConcurrentLinkedQueue<RatingBatch> freeBatches = new ConcurrentLinkedQueue<>();
+    private RegionBuckets dataBuckets;
+    private RegionBuckets indexBuckets;
+    // 时间索引表（可选）
+    private RegionBuckets timeBuckets;
+    private TimeIndexFormat timeFormat;
+    private String timeIndexTable;
+    private String timeFamily;
+    private RatingPutEncoder encoder;
+    // 评分统计预聚合（可选）
+    private RatingStatsAggregator stats;
+    private long bufferedCells;
+    private long bytesWritten;
+    private int filesWritten;
+
+    public HFileBulkLoader(Connection connection, Configuration conf, Path stagingDir, long spillCells) {
+        this.connection = connection;
+        this.conf = conf;
+        this.stagingDir = stagingDir;
+        this.spillCells = spillCells;
+    }
+
+    /**
+     * 解析的同时把评分累加到统计预聚合器（为 null 时不统计）
+     */
+    public void setStatsAggregator(RatingStatsAggregator stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * 同时为时间索引表写 HFile（format 为 null 时不写）
+     */
+    public void setTimeIndex(TimeIndexFormat format, String timeIndexTable, String timeFamily) {
+        this.timeFormat = format;
+        this.timeIndexTable = timeIndexTable;
+        this.timeFamily = timeFamily;
+    }
+
+    /**
+     * 解析评分文件、写 HFile 并批量加载到评分表和索引表，返回导入的评分条数
+     */
+    public long load(RatingsReader reader, RatingsSchema schema, String ratingsTable, String scoreFamily,
+                     String indexTable, String refFamily, int batchSize) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        FileSystem fs = stagingDir.getFileSystem(conf);
+        Path runDir = new Path(stagingDir, "ratings-" + cellTimestamp);
+
+        encoder = new RatingPutEncoder(schema, scoreFamily, refFamily);
+        dataBuckets = new RegionBuckets(TableName.valueOf(ratingsTable), scoreFamily, fs, new Path(runDir, ratingsTable));
+        indexBuckets = new RegionBuckets(TableName.valueOf(indexTable), refFamily, fs, new Path(runDir, indexTable));
+        if (timeFormat != null) {
+            encoder.withTimeIndex(timeFormat, timeFamily);
+            timeBuckets = new RegionBuckets(TableName.valueOf(timeIndexTable), timeFamily, fs,
+                    new Path(runDir, timeIndexTable));
+        }
+
+        long parsed;
+        try {
+            parsed = reader.read(() -> {
+                RatingBatch batch = freeBatches.poll();
+                return batch != null ? batch : new RatingBatch(batchSize);
+            }, this::accept);
+            spill();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("批量导入被中断", e);
+        }
+        long writeMillis = System.currentTimeMillis() - startMillis;
+        logger.info("HFile 写入完成：{} 条评分，{} 个文件，{} 字节，耗时 {} ms",
+                parsed, filesWritten, bytesWritten, writeMillis);
+
+        BulkLoadHFiles bulkLoad = BulkLoadHFiles.create(conf);
+        bulkLoad.bulkLoad(dataBuckets.tableName, dataBuckets.tableDir);
+        bulkLoad.bulkLoad(indexBuckets.tableName, indexBuckets.tableDir);
+        if (timeBuckets != null) {
+            bulkLoad.bulkLoad(timeBuckets.tableName, timeBuckets.tableDir);
+        }
+        fs.delete(runDir, true);
+
+        logger.info("批量导入完成：{} 条评分，跳过 {} 条，HFile {} 字节，总耗时 {} ms（其中加载 {} ms）",
+                parsed, reader.skippedRows(), bytesWritten, System.currentTimeMillis() - startMillis,
+                System.currentTimeMillis() - startMillis - writeMillis);
+        return parsed;
+    }
+
+    /**
+     * 解析线程回调：编码为 Cell 放入对应 Region 桶，超过阈值则落盘（多个解析线程串行进入）
+     */
+    private synchronized void accept(RatingBatch batch) throws IOException {
+        for (int i = 0; i < batch.size(); i++) {
+            encoder.dataCells(batch, i, cellTimestamp, dataBuckets.scratch);
+            dataBuckets.addScratch();
+            encoder.indexCells(batch, i, cellTimestamp, indexBuckets.scratch);
+            indexBuckets.addScratch();
+            if (timeBuckets != null) {
+                encoder.timeIndexCells(batch, i, cellTimestamp, timeBuckets.scratch);
+                timeBuckets.addScratch();
+            }
+        }
+        bufferedCells += (timeBuckets != null ? 5L : 4L) * batch.size();
+        if (stats != null) {
+            stats.add(batch);
+        }
+        batch.clear();
+        freeBatches.offer(batch);
+
+        if (bufferedCells >= spillCells) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        dataBuckets.flush();
+        indexBuckets.flush();
+        if (timeBuckets != null) {
+            timeBuckets.flush();
+        }
+        bufferedCells = 0;
+    }
+
+    /**
+     * 一张表按 Region 起始键划分的 Cell 缓冲区
+     */
+    private final class RegionBuckets {
+        final TableName tableName;
+        final Path tableDir;
+        final FileSystem fs;
+        final ColumnFamilyDescriptor family;
+        final byte[][] startKeys;
+        final List<Cell>[] buckets;
+        // 编码一行时的临时列表（同一行的两个 Cell）
+        final List<Cell> scratch = new ArrayList<>(2);
+
+        @SuppressWarnings("unchecked")
+        RegionBuckets(TableName tableName, String familyName, FileSystem fs, Path tableDir) throws IOException {
+            this.tableName = tableName;
+            this.fs = fs;
+            this.tableDir = tableDir;
+            try (Admin admin = connection.getAdmin()) {
+                this.family = admin.getDescriptor(tableName).getColumnFamily(Bytes.toBytes(familyName));
+            }
+            if (family == null) {
+                throw new IOException("表 " + tableName + " 不存在列族 " + familyName);
+            }
+            try (RegionLocator locator = connection.getRegionLocator(tableName)) {
+                this.startKeys = locator.getStartKeys();
+            }
+            this.buckets = new List[startKeys.length];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new ArrayList<>();
+            }
+            logger.info("表 [{}] 共 {} 个Region，HFile 暂存目录 {}", tableName, startKeys.length, tableDir);
+        }
+
+        void addScratch() {
+            Cell first = scratch.get(0);
+            buckets[regionOf(first)].addAll(scratch);
+            scratch.clear();
+        }
+
+        /**
+         * 二分查找行键所属的 Region（最后一个起始键 <= 行键的 Region）
+         */
+        int regionOf(Cell cell) {
+            int lo = 0, hi = startKeys.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                int cmp = Bytes.compareTo(startKeys[mid], 0, startKeys[mid].length,
+                        cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
+                if (cmp <= 0) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 每个非空桶排序后写出一个 HFile：<表目录>/<列族>/<随机文件名>
+         */
+        void flush() throws IOException {
+            Path familyDir = new Path(tableDir, family.getNameAsString());
+            for (List<Cell> bucket : buckets) {
+                if (bucket.isEmpty()) {
+                    continue;
+                }
+                bucket.sort(CellComparator.getInstance());
+                Path file = new Path(familyDir, UUID.randomUUID().toString().replace("-", ""));
+                writeHFile(file, bucket);
+                bytesWritten += fs.getFileStatus(file).getLen();
+                filesWritten++;
+                bucket.clear();
+            }
+        }
+
+        private void writeHFile(Path file, List<Cell> cells) throws IOException {
+            HFileContext context = new HFileContextBuilder()
+                    .withCompression(family.getCompressionType())
+                    .withDataBlockEncoding(family.getDataBlockEncoding())
+                    .withBlockSize(family.getBlocksize())
+                    .withColumnFamily(family.getName())
+                    .withTableName(tableName.getName())
+                    .withIncludesTags(false)
+                    .build();
+            StoreFileWriter writer = new StoreFileWriter.Builder(conf, CacheConfig.DISABLED, fs)
+                    .withFilePath(file)
+                    .withBloomType(family.getBloomFilterType())
+                    .withFileContext(context)
+                    .build();
+            try {
+                for (Cell cell : cells) {
+                    writer.append(cell);
+                }
+                // 与 HFileOutputFormat2 写入的元数据保持一致
+                writer.appendFileInfo(HStoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+                writer.appendFileInfo(HStoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true));
+                writer.appendTrackedTimestampsToMetadata();
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * 按 application.properties 的配置把 data.ratings.path 批量导入评分表、索引表（和时间索引表），并写入评分统计；
+     * conf 决定暂存目录所在的文件系统。返回导入的评分条数
+     */
+    public static long importRatings(Connection connection, Configuration conf) throws IOException {
+        String ratingsPath = HBaseDataImporter.getRatingsPath();
+        HBaseDataImporter.checkFileExists(ratingsPath, "评分数据");
+
+        HFileBulkLoader loader = new HFileBulkLoader(connection, conf,
+                new Path(HBaseDataImporter.getProperty("bulkload.staging.dir", "/tmp/movielens-bulkload")),
+                Long.parseLong(HBaseDataImporter.getProperty("bulkload.spill.cells", "4000000")));
+        RatingStatsAggregator stats = HBaseDataImporter.newStatsAggregator();
+        boolean existingRatings = stats != null && HBaseDataImporter.ratingsTableHasRows();
+        loader.setStatsAggregator(stats);
+        loader.setTimeIndex(HBaseDataImporter.getTimeIndexFormat(),
+                HBaseDataImporter.TIME_INDEX_TABLE, HBaseDataImporter.TIME_INDEX_CF);
+        long rows = loader.load(HBaseDataImporter.newRatingsReader(ratingsPath), HBaseDataImporter.getRatingsSchema(),
+                HBaseDataImporter.RATINGS_DATA_TABLE, HBaseDataImporter.SCORE_CF,
+                HBaseDataImporter.MOVIE_INDEX_TABLE, HBaseDataImporter.REF_CF,
+                Integer.parseInt(HBaseDataImporter.getProperty("batch.size", "1000")));
+        HBaseDataImporter.writeRatingStats(stats, existingRatings);
+        // 与其他导入路径相同：清空各进程中导入前的查询结果缓存
+        HBaseDataImporter.markDataChanged();
+        return rows;
+    }
+
+    // 独立入口：离线全量重载评分数据
+    public static void main(String[] args) {
+        try {
+            HBaseDataImporter.initConnection();
+            Connection connection = HBaseDataImporter.getConnection();
+            importRatings(connection, connection.getConfiguration());
+        } catch (Exception e) {
+            logger.error("批量导入失败", e);
+        } finally {
+            HBaseDataImporter.closeConnection();
+        }
+    }
+}
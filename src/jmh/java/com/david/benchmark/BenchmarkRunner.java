@@ -0,0 +1,117 @@
+package com.david.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 运行基准测试（带 GC profiler，记录每次操作分配的字节数），结果写到 target/jmh/results.json，
+ * 再与基线文件逐项比较：耗时或分配量比基线多出 tolerance 以上的测试视为退化，进程以状态码 1 退出。
+ *
+ * 参数（-D 系统属性）：
+ *   benchmark.include   只运行名称匹配该正则的测试（默认全部）
+ *   baseline.file       基线文件（默认 src/jmh/baseline/results.json，不存在时只输出结果）
+ *   baseline.tolerance  允许的退化比例（默认 0.10）
+ *   baseline.update     为 true 时用本次结果覆盖基线文件
+ */
+public final class BenchmarkRunner {
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Path results = Paths.get("target", "jmh", "results.json");
+        Path baseline = Paths.get(System.getProperty("baseline.file", "src/jmh/baseline/results.json"));
+        double tolerance = Double.parseDouble(System.getProperty("baseline.tolerance", "0.10"));
+        Files.createDirectories(results.getParent());
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(System.getProperty("benchmark.include", "com\\.david\\..*"))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(results.toString());
+        new Runner(options.build()).run();
+
+        if (Boolean.parseBoolean(System.getProperty("baseline.update", "false"))) {
+            Files.createDirectories(baseline.toAbsolutePath().getParent());
+            Files.copy(results, baseline, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("基线已更新：" + baseline);
+            return;
+        }
+        if (!Files.exists(baseline)) {
+            System.out.println("没有基线文件 " + baseline + "，加 -Dbaseline.update=true 保存本次结果作为基线");
+            return;
+        }
+        List<String> regressions = compare(read(baseline), read(results), tolerance);
+        if (regressions.isEmpty()) {
+            System.out.println("与基线相比没有超过 " + (int) (tolerance * 100) + "% 的退化");
+            return;
+        }
+        System.out.println("与基线相比退化超过 " + (int) (tolerance * 100) + "% 的测试：");
+        regressions.forEach(line -> System.out.println("  " + line));
+        System.exit(1);
+    }
+
+    /**
+     * 测试名（含参数）-> {耗时, 每次操作分配的字节数}
+     */
+    private static Map<String, double[]> read(Path file) throws IOException {
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            Iterator<Map.Entry<String, JsonNode>> params = run.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            JsonNode secondary = run.path("secondaryMetrics");
+            JsonNode alloc = secondary.path(ALLOC_METRIC);
+            if (alloc.isMissingNode()) {
+                // 部分 JMH 版本的指标名带有前缀 "·"
+                alloc = secondary.path("·" + ALLOC_METRIC);
+            }
+            scores.put(key.toString(), new double[]{
+                    run.path("primaryMetric").path("score").asDouble(),
+                    alloc.path("score").asDouble(Double.NaN)});
+        }
+        return scores;
+    }
+
+    // 所有测试都是 AverageTime 模式，耗时和分配量都是越小越好
+    private static List<String> compare(Map<String, double[]> baseline, Map<String, double[]> current,
+                                        double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, double[]> entry : current.entrySet()) {
+            double[] before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            double[] after = entry.getValue();
+            if (after[0] > before[0] * (1 + tolerance)) {
+                regressions.add(String.format("%s 耗时 %.1f -> %.1f ns/op", entry.getKey(), before[0], after[0]));
+            }
+            // 分配量很小时（如 0 字节）按 16 字节的绝对余量比较，避免测量误差
+            if (!Double.isNaN(before[1]) && after[1] > before[1] * (1 + tolerance) + 16) {
+                regressions.add(String.format("%s 分配 %.0f -> %.0f B/op", entry.getKey(), before[1], after[1]));
+            }
+        }
+        return regressions;
+    }
+}
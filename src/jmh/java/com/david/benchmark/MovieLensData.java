@@ -0,0 +1,133 @@
+package com.david.benchmark;
+
+import com.david.hbase.importer.RatingBatch;
+import com.david.hbase.query.RatingRecord;
+import com.david.hbase.schema.RatingsSchema;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 按 MovieLens（ml-25m）的形态生成的合成评分数据，固定种子，每次运行生成相同的数据：
+ *   - 约 16 万用户、6 万部电影，电影的评分条数按幂律分布（少数热门电影占大部分评分）；
+ *   - ratings.csv 与真实文件一样按 userId、movieId 升序排列，每个用户至少 20 条评分；
+ *   - 评分的分布取自 ml-25m（3~4 星最多），时间戳在 1995 ~ 2019 年之间。
+ */
+public final class MovieLensData {
+    public static final int USERS = 162_541;
+    public static final int MOVIES = 62_423;
+    public static final String HEADER = "userId,movieId,rating,timestamp";
+
+    private static final long FIRST_TIMESTAMP = 789_652_009L;
+    private static final long LAST_TIMESTAMP = 1_574_327_703L;
+    // 半星数 1~10 的累计比例（ml-25m：0.5 星 1.6%，……，4 星 26.6%，5 星 14.5%）
+    private static final double[] RATING_CDF = {
+            0.016, 0.047, 0.063, 0.129, 0.179, 0.375, 0.501, 0.767, 0.852, 1.0};
+
+    private final SplittableRandom random;
+
+    public MovieLensData(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    public int userId() {
+        return 1 + random.nextInt(USERS);
+    }
+
+    /**
+     * 热门电影（id 小）被选中的概率高
+     */
+    public int movieId() {
+        double u = random.nextDouble();
+        return 1 + (int) (MOVIES * u * u * u);
+    }
+
+    public int ratingX2() {
+        double u = random.nextDouble();
+        for (int i = 0; i < RATING_CDF.length; i++) {
+            if (u < RATING_CDF[i]) {
+                return i + 1;
+            }
+        }
+        return RATING_CDF.length;
+    }
+
+    public long timestamp() {
+        return FIRST_TIMESTAMP + random.nextLong(LAST_TIMESTAMP - FIRST_TIMESTAMP);
+    }
+
+    public static String title(int movieId) {
+        return "Synthetic Movie " + movieId + " (" + (1950 + movieId % 70) + ")";
+    }
+
+    /**
+     * 随机评分组成的批次
+     */
+    public RatingBatch batch(int rows) {
+        RatingBatch batch = new RatingBatch(rows);
+        for (int i = 0; i < rows; i++) {
+            batch.add(userId(), movieId(), ratingX2(), timestamp());
+        }
+        return batch;
+    }
+
+    /**
+     * 同一部电影的 rows 条评分（按 userId 升序，与索引表中一个前缀下的行相同）
+     */
+    public RatingBatch movieRatings(int movieId, int rows) {
+        RatingBatch batch = new RatingBatch(rows);
+        int userId = 0;
+        for (int i = 0; i < rows; i++) {
+            userId += 1 + random.nextInt(Math.max(1, USERS / rows));
+            batch.add(userId, movieId, ratingX2(), timestamp());
+        }
+        return batch;
+    }
+
+    /**
+     * 查询接口返回的评分记录（与 HBaseQueryer 输出的记录相同）
+     */
+    public List<RatingRecord> ratingRecords(int rows) {
+        List<RatingRecord> records = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int movieId = movieId();
+            records.add(new RatingRecord(userId(), movieId, title(movieId), ratingX2(), timestamp()));
+        }
+        return records;
+    }
+
+    /**
+     * 写出 rows 条评分的 ratings.csv（带表头），格式与 MovieLens 发布的文件相同
+     */
+    public Path writeRatingsCsv(int rows) throws IOException {
+        Path file = Files.createTempFile("ratings-", ".csv");
+        file.toFile().deleteOnExit();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write('\n');
+            int userId = 1;
+            int written = 0;
+            while (written < rows) {
+                // 每个用户 20 条起，少数用户评分很多
+                double u = random.nextDouble();
+                int count = Math.min(rows - written, 20 + (int) (2000 * u * u * u * u));
+                int movieId = 0;
+                for (int i = 0; i < count; i++) {
+                    movieId += 1 + random.nextInt(Math.max(1, MOVIES / count));
+                    out.write(userId + "," + movieId + "," + RatingsSchema.formatRatingX2(ratingX2())
+                            + "," + timestamp());
+                    out.write('\n');
+                }
+                written += count;
+                userId++;
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,93 @@
+package com.david.controller;
+
+import com.david.benchmark.MovieLensData;
+import com.david.hbase.query.RatingRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 评分接口的响应序列化，结果为每条记录的耗时：
+ *   - objectMapper：ObjectMapper 按 record 的访问器反射序列化整个列表（对照组）；
+ *   - rows：RatingsWriter 按协商的格式写出行格式（/userRatings、/allRatings）；
+ *   - columnar：RatingsWriter 写出列格式；
+ *   - ndjson：同一个 JsonGenerator 逐条写出一行（流式接口 ndjson() 的写法）。
+ * 每次操作分配的字节数见 GC profiler 的 gc.alloc.rate.norm，响应大小见 setUp 输出。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonSerializationBenchmark {
+    private static final int ROWS = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<RatingRecord> records;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        records = new MovieLensData(42).ratingRecords(ROWS);
+        out = new ByteArrayOutputStream(256 * ROWS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public byte[] objectMapper() throws IOException {
+        return objectMapper.writeValueAsBytes(records);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public byte[] rows(Encoding encoding) throws IOException {
+        return RatingsWriter.write(encoding.rows, records);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public byte[] columnar(Encoding encoding) throws IOException {
+        return RatingsWriter.write(encoding.columnar, records);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void ndjson(Blackhole bh) throws IOException {
+        out.reset();
+        try (JsonGenerator g = RatingsFormat.JSON.factory().createGenerator(out)) {
+            for (RatingRecord record : records) {
+                RatingsWriter.writeRecord(g, record);
+                g.writeRaw('\n');
+            }
+        }
+        bh.consume(out.size());
+    }
+
+    /**
+     * 编码参数（只影响 rows / columnar），setUp 时输出两种格式的响应大小
+     */
+    @State(Scope.Thread)
+    public static class Encoding {
+        @Param({"JSON", "CBOR", "SMILE"})
+        public String encoding;
+
+        RatingsFormat rows;
+        RatingsFormat columnar;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            rows = RatingsFormat.valueOf(encoding);
+            columnar = RatingsFormat.valueOf("COLUMNAR_" + encoding);
+            List<RatingRecord> sample = new MovieLensData(42).ratingRecords(ROWS);
+            System.out.printf("%n%s: rows %d B, columnar %d B%n", encoding,
+                    RatingsWriter.write(rows, sample).length, RatingsWriter.write(columnar, sample).length);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.david.hbase.importer;
+
+import com.david.benchmark.MovieLensData;
+import com.david.hbase.schema.RatingsSchema;
+import org.apache.hadoop.hbase.client.Put;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 评分导入的 CPU 热路径（不含 RPC），结果为每行的耗时：
+ *   - parseMapped / parseCsv：ratings.csv -> RatingBatch（单个解析线程）；
+ *   - encodePuts：RatingBatch -> 评分表和索引表的 Put，即 importRatingsData() 中每批写入前的编码；
+ *   - parseAndEncode：两者串起来，对应 batch 模式导入中除 table.put 以外的全部工作。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RatingsIngestBenchmark {
+    private static final int FILE_ROWS = 200_000;
+    private static final int BATCH_ROWS = 1000;
+
+    private Path ratingsCsv;
+    private RatingBatch parsed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ratingsCsv = new MovieLensData(42).writeRatingsCsv(FILE_ROWS);
+        parsed = new RatingBatch(BATCH_ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(ratingsCsv);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_ROWS)
+    public long parseMapped() throws IOException, InterruptedException {
+        return new MappedRatingsReader(ratingsCsv.toString(), 1).read(() -> parsed, RatingBatch::clear);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_ROWS)
+    public long parseCsv() throws IOException, InterruptedException {
+        return new CsvRatingsReader(ratingsCsv.toString()).read(() -> parsed, RatingBatch::clear);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_ROWS)
+    public void encodePuts(Encoding encoding, Blackhole bh) {
+        RatingBatch batch = encoding.batch;
+        RatingPutEncoder encoder = encoding.encoder;
+        for (int i = 0; i < batch.size(); i++) {
+            bh.consume(encoder.dataPut(batch, i));
+            bh.consume(encoder.indexPut(batch, i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_ROWS)
+    public long parseAndEncode(Encoding encoding, Blackhole bh) throws IOException, InterruptedException {
+        RatingPutEncoder encoder = encoding.encoder;
+        return new MappedRatingsReader(ratingsCsv.toString(), 1).read(() -> parsed, full -> {
+            for (int i = 0; i < full.size(); i++) {
+                Put data = encoder.dataPut(full, i);
+                Put index = encoder.indexPut(full, i);
+                bh.consume(data);
+                bh.consume(index);
+            }
+            full.clear();
+        });
+    }
+
+    /**
+     * 编码参数：存储格式版本和加盐桶数（只影响编码相关的测试）
+     */
+    @State(Scope.Thread)
+    public static class Encoding {
+        @Param({"1", "2"})
+        public int schemaVersion;
+
+        @Param({"0", "16"})
+        public int saltBuckets;
+
+        RatingBatch batch;
+        RatingPutEncoder encoder;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            batch = new MovieLensData(7).batch(BATCH_ROWS);
+            encoder = new RatingPutEncoder(RatingsSchema.forVersion(schemaVersion).withSaltBuckets(saltBuckets),
+                    "score", "ref");
+        }
+    }
+}
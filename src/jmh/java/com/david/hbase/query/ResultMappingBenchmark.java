@@ -0,0 +1,76 @@
+package com.david.hbase.query;
+
+import com.david.benchmark.MovieLensData;
+import com.david.hbase.importer.RatingBatch;
+import com.david.hbase.importer.RatingPutEncoder;
+import com.david.hbase.schema.RatingsSchema;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询结果的映射：索引表扫描出的 Result -> 评分记录（RatingRecord），即 /allRatings 每行的 CPU 开销。
+ * Result 由 RatingPutEncoder 按导入时的格式生成，与 HBase 返回的单元格字节相同。结果为每行的耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultMappingBenchmark {
+    private static final int ROWS = 1000;
+    private static final int MOVIE_ID = 1;
+
+    @Param({"1", "2"})
+    public int schemaVersion;
+
+    private RatingsSchema schema;
+    private byte[] family;
+    private Result[] results;
+    private String title;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        schema = RatingsSchema.forVersion(schemaVersion);
+        family = Bytes.toBytes("ref");
+        RatingBatch batch = new MovieLensData(42).movieRatings(MOVIE_ID, ROWS);
+        RatingPutEncoder encoder = new RatingPutEncoder(schema, "score", "ref");
+        results = new Result[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            List<Cell> cells = new ArrayList<>(2);
+            encoder.indexCells(batch, i, 1L, cells);
+            results[i] = Result.create(cells);
+        }
+        title = MovieLensData.title(MOVIE_ID);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void movieRating(Blackhole bh) {
+        for (Result result : results) {
+            bh.consume(HBaseQueryer.movieRating(title, MOVIE_ID, schema, result, family));
+        }
+    }
+
+    /**
+     * 只解码列值，不构造记录：与 movieRating 的差即构造 RatingRecord 的开销
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long decodeOnly() {
+        long total = 0;
+        for (Result result : results) {
+            total += schema.secondId(result.getRow());
+            total += schema.decodeRatingX2(result.getValue(family, schema.ratingQualifier()));
+            total += schema.decodeTimestamp(result.getValue(family, schema.timestampQualifier()));
+        }
+        return total;
+    }
+}
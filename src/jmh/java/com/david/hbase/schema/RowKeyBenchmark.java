@@ -0,0 +1,78 @@
+package com.david.hbase.schema;
+
+import com.david.benchmark.MovieLensData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 行键的编码和解码，结果为每个行键的耗时：
+ *   - writeRowKey：写入复用的缓冲区（导入路径，RatingPutEncoder 的用法）；
+ *   - rowKey：每次分配新数组（Get、预分裂等）；
+ *   - decodeIds：从行键读回两个 ID（查询路径，每行结果都要解码）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowKeyBenchmark {
+    private static final int KEYS = 1024;
+
+    @Param({"1", "2"})
+    public int schemaVersion;
+
+    @Param({"0", "16"})
+    public int saltBuckets;
+
+    private RatingsSchema schema;
+    private int[] userIds;
+    private int[] movieIds;
+    private byte[][] rows;
+    private byte[] buf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        schema = RatingsSchema.forVersion(schemaVersion).withSaltBuckets(saltBuckets);
+        MovieLensData data = new MovieLensData(42);
+        userIds = new int[KEYS];
+        movieIds = new int[KEYS];
+        rows = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            userIds[i] = data.userId();
+            movieIds[i] = data.movieId();
+            rows[i] = schema.rowKey(userIds[i], movieIds[i]);
+        }
+        buf = new byte[schema.maxRowKeyLength()];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public int writeRowKey() {
+        int total = 0;
+        for (int i = 0; i < KEYS; i++) {
+            total += schema.writeRowKey(buf, userIds[i], movieIds[i]);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public void rowKey(Blackhole bh) {
+        for (int i = 0; i < KEYS; i++) {
+            bh.consume(schema.rowKey(userIds[i], movieIds[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public long decodeIds() {
+        long total = 0;
+        for (int i = 0; i < KEYS; i++) {
+            total += schema.firstId(rows[i]) + schema.secondId(rows[i]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,241 @@
+package com.david.loadtest;
+
+import com.david.hbase.importer.HBaseDataImporter;
+import com.david.hbase.importer.HFileBulkLoader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.CommonFSUtils;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量导入（{@link HFileBulkLoader}）在 HBase mini cluster 上的检查：依次用同步 batchPut、流水线和批量导入
+ * 把同一份合成数据导入重建的评分表、索引表和时间索引表，每条路径记录
+ *   - 墙钟时间；
+ *   - WAL 字节数（导入前后各滚动一次 WAL，按文件名比较 WALs 和 oldWALs 目录中的文件，只统计新增和增长的部分）；
+ *   - 导入并 flush 之后表目录的字节数；
+ *   - 所有单元格（行键、列族、列名、值，不含时间戳）的 SHA-256。
+ * 三条路径的单元格摘要必须相同，否则以状态 1 退出（出错时为 2）。默认关闭评分统计（stats.enabled=false），
+ * WAL 字节只包含评分数据本身。
+ *
+ * 参数（-D 系统属性）：loadtest.scale（默认 1）、loadtest.dir（默认 target/bulkload-check）。
+ * 需要 hbase-testing-util 和 src/bulkload/java，使用 -Ploadtest 编译运行：
+ * mvn -Ploadtest compile exec:exec -Dloadtest.main=com.david.loadtest.BulkLoadCheck
+ */
+public final class BulkLoadCheck {
+
+    private BulkLoadCheck() {
+    }
+
+    private record Run(String name, long rows, long millis, long walBytes, long tableBytes, String digest) {
+    }
+
+    @FunctionalInterface
+    private interface Import {
+        long run() throws IOException;
+    }
+
+    public static void main(String[] args) {
+        int status;
+        try {
+            status = run() ? 0 : 1;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            status = 2;
+        }
+        // mini cluster 关闭后可能还有非守护线程
+        System.exit(status);
+    }
+
+    private static boolean run() throws Exception {
+        int scale = Integer.getInteger("loadtest.scale", 1);
+        Path dir = Paths.get(System.getProperty("loadtest.dir", "target/bulkload-check"));
+        Files.createDirectories(dir);
+
+        SyntheticDataset dataset = new SyntheticDataset(scale);
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        dataset.writeMovies(movies);
+        long ratingCount = dataset.writeRatings(ratings);
+        System.out.printf("合成数据：%d 个用户，%d 部电影，%d 条评分%n", dataset.users(), dataset.movies(), ratingCount);
+
+        HBaseTestingUtility cluster = new HBaseTestingUtility();
+        // 不启动 Master/RegionServer 的 Web UI（依赖 Jersey 1 和 javax.validation，与 Spring Boot 3 的依赖冲突）
+        cluster.getConfiguration().setInt(HConstants.MASTER_INFO_PORT, -1);
+        cluster.getConfiguration().setInt(HConstants.REGIONSERVER_INFO_PORT, -1);
+        // 检查期间不清理 oldWALs，否则上一条路径归档的 WAL 被删除后，WAL 字节的统计会偏小
+        cluster.getConfiguration().setLong("hbase.master.logcleaner.ttl", Long.MAX_VALUE / 2);
+        cluster.startMiniCluster();
+        boolean consistent;
+        try {
+            // HBaseDataImporter 在类加载时读取配置，必须在第一次使用它之前设置好系统属性
+            System.setProperty("hbase.zookeeper.quorum", cluster.getConfiguration().get("hbase.zookeeper.quorum"));
+            System.setProperty("hbase.zookeeper.port", String.valueOf(cluster.getZkCluster().getClientPort()));
+            System.setProperty("data.movies.path", movies.toAbsolutePath().toString());
+            System.setProperty("data.ratings.path", ratings.toAbsolutePath().toString());
+            if (System.getProperty("stats.enabled") == null) {
+                System.setProperty("stats.enabled", "false");
+            }
+            HBaseDataImporter.initConnection();
+            HBaseDataImporter.createAllTables();
+            HBaseDataImporter.importMoviesData();
+
+            Configuration conf = cluster.getConfiguration();
+            Connection connection = HBaseDataImporter.getConnection();
+            List<Run> runs = new ArrayList<>();
+            runs.add(measure(conf, "同步 batchPut", () -> {
+                HBaseDataImporter.importRatingsData();
+                return ratingCount;
+            }));
+            runs.add(measure(conf, "流水线", () -> {
+                HBaseDataImporter.importRatingsDataPipelined();
+                return ratingCount;
+            }));
+            runs.add(measure(conf, "批量导入", () -> HFileBulkLoader.importRatings(connection, conf)));
+
+            System.out.printf("%-14s %10s %10s %14s %14s  %s%n", "路径", "评分", "耗时(ms)", "WAL 字节", "表目录字节", "单元格 SHA-256");
+            for (Run run : runs) {
+                System.out.printf("%-14s %10d %10d %14d %14d  %s%n",
+                        run.name(), run.rows(), run.millis(), run.walBytes(), run.tableBytes(), run.digest());
+            }
+            consistent = runs.stream().map(Run::digest).distinct().count() == 1;
+            System.out.println(consistent ? "三条路径写入的单元格相同" : "单元格不一致：批量导入与 batchPut 路径的结果不同");
+        } finally {
+            HBaseDataImporter.closeConnection();
+            cluster.shutdownMiniCluster();
+        }
+        return consistent;
+    }
+
+    private static List<TableName> ratingTables() throws IOException {
+        List<TableName> tables = new ArrayList<>(List.of(TableName.valueOf(HBaseDataImporter.RATINGS_DATA_TABLE),
+                TableName.valueOf(HBaseDataImporter.MOVIE_INDEX_TABLE)));
+        if (HBaseDataImporter.getTimeIndexFormat() != null) {
+            tables.add(TableName.valueOf(HBaseDataImporter.TIME_INDEX_TABLE));
+        }
+        return tables;
+    }
+
+    /**
+     * 删除并重建评分相关的表，导入一次，记录耗时、WAL 增量、表大小和单元格摘要
+     */
+    private static Run measure(Configuration conf, String name, Import action) throws IOException {
+        Connection connection = HBaseDataImporter.getConnection();
+        try (Admin admin = connection.getAdmin()) {
+            for (TableName table : ratingTables()) {
+                if (admin.tableExists(table)) {
+                    admin.disableTable(table);
+                    admin.deleteTable(table);
+                }
+            }
+            HBaseDataImporter.createAllTables();
+            List<TableName> tables = ratingTables();
+
+            Map<String, Long> walBefore = walFiles(admin, conf);
+            long start = System.currentTimeMillis();
+            long rows = action.run();
+            long millis = System.currentTimeMillis() - start;
+            for (TableName table : tables) {
+                admin.flush(table);
+            }
+            long walBytes = 0;
+            for (Map.Entry<String, Long> file : walFiles(admin, conf).entrySet()) {
+                walBytes += file.getValue() - walBefore.getOrDefault(file.getKey(), 0L);
+            }
+
+            FileSystem fs = CommonFSUtils.getRootDirFileSystem(conf);
+            org.apache.hadoop.fs.Path root = CommonFSUtils.getRootDir(conf);
+            long tableBytes = 0;
+            for (TableName table : tables) {
+                tableBytes += fs.getContentSummary(CommonFSUtils.getTableDir(root, table)).getLength();
+            }
+            return new Run(name, rows, millis, walBytes, tableBytes, digest(connection, tables));
+        }
+    }
+
+    /**
+     * 滚动所有 RegionServer 的 WAL，返回 WALs 和 oldWALs 目录下各文件的字节数。
+     * 按文件名记录：WAL 归档时从 WALs 移到 oldWALs，文件名不变
+     */
+    private static Map<String, Long> walFiles(Admin admin, Configuration conf) throws IOException {
+        for (ServerName server : admin.getRegionServers()) {
+            admin.rollWALWriter(server);
+        }
+        FileSystem fs = CommonFSUtils.getWALFileSystem(conf);
+        org.apache.hadoop.fs.Path walRoot = CommonFSUtils.getWALRootDir(conf);
+        Map<String, Long> files = new HashMap<>();
+        for (String child : new String[]{HConstants.HREGION_LOGDIR_NAME, HConstants.HREGION_OLDLOGDIR_NAME}) {
+            org.apache.hadoop.fs.Path path = new org.apache.hadoop.fs.Path(walRoot, child);
+            if (!fs.exists(path)) {
+                continue;
+            }
+            RemoteIterator<LocatedFileStatus> it = fs.listFiles(path, true);
+            while (it.hasNext()) {
+                LocatedFileStatus status = it.next();
+                files.merge(status.getPath().getName(), visibleLength(fs, status), Math::max);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 文件的可见长度。滚动是异步的，被替换的 WAL 可能还没关闭，NameNode 给出的长度只包含已完成的块
+     */
+    private static long visibleLength(FileSystem fs, LocatedFileStatus status) throws IOException {
+        try (FSDataInputStream in = fs.open(status.getPath())) {
+            return in instanceof HdfsDataInputStream hdfs ? hdfs.getVisibleLength() : status.getLen();
+        } catch (FileNotFoundException e) {
+            // 列出之后被归档
+            return status.getLen();
+        }
+    }
+
+    private static String digest(Connection connection, List<TableName> tables) throws IOException {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (TableName tableName : tables) {
+            try (Table table = connection.getTable(tableName);
+                 ResultScanner scanner = table.getScanner(new Scan())) {
+                for (Result result : scanner) {
+                    for (Cell cell : result.rawCells()) {
+                        sha.update(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
+                        sha.update(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength());
+                        sha.update(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+                        sha.update(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+                    }
+                }
+            }
+        }
+        return HexFormat.of().formatHex(sha.digest(), 0, 8);
+    }
+}
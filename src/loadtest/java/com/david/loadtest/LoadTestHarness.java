@@ -0,0 +1,178 @@
+package com.david.loadtest;
+
+import com.david.HbaseApplication;
+import com.david.hbase.importer.HBaseDataImporter;
+import org.HdrHistogram.Histogram;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * 端到端压测：在同一个进程中启动 HBase mini cluster 和 Spring 应用，用 HBaseDataImporter 导入合成的 MovieLens 数据，
+ * 再依次对每个接口施加开放模型的负载（{@link OpenLoadGenerator}），每个接口写出一份 HdrHistogram 百分位分布。
+ * 不需要真实集群，结果可以在不同版本之间对比。
+ *
+ * 参数（-D 系统属性）：
+ *   loadtest.scale             数据规模，1 约为 ml-latest-small（610 用户、10 万条评分），默认 1
+ *   loadtest.rate              每个接口的到达率（次/秒），默认 200
+ *   loadtest.warmup.seconds    预热时间（不计入结果），默认 10
+ *   loadtest.duration.seconds  计入结果的压测时间，默认 30
+ *   loadtest.endpoints         压测的接口，默认 detail,userRatings,allRatings
+ *   loadtest.dir               数据和报告目录，默认 target/loadtest
+ * application.properties 中的配置项也可以用同名系统属性覆盖；查询结果缓存默认关闭（-Dquery.cache.enabled=true 打开）。
+ *
+ * 需要 hbase-testing-util，使用 -Ploadtest 编译运行：
+ * mvn -Ploadtest compile exec:exec
+ */
+public final class LoadTestHarness {
+    private static final String API = "/api/v1/movie/";
+
+    private LoadTestHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int scale = Integer.getInteger("loadtest.scale", 1);
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "200"));
+        Duration warmup = Duration.ofSeconds(Integer.getInteger("loadtest.warmup.seconds", 10));
+        Duration duration = Duration.ofSeconds(Integer.getInteger("loadtest.duration.seconds", 30));
+        String[] endpoints = System.getProperty("loadtest.endpoints", "detail,userRatings,allRatings").split(",");
+        Path dir = Paths.get(System.getProperty("loadtest.dir", "target/loadtest"));
+        Files.createDirectories(dir);
+
+        // 1. 合成数据
+        SyntheticDataset dataset = new SyntheticDataset(scale);
+        Path movies = dir.resolve("movies.csv");
+        Path ratings = dir.resolve("ratings.csv");
+        dataset.writeMovies(movies);
+        long ratingCount = dataset.writeRatings(ratings);
+        System.out.printf("合成数据：%d 个用户，%d 部电影，%d 条评分%n", dataset.users(), dataset.movies(), ratingCount);
+
+        // 2. mini cluster；HBaseDataImporter 在类加载时读取配置，必须在第一次使用它之前设置好系统属性
+        HBaseTestingUtility cluster = new HBaseTestingUtility();
+        // 不启动 Master/RegionServer 的 Web UI（依赖 Jersey 1 和 javax.validation，与 Spring Boot 3 的依赖冲突）
+        cluster.getConfiguration().setInt(HConstants.MASTER_INFO_PORT, -1);
+        cluster.getConfiguration().setInt(HConstants.REGIONSERVER_INFO_PORT, -1);
+        cluster.startMiniCluster();
+        ConfigurableApplicationContext app = null;
+        try {
+            System.setProperty("hbase.zookeeper.quorum", cluster.getConfiguration().get("hbase.zookeeper.quorum"));
+            System.setProperty("hbase.zookeeper.port", String.valueOf(cluster.getZkCluster().getClientPort()));
+            System.setProperty("data.movies.path", movies.toAbsolutePath().toString());
+            System.setProperty("data.ratings.path", ratings.toAbsolutePath().toString());
+            if (System.getProperty("query.cache.enabled") == null) {
+                System.setProperty("query.cache.enabled", "false");
+            }
+
+            // 3. 与生产相同的导入路径
+            long importStart = System.currentTimeMillis();
+            HBaseDataImporter.initConnection();
+            HBaseDataImporter.createAllTables();
+            HBaseDataImporter.importMoviesData();
+            HBaseDataImporter.importRatingsData();
+            HBaseDataImporter.syncMovieIdTitleIndex();
+            System.out.printf("导入完成，耗时 %d ms%n", System.currentTimeMillis() - importStart);
+
+            // 4. Spring 应用（随机端口），ApplicationReadyEvent 中预热标题字典和标题索引
+            app = SpringApplication.run(HbaseApplication.class, "--server.port=0");
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            String base = "http://localhost:" + port + API;
+
+            // 5. 依次压测每个接口
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+            OpenLoadGenerator generator = new OpenLoadGenerator(client);
+            List<OpenLoadGenerator.Result> results = new ArrayList<>();
+            for (String endpoint : endpoints) {
+                String name = endpoint.trim();
+                System.out.printf("压测 %s：%.0f 次/秒，预热 %d 秒，压测 %d 秒%n",
+                        name, rate, warmup.toSeconds(), duration.toSeconds());
+                OpenLoadGenerator.Result result = generator.run(name, requests(name, base, dataset), rate, warmup, duration);
+                results.add(result);
+                writeHistograms(dir, result);
+            }
+            writeSummary(dir.resolve("summary.txt"), dataset, ratingCount, results);
+            Files.readAllLines(dir.resolve("summary.txt")).forEach(System.out::println);
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            HBaseDataImporter.closeConnection();
+            cluster.shutdownMiniCluster();
+        }
+    }
+
+    /**
+     * 每个接口的请求：电影按热度选取（与真实访问一样集中在热门电影上），用户均匀选取
+     */
+    private static Supplier<URI> requests(String endpoint, String base, SyntheticDataset dataset) {
+        SplittableRandom random = new SplittableRandom(endpoint.hashCode());
+        return switch (endpoint) {
+            case "detail" -> () -> URI.create(base + "detail?title="
+                    + encode(SyntheticDataset.title(dataset.popularMovie(random))));
+            case "userRatings" -> () -> URI.create(base + "userRatings?userId=" + (1 + random.nextInt(dataset.users())));
+            case "allRatings" -> () -> URI.create(base + "allRatings?title="
+                    + encode(SyntheticDataset.title(dataset.popularMovie(random))));
+            default -> throw new IllegalArgumentException("未知接口：" + endpoint
+                    + "（可用：detail / userRatings / allRatings）");
+        };
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 每个接口两份 .hgrm：从计划发送时刻算起的延迟，以及从实际发出算起的服务时间（单位毫秒）
+     */
+    private static void writeHistograms(Path dir, OpenLoadGenerator.Result result) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(result.name() + ".hgrm")),
+                false, StandardCharsets.UTF_8)) {
+            result.latency().outputPercentileDistribution(out, 1_000_000.0);
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(result.name() + "-service.hgrm")),
+                false, StandardCharsets.UTF_8)) {
+            result.service().outputPercentileDistribution(out, 1_000_000.0);
+        }
+    }
+
+    private static void writeSummary(Path file, SyntheticDataset dataset, long ratingCount,
+                                     List<OpenLoadGenerator.Result> results) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+            out.printf("数据规模：%d 用户，%d 电影，%d 评分%n", dataset.users(), dataset.movies(), ratingCount);
+            out.printf("%-12s %8s %8s %8s %6s %6s %6s %10s %10s %10s %10s %12s%n", "endpoint", "rate/s", "requests",
+                    "ok", "404", "429", "error", "p50(ms)", "p99(ms)", "p99.9(ms)", "max(ms)", "svc p99(ms)");
+            for (OpenLoadGenerator.Result r : results) {
+                Histogram h = r.latency();
+                out.printf("%-12s %8.0f %8d %8d %6d %6d %6d %10.2f %10.2f %10.2f %10.2f %12.2f%n",
+                        r.name(), r.rate(), r.requests(), r.ok(), r.notFound(), r.rejected(), r.errors(),
+                        millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(99)),
+                        millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()),
+                        millis(r.service().getValueAtPercentile(99)));
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
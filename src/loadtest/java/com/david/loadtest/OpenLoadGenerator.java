@@ -0,0 +1,103 @@
+package com.david.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 开放模型的负载：按固定到达率（每秒 rate 个）发送请求，不等待前一个请求完成，服务变慢时并发数随之上升。
+ *
+ * 延迟从请求“计划发送”的时刻算起（而不是实际发出的时刻），发送线程因 GC 或调度落后时，
+ * 落后的时间也计入延迟，避免协调遗漏（coordinated omission）把排队时间藏起来。
+ * 同时记录从实际发出算起的服务时间，两者相差大说明压测端自身成为瓶颈。
+ */
+public final class OpenLoadGenerator {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    // 压测结束后等待未完成请求的最长时间
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final HttpClient client;
+
+    public OpenLoadGenerator(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 一个接口的压测结果：latency 从计划发送时刻算起，service 从实际发出算起（纳秒）
+     */
+    public record Result(String name, double rate, Histogram latency, Histogram service,
+                         long ok, long notFound, long rejected, long errors) {
+        public long requests() {
+            return ok + notFound + rejected + errors;
+        }
+    }
+
+    /**
+     * 预热 warmup（不计入结果）后，以 rate 次/秒的到达率压测 duration
+     */
+    public Result run(String name, Supplier<URI> requests, double rate, Duration warmup, Duration duration)
+            throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        Recorder latency = new Recorder(3);
+        Recorder service = new Recorder(3);
+        LongAdder ok = new LongAdder();
+        LongAdder notFound = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        LongAdder errors = new LongAdder();
+        AtomicInteger inFlight = new AtomicInteger();
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            boolean measured = intended >= measureFrom;
+            HttpRequest request = HttpRequest.newBuilder(requests.get()).timeout(REQUEST_TIMEOUT).GET().build();
+            long sent = System.nanoTime();
+            inFlight.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long done = System.nanoTime();
+                if (measured) {
+                    latency.recordValue(done - intended);
+                    service.recordValue(done - sent);
+                    if (error != null) {
+                        errors.increment();
+                    } else if (response.statusCode() == 200) {
+                        ok.increment();
+                    } else if (response.statusCode() == 404) {
+                        notFound.increment();
+                    } else if (response.statusCode() == 429) {
+                        rejected.increment();
+                    } else {
+                        errors.increment();
+                    }
+                }
+                inFlight.decrementAndGet();
+            });
+        }
+
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        return new Result(name, rate, latency.getIntervalHistogram(), service.getIntervalHistogram(),
+                ok.sum(), notFound.sum(), rejected.sum(), errors.sum() + inFlight.get());
+    }
+}
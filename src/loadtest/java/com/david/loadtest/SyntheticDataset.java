@@ -0,0 +1,128 @@
+package com.david.loadtest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 按 ml-latest-small 的形态生成 movies.csv 和 ratings.csv，scale 倍的用户数和电影数（电影数不超过 ml-25m 的 62423）：
+ *   - scale = 1 时约 610 个用户、9742 部电影、10 万条评分；
+ *   - 每个用户至少 20 条评分，少数用户评分很多；电影按幂律被选中（movieId 小的是热门电影）；
+ *   - 评分分布取自 MovieLens（3~4 星最多），时间戳在 1996 ~ 2018 年之间；
+ *   - 标题带年份、部分标题带逗号（CSV 中加引号），类型从 MovieLens 的 19 个类型中选 1~3 个。
+ * 固定种子，同一个 scale 每次生成相同的文件。
+ */
+public final class SyntheticDataset {
+    private static final String[] GENRES = {
+            "Action", "Adventure", "Animation", "Children", "Comedy", "Crime", "Documentary", "Drama", "Fantasy",
+            "Film-Noir", "Horror", "IMAX", "Musical", "Mystery", "Romance", "Sci-Fi", "Thriller", "War", "Western"};
+    // 半星数 1~10 的累计比例
+    private static final double[] RATING_CDF = {
+            0.014, 0.042, 0.060, 0.134, 0.189, 0.388, 0.519, 0.785, 0.870, 1.0};
+    private static final long FIRST_TIMESTAMP = 828_124_615L;
+    private static final long LAST_TIMESTAMP = 1_537_799_250L;
+
+    private final int users;
+    private final int movies;
+    private final SplittableRandom random = new SplittableRandom(20240601L);
+    private long ratings;
+
+    public SyntheticDataset(int scale) {
+        this.users = 610 * scale;
+        this.movies = Math.min(9742 * scale, 62_423);
+    }
+
+    public int users() {
+        return users;
+    }
+
+    public int movies() {
+        return movies;
+    }
+
+    public long ratings() {
+        return ratings;
+    }
+
+    public static String title(int movieId) {
+        String name = movieId % 7 == 0 ? "Load Test, Part " + movieId : "Load Test Movie " + movieId;
+        return name + " (" + (1930 + movieId % 89) + ")";
+    }
+
+    /**
+     * 按幂律选一部电影，热门电影（movieId 小）被选中的概率高
+     */
+    public int popularMovie(SplittableRandom random) {
+        double u = random.nextDouble();
+        return 1 + (int) (movies * u * u * u);
+    }
+
+    public void writeMovies(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("movieId,title,genres\n");
+            for (int movieId = 1; movieId <= movies; movieId++) {
+                String title = title(movieId);
+                out.write(movieId + "," + (title.indexOf(',') >= 0 ? '"' + title + '"' : title) + "," + genres() + "\n");
+            }
+        }
+    }
+
+    /**
+     * 按 userId、movieId 升序写出评分（与 MovieLens 发布的文件顺序相同），返回评分条数
+     */
+    public long writeRatings(Path file) throws IOException {
+        boolean[] rated = new boolean[movies + 1];
+        int[] picked = new int[movies];
+        ratings = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("userId,movieId,rating,timestamp\n");
+            for (int userId = 1; userId <= users; userId++) {
+                double u = random.nextDouble();
+                int count = Math.min(movies / 2, 20 + (int) (1500 * u * u * u * u));
+                int n = 0;
+                while (n < count) {
+                    int movieId = popularMovie(random);
+                    if (!rated[movieId]) {
+                        rated[movieId] = true;
+                        picked[n++] = movieId;
+                    }
+                }
+                Arrays.sort(picked, 0, n);
+                for (int i = 0; i < n; i++) {
+                    rated[picked[i]] = false;
+                    int ratingX2 = ratingX2();
+                    out.write(userId + "," + picked[i] + "," + (ratingX2 / 2) + (ratingX2 % 2 == 0 ? ".0" : ".5")
+                            + "," + (FIRST_TIMESTAMP + random.nextLong(LAST_TIMESTAMP - FIRST_TIMESTAMP)) + "\n");
+                }
+                ratings += n;
+            }
+        }
+        return ratings;
+    }
+
+    private String genres() {
+        int n = 1 + random.nextInt(3);
+        StringBuilder genres = new StringBuilder(GENRES[random.nextInt(GENRES.length)]);
+        for (int i = 1; i < n; i++) {
+            String genre = GENRES[random.nextInt(GENRES.length)];
+            if (genres.indexOf(genre) < 0) {
+                genres.append('|').append(genre);
+            }
+        }
+        return genres.toString();
+    }
+
+    private int ratingX2() {
+        double u = random.nextDouble();
+        for (int i = 0; i < RATING_CDF.length; i++) {
+            if (u < RATING_CDF[i]) {
+                return i + 1;
+            }
+        }
+        return RATING_CDF.length;
+    }
+}
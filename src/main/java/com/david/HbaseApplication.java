@@ -1,6 +1,11 @@
 package com.david;
 
 import com.david.hbase.importer.HBaseDataImporter;
+import com.david.hbase.query.AnalyticsEngine;
+import com.david.hbase.query.CachedQueryer;
+import com.david.hbase.query.MovieStores;
+import com.david.hbase.query.MovieTitleCache;
+import com.david.hbase.query.TitleSearchIndex;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -20,11 +25,56 @@ public class HbaseApplication {
      */
     @EventListener(ApplicationReadyEvent.class)
     public void initHbaseConnection() {
+        // query.backend=memory：详情和评分接口使用进程内的列式存储，HBase 连接失败时这三个接口仍然可用
+        try {
+            MovieStores.start();
+            if (MovieStores.isMemory()) {
+                System.out.println("✅ 列式存储已载入，详情和评分查询不再访问 HBase。");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("❌ 严重错误：列式存储载入失败！" + e.getMessage());
+            e.printStackTrace();
+        }
+
+        // 分析快照在本地磁盘上，不依赖 HBase；还没有导出时分析接口返回 404，导出后的第一次查询自动载入
+        try {
+            if (AnalyticsEngine.preload()) {
+                System.out.println("✅ 分析快照已载入。");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ 分析快照载入失败，下一次分析查询时重试：" + e.getMessage());
+        }
+
         try {
             // 在 Web 应用启动时初始化 HBase 连接，只需执行一次
             HBaseDataImporter.initConnection();
+            // 查询接口使用异步连接
+            HBaseDataImporter.initAsyncConnection();
             System.out.println("✅ Spring Boot 应用启动成功，HBase 连接已初始化。");
 
+            // 预热 movieId -> 标题字典，避免查询用户评分时逐条查标题
+            try {
+                MovieTitleCache.start();
+            } catch (IOException e) {
+                System.err.println("⚠️ 电影标题字典预热失败，查询时将直接查表：" + e.getMessage());
+            }
+
+            // 构建标题检索索引（自动补全、标题纠错）；memory 后端已用列式存储中的标题构建
+            if (!MovieStores.isMemory()) {
+                try {
+                    TitleSearchIndex.start();
+                } catch (IOException e) {
+                    System.err.println("⚠️ 标题检索索引构建失败，按精确标题查询：" + e.getMessage());
+                }
+            }
+
+            // 热点查询结果缓存：导入程序写入数据后清空
+            try {
+                CachedQueryer.start();
+            } catch (IOException e) {
+                System.err.println("⚠️ 读取数据更新标记失败，查询结果缓存仅按 TTL 过期：" + e.getMessage());
+            }
+
             // 提示：通常在生产环境中，您会配置连接池而不是直接使用静态连接。
 
         } catch (IOException e) {
@@ -1,92 +1,444 @@
 package com.david.controller;
 
-import com.david.hbase.query.HBaseQueryer;
+import com.david.hbase.query.AnalyticsEngine;
+import com.david.hbase.query.AsyncHBaseQueryer;
+import com.david.hbase.query.Bulkhead;
+import com.david.hbase.query.BulkheadRejectedException;
+import com.david.hbase.query.CachedQueryer;
+import com.david.hbase.query.MovieStores;
+import com.david.hbase.query.QueryMetrics;
+import com.david.hbase.query.RatingQuery;
+import com.david.hbase.query.RatingSink;
+import com.david.hbase.query.TitleSearchIndex;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/v1/movie") // 统一前缀，便于管理
 
 public class MovieQueryController {
+    private static final Logger logger = LoggerFactory.getLogger(MovieQueryController.class);
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int DEFAULT_PAGE_LIMIT = 100;
+    private static final int MAX_PAGE_LIMIT = 1000;
+    // 流式输出每写出多少行刷新一次
+    private static final int FLUSH_ROWS = 500;
+    private static final int DEFAULT_SEARCH_LIMIT = 10;
+    // 查不到电影时返回的候选标题数
+    private static final int SUGGESTION_LIMIT = 5;
+    // 429 响应建议客户端重试前等待的秒数
+    private static final String RETRY_AFTER_SECONDS = "1";
+    // 流式响应归还 STREAM 舱壁名额的异步拦截器的键
+    private static final String STREAM_PERMIT = MovieQueryController.class.getName() + ".STREAM_PERMIT";
+
+    private final ObjectMapper objectMapper;
+
+    public MovieQueryController(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
 
     /**
      * 接口 1: 查询电影详情 (按名称)
      * URL: GET /api/v1/movie/detail?title=Toy Story (1995)
      */
     @GetMapping("/detail")
-    public ResponseEntity<?> getMovieDetail(@RequestParam("title") String movieTitle) {
-        try {
-            Map<String, String> result = HBaseQueryer.queryMovieDetail(movieTitle);
-
-            if (result == null || result.isEmpty()) {
-                // HTTP 404 Not Found
-                return new ResponseEntity<>(
-                        Map.of("message", "未找到该电影: " + movieTitle),
-                        HttpStatus.NOT_FOUND
-                );
-            }
-            // HTTP 200 OK，返回电影详情 Map (自动转为 JSON)
-            return ResponseEntity.ok(result);
-
-        } catch (IOException e) {
-            // HTTP 500 Internal Server Error
-            System.err.println("HBase查询电影详情失败: " + e.getMessage());
-            return new ResponseEntity<>(
-                    Map.of("message", "后端数据服务错误", "error", e.getMessage()),
-                    HttpStatus.INTERNAL_SERVER_ERROR
-            );
-        }
+    public CompletableFuture<ResponseEntity<?>> getMovieDetail(@RequestParam("title") String movieTitle) {
+        // HTTP 200 OK，返回电影详情 Map (自动转为 JSON)；HTTP 404 Not Found，附带标题检索的候选结果
+        // HBase 后端未命中缓存时由 CachedQueryer 计入 LOOKUP 舱壁
+        return okOrNotFound(null, () -> MovieStores.get().queryMovieDetail(movieTitle),
+                () -> Map.of("message", "未找到该电影: " + movieTitle,
+                        "suggestions", TitleSearchIndex.search(movieTitle, SUGGESTION_LIMIT)),
+                "HBase查询电影详情失败: ");
     }
 
     /**
      * 接口 2: 查询用户评分 (按用户 ID)
      * URL: GET /api/v1/movie/userRatings?userId=1
+     * 分页: GET /api/v1/movie/userRatings?userId=1&limit=100&cursor=上一页的 nextCursor
+     * 过滤: minRating/maxRating（含）、from/to（秒，含/不含）、fields=rating,timestamp（投影）
+     * 排序: sort=rating|timestamp，返回评分最高/最新的 limit 条（默认 100），不分页
+     * 格式: 按 Accept 返回 JSON / CBOR / Smile，或列格式（application/vnd.movielens.columnar+json 等，见 RatingsFormat）
      */
     @GetMapping("/userRatings")
-    public ResponseEntity<List<Map<String, String>>> getUserRatings(@RequestParam("userId") String userId) {
-        try {
-            List<Map<String, String>> result = HBaseQueryer.queryUserRatings(userId);
-
-            // HTTP 200 OK，即使列表为空也返回 200，表示查询成功，但结果集为空
-            return ResponseEntity.ok(result);
-
-        } catch (IOException e) {
-            System.err.println("HBase查询用户评分失败: " + e.getMessage());
-            // 返回一个包含错误信息的空列表或特定错误体
-            return new ResponseEntity<>(
-                    Collections.emptyList(),
-                    HttpStatus.INTERNAL_SERVER_ERROR
-            );
-        }
+    public CompletableFuture<ResponseEntity<?>> getUserRatings(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                               @RequestParam("userId") String userId,
+                                                               @RequestParam(value = "limit", required = false) Integer limit,
+                                                               @RequestParam(value = "cursor", required = false) String cursor,
+                                                               @RequestParam(value = "minRating", required = false) String minRating,
+                                                               @RequestParam(value = "maxRating", required = false) String maxRating,
+                                                               @RequestParam(value = "from", required = false) Long from,
+                                                               @RequestParam(value = "to", required = false) Long to,
+                                                               @RequestParam(value = "fields", required = false) String fields,
+                                                               @RequestParam(value = "sort", required = false) String sort) {
+        // HTTP 200 OK，即使列表为空也返回 200，表示查询成功，但结果集为空
+        return ratings(accept, Bulkhead.SCAN, () -> {
+            RatingQuery query = RatingQuery.parse(minRating, maxRating, from, to, fields, sort, pageLimit(limit));
+            return limit != null || cursor != null || query.isSorted()
+                    // 分页：返回一页评分和下一页的游标
+                    ? MovieStores.get().queryUserRatingsPage(userId, query, cursor, pageLimit(limit))
+                    : MovieStores.get().queryUserRatings(userId, query);
+        }, "HBase查询用户评分失败: ");
+    }
+
+    /**
+     * 接口 2（流式）: 以 NDJSON 逐行返回用户评分，边扫描边输出
+     * URL: GET /api/v1/movie/userRatings/stream?userId=1
+     */
+    @GetMapping(value = "/userRatings/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUserRatings(@RequestParam("userId") String userId) {
+        return ndjson(sink -> MovieStores.get().streamUserRatings(userId, sink), "HBase流式查询用户评分失败: ");
     }
 
     /**
      * 接口 3: 查询某部电影的所有评分 (按名称)
      * URL: GET /api/v1/movie/allRatings?title=Toy Story (1995)
+     * 分页: GET /api/v1/movie/allRatings?title=Toy Story (1995)&limit=100&cursor=上一页的 nextCursor
+     * 过滤、投影、排序参数和响应格式同接口 2
      */
     @GetMapping("/allRatings")
-    public ResponseEntity<List<Map<String, String>>> getMovieAllRatings(@RequestParam("title") String movieTitle) {
+    public CompletableFuture<ResponseEntity<?>> getMovieAllRatings(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                   @RequestParam("title") String movieTitle,
+                                                                   @RequestParam(value = "limit", required = false) Integer limit,
+                                                                   @RequestParam(value = "cursor", required = false) String cursor,
+                                                                   @RequestParam(value = "minRating", required = false) String minRating,
+                                                                   @RequestParam(value = "maxRating", required = false) String maxRating,
+                                                                   @RequestParam(value = "from", required = false) Long from,
+                                                                   @RequestParam(value = "to", required = false) Long to,
+                                                                   @RequestParam(value = "fields", required = false) String fields,
+                                                                   @RequestParam(value = "sort", required = false) String sort) {
+        // HBase 后端未命中缓存时由 CachedQueryer 计入 SCAN 舱壁
+        return ratings(accept, null, () -> {
+            RatingQuery query = RatingQuery.parse(minRating, maxRating, from, to, fields, sort, pageLimit(limit));
+            return limit != null || cursor != null || query.isSorted()
+                    ? MovieStores.get().queryMovieRatingsPage(movieTitle, query, cursor, pageLimit(limit))
+                    : MovieStores.get().queryMovieRatings(movieTitle, query);
+        }, "HBase查询电影所有评分失败: ");
+    }
+
+    /**
+     * 接口 3（流式）: 以 NDJSON 逐行返回某部电影的所有评分
+     * URL: GET /api/v1/movie/allRatings/stream?title=Toy Story (1995)
+     */
+    @GetMapping(value = "/allRatings/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamMovieAllRatings(@RequestParam("title") String movieTitle) {
+        return ndjson(sink -> MovieStores.get().streamMovieRatings(movieTitle, sink), "HBase流式查询电影所有评分失败: ");
+    }
+
+    /**
+     * 接口 3（按时间）: 查询某个时间段内提交的所有评分，按时间升序分页
+     * URL: GET /api/v1/movie/ratingsByTime?from=964982400&to=965068800&limit=100&cursor=上一页的 nextCursor
+     * 最近 N 天: GET /api/v1/movie/ratingsByTime?days=7
+     * 响应格式同接口 2
+     */
+    @GetMapping("/ratingsByTime")
+    public CompletableFuture<ResponseEntity<?>> getRatingsByTime(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                 @RequestParam(value = "from", required = false) Long from,
+                                                                 @RequestParam(value = "to", required = false) Long to,
+                                                                 @RequestParam(value = "days", required = false) Integer days,
+                                                                 @RequestParam(value = "limit", required = false) Integer limit,
+                                                                 @RequestParam(value = "cursor", required = false) String cursor) {
+        return ratings(accept, Bulkhead.SCAN, () -> {
+            long end;
+            long start;
+            if (days != null) {
+                if (days <= 0) {
+                    throw new IllegalArgumentException("days 必须为正数");
+                }
+                end = System.currentTimeMillis() / 1000;
+                start = end - days * 86400L;
+            } else if (from != null && to != null) {
+                start = from;
+                end = to;
+            } else {
+                throw new IllegalArgumentException("需要指定 from 和 to（秒），或 days");
+            }
+            return AsyncHBaseQueryer.queryRatingsByTime(start, end, cursor, pageLimit(limit));
+        }, "HBase按时间查询评分失败: ");
+    }
+
+    /**
+     * 接口 4: 查询电影的评分统计（条数、平均分、最低/最高分、半星直方图）
+     * URL: GET /api/v1/movie/stats?title=Toy Story (1995) 或 /api/v1/movie/stats?movieId=1
+     */
+    @GetMapping("/stats")
+    public CompletableFuture<ResponseEntity<?>> getMovieStats(@RequestParam(value = "title", required = false) String movieTitle,
+                                                              @RequestParam(value = "movieId", required = false) String movieId) {
+        if (movieTitle == null && movieId == null) {
+            return CompletableFuture.completedFuture(
+                    new ResponseEntity<>(Map.of("message", "需要参数 title 或 movieId"), HttpStatus.BAD_REQUEST));
+        }
+        return okOrNotFound(Bulkhead.LOOKUP, () -> movieId != null
+                        ? AsyncHBaseQueryer.queryMovieStats(movieId)
+                        : AsyncHBaseQueryer.queryMovieStatsByTitle(movieTitle),
+                () -> Map.of("message", "未找到该电影的评分统计: " + (movieId != null ? movieId : movieTitle)),
+                "HBase查询电影评分统计失败: ");
+    }
+
+    /**
+     * 接口 5: 查询用户的评分统计
+     * URL: GET /api/v1/movie/stats/user?userId=1
+     */
+    @GetMapping("/stats/user")
+    public CompletableFuture<ResponseEntity<?>> getUserStats(@RequestParam("userId") String userId) {
+        return okOrNotFound(Bulkhead.LOOKUP, () -> AsyncHBaseQueryer.queryUserStats(userId),
+                () -> Map.of("message", "未找到该用户的评分统计: " + userId),
+                "HBase查询用户评分统计失败: ");
+    }
+
+    /**
+     * 接口 6: 查询某个类型的电影排行榜（按贝叶斯加权平均分）
+     * URL: GET /api/v1/movie/genreTop?genre=Comedy&limit=10
+     */
+    @GetMapping("/genreTop")
+    public CompletableFuture<ResponseEntity<?>> getGenreTop(@RequestParam("genre") String genre,
+                                                            @RequestParam(value = "limit", required = false) Integer limit) {
+        return okOrNotFound(Bulkhead.LOOKUP, () -> AsyncHBaseQueryer.queryGenreTop(genre, limit == null ? 0 : limit),
+                () -> Map.of("message", "未找到该类型的排行榜: " + genre),
+                "HBase查询类型排行榜失败: ");
+    }
+
+    /**
+     * 接口 7: 标题自动补全（内存索引，不访问 HBase）
+     * URL: GET /api/v1/movie/search?q=toy st&limit=10
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchTitles(@RequestParam("q") String query,
+                                          @RequestParam(value = "limit", required = false) Integer limit) {
+        if (!TitleSearchIndex.isReady()) {
+            // HTTP 503 Service Unavailable，索引尚未构建完成
+            return new ResponseEntity<>(Map.of("message", "标题索引尚未就绪"), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        int n = limit == null ? DEFAULT_SEARCH_LIMIT : Math.max(1, Math.min(limit, MAX_PAGE_LIMIT));
+        return ResponseEntity.ok(TitleSearchIndex.search(query, n));
+    }
+
+    /**
+     * 接口 8: 相似电影（“喜欢这部电影的用户也喜欢”，离线计算的前 K 个，一次 Get）
+     * URL: GET /api/v1/movie/similar?title=Toy Story (1995)&limit=10 或 /api/v1/movie/similar?movieId=1
+     */
+    @GetMapping("/similar")
+    public CompletableFuture<ResponseEntity<?>> getSimilarMovies(@RequestParam(value = "title", required = false) String movieTitle,
+                                                                 @RequestParam(value = "movieId", required = false) String movieId,
+                                                                 @RequestParam(value = "limit", required = false) Integer limit) {
+        if (movieTitle == null && movieId == null) {
+            return CompletableFuture.completedFuture(
+                    new ResponseEntity<>(Map.of("message", "需要参数 title 或 movieId"), HttpStatus.BAD_REQUEST));
+        }
+        int n = limit == null ? 0 : limit;
+        return okOrNotFound(Bulkhead.LOOKUP, () -> movieId != null
+                        ? AsyncHBaseQueryer.querySimilarMovies(movieId, n)
+                        : AsyncHBaseQueryer.querySimilarMoviesByTitle(movieTitle, n),
+                () -> Map.of("message", "未找到该电影的相似电影: " + (movieId != null ? movieId : movieTitle)),
+                "HBase查询相似电影失败: ");
+    }
+
+    /**
+     * 接口 9: 查询结果缓存的统计（条数、权重、命中率、并发请求合并率）
+     * URL: GET /api/v1/movie/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<?> getCacheStats() {
+        return ResponseEntity.ok(CachedQueryer.stats());
+    }
+
+    // 未指定 limit 时的页大小，以及允许的最大页大小
+    private static int pageLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_LIMIT;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("limit 必须在 1~" + MAX_PAGE_LIMIT + " 之间");
+        }
+        return limit;
+    }
+
+    /**
+     * 接口 10: 各个舱壁的并发上限、当前并发数和拒绝次数
+     * URL: GET /api/v1/movie/bulkheads
+     */
+    @GetMapping("/bulkheads")
+    public ResponseEntity<?> getBulkheads() {
+        return ResponseEntity.ok(Bulkhead.allStats());
+    }
+
+    /**
+     * 接口 11: 评分分组统计（本地分析快照，不访问 HBase；快照由 HBaseDataImporter analytics 导出）
+     * URL: GET /api/v1/movie/analytics?groupBy=year,rating
+     * 维度：year（评分年份）/ rating / genre / releaseYear（上映年份），最多两个，不传时只统计总数
+     */
+    @GetMapping("/analytics")
+    public CompletableFuture<ResponseEntity<?>> getAnalytics(@RequestParam(value = "groupBy", required = false) String groupBy) {
+        return okOrNotFound(null, () -> AsyncHBaseQueryer.supplyBlocking(() -> AnalyticsEngine.query(groupBy)),
+                () -> Map.of("message", "分析快照尚未导出"),
+                "分析查询失败: ");
+    }
+
+    /**
+     * 单个对象的查询：结果为 null 时 404，参数错误 400，超出舱壁上限 429，HBase 错误 500
+     */
+    private static CompletableFuture<ResponseEntity<?>> okOrNotFound(Bulkhead bulkhead,
+                                                                     Supplier<CompletableFuture<?>> query,
+                                                                     Supplier<Object> notFoundBody,
+                                                                     String errorMessage) {
+        return start(bulkhead, query).<ResponseEntity<?>>thenApply(result -> result == null
+                        ? new ResponseEntity<>(notFoundBody.get(), HttpStatus.NOT_FOUND)
+                        : ResponseEntity.ok(result))
+                .exceptionally(error -> failure(error, errorMessage,
+                        Map.of("message", "后端数据服务错误", "error", String.valueOf(AsyncHBaseQueryer.unwrap(error).getMessage()))));
+    }
+
+    /**
+     * 评分列表/分页查询：按 Accept 协商的格式用流式生成器写出，Accept 中没有支持的格式时 406；
+     * 出错时与原来一样返回空列表（JSON）
+     */
+    private static CompletableFuture<ResponseEntity<?>> ratings(String accept, Bulkhead bulkhead,
+                                                                Supplier<CompletableFuture<?>> query,
+                                                                String errorMessage) {
+        RatingsFormat format;
         try {
-            List<Map<String, String>> result = HBaseQueryer.queryMovieRatingsByTitle(movieTitle);
+            format = RatingsFormat.negotiate(accept);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(failure(e, errorMessage, Collections.emptyList()));
+        }
+        if (format == null) {
+            // HTTP 406 Not Acceptable
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("message", "支持的响应格式：" + RatingsFormat.supported())));
+        }
+        return start(bulkhead, query).<ResponseEntity<?>>thenApply(result -> {
+                    try {
+                        return ResponseEntity.ok().contentType(format.mediaType()).body(RatingsWriter.write(format, result));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .exceptionally(error -> failure(error, errorMessage, Collections.emptyList()));
+    }
 
-            // HTTP 200 OK
-            return ResponseEntity.ok(result);
+    // 在舱壁上限内发起查询（bulkhead 为 null 时不限流）；发起查询时同步抛出的异常（如无效的游标）也转为失败的 future
+    private static CompletableFuture<?> start(Bulkhead bulkhead, Supplier<CompletableFuture<?>> query) {
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            return CompletableFuture.failedFuture(new BulkheadRejectedException(bulkhead.name()));
+        }
+        long begin = System.nanoTime();
+        CompletableFuture<?> future;
+        try {
+            future = query.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return bulkhead == null ? future : future.whenComplete((result, error) -> bulkhead.release(begin, error));
+    }
 
-        } catch (IOException e) {
-            System.err.println("HBase查询电影所有评分失败: " + e.getMessage());
-            return new ResponseEntity<>(
-                    Collections.emptyList(),
-                    HttpStatus.INTERNAL_SERVER_ERROR
-            );
+    // 错误响应固定为 JSON：请求只接受列格式等自定义类型时，错误信息也能写出
+    private static ResponseEntity<?> failure(Throwable error, String errorMessage, Object serverErrorBody) {
+        Throwable cause = AsyncHBaseQueryer.unwrap(error);
+        if (cause instanceof IllegalArgumentException) {
+            // HTTP 400 Bad Request，游标、分页参数或 Accept 无效
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("message", String.valueOf(cause.getMessage())));
+        }
+        if (cause instanceof BulkheadRejectedException) {
+            // HTTP 429 Too Many Requests，同类查询的并发已达上限，不排队
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .contentType(MediaType.APPLICATION_JSON).body(Map.of("message", String.valueOf(cause.getMessage())));
         }
+        // HTTP 500 Internal Server Error
+        logger.error("{}{}", errorMessage, cause.getMessage(), cause);
+        QueryMetrics.recordError("response", cause);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON)
+                .body(serverErrorBody);
+    }
+
+    /**
+     * 每条记录用同一个 JsonGenerator 写成一行 JSON；响应头已经发出，出错时只能记录日志并中断输出。
+     * 输出期间占用 STREAM 舱壁的一个名额，超出上限时返回 429。名额在响应体写完时归还；
+     * 响应体没有执行（客户端提前断开、异步请求超时）时在异步请求结束时归还，只归还一次
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(StreamQuery query, String errorMessage) {
+        if (!Bulkhead.STREAM.tryAcquire()) {
+            Map<String, String> message = Map.of("message", new BulkheadRejectedException(Bulkhead.STREAM.name()).getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .contentType(MediaType.APPLICATION_JSON).body(out -> out.write(objectMapper.writeValueAsBytes(message)));
+        }
+        long begin = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        WebAsyncUtils.getAsyncManager(currentRequest()).registerCallableInterceptor(STREAM_PERMIT,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        if (released.compareAndSet(false, true)) {
+                            Bulkhead.STREAM.release(begin, null);
+                        }
+                    }
+                });
+        StreamingResponseBody body = out -> {
+            OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+            int[] rows = {0};
+            Throwable failure = null;
+            try {
+                JsonGenerator g = RatingsFormat.JSON.factory().createGenerator(buffered);
+                // 默认在相邻的根值之间写一个空格，每行已经以换行分隔，不需要
+                g.setRootValueSeparator(null);
+                query.run(record -> {
+                    RatingsWriter.writeRecord(g, record);
+                    g.writeRaw('\n');
+                    // 定期刷出，客户端不必等整个扫描结束
+                    if (++rows[0] % FLUSH_ROWS == 0) {
+                        g.flush();
+                    }
+                });
+                g.flush();
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+                logger.error("{}{}", errorMessage, e.getMessage(), e);
+                QueryMetrics.recordError("stream", e);
+                throw e;
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    Bulkhead.STREAM.release(begin, failure);
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private static HttpServletRequest currentRequest() {
+        return ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+    }
+
+    @FunctionalInterface
+    private interface StreamQuery {
+        void run(RatingSink sink) throws IOException;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package com.david.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.MediaType;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 评分接口的响应格式，按请求头 Accept 协商：
+ *   - 行格式：每条评分一个对象，编码为 JSON / CBOR / Smile；
+ *   - 列格式（application/vnd.movielens.columnar+json|+cbor|+smile）：movieId、userId、rating、timestamp
+ *     各为一个数组，标题按 movieId 去重后单独输出，数据量大时比行格式小得多，客户端也可以直接按列处理。
+ */
+enum RatingsFormat {
+    JSON(MediaType.APPLICATION_JSON, new JsonFactory(), false),
+    CBOR(MediaType.parseMediaType("application/cbor"), new CBORFactory(), false),
+    SMILE(MediaType.parseMediaType("application/x-jackson-smile"), new SmileFactory(), false),
+    COLUMNAR_JSON(MediaType.parseMediaType("application/vnd.movielens.columnar+json"), new JsonFactory(), true),
+    COLUMNAR_CBOR(MediaType.parseMediaType("application/vnd.movielens.columnar+cbor"), new CBORFactory(), true),
+    COLUMNAR_SMILE(MediaType.parseMediaType("application/vnd.movielens.columnar+smile"), new SmileFactory(), true);
+
+    private final MediaType mediaType;
+    private final JsonFactory factory;
+    private final boolean columnar;
+
+    RatingsFormat(MediaType mediaType, JsonFactory factory, boolean columnar) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+        this.columnar = columnar;
+    }
+
+    MediaType mediaType() {
+        return mediaType;
+    }
+
+    JsonFactory factory() {
+        return factory;
+    }
+
+    boolean columnar() {
+        return columnar;
+    }
+
+    /**
+     * 按 q 值从高到低取第一个支持的格式；没有 Accept 或为通配符时返回 JSON，都不支持时返回 null。
+     * Accept 格式错误时抛出 IllegalArgumentException
+     */
+    static RatingsFormat negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() <= 0) {
+                break;
+            }
+            for (RatingsFormat format : values()) {
+                if (type.includes(format.mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    static String supported() {
+        StringBuilder types = new StringBuilder();
+        for (RatingsFormat format : values()) {
+            if (!types.isEmpty()) {
+                types.append(", ");
+            }
+            types.append(format.mediaType);
+        }
+        return types.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package com.david.controller;
+
+import com.david.hbase.query.RatingRecord;
+import com.david.hbase.query.RatingsPage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 用 Jackson 的流式生成器直接写出评分记录，不经过 ObjectMapper 和中间的 Map。
+ *
+ * 行格式：{"userId":1,"movieId":1,"movieTitle":"Toy Story (1995)","rating":4.0,"timestamp":964982703}，
+ * 被投影去掉（或表中没有）的评分、时间戳不输出；分页结果为 {"items":[...],"nextCursor":"..."}。
+ *
+ * 列格式：{"movieId":[...],"userId":[...],"rating":[...],"timestamp":[...],"titles":{"1":"Toy Story (1995)"}}，
+ * 同一下标是同一条评分；所有记录都没有的列不输出，个别记录缺少的值为 null；分页结果另有 "nextCursor"。
+ */
+final class RatingsWriter {
+    private RatingsWriter() {
+    }
+
+    /**
+     * result 为 List&lt;RatingRecord&gt;（全量/排序查询）或 RatingsPage（分页查询）
+     */
+    @SuppressWarnings("unchecked")
+    static byte[] write(RatingsFormat format, Object result) throws IOException {
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator g = format.factory().createGenerator(bytes)) {
+            if (result instanceof RatingsPage page) {
+                write(g, format, page.items(), true, page.nextCursor());
+            } else {
+                write(g, format, (List<RatingRecord>) result, false, null);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(JsonGenerator g, RatingsFormat format, List<RatingRecord> items, boolean page,
+                              String nextCursor) throws IOException {
+        if (format.columnar()) {
+            g.writeStartObject();
+            writeColumns(g, items);
+            if (page) {
+                g.writeStringField("nextCursor", nextCursor);
+            }
+            g.writeEndObject();
+            return;
+        }
+        if (page) {
+            g.writeStartObject();
+            g.writeFieldName("items");
+        }
+        g.writeStartArray(items, items.size());
+        for (RatingRecord record : items) {
+            writeRecord(g, record);
+        }
+        g.writeEndArray();
+        if (page) {
+            g.writeStringField("nextCursor", nextCursor);
+            g.writeEndObject();
+        }
+    }
+
+    /**
+     * 写出一条评分（行格式）；流式输出时逐条调用
+     */
+    static void writeRecord(JsonGenerator g, RatingRecord record) throws IOException {
+        g.writeStartObject();
+        g.writeNumberField("userId", record.userId());
+        g.writeNumberField("movieId", record.movieId());
+        g.writeStringField("movieTitle", record.movieTitle());
+        if (record.hasRating()) {
+            g.writeNumberField("rating", record.rating());
+        }
+        if (record.hasTimestamp()) {
+            g.writeNumberField("timestamp", record.timestamp());
+        }
+        g.writeEndObject();
+    }
+
+    private static void writeColumns(JsonGenerator g, List<RatingRecord> items) throws IOException {
+        int n = items.size();
+        int[] movieIds = new int[n];
+        int[] userIds = new int[n];
+        boolean anyRating = false;
+        boolean anyTimestamp = false;
+        for (int i = 0; i < n; i++) {
+            RatingRecord record = items.get(i);
+            movieIds[i] = record.movieId();
+            userIds[i] = record.userId();
+            anyRating |= record.hasRating();
+            anyTimestamp |= record.hasTimestamp();
+        }
+        g.writeFieldName("movieId");
+        g.writeArray(movieIds, 0, n);
+        g.writeFieldName("userId");
+        g.writeArray(userIds, 0, n);
+        if (anyRating) {
+            g.writeFieldName("rating");
+            g.writeStartArray(items, n);
+            for (RatingRecord record : items) {
+                if (record.hasRating()) {
+                    g.writeNumber(record.rating());
+                } else {
+                    g.writeNull();
+                }
+            }
+            g.writeEndArray();
+        }
+        if (anyTimestamp) {
+            g.writeFieldName("timestamp");
+            g.writeStartArray(items, n);
+            for (RatingRecord record : items) {
+                if (record.hasTimestamp()) {
+                    g.writeNumber(record.timestamp());
+                } else {
+                    g.writeNull();
+                }
+            }
+            g.writeEndArray();
+        }
+        // 标题按 movieId 去重：按电影查询时只有一个标题
+        g.writeObjectFieldStart("titles");
+        Set<Integer> written = new HashSet<>();
+        for (RatingRecord record : items) {
+            if (record.movieTitle() != null && written.add(record.movieId())) {
+                g.writeStringField(String.valueOf(record.movieId()), record.movieTitle());
+            }
+        }
+        g.writeEndObject();
+    }
+}
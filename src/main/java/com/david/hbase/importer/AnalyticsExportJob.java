@@ -0,0 +1,384 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.AnalyticsSnapshotFormat;
+import com.david.hbase.schema.ColumnFile;
+import com.david.hbase.schema.RatingsSchema;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static com.david.hbase.schema.AnalyticsSnapshotFormat.*;
+
+/**
+ * 分析快照导出：按 Region 并行扫描评分表（只读评分、时间戳列）和电影表（标题、类型），
+ * 按 movieId 关联后写成本地的列式快照（格式见 {@link AnalyticsSnapshotFormat}），供 AnalyticsEngine 做分组聚合，
+ * 分析查询不再访问 HBase。
+ *
+ * 评分按电影计数排序（每部电影的评分连续），电影级的维度（类型、上映年份）只按电影存一份，
+ * 聚合时整段展开；评分级的维度（评分、评分年份）字典编码为 1 字节。
+ * 评分表中有、电影表中没有的电影，上映年份为 unknown，没有类型。
+ */
+public class AnalyticsExportJob {
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsExportJob.class);
+    private static final byte[] MOVIE_ID_QUALIFIER = Bytes.toBytes("movieId");
+    private static final byte[] GENRES_QUALIFIER = Bytes.toBytes("genres");
+    // 没有时间戳的评分，年份记为 0（字典中的 unknown）
+    private static final short NO_YEAR = 0;
+
+    private final Connection connection;
+    private final TableName ratingsTable;
+    private final byte[] scoreFamily;
+    private final TableName moviesTable;
+    private final byte[] infoFamily;
+    private final Path dir;
+    private final int scanThreads;
+
+    public AnalyticsExportJob(Connection connection, String ratingsTable, String scoreFamily, String moviesTable,
+                              String infoFamily, Path dir, int scanThreads) {
+        this.connection = connection;
+        this.ratingsTable = TableName.valueOf(ratingsTable);
+        this.scoreFamily = Bytes.toBytes(scoreFamily);
+        this.moviesTable = TableName.valueOf(moviesTable);
+        this.infoFamily = Bytes.toBytes(infoFamily);
+        this.dir = dir.toAbsolutePath();
+        this.scanThreads = Math.max(1, scanThreads);
+    }
+
+    /**
+     * 导出快照，返回导出的评分条数
+     */
+    public long run() throws IOException {
+        long startMillis = System.currentTimeMillis();
+        List<MoviePart> movieParts = scanMovies();
+        List<RatingPart> ratingParts = scanRatings(RatingsSchema.forTable(connection, ratingsTable));
+        logger.info("扫描完成：{} 个 Region 的电影，{} 个 Region 的评分，耗时 {} ms",
+                movieParts.size(), ratingParts.size(), System.currentTimeMillis() - startMillis);
+
+        Snapshot snapshot = Snapshot.build(movieParts, ratingParts);
+        movieParts.clear();
+        ratingParts.clear();
+
+        Path tmp = dir.resolveSibling(dir.getFileName() + ".tmp-" + System.currentTimeMillis());
+        Files.createDirectories(tmp);
+        try {
+            snapshot.writeTo(tmp);
+            replace(tmp);
+        } finally {
+            deleteRecursively(tmp);
+        }
+        logger.info("分析快照导出完成：{} 条评分，{} 部电影，{} 个类型 -> {}，总耗时 {} ms",
+                snapshot.rows, snapshot.movies, snapshot.genres.length, dir, System.currentTimeMillis() - startMillis);
+        return snapshot.rows;
+    }
+
+    // --- 扫描 ---
+
+    private List<MoviePart> scanMovies() throws IOException {
+        Scan scan = new Scan();
+        scan.addColumn(infoFamily, MOVIE_ID_QUALIFIER);
+        scan.addColumn(infoFamily, GENRES_QUALIFIER);
+        return new RegionParallelScanner(connection, moviesTable, scanThreads, 5000).scan(scan, () -> new MoviePart() {
+            @Override
+            public void accept(Result result) {
+                byte[] id = result.getValue(infoFamily, MOVIE_ID_QUALIFIER);
+                if (id == null) {
+                    skipped++;
+                    return;
+                }
+                try {
+                    ids.add(Integer.parseInt(Bytes.toString(id).trim()));
+                } catch (NumberFormatException e) {
+                    skipped++;
+                    return;
+                }
+                titles.add(Bytes.toString(result.getRow()));
+                byte[] genres = result.getValue(infoFamily, GENRES_QUALIFIER);
+                this.genres.add(genres == null ? "" : Bytes.toString(genres));
+            }
+        });
+    }
+
+    private List<RatingPart> scanRatings(RatingsSchema schema) throws IOException {
+        byte[] ratingQualifier = schema.ratingQualifier();
+        byte[] timestampQualifier = schema.timestampQualifier();
+        Scan scan = new Scan();
+        scan.addColumn(scoreFamily, ratingQualifier);
+        scan.addColumn(scoreFamily, timestampQualifier);
+        return new RegionParallelScanner(connection, ratingsTable, scanThreads, 5000).scan(scan, () -> new RatingPart() {
+            @Override
+            public void accept(Result result) {
+                byte[] rating = result.getValue(scoreFamily, ratingQualifier);
+                if (rating == null) {
+                    return;
+                }
+                byte[] timestamp = result.getValue(scoreFamily, timestampQualifier);
+                add(schema.secondId(result.getRow()), schema.decodeRatingX2(rating),
+                        timestamp == null ? NO_YEAR : (short) yearOf(schema.decodeTimestamp(timestamp)));
+            }
+        });
+    }
+
+    /**
+     * 一个 Region 的电影（movieId、标题、类型）
+     */
+    private abstract static class MoviePart implements RegionParallelScanner.RegionSink<MoviePart> {
+        final List<Integer> ids = new ArrayList<>();
+        final List<String> titles = new ArrayList<>();
+        final List<String> genres = new ArrayList<>();
+        int skipped;
+
+        @Override
+        public MoviePart finish() {
+            return this;
+        }
+    }
+
+    /**
+     * 一个 Region 的评分（原始类型数组）
+     */
+    private abstract static class RatingPart implements RegionParallelScanner.RegionSink<RatingPart> {
+        int[] movieIds = new int[1024];
+        byte[] ratings = new byte[1024];
+        short[] years = new short[1024];
+        int size;
+
+        void add(int movieId, int ratingX2, short year) {
+            if (movieId < 0 || ratingX2 < 0 || ratingX2 >= RATING_LEVELS) {
+                return;
+            }
+            if (size == movieIds.length) {
+                movieIds = Arrays.copyOf(movieIds, size * 2);
+                ratings = Arrays.copyOf(ratings, size * 2);
+                years = Arrays.copyOf(years, size * 2);
+            }
+            movieIds[size] = movieId;
+            ratings[size] = (byte) ratingX2;
+            years[size++] = year;
+        }
+
+        @Override
+        public RatingPart finish() {
+            return this;
+        }
+    }
+
+    // --- 构建 ---
+
+    private static final class Snapshot {
+        int movies;
+        int rows;
+        int[] movieIds;
+        int[] offsets;
+        long[] genreMasks;
+        String[] genres;
+        int[] releaseYears;
+        String[] releaseYearDictionary;
+        byte[] ratings;
+        byte[] years;
+        String[] yearDictionary;
+
+        static Snapshot build(List<MoviePart> movieParts, List<RatingPart> ratingParts) {
+            Snapshot s = new Snapshot();
+
+            // 稠密电影下标：电影表和评分表中出现过的 movieId，按升序编号
+            int maxMovieId = -1;
+            long totalRows = 0;
+            int skippedMovies = 0;
+            for (MoviePart part : movieParts) {
+                skippedMovies += part.skipped;
+                for (int id : part.ids) {
+                    maxMovieId = Math.max(maxMovieId, id);
+                }
+            }
+            for (RatingPart part : ratingParts) {
+                totalRows += part.size;
+                for (int i = 0; i < part.size; i++) {
+                    maxMovieId = Math.max(maxMovieId, part.movieIds[i]);
+                }
+            }
+            s.rows = Math.toIntExact(totalRows);
+            int[] index = new int[maxMovieId + 1];
+            for (MoviePart part : movieParts) {
+                for (int id : part.ids) {
+                    if (id >= 0) {
+                        index[id] = 1;
+                    }
+                }
+            }
+            for (RatingPart part : ratingParts) {
+                for (int i = 0; i < part.size; i++) {
+                    index[part.movieIds[i]] = 1;
+                }
+            }
+            int[] ids = new int[maxMovieId + 1];
+            for (int id = 0; id <= maxMovieId; id++) {
+                if (index[id] != 0) {
+                    index[id] = s.movies;
+                    ids[s.movies++] = id;
+                } else {
+                    index[id] = -1;
+                }
+            }
+            s.movieIds = Arrays.copyOf(ids, s.movies);
+
+            s.buildMovieColumns(movieParts, index);
+            s.buildRatingColumns(ratingParts, index);
+            if (skippedMovies > 0) {
+                logger.warn("跳过 {} 部 movieId 缺失或不是数字的电影", skippedMovies);
+            }
+            return s;
+        }
+
+        private void buildMovieColumns(List<MoviePart> movieParts, int[] index) {
+            String[] titles = new String[movies];
+            String[] genreLists = new String[movies];
+            SortedSet<String> genreSet = new TreeSet<>();
+            for (MoviePart part : movieParts) {
+                for (int i = 0; i < part.ids.size(); i++) {
+                    int id = part.ids.get(i);
+                    if (id < 0) {
+                        continue;
+                    }
+                    int m = index[id];
+                    titles[m] = part.titles.get(i);
+                    genreLists[m] = part.genres.get(i);
+                    for (String genre : genreLists[m].split("\\|")) {
+                        if (!genre.isBlank()) {
+                            genreSet.add(genre.trim());
+                        }
+                    }
+                }
+            }
+            if (genreSet.size() > 64) {
+                throw new IllegalStateException("类型超过 64 个（" + genreSet.size() + "），位集合放不下");
+            }
+            genres = genreSet.toArray(new String[0]);
+            genreMasks = new long[movies];
+            SortedSet<String> releaseYearSet = new TreeSet<>();
+            String[] releaseYearOf = new String[movies];
+            for (int m = 0; m < movies; m++) {
+                if (genreLists[m] != null) {
+                    for (String genre : genreLists[m].split("\\|")) {
+                        if (!genre.isBlank()) {
+                            genreMasks[m] |= 1L << Arrays.binarySearch(genres, genre.trim());
+                        }
+                    }
+                }
+                releaseYearOf[m] = titles[m] == null ? UNKNOWN : releaseYear(titles[m]);
+                if (!UNKNOWN.equals(releaseYearOf[m])) {
+                    releaseYearSet.add(releaseYearOf[m]);
+                }
+            }
+            // 年份按数字升序（都是 4 位数，字符串顺序相同），unknown 排最后
+            List<String> releaseYearList = new ArrayList<>(releaseYearSet);
+            releaseYearList.add(UNKNOWN);
+            releaseYearDictionary = releaseYearList.toArray(new String[0]);
+            releaseYears = new int[movies];
+            for (int m = 0; m < movies; m++) {
+                releaseYears[m] = UNKNOWN.equals(releaseYearOf[m])
+                        ? releaseYearDictionary.length - 1
+                        : Arrays.binarySearch(releaseYearDictionary, 0, releaseYearDictionary.length - 1, releaseYearOf[m]);
+            }
+        }
+
+        private void buildRatingColumns(List<RatingPart> ratingParts, int[] index) {
+            // 评分年份字典：出现过的年份升序，没有时间戳的评分记为 unknown 排最后
+            boolean[] seen = new boolean[Short.MAX_VALUE + 1];
+            for (RatingPart part : ratingParts) {
+                for (int i = 0; i < part.size; i++) {
+                    seen[part.years[i]] = true;
+                }
+            }
+            byte[] yearCode = new byte[seen.length];
+            List<String> yearList = new ArrayList<>();
+            for (int y = 1; y < seen.length; y++) {
+                if (seen[y]) {
+                    yearCode[y] = (byte) yearList.size();
+                    yearList.add(Integer.toString(y));
+                }
+            }
+            if (seen[NO_YEAR]) {
+                yearCode[NO_YEAR] = (byte) yearList.size();
+                yearList.add(UNKNOWN);
+            }
+            if (yearList.size() > 256) {
+                throw new IllegalStateException("评分年份超过 256 个（" + yearList.size() + "）");
+            }
+            yearDictionary = yearList.toArray(new String[0]);
+
+            // 按电影计数排序
+            offsets = new int[movies + 1];
+            for (RatingPart part : ratingParts) {
+                for (int i = 0; i < part.size; i++) {
+                    offsets[index[part.movieIds[i]] + 1]++;
+                }
+            }
+            for (int m = 0; m < movies; m++) {
+                offsets[m + 1] += offsets[m];
+            }
+            int[] next = Arrays.copyOf(offsets, movies);
+            ratings = new byte[rows];
+            years = new byte[rows];
+            for (RatingPart part : ratingParts) {
+                for (int i = 0; i < part.size; i++) {
+                    int row = next[index[part.movieIds[i]]]++;
+                    ratings[row] = part.ratings[i];
+                    years[row] = yearCode[part.years[i]];
+                }
+            }
+        }
+
+        void writeTo(Path target) throws IOException {
+            ColumnFile.writeCodes(target.resolve(RATING), ratingDictionary(), ratings, rows);
+            ColumnFile.writeCodes(target.resolve(RATING_YEAR), yearDictionary, years, rows);
+            ColumnFile.writeInts(target.resolve(MOVIE_ID), movieIds, movies);
+            ColumnFile.writeInts(target.resolve(MOVIE_OFFSET), offsets, movies + 1);
+            ColumnFile.writeBitsets(target.resolve(MOVIE_GENRES), genres, genreMasks, movies);
+            ColumnFile.writeCodes(target.resolve(MOVIE_RELEASE_YEAR), releaseYearDictionary, releaseYears, movies);
+
+            Properties manifest = new Properties();
+            manifest.setProperty(EXPORTED_AT, Long.toString(System.currentTimeMillis()));
+            manifest.setProperty(RATINGS, Integer.toString(rows));
+            manifest.setProperty(MOVIES, Integer.toString(movies));
+            try (OutputStream out = Files.newOutputStream(target.resolve(MANIFEST))) {
+                manifest.store(out, "movielens analytics snapshot");
+            }
+        }
+    }
+
+    // --- 替换 ---
+
+    /**
+     * 用新导出的目录替换快照目录：旧目录先改名，新目录改名到位后再删除旧目录
+     */
+    private void replace(Path tmp) throws IOException {
+        Path old = null;
+        if (Files.exists(dir)) {
+            old = dir.resolveSibling(dir.getFileName() + ".old-" + System.currentTimeMillis());
+            Files.move(dir, old, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(tmp, dir, StandardCopyOption.ATOMIC_MOVE);
+        if (old != null) {
+            deleteRecursively(old);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
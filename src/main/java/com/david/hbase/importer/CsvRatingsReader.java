@@ -0,0 +1,63 @@
+package com.david.hbase.importer;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * 基于 commons-csv 的单线程解析器，支持带引号的字段，作为内存映射解析器的兜底方案
+ */
+public class CsvRatingsReader implements RatingsReader {
+    private static final Logger logger = LoggerFactory.getLogger(CsvRatingsReader.class);
+
+    private final String path;
+    private long skippedRows;
+
+    public CsvRatingsReader(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public long read(Supplier<RatingBatch> batches, BatchConsumer consumer) throws IOException, InterruptedException {
+        long parsed = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(path));
+             CSVParser csvParser = new CSVParser(reader, HBaseDataImporter.CSV_WITH_HEADER)) {
+
+            RatingBatch batch = batches.get();
+            for (CSVRecord record : csvParser) {
+                try {
+                    int userId = Integer.parseInt(record.get("userId").trim());
+                    int movieId = Integer.parseInt(record.get("movieId").trim());
+                    int ratingX2 = RatingBatch.parseRatingX2(record.get("rating").trim());
+                    long timestamp = Long.parseLong(record.get("timestamp").trim());
+                    parsed++;
+                    if (batch.isEmpty()) {
+                        batch.setPosition(record.getRecordNumber());
+                    }
+                    if (batch.add(userId, movieId, ratingX2, timestamp)) {
+                        consumer.accept(batch);
+                        batch = batches.get();
+                    }
+                } catch (NumberFormatException e) {
+                    skippedRows++;
+                    logger.warn("跳过无效评分记录（第 {} 行）：{}", record.getRecordNumber(), e.getMessage());
+                }
+            }
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+            }
+        }
+        return parsed;
+    }
+
+    @Override
+    public long skippedRows() {
+        return skippedRows;
+    }
+}
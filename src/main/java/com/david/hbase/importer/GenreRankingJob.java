@@ -0,0 +1,203 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.GenreIndexFormat;
+import com.david.hbase.schema.GenreIndexFormat.RankedMovie;
+import com.david.hbase.schema.RatingStatsFormat;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 类型排行榜：对每个类型按贝叶斯加权平均分取前 N 部电影，写入类型索引表的 top 列族。
+ *
+ * 加权分 = (v / (v + m)) * R + (m / (v + m)) * C，
+ * 其中 v 为电影的评分条数、R 为其平均分、m 为最少评分条数、C 为全部电影的平均分；
+ * 评分条数少于 m 的电影不参与排名。评分条数和总和取自评分统计表，不扫描评分明细。
+ *
+ * 增量重建时只重新计算包含新评分电影的类型（其他类型的排行榜保持不变，
+ * 全局平均分 C 的微小变化要等下一次全量重建才会反映到这些类型上）。
+ */
+public class GenreRankingJob {
+    private static final Logger logger = LoggerFactory.getLogger(GenreRankingJob.class);
+    // 扫描倒排索引时每个 Result 最多带回的列数（大类型如 Drama 有上万部电影）
+    private static final int MEMBER_SCAN_BATCH = 5000;
+
+    private final Connection connection;
+    private final TableName genreTable;
+    private final TableName statsTable;
+    private final byte[] statsFamily;
+    private final int topN;
+    private final long minRatings;
+
+    public GenreRankingJob(Connection connection, String genreTable, String statsTable, String statsFamily,
+                           int topN, long minRatings) {
+        this.connection = connection;
+        this.genreTable = TableName.valueOf(genreTable);
+        this.statsTable = TableName.valueOf(statsTable);
+        this.statsFamily = Bytes.toBytes(statsFamily);
+        this.topN = topN;
+        this.minRatings = minRatings;
+    }
+
+    /**
+     * 重建排行榜。changedMovieIds 为 null 时重建所有类型，否则只重建包含这些电影的类型；
+     * 返回重建的类型数
+     */
+    public int rebuild(int[] changedMovieIds) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        Map<String, Members> genres = loadMembers();
+        if (changedMovieIds != null) {
+            int[] changed = changedMovieIds.clone();
+            Arrays.sort(changed);
+            genres.values().removeIf(members -> !members.containsAny(changed));
+        }
+        if (genres.isEmpty()) {
+            logger.info("没有需要重建排行榜的类型");
+            return 0;
+        }
+
+        MovieStats stats = loadMovieStats();
+        long updatedAt = System.currentTimeMillis();
+        List<Put> puts = new ArrayList<>(genres.size());
+        for (Map.Entry<String, Members> entry : genres.entrySet()) {
+            List<RankedMovie> ranking = rank(entry.getValue(), stats);
+            Put put = new Put(Bytes.toBytes(entry.getKey()));
+            put.addColumn(GenreIndexFormat.TOP_FAMILY, GenreIndexFormat.TOP_VALUE, GenreIndexFormat.encodeRanking(ranking));
+            put.addColumn(GenreIndexFormat.TOP_FAMILY, GenreIndexFormat.TOP_UPDATED_AT, Bytes.toBytes(updatedAt));
+            puts.add(put);
+        }
+        try (Table table = connection.getTable(genreTable)) {
+            table.put(puts);
+        }
+        logger.info("类型排行榜重建完成：{} 个类型（{}），全局平均分 {}，耗时 {} ms",
+                genres.size(), changedMovieIds == null ? "全量" : "增量",
+                String.format("%.3f", stats.globalAverage()), System.currentTimeMillis() - startMillis);
+        return genres.size();
+    }
+
+    /**
+     * 按加权分取前 N：大小为 N 的小顶堆，堆顶是当前入榜的最低分
+     */
+    private List<RankedMovie> rank(Members members, MovieStats stats) {
+        double c = stats.globalAverage();
+        PriorityQueue<RankedMovie> heap = new PriorityQueue<>(topN + 1, Comparator.comparingDouble(RankedMovie::score));
+        for (int i = 0; i < members.size; i++) {
+            long[] counters = stats.get(members.movieIds[i]);
+            if (counters == null || counters[0] < minRatings || counters[0] == 0) {
+                continue;
+            }
+            long v = counters[0];
+            double average = counters[1] / 2.0 / v;
+            double score = (v * average + minRatings * c) / (v + minRatings);
+            if (heap.size() < topN) {
+                heap.add(new RankedMovie(members.movieIds[i], members.titles[i], v, average, score));
+            } else if (score > heap.peek().score()) {
+                heap.poll();
+                heap.add(new RankedMovie(members.movieIds[i], members.titles[i], v, average, score));
+            }
+        }
+        List<RankedMovie> ranking = new ArrayList<>(heap);
+        ranking.sort(Comparator.comparingDouble(RankedMovie::score).reversed());
+        return ranking;
+    }
+
+    // --- 读取倒排索引和评分统计 ---
+
+    private Map<String, Members> loadMembers() throws IOException {
+        Map<String, Members> genres = new LinkedHashMap<>();
+        Scan scan = new Scan();
+        scan.addFamily(GenreIndexFormat.MEMBERS_FAMILY);
+        scan.setBatch(MEMBER_SCAN_BATCH);
+        try (Table table = connection.getTable(genreTable);
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                // 设置了 batch，同一个类型可能分成多个 Result 返回
+                Members members = genres.computeIfAbsent(Bytes.toString(result.getRow()), k -> new Members());
+                for (Cell cell : result.rawCells()) {
+                    members.add(GenreIndexFormat.memberMovieId(CellUtil.cloneQualifier(cell)),
+                            Bytes.toString(CellUtil.cloneValue(cell)));
+                }
+            }
+        }
+        return genres;
+    }
+
+    private MovieStats loadMovieStats() throws IOException {
+        MovieStats stats = new MovieStats();
+        Scan scan = new Scan();
+        scan.setStartStopRowForPrefixScan(new byte[]{RatingStatsFormat.MOVIE});
+        scan.addColumn(statsFamily, RatingStatsFormat.COUNT);
+        scan.addColumn(statsFamily, RatingStatsFormat.SUM);
+        scan.setCaching(1000);
+        scan.setCacheBlocks(false);
+        try (Table table = connection.getTable(statsTable);
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                byte[] count = result.getValue(statsFamily, RatingStatsFormat.COUNT);
+                byte[] sum = result.getValue(statsFamily, RatingStatsFormat.SUM);
+                if (count != null && sum != null) {
+                    stats.put(Bytes.toInt(result.getRow(), 1), Bytes.toLong(count), Bytes.toLong(sum));
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 一个类型下的电影（并行数组）
+     */
+    private static final class Members {
+        int[] movieIds = new int[16];
+        String[] titles = new String[16];
+        int size;
+
+        void add(int movieId, String title) {
+            if (size == movieIds.length) {
+                movieIds = Arrays.copyOf(movieIds, size * 2);
+                titles = Arrays.copyOf(titles, size * 2);
+            }
+            movieIds[size] = movieId;
+            titles[size] = title;
+            size++;
+        }
+
+        boolean containsAny(int[] sortedIds) {
+            for (int i = 0; i < size; i++) {
+                if (Arrays.binarySearch(sortedIds, movieIds[i]) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * movieId -> {评分条数, 评分总和（半星数）}，以及全局平均分
+     */
+    private static final class MovieStats {
+        private final Map<Integer, long[]> counters = new HashMap<>();
+        private long totalCount;
+        private long totalSumX2;
+
+        void put(int movieId, long count, long sumX2) {
+            counters.put(movieId, new long[]{count, sumX2});
+            totalCount += count;
+            totalSumX2 += sumX2;
+        }
+
+        long[] get(int movieId) {
+            return counters.get(movieId);
+        }
+
+        double globalAverage() {
+            return totalCount == 0 ? 0 : totalSumX2 / 2.0 / totalCount;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.david.hbase.importer;
 
+import com.david.hbase.schema.GenreIndexFormat;
+import com.david.hbase.schema.RatingStatsFormat;
+import com.david.hbase.schema.RatingsSchema;
+import com.david.hbase.schema.SimilarityFormat;
+import com.david.hbase.schema.TimeIndexFormat;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -7,24 +12,41 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 
 public class HBaseDataImporter {
     // 日志对象
     private static final Logger logger = LoggerFactory.getLogger(HBaseDataImporter.class);
+    // 首行为表头的 CSV（movies.csv、ratings.csv）
+    public static final CSVFormat CSV_WITH_HEADER = CSVFormat.DEFAULT.builder()
+            .setHeader().setSkipHeaderRecord(true).build();
     // 配置对象
     private static final Properties props = new Properties();
 
     // HBase核心连接对象（私有化，通过getter提供访问）
     private static Connection connection = null;
     private static Admin admin = null;
+    // 异步连接（仅 Web 查询使用，按需初始化）
+    private static AsyncConnection asyncConnection = null;
+    private static Configuration hbaseConf = null;
+    // 标题索引同步完成后的回调（同进程内的标题字典）
+    private static final List<Runnable> titleIndexListeners = new CopyOnWriteArrayList<>();
+    // 电影/评分数据写入后的回调（同进程内的查询结果缓存）
+    private static final List<Runnable> dataChangeListeners = new CopyOnWriteArrayList<>();
 
     // 表名和列族常量（公开，供查询类使用）
     public static String MOVIES_INFO_TABLE;
@@ -35,6 +57,24 @@ public class HBaseDataImporter {
     public static String REF_CF;
     public static final String MOVIE_ID_TITLE_INDEX_TABLE;
     public static final String INDEX_CF;
+    // 标题索引表的同步标记行：syncMovieIdTitleIndex() 完成时写入同步时间，查询端据此刷新标题字典
+    public static final String TITLE_INDEX_SYNC_ROW = "#sync";
+    public static final String TITLE_INDEX_SYNC_COLUMN = "syncedAt";
+    // 同一行中的数据更新标记：每次导入电影/评分数据后写入当前时间，查询端据此清空查询结果缓存
+    public static final String DATA_SYNC_COLUMN = "dataSyncedAt";
+    // 评分统计表（每个电影/用户的条数、总和、直方图）
+    public static String STATS_TABLE;
+    public static String STATS_CF;
+    // 类型索引表（类型 -> movieId 倒排索引和预计算的排行榜）
+    public static String GENRE_INDEX_TABLE;
+    // 时间索引表（时间戳 -> 评分，按时间段查询）
+    public static String TIME_INDEX_TABLE;
+    public static String TIME_INDEX_CF;
+    // 电影相似度表（每部电影的前 K 个相似电影）
+    public static String SIMILARITY_TABLE;
+    // 增量导入的检查点表（每个输入文件一行）
+    public static String CHECKPOINT_TABLE;
+    public static String CHECKPOINT_CF;
 
     // 配置参数（私有，内部使用）
     private static String ZK_QUORUM;
@@ -42,6 +82,36 @@ public class HBaseDataImporter {
     private static String MOVIES_PATH;
     private static String RATINGS_PATH;
     private static int BATCH_SIZE;
+    // 评分导入模式：batch（同步批量Put）/ pipelined（流水线 + BufferedMutator）
+    private static String RATINGS_IMPORT_MODE;
+    private static int WRITER_THREADS;
+    private static int QUEUE_CAPACITY;
+    private static long WRITE_BUFFER_BYTES;
+    // 评分文件解析器：mmap（内存映射并行解析）/ csv（commons-csv，支持引号）
+    private static String RATINGS_PARSER;
+    private static int PARSER_THREADS;
+    // 新建评分表/索引表时使用的存储格式版本（1 字符串，2 二进制）
+    private static int RATINGS_SCHEMA_VERSION;
+    // 新建评分表/索引表的加盐桶数（0 不加盐）
+    private static int SALT_BUCKETS;
+    // 预分裂：目标 Region 数、采样来源（csv / table / none）、采样条数
+    private static int SPLIT_REGIONS;
+    private static String SPLIT_SAMPLE_SOURCE;
+    private static int SPLIT_SAMPLE_SIZE;
+    // 导入评分时是否同时维护评分统计表
+    private static boolean STATS_ENABLED;
+    // 类型排行榜：每个类型保留的电影数、参与排名的最少评分条数
+    private static int RANKING_TOP_N;
+    private static long RANKING_MIN_RATINGS;
+    // 导入评分时是否同时维护时间索引表；新建时间索引表的加盐桶数
+    private static boolean TIME_INDEX_ENABLED;
+    private static int TIME_INDEX_SALT_BUCKETS;
+    // 全表扫描（同步索引、重建任务）：并行扫描的线程数、每次 RPC 取回的行数
+    private static int SCAN_THREADS;
+    private static int SCAN_CACHING;
+    // 增量导入：每个分段（一次提交检查点）的字节数、跟随模式的检查间隔（秒）
+    private static long INGEST_SEGMENT_BYTES;
+    private static int INGEST_FOLLOW_SECONDS;
 
     // 静态块：初始化配置
     static {
@@ -50,6 +120,12 @@ public class HBaseDataImporter {
                 throw new FileNotFoundException("配置文件 hbase-import.properties 未找到，请检查resources目录");
             }
             props.load(is);
+            // 同名的 JVM 系统属性（-Dkey=value）覆盖配置文件中的值，与 Spring 的优先级一致（压测、mini cluster 使用）
+            for (String key : System.getProperties().stringPropertyNames()) {
+                if (props.containsKey(key)) {
+                    props.setProperty(key, System.getProperty(key));
+                }
+            }
 
             // 加载配置到常量
             ZK_QUORUM = props.getProperty("hbase.zookeeper.quorum");
@@ -57,6 +133,17 @@ public class HBaseDataImporter {
             MOVIES_PATH = props.getProperty("data.movies.path");
             RATINGS_PATH = props.getProperty("data.ratings.path");
             BATCH_SIZE = Integer.parseInt(props.getProperty("batch.size"));
+            RATINGS_IMPORT_MODE = props.getProperty("import.ratings.mode", "batch").trim();
+            WRITER_THREADS = Integer.parseInt(props.getProperty("import.writer.threads", "4").trim());
+            QUEUE_CAPACITY = Integer.parseInt(props.getProperty("import.queue.capacity", "16").trim());
+            WRITE_BUFFER_BYTES = Long.parseLong(props.getProperty("import.write.buffer.bytes", "8388608").trim());
+            RATINGS_PARSER = props.getProperty("import.ratings.parser", "mmap").trim();
+            PARSER_THREADS = Integer.parseInt(props.getProperty("import.parser.threads", "2").trim());
+            RATINGS_SCHEMA_VERSION = Integer.parseInt(props.getProperty("ratings.schema.version", "1").trim());
+            SALT_BUCKETS = Integer.parseInt(props.getProperty("ratings.salt.buckets", "0").trim());
+            SPLIT_REGIONS = Integer.parseInt(props.getProperty("split.regions", "5").trim());
+            SPLIT_SAMPLE_SOURCE = props.getProperty("split.sample.source", "csv").trim();
+            SPLIT_SAMPLE_SIZE = Integer.parseInt(props.getProperty("split.sample.size", "100000").trim());
             MOVIES_INFO_TABLE = props.getProperty("table.movies");
             RATINGS_DATA_TABLE = props.getProperty("table.ratings");
             MOVIE_INDEX_TABLE = props.getProperty("table.index");
@@ -65,6 +152,23 @@ public class HBaseDataImporter {
             REF_CF = props.getProperty("cf.ref");
             MOVIE_ID_TITLE_INDEX_TABLE = props.getProperty("table.index_id");
             INDEX_CF = props.getProperty("cf.idx");
+            STATS_TABLE = props.getProperty("table.stats", "rating_stats").trim();
+            STATS_CF = props.getProperty("cf.stats", "s").trim();
+            STATS_ENABLED = Boolean.parseBoolean(props.getProperty("stats.enabled", "true").trim());
+            GENRE_INDEX_TABLE = props.getProperty("table.genres", "genre_index").trim();
+            RANKING_TOP_N = Integer.parseInt(props.getProperty("ranking.top.n", "50").trim());
+            RANKING_MIN_RATINGS = Long.parseLong(props.getProperty("ranking.min.ratings", "50").trim());
+            TIME_INDEX_TABLE = props.getProperty("table.time_index", "ratings_time_index").trim();
+            TIME_INDEX_CF = props.getProperty("cf.time", "t").trim();
+            SIMILARITY_TABLE = props.getProperty("table.similarity", "movie_similarity").trim();
+            SCAN_THREADS = Integer.parseInt(props.getProperty("scan.parallel.threads", "4").trim());
+            SCAN_CACHING = Integer.parseInt(props.getProperty("scan.parallel.caching", "1000").trim());
+            CHECKPOINT_TABLE = props.getProperty("table.checkpoints", "ingest_checkpoints").trim();
+            CHECKPOINT_CF = props.getProperty("cf.checkpoint", "c").trim();
+            INGEST_SEGMENT_BYTES = Long.parseLong(props.getProperty("ingest.segment.bytes", "67108864").trim());
+            INGEST_FOLLOW_SECONDS = Integer.parseInt(props.getProperty("ingest.follow.interval.seconds", "10").trim());
+            TIME_INDEX_ENABLED = Boolean.parseBoolean(props.getProperty("time.index.enabled", "true").trim());
+            TIME_INDEX_SALT_BUCKETS = Integer.parseInt(props.getProperty("time.index.salt.buckets", "8").trim());
 
             // 校验必填配置
             checkRequiredConfig();
@@ -105,14 +209,39 @@ public class HBaseDataImporter {
 
         connection = ConnectionFactory.createConnection(conf);
         admin = connection.getAdmin();
+        hbaseConf = conf;
         logger.info("HBase连接初始化成功（ZooKeeper: {}:{}）", ZK_QUORUM, ZK_PORT);
     }
 
+    /**
+     * 初始化HBase异步连接（查询接口使用，请求线程不阻塞在 RPC 上）
+     */
+    public static synchronized void initAsyncConnection() throws IOException {
+        if (asyncConnection != null && !asyncConnection.isClosed()) {
+            logger.info("HBase异步连接已存在，无需重复初始化");
+            return;
+        }
+        initConnection();
+        try {
+            asyncConnection = ConnectionFactory.createAsyncConnection(hbaseConf).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("初始化HBase异步连接被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("初始化HBase异步连接失败", e.getCause());
+        }
+        logger.info("HBase异步连接初始化成功");
+    }
+
     /**
      * 关闭HBase连接
      */
     public static void closeConnection() {
         try {
+            if (asyncConnection != null) {
+                asyncConnection.close();
+                asyncConnection = null;
+            }
             if (admin != null) {
                 admin.close();
                 admin = null;
@@ -137,12 +266,30 @@ public class HBaseDataImporter {
         return connection;
     }
 
+    /**
+     * 提供外部访问异步连接的方法（供异步查询类使用）
+     */
+    public static AsyncConnection getAsyncConnection() {
+        if (asyncConnection == null || asyncConnection.isClosed()) {
+            throw new IllegalStateException("HBase异步连接未初始化或已关闭，请先调用initAsyncConnection()");
+        }
+        return asyncConnection;
+    }
+
     // --- 表结构管理 ---
 
     /**
      * 创建HBase表（支持预分裂）
      */
     public static void createTable(String tableNameStr, String[] columnFamilies, byte[][] splitKeys) throws IOException {
+        createTable(tableNameStr, columnFamilies, splitKeys, Collections.emptyMap());
+    }
+
+    /**
+     * 创建HBase表（支持预分裂），并写入表属性
+     */
+    public static void createTable(String tableNameStr, String[] columnFamilies, byte[][] splitKeys,
+                                   Map<String, String> tableAttributes) throws IOException {
         TableName tableName = TableName.valueOf(tableNameStr);
 
         if (admin.tableExists(tableName)) {
@@ -150,19 +297,24 @@ public class HBaseDataImporter {
             return;
         }
 
+        // 列族属性按存储模板设置（storage.table.<表名>）
+        StorageProfile profile = StorageProfile.forTable(props, tableNameStr);
         TableDescriptorBuilder tableDescBuilder = TableDescriptorBuilder.newBuilder(tableName);
         for (String cf : columnFamilies) {
-            ColumnFamilyDescriptor cfDesc = ColumnFamilyDescriptorBuilder.newBuilder(Bytes.toBytes(cf)).build();
+            ColumnFamilyDescriptor cfDesc = profile.apply(ColumnFamilyDescriptorBuilder.of(cf));
             tableDescBuilder.setColumnFamily(cfDesc);
         }
+        tableAttributes.forEach(tableDescBuilder::setValue);
 
         if (splitKeys != null && splitKeys.length > 0) {
             admin.createTable(tableDescBuilder.build(), splitKeys);
-            logger.info("表 [{}] 创建成功，预分裂为 {} 个Region", tableNameStr, splitKeys.length + 1);
+            logger.info("表 [{}] 创建成功，预分裂为 {} 个Region，存储模板 {}", tableNameStr, splitKeys.length + 1, profile);
         } else {
             admin.createTable(tableDescBuilder.build());
-            logger.info("表 [{}] 创建成功（默认1个Region）", tableNameStr);
+            logger.info("表 [{}] 创建成功（默认1个Region），存储模板 {}", tableNameStr, profile);
         }
+        RatingsSchema.invalidate(tableName);
+        TimeIndexFormat.invalidate(tableName);
     }
 
     /**
@@ -172,15 +324,147 @@ public class HBaseDataImporter {
         // 电影信息表（无需预分裂）
         createTable(MOVIES_INFO_TABLE, new String[]{INFO_CF}, null);
 
-        // 评分表和索引表（预分裂）
-        byte[][] splitKeys = new byte[][]{
-                Bytes.toBytes("20000_"),
-                Bytes.toBytes("40000_"),
-                Bytes.toBytes("60000_"),
-                Bytes.toBytes("80000_")
-        };
-        createTable(RATINGS_DATA_TABLE, new String[]{SCORE_CF}, splitKeys);
-        createTable(MOVIE_INDEX_TABLE, new String[]{REF_CF}, splitKeys);
+        // 评分表和索引表（按采样数据预分裂），表属性记录存储格式版本和加盐桶数，查询时据此选择解码方式
+        RatingsSchema schema = getConfiguredRatingsSchema().withSaltBuckets(SALT_BUCKETS);
+        SplitPlanner planner = sampleForSplits();
+        byte[][] dataSplits = planner == null ? null : planner.ratingsSplitKeys(schema, SPLIT_REGIONS);
+        byte[][] indexSplits = planner == null ? null : planner.indexSplitKeys(schema, SPLIT_REGIONS);
+        createTable(RATINGS_DATA_TABLE, new String[]{SCORE_CF}, dataSplits, schema.tableAttributes());
+        createTable(MOVIE_INDEX_TABLE, new String[]{REF_CF}, indexSplits, schema.tableAttributes());
+
+        // 评分统计表（行数只有电影数 + 用户数，无需预分裂）
+        createTable(STATS_TABLE, new String[]{STATS_CF}, null);
+
+        // 类型索引表（倒排索引 + 排行榜）
+        createTable(GENRE_INDEX_TABLE, new String[]{
+                Bytes.toString(GenreIndexFormat.MEMBERS_FAMILY), Bytes.toString(GenreIndexFormat.TOP_FAMILY)}, null);
+
+        // 时间索引表（每个盐桶一个 Region）
+        createTimeIndexTable();
+
+        // 电影相似度表
+        createTable(SIMILARITY_TABLE, new String[]{Bytes.toString(SimilarityFormat.FAMILY)}, null);
+
+        // 增量导入检查点表
+        createTable(CHECKPOINT_TABLE, new String[]{CHECKPOINT_CF}, null);
+    }
+
+    /**
+     * 所有业务表的表名（存储模板迁移时逐个检查）
+     */
+    private static List<String> allTableNames() {
+        return List.of(MOVIES_INFO_TABLE, RATINGS_DATA_TABLE, MOVIE_INDEX_TABLE, MOVIE_ID_TITLE_INDEX_TABLE,
+                STATS_TABLE, GENRE_INDEX_TABLE, TIME_INDEX_TABLE, SIMILARITY_TABLE, CHECKPOINT_TABLE);
+    }
+
+    /**
+     * 把存储模板应用到已有的表：逐个列族比较当前属性与模板，不一致的在线修改（modifyColumnFamily，Region 会逐个重新打开）。
+     * 新的编码和压缩只对之后写出的 HFile 生效；storage.migrate.compact=true 时对修改过的表触发 major compaction 重写已有数据。
+     * 返回修改过的表数
+     */
+    public static int applyStorageProfiles() throws IOException {
+        boolean compact = Boolean.parseBoolean(getProperty("storage.migrate.compact", "false"));
+        int changedTables = 0;
+        try (Admin admin = getConnection().getAdmin()) {
+            for (String table : allTableNames()) {
+                TableName tableName = TableName.valueOf(table);
+                if (!admin.tableExists(tableName)) {
+                    continue;
+                }
+                StorageProfile profile = StorageProfile.forTable(props, table);
+                boolean changed = false;
+                for (ColumnFamilyDescriptor family : admin.getDescriptor(tableName).getColumnFamilies()) {
+                    List<String> diffs = profile.differences(family);
+                    if (diffs.isEmpty()) {
+                        continue;
+                    }
+                    logger.info("表 [{}] 列族 {} 按存储模板 {} 修改：{}", table, family.getNameAsString(), profile.name(), diffs);
+                    admin.modifyColumnFamily(tableName, profile.apply(family));
+                    changed = true;
+                }
+                if (!changed) {
+                    logger.info("表 [{}] 的列族属性与存储模板 {} 一致", table, profile.name());
+                    continue;
+                }
+                changedTables++;
+                if (compact) {
+                    admin.majorCompact(tableName);
+                    logger.info("表 [{}] 已触发 major compaction（后台执行），完成后已有数据按新的编码/压缩重写", table);
+                }
+            }
+        }
+        logger.info("存储模板迁移完成，修改了 {} 张表", changedTables);
+        return changedTables;
+    }
+
+    /**
+     * 对评分表和索引表执行存储对比测试（采样行数、热测轮数见 storage.benchmark.*）
+     */
+    public static void benchmarkStorage() throws IOException {
+        StorageBenchmark benchmark = new StorageBenchmark(getConnection(),
+                Integer.parseInt(getProperty("storage.benchmark.samples", "1000")),
+                Integer.parseInt(getProperty("storage.benchmark.rounds", "3")));
+        benchmark.run(RATINGS_DATA_TABLE);
+        benchmark.run(MOVIE_INDEX_TABLE);
+    }
+
+    private static void createTimeIndexTable() throws IOException {
+        TimeIndexFormat format = new TimeIndexFormat(TIME_INDEX_SALT_BUCKETS);
+        createTable(TIME_INDEX_TABLE, new String[]{TIME_INDEX_CF}, format.splitKeys(), format.tableAttributes());
+    }
+
+    /**
+     * 时间索引表的存储格式；time.index.enabled=false 时返回 null（表不存在时按配置创建）
+     */
+    public static TimeIndexFormat getTimeIndexFormat() throws IOException {
+        if (!TIME_INDEX_ENABLED) {
+            return null;
+        }
+        createTimeIndexTable();
+        return TimeIndexFormat.forTable(getConnection(), TableName.valueOf(TIME_INDEX_TABLE));
+    }
+
+    /**
+     * 按 split.sample.source 采样评分数据，用于计算预分裂点；不需要预分裂时返回 null
+     */
+    private static SplitPlanner sampleForSplits() throws IOException {
+        if (SPLIT_REGIONS <= 1 || "none".equalsIgnoreCase(SPLIT_SAMPLE_SOURCE)) {
+            return null;
+        }
+        if ("table".equalsIgnoreCase(SPLIT_SAMPLE_SOURCE)) {
+            TableName source = TableName.valueOf(props.getProperty("split.sample.table", RATINGS_DATA_TABLE).trim());
+            if (!admin.tableExists(source)) {
+                logger.warn("采样表 [{}] 不存在，不预分裂", source);
+                return null;
+            }
+            return SplitPlanner.sampleRatingsTable(getConnection(), source, SPLIT_SAMPLE_SIZE,
+                    Float.parseFloat(props.getProperty("split.sample.chance", "0.01").trim()));
+        }
+        File ratingsFile = new File(RATINGS_PATH);
+        if (!ratingsFile.isFile()) {
+            logger.warn("评分文件 {} 不存在，不预分裂", RATINGS_PATH);
+            return null;
+        }
+        return SplitPlanner.sampleRatingsFile(newRatingsReader(RATINGS_PATH), SPLIT_SAMPLE_SIZE, BATCH_SIZE);
+    }
+
+    /**
+     * 配置的评分存储格式（ratings.schema.version，建表时使用），不读取表属性、不连接 HBase
+     */
+    public static RatingsSchema getConfiguredRatingsSchema() {
+        return RatingsSchema.forVersion(RATINGS_SCHEMA_VERSION);
+    }
+
+    /**
+     * 评分表和索引表的存储格式（两张表必须一致）
+     */
+    public static RatingsSchema getRatingsSchema() throws IOException {
+        RatingsSchema dataSchema = RatingsSchema.forTable(getConnection(), TableName.valueOf(RATINGS_DATA_TABLE));
+        RatingsSchema indexSchema = RatingsSchema.forTable(getConnection(), TableName.valueOf(MOVIE_INDEX_TABLE));
+        if (!dataSchema.equals(indexSchema)) {
+            throw new IllegalStateException("评分表与索引表的存储格式不一致：" + dataSchema + " / " + indexSchema);
+        }
+        return dataSchema;
     }
 
     // --- 数据导入 ---
@@ -191,12 +475,16 @@ public class HBaseDataImporter {
     public static void importMoviesData() throws IOException {
         checkFileExists(MOVIES_PATH, "电影数据");
 
+        createTableIfNotExists(GENRE_INDEX_TABLE, new String[]{
+                Bytes.toString(GenreIndexFormat.MEMBERS_FAMILY), Bytes.toString(GenreIndexFormat.TOP_FAMILY)}, 1);
         Table table = getConnection().getTable(TableName.valueOf(MOVIES_INFO_TABLE));
+        Table genreTable = getConnection().getTable(TableName.valueOf(GENRE_INDEX_TABLE));
         int totalCount = 0;
         List<Put> puts = new ArrayList<>(BATCH_SIZE);
+        List<Put> genrePuts = new ArrayList<>(BATCH_SIZE);
 
         try (BufferedReader reader = new BufferedReader(new FileReader(MOVIES_PATH));
-             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+             CSVParser csvParser = new CSVParser(reader, CSV_WITH_HEADER)) {
 
             for (CSVRecord record : csvParser) {
                 String movieId = record.get("movieId").trim();
@@ -214,19 +502,88 @@ public class HBaseDataImporter {
                 puts.add(put);
                 totalCount++;
 
+                // 类型倒排索引：每个类型一行，列名为 movieId
+                addGenreMembers(genrePuts, movieId, title, genres);
+
                 if (puts.size() >= BATCH_SIZE) {
                     batchPut(table, puts);
                 }
+                if (genrePuts.size() >= BATCH_SIZE) {
+                    batchPut(genreTable, genrePuts);
+                }
             }
 
             if (!puts.isEmpty()) {
                 batchPut(table, puts);
             }
+            batchPut(genreTable, genrePuts);
 
             logger.info("电影数据导入完成，共导入 {} 条记录", totalCount);
         } finally {
             table.close();
+            genreTable.close();
+        }
+        rebuildGenreRankings(null);
+        markDataChanged();
+    }
+
+    /**
+     * 扫描评分索引表，重新计算所有电影的相似电影（参数见 similarity.*）
+     */
+    public static void rebuildMovieSimilarity() throws IOException {
+        createTableIfNotExists(SIMILARITY_TABLE, new String[]{Bytes.toString(SimilarityFormat.FAMILY)}, 1);
+        new MovieSimilarityJob(getConnection(), MOVIE_INDEX_TABLE, REF_CF, SIMILARITY_TABLE,
+                MovieSimilarityJob.Metric.parse(getProperty("similarity.metric", "adjusted_cosine")),
+                Integer.parseInt(getProperty("similarity.top.k", "20")),
+                Integer.parseInt(getProperty("similarity.min.common", "5")),
+                Integer.parseInt(getProperty("similarity.min.ratings", "10")),
+                Integer.parseInt(getProperty("similarity.max.user.ratings", "0")),
+                Integer.parseInt(getProperty("similarity.scan.threads", "4")),
+                Integer.parseInt(getProperty("similarity.threads", "0"))).run();
+    }
+
+    /**
+     * 扫描评分表和电影表，导出本地分析快照（目录见 analytics.snapshot.dir），供分析接口做分组聚合
+     */
+    public static long exportAnalytics() throws IOException {
+        return new AnalyticsExportJob(getConnection(), RATINGS_DATA_TABLE, SCORE_CF, MOVIES_INFO_TABLE, INFO_CF,
+                Paths.get(getProperty("analytics.snapshot.dir", "analytics-snapshot")),
+                Integer.parseInt(getProperty("analytics.scan.threads", "4"))).run();
+    }
+
+    private static void addGenreMembers(List<Put> genrePuts, String movieId, String title, String genres) {
+        int id;
+        try {
+            id = Integer.parseInt(movieId);
+        } catch (NumberFormatException e) {
+            logger.warn("跳过类型索引：电影 [{}] 的 movieId [{}] 不是数字", title, movieId);
+            return;
+        }
+        for (String genre : genres.split("\\|")) {
+            genre = genre.trim();
+            if (genre.isEmpty()) {
+                continue;
+            }
+            Put put = new Put(Bytes.toBytes(genre));
+            put.addColumn(GenreIndexFormat.MEMBERS_FAMILY, GenreIndexFormat.memberQualifier(id), Bytes.toBytes(title));
+            genrePuts.add(put);
+        }
+    }
+
+    /**
+     * 重建类型排行榜：changedMovieIds 为 null 时全量重建，否则只重建包含这些电影的类型。
+     * 类型索引表或评分统计表还不存在时跳过
+     */
+    public static void rebuildGenreRankings(int[] changedMovieIds) throws IOException {
+        try (Admin admin = getConnection().getAdmin()) {
+            if (!admin.tableExists(TableName.valueOf(GENRE_INDEX_TABLE))
+                    || !admin.tableExists(TableName.valueOf(STATS_TABLE))) {
+                logger.info("类型索引表或评分统计表不存在，跳过排行榜重建");
+                return;
+            }
         }
+        new GenreRankingJob(getConnection(), GENRE_INDEX_TABLE, STATS_TABLE, STATS_CF,
+                RANKING_TOP_N, RANKING_MIN_RATINGS).rebuild(changedMovieIds);
     }
     /**
      * 从已有的电影表中同步数据到索引表（movieId→标题），用于补全索引
@@ -235,65 +592,122 @@ public class HBaseDataImporter {
         // 1. 检查索引表是否存在（如果不存在，先创建）
         createTableIfNotExists(MOVIE_ID_TITLE_INDEX_TABLE, new String[]{INDEX_CF}, 3);
 
-        // 2. 获取电影表和索引表的操作对象
-        Table moviesTable = getConnection().getTable(TableName.valueOf(MOVIES_INFO_TABLE));
-        Table indexTable = getConnection().getTable(TableName.valueOf(MOVIE_ID_TITLE_INDEX_TABLE));
+        // 2. 扫描电影表的所有记录（只需要movieId列和RowKey（标题）），每个 Region 一个扫描器并行执行
+        Scan scan = new Scan();
+        scan.addColumn(Bytes.toBytes(INFO_CF), Bytes.toBytes("movieId")); // 只扫描需要的movieId列
+
+        long totalSynced = 0;
+        // 各个 Region 的写入共用一个 BufferedMutator（线程安全），按写缓冲大小自动批量提交
+        try (BufferedMutator indexMutator = getConnection().getBufferedMutator(
+                new BufferedMutatorParams(TableName.valueOf(MOVIE_ID_TITLE_INDEX_TABLE)).writeBufferSize(WRITE_BUFFER_BYTES))) {
+            List<Long> synced = parallelScanner(MOVIES_INFO_TABLE).scan(scan, () -> new TitleIndexSink(indexMutator));
+            for (long count : synced) {
+                totalSynced += count;
+            }
+            indexMutator.flush();
+        }
 
-        int totalSynced = 0;
-        List<Put> indexPuts = new ArrayList<>(BATCH_SIZE); // 索引表的批量Put
+        // 3. 写入同步标记，通知标题字典刷新
+        try (Table indexTable = getConnection().getTable(TableName.valueOf(MOVIE_ID_TITLE_INDEX_TABLE))) {
+            Put marker = new Put(Bytes.toBytes(TITLE_INDEX_SYNC_ROW));
+            marker.addColumn(Bytes.toBytes(INDEX_CF), Bytes.toBytes(TITLE_INDEX_SYNC_COLUMN),
+                    Bytes.toBytes(System.currentTimeMillis()));
+            indexTable.put(marker);
+        }
 
-        try {
-            // 3. 扫描电影表的所有记录（只需要movieId列和RowKey（标题））
-            Scan scan = new Scan();
-            scan.addColumn(Bytes.toBytes(INFO_CF), Bytes.toBytes("movieId")); // 只扫描需要的movieId列
-            ResultScanner scanner = moviesTable.getScanner(scan);
-
-            for (Result result : scanner) {
-                // 4. 提取电影表的RowKey（标题）和movieId列值
-                String title = Bytes.toString(result.getRow()); // 电影表RowKey即标题
-                String movieId = Bytes.toString(result.getValue(
-                        Bytes.toBytes(INFO_CF),
-                        Bytes.toBytes("movieId")
-                ));
-
-                if (movieId == null || movieId.trim().isEmpty()) {
-                    logger.warn("跳过无效记录：标题={}，movieId为空", title);
-                    continue;
-                }
-                movieId = movieId.trim();
-
-                // 5. 构建索引表的Put（RowKey=movieId，值=标题）
-                Put indexPut = new Put(Bytes.toBytes(movieId));
-                indexPut.addColumn(
-                        Bytes.toBytes(INDEX_CF),
-                        Bytes.toBytes("title"),
-                        Bytes.toBytes(title)
-                );
-                indexPuts.add(indexPut);
-                totalSynced++;
-
-                // 6. 批量提交（达到批次大小则写入）
-                if (indexPuts.size() >= BATCH_SIZE) {
-                    batchPut(indexTable, indexPuts);
-                    indexPuts.clear();
-                    logger.info("已同步 {} 条索引记录", totalSynced); // 打印进度，方便监控
-                }
+        logger.info("索引表同步完成，共同步 {} 条记录", totalSynced);
+        titleIndexListeners.forEach(Runnable::run);
+        markDataChanged();
+    }
+
+    /**
+     * 写入数据更新标记并通知同进程的监听者：其他进程的查询结果缓存在下一次检查标记时清空。
+     * 标记写在标题索引表中，先导入数据、后同步标题索引时该表还不存在，需要先建表
+     */
+    public static void markDataChanged() throws IOException {
+        createTableIfNotExists(MOVIE_ID_TITLE_INDEX_TABLE, new String[]{INDEX_CF}, 3);
+        try (Table indexTable = getConnection().getTable(TableName.valueOf(MOVIE_ID_TITLE_INDEX_TABLE))) {
+            Put marker = new Put(Bytes.toBytes(TITLE_INDEX_SYNC_ROW));
+            marker.addColumn(Bytes.toBytes(INDEX_CF), Bytes.toBytes(DATA_SYNC_COLUMN),
+                    Bytes.toBytes(System.currentTimeMillis()));
+            indexTable.put(marker);
+        }
+        dataChangeListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * 一个 Region 的电影 -> 索引表 Put（RowKey=movieId，值=标题），每满一批交给 BufferedMutator
+     */
+    private static final class TitleIndexSink implements RegionParallelScanner.RegionSink<Long> {
+        private final BufferedMutator mutator;
+        private final List<Put> puts = new ArrayList<>(BATCH_SIZE);
+        private long synced;
+
+        TitleIndexSink(BufferedMutator mutator) {
+            this.mutator = mutator;
+        }
+
+        @Override
+        public void accept(Result result) throws IOException {
+            // 电影表RowKey即标题
+            String title = Bytes.toString(result.getRow());
+            String movieId = Bytes.toString(result.getValue(Bytes.toBytes(INFO_CF), Bytes.toBytes("movieId")));
+            if (movieId == null || movieId.trim().isEmpty()) {
+                logger.warn("跳过无效记录：标题={}，movieId为空", title);
+                return;
             }
 
-            // 7. 提交剩余的记录
-            if (!indexPuts.isEmpty()) {
-                batchPut(indexTable, indexPuts);
+            Put indexPut = new Put(Bytes.toBytes(movieId.trim()));
+            indexPut.addColumn(Bytes.toBytes(INDEX_CF), Bytes.toBytes("title"), Bytes.toBytes(title));
+            puts.add(indexPut);
+            synced++;
+            if (puts.size() >= BATCH_SIZE) {
+                mutator.mutate(puts);
+                puts.clear();
             }
+        }
 
-            logger.info("索引表同步完成，共同步 {} 条记录", totalSynced);
+        @Override
+        public Long finish() throws IOException {
+            mutator.mutate(puts);
+            puts.clear();
+            return synced;
+        }
+    }
 
-        } finally {
-            // 8. 关闭资源
-            moviesTable.close();
-            indexTable.close();
+    /**
+     * 按 Region 并行扫描整张表（线程数、caching 见 scan.parallel.*）
+     */
+    public static RegionParallelScanner parallelScanner(String tableName) {
+        return new RegionParallelScanner(getConnection(), TableName.valueOf(tableName), SCAN_THREADS, SCAN_CACHING);
+    }
+
+    /**
+     * 注册标题索引同步完成后的回调
+     */
+    public static void addTitleIndexListener(Runnable listener) {
+        titleIndexListeners.add(listener);
+    }
+
+    /**
+     * 最近一次数据更新标记的时间（没有标记时为 0），其他进程据此判断是否需要清空缓存、重建索引
+     */
+    public static long readDataChangeTime() throws IOException {
+        try (Table table = getConnection().getTable(TableName.valueOf(MOVIE_ID_TITLE_INDEX_TABLE))) {
+            Get get = new Get(Bytes.toBytes(TITLE_INDEX_SYNC_ROW));
+            get.addColumn(Bytes.toBytes(INDEX_CF), Bytes.toBytes(DATA_SYNC_COLUMN));
+            byte[] value = table.get(get).getValue(Bytes.toBytes(INDEX_CF), Bytes.toBytes(DATA_SYNC_COLUMN));
+            return value == null ? 0 : Bytes.toLong(value);
         }
     }
 
+    /**
+     * 注册电影/评分数据写入后的回调
+     */
+    public static void addDataChangeListener(Runnable listener) {
+        dataChangeListeners.add(listener);
+    }
+
     /**
      * 辅助方法：如果表不存在则创建（避免手动创建表的麻烦）
      */
@@ -309,58 +723,218 @@ public class HBaseDataImporter {
     }
 
     /**
-     * 导入评分数据
+     * 导入评分数据（按 import.ratings.mode 选择导入方式）
      */
     public static void importRatingsData() throws IOException {
         checkFileExists(RATINGS_PATH, "评分数据");
 
+        if ("pipelined".equalsIgnoreCase(RATINGS_IMPORT_MODE)) {
+            importRatingsDataPipelined();
+            return;
+        }
+
+        RatingPutEncoder encoder = new RatingPutEncoder(getRatingsSchema(), SCORE_CF, REF_CF);
+        TimeIndexFormat timeFormat = getTimeIndexFormat();
+        if (timeFormat != null) {
+            encoder.withTimeIndex(timeFormat, TIME_INDEX_CF);
+        }
+        RatingStatsAggregator stats = newStatsAggregator();
+        boolean existingRatings = stats != null && ratingsTableHasRows();
+        RatingBatch batch = new RatingBatch(BATCH_SIZE);
+        RatingsReader reader = new CsvRatingsReader(RATINGS_PATH);
+
         Table ratingsTable = getConnection().getTable(TableName.valueOf(RATINGS_DATA_TABLE));
         Table indexTable = getConnection().getTable(TableName.valueOf(MOVIE_INDEX_TABLE));
-        int totalCount = 0;
+        Table timeTable = timeFormat == null ? null : getConnection().getTable(TableName.valueOf(TIME_INDEX_TABLE));
+        long startMillis = System.currentTimeMillis();
         List<Put> dataPuts = new ArrayList<>(BATCH_SIZE);
         List<Put> indexPuts = new ArrayList<>(BATCH_SIZE);
+        List<Put> timePuts = new ArrayList<>(BATCH_SIZE);
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(RATINGS_PATH));
-             CSVParser csvParser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+        try {
+            // 单线程解析，每满一批同步写入评分表和索引表
+            long totalCount = reader.read(() -> batch, full -> {
+                for (int i = 0; i < full.size(); i++) {
+                    dataPuts.add(encoder.dataPut(full, i));
+                    indexPuts.add(encoder.indexPut(full, i));
+                    if (timeTable != null) {
+                        timePuts.add(encoder.timeIndexPut(full, i));
+                    }
+                }
+                batchPut(ratingsTable, dataPuts);
+                batchPut(indexTable, indexPuts);
+                if (timeTable != null) {
+                    batchPut(timeTable, timePuts);
+                }
+                ImportMetrics.ROWS.increment(full.size());
+                if (stats != null) {
+                    stats.add(full);
+                }
+                full.clear();
+            });
+
+            logger.info("评分数据导入完成，共导入 {} 条记录，耗时 {} ms", totalCount, System.currentTimeMillis() - startMillis);
+            writeRatingStats(stats, existingRatings);
+            markDataChanged();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("评分数据导入被中断", e);
+        } finally {
+            ratingsTable.close();
+            indexTable.close();
+            if (timeTable != null) {
+                timeTable.close();
+            }
+        }
+    }
 
-            for (CSVRecord record : csvParser) {
-                String userId = record.get("userId").trim();
-                String movieId = record.get("movieId").trim();
-                String rating = record.get("rating").trim();
-                String timestamp = record.get("timestamp").trim();
-
-                // 写入评分表
-                String dataRowKey = userId + "_" + movieId;
-                Put dataPut = new Put(Bytes.toBytes(dataRowKey));
-                dataPut.addColumn(Bytes.toBytes(SCORE_CF), Bytes.toBytes("rating"), Bytes.toBytes(rating));
-                dataPut.addColumn(Bytes.toBytes(SCORE_CF), Bytes.toBytes("timestamp"), Bytes.toBytes(timestamp));
-                dataPuts.add(dataPut);
-
-                // 写入索引表
-                String indexRowKey = movieId + "_" + userId;
-                Put indexPut = new Put(Bytes.toBytes(indexRowKey));
-                indexPut.addColumn(Bytes.toBytes(REF_CF), Bytes.toBytes("rating"), Bytes.toBytes(rating));
-                indexPut.addColumn(Bytes.toBytes(REF_CF), Bytes.toBytes("timestamp"), Bytes.toBytes(timestamp));
-                indexPuts.add(indexPut);
+    /**
+     * 流水线方式导入评分数据：解析与写入分离，多个写入线程通过 BufferedMutator 并行写入
+     */
+    public static void importRatingsDataPipelined() throws IOException {
+        checkFileExists(RATINGS_PATH, "评分数据");
+        logger.info("使用流水线模式导入评分数据（解析器 {}，写入线程 {}，队列容量 {}，写缓冲 {} 字节）",
+                RATINGS_PARSER, WRITER_THREADS, QUEUE_CAPACITY, WRITE_BUFFER_BYTES);
+
+        PipelinedRatingsImporter importer = new PipelinedRatingsImporter(getConnection(), getRatingsSchema(),
+                RATINGS_DATA_TABLE, SCORE_CF, MOVIE_INDEX_TABLE, REF_CF,
+                WRITER_THREADS, BATCH_SIZE, QUEUE_CAPACITY, WRITE_BUFFER_BYTES);
+        RatingStatsAggregator stats = newStatsAggregator();
+        boolean existingRatings = stats != null && ratingsTableHasRows();
+        importer.setStatsAggregator(stats);
+        importer.setTimeIndex(getTimeIndexFormat(), TIME_INDEX_TABLE, TIME_INDEX_CF);
+        long total = importer.run(newRatingsReader(RATINGS_PATH));
+        logger.info("评分数据导入完成，共导入 {} 条记录", total);
+        writeRatingStats(stats, existingRatings);
+        markDataChanged();
+    }
 
-                totalCount++;
+    /**
+     * 增量导入评分：path 为评分文件，或存放增量 CSV 的目录（按文件名顺序导入其中的 *.csv）。
+     * 每个文件按字节偏移量记录检查点，只导入上次检查点之后的新行；中断后重新执行即从检查点继续。
+     * 返回本次导入的评分条数
+     */
+    public static long ingestRatings(String path) throws IOException {
+        return ingestOnce(newIngester(), Paths.get(path), false);
+    }
 
-                if (dataPuts.size() >= BATCH_SIZE) {
-                    batchPut(ratingsTable, dataPuts);
-                    batchPut(indexTable, indexPuts);
-                }
+    /**
+     * 跟随模式：每隔 ingest.follow.interval.seconds 秒导入一次 path 中的新评分（追加到文件末尾的行、目录中新放入的文件），
+     * 直到线程被中断
+     */
+    public static void followRatings(String path) throws IOException {
+        IncrementalRatingsIngester ingester = newIngester();
+        Path target = Paths.get(path);
+        logger.info("开始跟随 {}，检查间隔 {} 秒", target.toAbsolutePath(), INGEST_FOLLOW_SECONDS);
+        while (!Thread.currentThread().isInterrupted()) {
+            ingestOnce(ingester, target, true);
+            try {
+                Thread.sleep(INGEST_FOLLOW_SECONDS * 1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+        }
+        logger.info("停止跟随 {}", target.toAbsolutePath());
+    }
 
-            if (!dataPuts.isEmpty()) {
-                batchPut(ratingsTable, dataPuts);
-                batchPut(indexTable, indexPuts);
+    private static IncrementalRatingsIngester newIngester() throws IOException {
+        createTableIfNotExists(CHECKPOINT_TABLE, new String[]{CHECKPOINT_CF}, 1);
+        RatingsSchema schema = getRatingsSchema();
+        TimeIndexFormat timeFormat = getTimeIndexFormat();
+        IncrementalRatingsIngester ingester = new IncrementalRatingsIngester(getConnection(), schema,
+                RATINGS_DATA_TABLE, SCORE_CF, MOVIE_INDEX_TABLE, REF_CF,
+                new IngestCheckpoints(getConnection(), CHECKPOINT_TABLE, CHECKPOINT_CF),
+                () -> {
+                    PipelinedRatingsImporter importer = new PipelinedRatingsImporter(getConnection(), schema,
+                            RATINGS_DATA_TABLE, SCORE_CF, MOVIE_INDEX_TABLE, REF_CF,
+                            WRITER_THREADS, BATCH_SIZE, QUEUE_CAPACITY, WRITE_BUFFER_BYTES);
+                    importer.setTimeIndex(timeFormat, TIME_INDEX_TABLE, TIME_INDEX_CF);
+                    return importer;
+                },
+                PARSER_THREADS, INGEST_SEGMENT_BYTES, BATCH_SIZE);
+        if (STATS_ENABLED) {
+            createTableIfNotExists(STATS_TABLE, new String[]{STATS_CF}, 1);
+            ingester.setStats(STATS_TABLE, STATS_CF);
+        }
+        ingester.setTimeIndex(timeFormat, TIME_INDEX_TABLE);
+        return ingester;
+    }
+
+    /**
+     * 导入一轮新评分，统计有变化时重建相关类型的排行榜。
+     * 上一次在重建排行榜之前中断（检查点表中的 #rankings 标记）时全量重建
+     */
+    private static long ingestOnce(IncrementalRatingsIngester ingester, Path path, boolean follow) throws IOException {
+        IngestCheckpoints checkpoints = new IngestCheckpoints(getConnection(), CHECKPOINT_TABLE, CHECKPOINT_CF);
+        boolean staleRankings = checkpoints.rankingsPending();
+        long rows = ingester.ingest(path, follow);
+        int[] changed = ingester.takeChangedMovieIds();
+        if (staleRankings) {
+            logger.info("上次导入在重建类型排行榜之前中断，全量重建排行榜");
+            rebuildGenreRankings(null);
+        } else if (changed.length > 0) {
+            rebuildGenreRankings(changed);
+        }
+        if (staleRankings || changed.length > 0) {
+            checkpoints.setRankingsPending(false);
+        }
+        if (rows > 0) {
+            markDataChanged();
+        }
+        return rows;
+    }
+
+    /**
+     * 按 stats.enabled 创建评分统计的预聚合器，不维护统计时返回 null
+     */
+    static RatingStatsAggregator newStatsAggregator() {
+        return STATS_ENABLED ? new RatingStatsAggregator() : null;
+    }
+
+    /**
+     * 评分表中是否已有评分（全量导入开始前调用，决定导入后怎样写统计，见 {@link #writeRatingStats}）
+     */
+    static boolean ratingsTableHasRows() throws IOException {
+        TableName tableName = TableName.valueOf(RATINGS_DATA_TABLE);
+        try (Admin admin = getConnection().getAdmin()) {
+            if (!admin.tableExists(tableName)) {
+                return false;
             }
+        }
+        Scan scan = new Scan().setOneRowLimit().setFilter(new FirstKeyOnlyFilter());
+        try (Table table = getConnection().getTable(tableName);
+             ResultScanner scanner = table.getScanner(scan)) {
+            return scanner.next() != null;
+        }
+    }
 
-            logger.info("评分数据导入完成，共导入 {} 条记录", totalCount);
-        } finally {
-            ratingsTable.close();
-            indexTable.close();
+    /**
+     * 全量导入成功后写入评分统计。existingRatings 为导入前评分表是否已有评分（{@link #ratingsTableHasRows}）：
+     *   没有：预聚合的直方图就是这些电影和用户的全部评分，以 Put 覆盖统计表（重复导入同一份数据结果不变）
+     *   已有：表中可能还有增量导入/跟随模式写入的、不在本次文件中的评分，预聚合结果只是其中一部分，
+     *        直接覆盖会丢掉这些评分的计数。此时改为按前缀扫描评分表/索引表重新计数本次涉及的电影和用户，
+     *        代价是每个 ID 一次前缀扫描（全量数据约为再读一遍两张表）；要避免重新计数，先删除重建评分表
+     */
+    static void writeRatingStats(RatingStatsAggregator stats, boolean existingRatings) throws IOException {
+        if (stats == null) {
+            return;
         }
+        createTableIfNotExists(STATS_TABLE, new String[]{STATS_CF}, 1);
+        if (existingRatings) {
+            int[] movieIds = stats.movieIds();
+            int[] userIds = stats.userIds();
+            long startMillis = System.currentTimeMillis();
+            logger.info("评分表导入前已有评分，重新计数 {} 部电影、{} 个用户的统计", movieIds.length, userIds.length);
+            RatingStatsRecounter recounter = new RatingStatsRecounter(getConnection(), getRatingsSchema(),
+                    TableName.valueOf(STATS_TABLE), Bytes.toBytes(STATS_CF), SCAN_THREADS);
+            recounter.recount(RatingStatsFormat.MOVIE, movieIds, TableName.valueOf(MOVIE_INDEX_TABLE), Bytes.toBytes(REF_CF));
+            recounter.recount(RatingStatsFormat.USER, userIds, TableName.valueOf(RATINGS_DATA_TABLE), Bytes.toBytes(SCORE_CF));
+            logger.info("评分统计重新计数完成，耗时 {} ms", System.currentTimeMillis() - startMillis);
+        } else {
+            stats.overwrite(getConnection(), TableName.valueOf(STATS_TABLE), Bytes.toBytes(STATS_CF), BATCH_SIZE);
+        }
+        // 新评分改变了这些电影的统计，重建它们所在类型的排行榜
+        rebuildGenreRankings(stats.movieIds());
     }
 
 
@@ -368,14 +942,41 @@ public class HBaseDataImporter {
 
     // --- 工具方法 ---
 
+    public static String getMoviesPath() {
+        return MOVIES_PATH;
+    }
+
+    public static String getRatingsPath() {
+        return RATINGS_PATH;
+    }
+
+    /**
+     * 读取可选配置项（供批量导入、查询缓存等使用）
+     */
+    public static String getProperty(String key, String defaultValue) {
+        return props.getProperty(key, defaultValue).trim();
+    }
+
+    /**
+     * 按 import.ratings.parser 创建评分文件解析器
+     */
+    public static RatingsReader newRatingsReader(String path) {
+        if ("csv".equalsIgnoreCase(RATINGS_PARSER)) {
+            return new CsvRatingsReader(path);
+        }
+        return new MappedRatingsReader(path, PARSER_THREADS);
+    }
+
     private static void batchPut(Table table, List<Put> puts) throws IOException {
         if (puts.isEmpty()) return;
+        long start = System.nanoTime();
         table.put(puts);
+        ImportMetrics.recordSince(ImportMetrics.batchWrite(table.getName()), start);
         logger.debug("批量提交 {} 条记录到表 [{}]", puts.size(), table.getName().getNameAsString());
         puts.clear();
     }
 
-    private static void checkFileExists(String filePath, String fileDesc) {
+    static void checkFileExists(String filePath, String fileDesc) {
         File file = new File(filePath);
         if (!file.exists() || !file.isFile()) {
             logger.error("{}文件不存在：{}", fileDesc, filePath);
@@ -383,19 +984,38 @@ public class HBaseDataImporter {
         }
     }
 
-    // 主方法：执行导入
+    // 主方法：按参数执行导入任务，不带参数时只同步标题索引
+    //   create / movies / ratings / sync / similarity
+    //   analytics：导出本地分析快照（分析接口读取）
+    //   storage：把存储模板应用到已有的表；storage-benchmark：存储大小与 Get/前缀扫描延迟对比
+    //   ingest [文件或目录]：增量导入（默认 data.ratings.path）
+    //   follow [文件或目录]：跟随模式，持续导入新评分
     public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "sync";
+        String path = args.length > 1 ? args[1] : RATINGS_PATH;
         try {
             initConnection();
-//            createAllTables();
-            logger.info("开始导入数据...");
-//            importMoviesData();
-//            importRatingsData();
-            syncMovieIdTitleIndex();
+            ImportMetrics.startExporter();
+            logger.info("开始导入数据...（{}）", command);
+            switch (command) {
+                case "create" -> createAllTables();
+                case "movies" -> importMoviesData();
+                case "ratings" -> importRatingsData();
+                case "sync" -> syncMovieIdTitleIndex();
+                case "similarity" -> rebuildMovieSimilarity();
+                case "analytics" -> exportAnalytics();
+                case "ingest" -> ingestRatings(path);
+                case "follow" -> followRatings(path);
+                case "storage" -> applyStorageProfiles();
+                case "storage-benchmark" -> benchmarkStorage();
+                default -> throw new IllegalArgumentException("未知命令：" + command
+                        + "（可用：create / movies / ratings / sync / similarity / analytics / ingest / follow / storage / storage-benchmark）");
+            }
             logger.info("所有数据导入完成！");
         } catch (Exception e) {
             logger.error("导入失败", e);
         } finally {
+            ImportMetrics.stopExporter();
             closeConnection();
         }
     }
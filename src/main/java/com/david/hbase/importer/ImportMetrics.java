@@ -0,0 +1,126 @@
+package com.david.hbase.importer;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.apache.hadoop.hbase.TableName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.david.hbase.importer.HBaseDataImporter.getProperty;
+
+/**
+ * 评分导入的 Micrometer 指标，注册到 Metrics.globalRegistry：
+ *   movielens.import.rows                 写入的评分条数（Prometheus 中 rate() 即条/秒）
+ *   movielens.import.batch.write{table}   每批写入一张表的耗时（写缓冲满时包含一次刷写）
+ *   movielens.import.flush{table}         写入结束时 BufferedMutator.flush() 的耗时
+ *   movielens.import.queue.depth          流水线中等待写入的批次数
+ * Web 服务进程中由 Actuator 暴露；命令行导入时配置 import.metrics.port 后在该端口的 /metrics 以 Prometheus 格式暴露，
+ * 未配置时指标不导出（只有日志中的吞吐量）。
+ */
+public final class ImportMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(ImportMetrics.class);
+
+    private static final MeterRegistry registry = Metrics.globalRegistry;
+
+    public static final Counter ROWS = Counter.builder("movielens.import.rows")
+            .description("已写入的评分条数")
+            .register(registry);
+
+    private static final ConcurrentHashMap<TableName, Timer> batchTimers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<TableName, Timer> flushTimers = new ConcurrentHashMap<>();
+
+    // 当前流水线的队列（没有正在运行的流水线时为 null）
+    private static volatile BlockingQueue<?> queue;
+
+    static {
+        Gauge.builder("movielens.import.queue.depth", () -> {
+                    BlockingQueue<?> current = queue;
+                    return current == null ? 0 : current.size();
+                })
+                .description("流水线中等待写入的批次数")
+                .register(registry);
+    }
+
+    private static HttpServer server;
+
+    private ImportMetrics() {
+    }
+
+    public static Timer batchWrite(TableName table) {
+        return batchTimers.computeIfAbsent(table, t -> Timer.builder("movielens.import.batch.write")
+                .description("每批写入的耗时")
+                .tag("table", t.getNameAsString())
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public static Timer flush(TableName table) {
+        return flushTimers.computeIfAbsent(table, t -> Timer.builder("movielens.import.flush")
+                .description("BufferedMutator 最终刷写的耗时")
+                .tag("table", t.getNameAsString())
+                .register(registry));
+    }
+
+    /**
+     * 记录从 startNanos（System.nanoTime()）到现在的耗时
+     */
+    static void recordSince(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 队列深度指标跟踪 queue（流水线开始时调用），传入 null 停止跟踪
+     */
+    static void trackQueue(BlockingQueue<?> current) {
+        queue = current;
+    }
+
+    /**
+     * 命令行导入：import.metrics.port 大于 0 时在该端口启动 /metrics（Prometheus 格式）
+     */
+    public static synchronized void startExporter() {
+        int port = Integer.parseInt(getProperty("import.metrics.port", "0"));
+        if (port <= 0 || server != null) {
+            return;
+        }
+        PrometheusMeterRegistry prometheus = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        Metrics.addRegistry(prometheus);
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            logger.warn("导入指标端口 {} 启动失败，不导出指标：{}", port, e.getMessage());
+            return;
+        }
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheus.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        logger.info("导入指标：http://localhost:{}/metrics", port);
+    }
+
+    public static synchronized void stopExporter() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
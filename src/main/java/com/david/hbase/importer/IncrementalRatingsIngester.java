@@ -0,0 +1,456 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.importer.IngestCheckpoints.Checkpoint;
+import com.david.hbase.schema.RatingStatsFormat;
+import com.david.hbase.schema.RatingsSchema;
+import com.david.hbase.schema.TimeIndexFormat;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 可断点续传的增量评分导入：按字节偏移量为每个输入文件记录检查点（{@link IngestCheckpoints}），
+ * 每次只导入上次检查点之后的新行，可以反复执行来跟随一个不断追加的评分文件，或一个不断放入增量 CSV 的目录。
+ *
+ * 新数据按 segmentBytes 切分为若干分段（按行边界），每个分段走与全量导入相同的流水线
+ * （内存映射并行解析 + {@link PipelinedRatingsImporter} 多线程写入）。维护统计时一个分段的提交顺序为：
+ *   1. 检查点记录 pending = 分段结束位置
+ *   2. 解析分段（批次留在内存中），从评分表读出分段涉及的 (用户, 电影) 原有的评分
+ *   3. 把解析好的批次写入评分表、索引表、时间索引表并 flush（Put 幂等，中断后重写不会出错）
+ *   4. 再读一次这些评分，按前后差异（新评分 +1；重新评分时旧档位 -1、新档位 +1）以 Increment 累加到统计表；
+ *      重新评分改变了时间戳时，删除时间索引中旧时间戳的行
+ *   5. 检查点 offset 前进到分段结束位置
+ * 统计按评分表中实际的前后变化计算，同一用户对同一电影重新评分（包括同一分段内的重复行）不会重复计数，
+ * 时间索引中每个 (用户, 电影) 也只保留评分表中当前时间戳的一行。只维护时间索引、不维护统计时提交顺序相同。
+ * 中断在第 1 步之后时（pending > offset），评分和统计都可能只写了一部分：恢复时重写该分段，
+ * 再从评分表/索引表重新计数涉及的电影和用户并覆盖他们的统计，然后继续。中断最多重做一个分段。
+ *
+ * 跟随单个文件时只导入到最后一个换行符（最后一行可能还没写完）；目录中的文件视为已写完，
+ * 向目录放入增量文件时应先写成其他扩展名再重命名为 .csv。
+ */
+public class IncrementalRatingsIngester {
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalRatingsIngester.class);
+    // 评分表中没有该 (用户, 电影) 的评分
+    static final byte NO_RATING = -1;
+
+    private final Connection connection;
+    private final RatingsSchema schema;
+    private final TableName ratingsTable;
+    private final byte[] scoreFamily;
+    private final TableName indexTable;
+    private final byte[] refFamily;
+    private final IngestCheckpoints checkpoints;
+    private final Supplier<PipelinedRatingsImporter> importers;
+    private final int parserThreads;
+    private final long segmentBytes;
+    private final int batchSize;
+    // 评分统计表（为 null 时不维护统计）
+    private TableName statsTable;
+    private byte[] statsFamily;
+    // 时间索引表（为 null 时不清理重新评分留下的旧行）
+    private TimeIndexFormat timeFormat;
+    private TableName timeIndexTable;
+    // 本轮导入中统计有变化的电影（用于增量重建类型排行榜）
+    private final Set<Integer> changedMovies = new HashSet<>();
+
+    public IncrementalRatingsIngester(Connection connection, RatingsSchema schema,
+                                      String ratingsTable, String scoreFamily,
+                                      String indexTable, String refFamily,
+                                      IngestCheckpoints checkpoints,
+                                      Supplier<PipelinedRatingsImporter> importers,
+                                      int parserThreads, long segmentBytes, int batchSize) {
+        this.connection = connection;
+        this.schema = schema;
+        this.ratingsTable = TableName.valueOf(ratingsTable);
+        this.scoreFamily = Bytes.toBytes(scoreFamily);
+        this.indexTable = TableName.valueOf(indexTable);
+        this.refFamily = Bytes.toBytes(refFamily);
+        this.checkpoints = checkpoints;
+        this.importers = importers;
+        this.parserThreads = Math.max(1, parserThreads);
+        this.segmentBytes = Math.max(1, segmentBytes);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 同时维护评分统计表（statsTable 为 null 时不维护）
+     */
+    public void setStats(String statsTable, String statsFamily) {
+        this.statsTable = statsTable == null ? null : TableName.valueOf(statsTable);
+        this.statsFamily = Bytes.toBytes(statsFamily);
+    }
+
+    /**
+     * 导入器同时写入时间索引表时设置（format 为 null 时不写）：同一 (用户, 电影) 重新评分后，
+     * 删除时间索引中旧时间戳的行，每个 (用户, 电影) 只保留一行
+     */
+    public void setTimeIndex(TimeIndexFormat format, String timeIndexTable) {
+        this.timeFormat = format;
+        this.timeIndexTable = format == null ? null : TableName.valueOf(timeIndexTable);
+    }
+
+    /**
+     * 导入 path 中的新评分：path 为目录时按文件名顺序导入其中的 *.csv，为文件时导入该文件。
+     * follow 为 true 时只导入到最后一个完整行（文件可能还在追加）；返回本次导入的评分条数
+     */
+    public long ingest(Path path, boolean follow) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return ingestFile(path, follow);
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(path)) {
+            files = list.filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().endsWith(".csv"))
+                    .sorted()
+                    .toList();
+        }
+        long total = 0;
+        for (Path file : files) {
+            total += ingestFile(file, false);
+        }
+        return total;
+    }
+
+    /**
+     * 取出并清空本轮统计有变化的电影ID
+     */
+    public int[] takeChangedMovieIds() {
+        int[] ids = changedMovies.stream().mapToInt(Integer::intValue).toArray();
+        changedMovies.clear();
+        return ids;
+    }
+
+    private long ingestFile(Path file, boolean completeLinesOnly) throws IOException {
+        String key = file.toAbsolutePath().normalize().toString();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long end = completeLinesOnly ? MappedRatingsReader.lastLineEnd(channel, size) : size;
+            long headerEnd = MappedRatingsReader.nextLineStart(channel, 0, size);
+            if (end < headerEnd) {
+                // 表头还没写完
+                return 0;
+            }
+
+            Checkpoint checkpoint = checkpoints.load(key);
+            if (checkpoint == null) {
+                checkpoint = new Checkpoint(headerEnd, headerEnd, 0, -1, 0);
+            } else if (!IngestCheckpoints.matches(checkpoint, channel)) {
+                throw new IOException("文件 " + key + " 与检查点不一致（被替换或截断），已导入到 "
+                        + checkpoint.offset() + " 字节；确认后删除检查点表中该文件的记录再重新导入");
+            }
+            if (checkpoint.statsPending()) {
+                long rows = recoverSegment(key, checkpoint);
+                checkpoint = checkpoints.save(key, checkpoint.commit(checkpoint.pending(), rows), channel);
+            }
+            if (checkpoint.offset() >= end) {
+                return 0;
+            }
+
+            long startMillis = System.currentTimeMillis();
+            long imported = 0;
+            logger.info("增量导入 {}：从 {} 字节继续（已导入 {} 条），新数据 {} 字节",
+                    key, checkpoint.offset(), checkpoint.rows(), end - checkpoint.offset());
+            while (checkpoint.offset() < end) {
+                long from = checkpoint.offset();
+                long to = from + segmentBytes >= end ? end
+                        : MappedRatingsReader.nextLineStart(channel, from + segmentBytes, end);
+                long before = checkpoint.rows();
+                checkpoint = ingestSegment(key, channel, checkpoint, to);
+                imported += checkpoint.rows() - before;
+            }
+            logger.info("增量导入 {} 完成：本次 {} 条，累计 {} 条，检查点 {} 字节，耗时 {} ms",
+                    key, imported, checkpoint.rows(), checkpoint.offset(), System.currentTimeMillis() - startMillis);
+            return imported;
+        }
+    }
+
+    /**
+     * 导入 [checkpoint.offset, to) 并按“pending -> 读旧评分 -> 评分 -> 读新评分 -> 统计、时间索引 -> offset”的顺序提交
+     */
+    private Checkpoint ingestSegment(String file, FileChannel channel, Checkpoint checkpoint, long to) throws IOException {
+        if (statsTable == null && timeFormat == null) {
+            long rows = importSegment(file, checkpoint.offset(), to);
+            return checkpoints.save(file, checkpoint.commit(to, rows), channel);
+        }
+        checkpoint = checkpoints.save(file, checkpoint.beginStats(to), channel);
+        if (statsTable != null) {
+            checkpoints.setRankingsPending(true);
+        }
+        ParsedSegment segment = parseSegment(file, checkpoint.offset(), to);
+        long[] keys = segment.keys();
+        StoredRatings before = readRatings(keys);
+        long rows = importers.get().run(segment);
+        StoredRatings after = readRatings(keys);
+
+        if (statsTable != null) {
+            RatingStatsAggregator stats = new RatingStatsAggregator();
+            for (int i = 0; i < keys.length; i++) {
+                byte oldX2 = before.ratingsX2()[i];
+                byte newX2 = after.ratingsX2()[i];
+                if (oldX2 == newX2) {
+                    continue;
+                }
+                int userId = (int) (keys[i] >>> 32);
+                int movieId = (int) keys[i];
+                if (oldX2 != NO_RATING) {
+                    stats.adjust(userId, movieId, oldX2, -1);
+                }
+                if (newX2 != NO_RATING) {
+                    stats.adjust(userId, movieId, newX2, 1);
+                }
+            }
+            stats.flush(connection, statsTable, statsFamily, batchSize);
+            for (int movieId : stats.movieIds()) {
+                changedMovies.add(movieId);
+            }
+        }
+        if (timeFormat != null) {
+            deleteTimeIndexRows(staleTimeIndexRows(timeFormat, segment, before, after));
+        }
+        return checkpoints.save(file, checkpoint.commit(to, rows), channel);
+    }
+
+    private long importSegment(String file, long from, long to) throws IOException {
+        return importers.get().run(new MappedRatingsReader(file, parserThreads, from, to));
+    }
+
+    /**
+     * 并行解析 [from, to)，批次全部留在内存中
+     */
+    private ParsedSegment parseSegment(String file, long from, long to) throws IOException {
+        List<RatingBatch> batches = Collections.synchronizedList(new ArrayList<>());
+        MappedRatingsReader reader = new MappedRatingsReader(file, parserThreads, from, to);
+        try {
+            reader.read(() -> new RatingBatch(batchSize), batches::add);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("解析分段被中断", e);
+        }
+        return new ParsedSegment(batches, reader.skippedRows());
+    }
+
+    /**
+     * 评分表中一组 (用户, 电影) 当前的评分（半星数，不存在时为 {@link #NO_RATING}）和时间戳（不维护时间索引时不读取）
+     */
+    record StoredRatings(byte[] ratingsX2, long[] timestamps) {
+    }
+
+    /**
+     * 按 keys 从评分表批量读取当前的评分和时间戳
+     */
+    private StoredRatings readRatings(long[] keys) throws IOException {
+        byte[] qualifier = schema.ratingQualifier();
+        byte[] timeQualifier = schema.timestampQualifier();
+        byte[] ratings = new byte[keys.length];
+        long[] timestamps = new long[timeFormat == null ? 0 : keys.length];
+        try (Table table = connection.getTable(ratingsTable)) {
+            List<Get> gets = new ArrayList<>(batchSize);
+            for (int from = 0; from < keys.length; from += batchSize) {
+                int end = Math.min(keys.length, from + batchSize);
+                for (int i = from; i < end; i++) {
+                    Get get = new Get(schema.rowKey((int) (keys[i] >>> 32), (int) keys[i]))
+                            .addColumn(scoreFamily, qualifier);
+                    if (timeFormat != null) {
+                        get.addColumn(scoreFamily, timeQualifier);
+                    }
+                    gets.add(get);
+                }
+                Result[] results = table.get(gets);
+                for (int i = from; i < end; i++) {
+                    Result result = results[i - from];
+                    byte[] value = result.getValue(scoreFamily, qualifier);
+                    ratings[i] = value == null ? NO_RATING : (byte) schema.decodeRatingX2(value);
+                    if (timeFormat != null && value != null) {
+                        timestamps[i] = schema.decodeTimestamp(result.getValue(scoreFamily, timeQualifier));
+                    }
+                }
+                gets.clear();
+            }
+        }
+        return new StoredRatings(ratings, timestamps);
+    }
+
+    /**
+     * 写入分段后时间索引中过期的行：每个 (用户, 电影) 只保留评分表中当前时间戳（after）的那一行，
+     * 删除写入前的时间戳（before，为 null 时不知道）和分段中重复出现的其他时间戳对应的行
+     */
+    static List<byte[]> staleTimeIndexRows(TimeIndexFormat format, ParsedSegment segment,
+                                           StoredRatings before, StoredRatings after) {
+        long[] keys = segment.keys();
+        List<byte[]> rows = new ArrayList<>();
+        Set<Long> stale = new HashSet<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (after.ratingsX2()[i] == NO_RATING) {
+                continue;
+            }
+            long current = after.timestamps()[i];
+            stale.clear();
+            if (before != null && before.ratingsX2()[i] != NO_RATING) {
+                stale.add(before.timestamps()[i]);
+            }
+            stale.addAll(segment.repeatedTimestamps(keys[i]));
+            stale.remove(current);
+            for (long timestamp : stale) {
+                byte[] row = new byte[format.rowKeyLength()];
+                format.writeRowKey(row, timestamp, (int) (keys[i] >>> 32), (int) keys[i]);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private void deleteTimeIndexRows(List<byte[]> rows) throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (Table table = connection.getTable(timeIndexTable)) {
+            List<Delete> deletes = new ArrayList<>(batchSize);
+            for (byte[] row : rows) {
+                deletes.add(new Delete(row));
+                if (deletes.size() >= batchSize) {
+                    table.delete(deletes);
+                    deletes.clear();
+                }
+            }
+            if (!deletes.isEmpty()) {
+                table.delete(deletes);
+            }
+        }
+        logger.info("删除时间索引中重新评分留下的 {} 行旧时间戳", rows.size());
+    }
+
+    // --- 中断恢复 ---
+
+    /**
+     * 上次中断在分段导入过程中：重写该分段（Put 幂等），再恢复统计、清理时间索引；返回该分段的评分条数。
+     * 写入前的评分已被覆盖，只能清理分段内重复出现的时间戳，中断前被重新评分的旧时间戳行会留在时间索引中
+     */
+    private long recoverSegment(String file, Checkpoint checkpoint) throws IOException {
+        logger.warn("{} 上次中断在 [{}, {}) 的导入过程中，重写该分段", file, checkpoint.offset(), checkpoint.pending());
+        if (statsTable == null && timeFormat == null) {
+            return importSegment(file, checkpoint.offset(), checkpoint.pending());
+        }
+        ParsedSegment segment = parseSegment(file, checkpoint.offset(), checkpoint.pending());
+        long rows = importers.get().run(segment);
+        if (statsTable != null) {
+            recoverStats(file, checkpoint, segment.keys());
+        }
+        if (timeFormat != null) {
+            deleteTimeIndexRows(staleTimeIndexRows(timeFormat, segment, null, readRatings(segment.keys())));
+        }
+        return rows;
+    }
+
+    /**
+     * 从评分表/索引表重新计数分段涉及的电影和用户的统计（中断前可能已经累加了一部分变化量，不能再按差异累加）
+     */
+    private void recoverStats(String file, Checkpoint checkpoint, long[] keys) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        int[] movieIds = Arrays.stream(keys).mapToInt(key -> (int) key).sorted().distinct().toArray();
+        int[] userIds = Arrays.stream(keys).mapToInt(key -> (int) (key >>> 32)).distinct().toArray();
+        logger.warn("{} 重新计数 [{}, {}) 涉及的 {} 部电影、{} 个用户的统计",
+                file, checkpoint.offset(), checkpoint.pending(), movieIds.length, userIds.length);
+
+        checkpoints.setRankingsPending(true);
+        RatingStatsRecounter recounter = new RatingStatsRecounter(connection, schema, statsTable, statsFamily, parserThreads);
+        recounter.recount(RatingStatsFormat.MOVIE, movieIds, indexTable, refFamily);
+        recounter.recount(RatingStatsFormat.USER, userIds, ratingsTable, scoreFamily);
+        for (int movieId : movieIds) {
+            changedMovies.add(movieId);
+        }
+        logger.info("评分统计恢复完成，耗时 {} ms", System.currentTimeMillis() - startMillis);
+    }
+
+    /**
+     * 解析好的一个分段：批次按文件顺序留在内存中（内存占用由 ingest.segment.bytes 决定），
+     * 先用来得到涉及的 (用户, 电影)，再作为 {@link RatingsReader} 原样交给写入流水线，每个分段只解析一次。
+     * 写入流水线会回收（清空）批次，所以只能 read 一次
+     */
+    static final class ParsedSegment implements RatingsReader {
+        private final List<RatingBatch> batches;
+        private final long skipped;
+        private final long[] keys;
+        // 在分段中出现不止一次的 (用户, 电影) -> 这些行的时间戳
+        private final Map<Long, Set<Long>> repeated = new HashMap<>();
+
+        ParsedSegment(List<RatingBatch> batches, long skipped) {
+            this.batches = new ArrayList<>(batches);
+            this.batches.sort(Comparator.comparingLong(RatingBatch::position));
+            this.skipped = skipped;
+            int rows = 0;
+            for (RatingBatch batch : this.batches) {
+                rows += batch.size();
+            }
+            long[] all = new long[rows];
+            int n = 0;
+            for (RatingBatch batch : this.batches) {
+                for (int i = 0; i < batch.size(); i++) {
+                    all[n++] = key(batch.userId(i), batch.movieId(i));
+                }
+            }
+            Arrays.sort(all);
+            this.keys = Arrays.stream(all).distinct().toArray();
+            if (keys.length == all.length) {
+                return;
+            }
+            for (int i = 1; i < all.length; i++) {
+                if (all[i] == all[i - 1]) {
+                    repeated.put(all[i], new HashSet<>());
+                }
+            }
+            for (RatingBatch batch : this.batches) {
+                for (int i = 0; i < batch.size(); i++) {
+                    Set<Long> timestamps = repeated.get(key(batch.userId(i), batch.movieId(i)));
+                    if (timestamps != null) {
+                        timestamps.add(batch.timestamp(i));
+                    }
+                }
+            }
+        }
+
+        static long key(int userId, int movieId) {
+            return (long) userId << 32 | (movieId & 0xFFFFFFFFL);
+        }
+
+        /**
+         * 分段中出现的 (用户, 电影)，编码为 userId << 32 | movieId，升序且去重
+         */
+        long[] keys() {
+            return keys;
+        }
+
+        /**
+         * key 在分段中出现不止一次时，这些行的时间戳；只出现一次时为空
+         */
+        Set<Long> repeatedTimestamps(long key) {
+            return repeated.getOrDefault(key, Collections.emptySet());
+        }
+
+        @Override
+        public long read(Supplier<RatingBatch> batches, BatchConsumer consumer) throws IOException, InterruptedException {
+            long rows = 0;
+            for (RatingBatch batch : this.batches) {
+                rows += batch.size();
+                consumer.accept(batch);
+            }
+            this.batches.clear();
+            return rows;
+        }
+
+        @Override
+        public long skippedRows() {
+            return skipped;
+        }
+    }
+}
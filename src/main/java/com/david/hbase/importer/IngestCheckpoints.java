@@ -0,0 +1,146 @@
+package com.david.hbase.importer;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * 增量导入的检查点，保存在检查点表（ingest_checkpoints）中，每个输入文件一行，行键为文件的绝对路径，列族 c：
+ *   offset    已完整导入（评分表、索引表、统计表都已写入）的字节偏移量，下一次从这里继续
+ *   pending   正在导入（维护统计时）的分段的结束位置；大于 offset 说明该分段的评分和统计都可能只写了一部分
+ *   rows      已导入的评分条数
+ *   fpLength  文件开头 fpLength 字节的 CRC32（fp），用于发现文件被替换或截断
+ *   updatedAt 更新时间
+ * 另有一行 #rankings：统计已经变化但类型排行榜还没有重建时为 true。
+ *
+ * 每次更新都是单行 Put，HBase 保证单行原子，检查点不会出现一半新一半旧。
+ */
+public final class IngestCheckpoints {
+    public static final byte[] OFFSET = Bytes.toBytes("offset");
+    public static final byte[] PENDING = Bytes.toBytes("pending");
+    public static final byte[] ROWS = Bytes.toBytes("rows");
+    public static final byte[] FINGERPRINT_LENGTH = Bytes.toBytes("fpLength");
+    public static final byte[] FINGERPRINT = Bytes.toBytes("fp");
+    public static final byte[] UPDATED_AT = Bytes.toBytes("updatedAt");
+    private static final byte[] RANKINGS_ROW = Bytes.toBytes("#rankings");
+    private static final byte[] RANKINGS_PENDING = Bytes.toBytes("pending");
+    // 指纹最多覆盖文件开头的字节数
+    private static final int FINGERPRINT_BYTES = 4096;
+
+    private final Connection connection;
+    private final TableName tableName;
+    private final byte[] family;
+
+    public IngestCheckpoints(Connection connection, String tableName, String family) {
+        this.connection = connection;
+        this.tableName = TableName.valueOf(tableName);
+        this.family = Bytes.toBytes(family);
+    }
+
+    /**
+     * 一个文件的检查点
+     */
+    public record Checkpoint(long offset, long pending, long rows, long fingerprintLength, long fingerprint) {
+
+        /**
+         * 上次是否中断在分段导入过程中（评分和统计可能只写了一部分）
+         */
+        public boolean statsPending() {
+            return pending > offset;
+        }
+
+        /**
+         * 开始导入 [offset, to) 并维护统计
+         */
+        public Checkpoint beginStats(long to) {
+            return new Checkpoint(offset, to, rows, fingerprintLength, fingerprint);
+        }
+
+        /**
+         * [offset, to) 已完整导入
+         */
+        public Checkpoint commit(long to, long addedRows) {
+            return new Checkpoint(to, to, rows + addedRows, fingerprintLength, fingerprint);
+        }
+    }
+
+    /**
+     * 读取文件的检查点，没有记录时返回 null
+     */
+    public Checkpoint load(String file) throws IOException {
+        try (Table table = connection.getTable(tableName)) {
+            Result result = table.get(new Get(Bytes.toBytes(file)).addFamily(family));
+            if (result.isEmpty()) {
+                return null;
+            }
+            return new Checkpoint(readLong(result, OFFSET), readLong(result, PENDING), readLong(result, ROWS),
+                    readLong(result, FINGERPRINT_LENGTH), readLong(result, FINGERPRINT));
+        }
+    }
+
+    /**
+     * 保存检查点；指纹按 offset 之前（已导入、不会再变化）的内容重新计算，覆盖的字节数随导入进度增长
+     */
+    public Checkpoint save(String file, Checkpoint checkpoint, FileChannel channel) throws IOException {
+        long length = Math.min(checkpoint.offset(), FINGERPRINT_BYTES);
+        if (length != checkpoint.fingerprintLength()) {
+            checkpoint = new Checkpoint(checkpoint.offset(), checkpoint.pending(), checkpoint.rows(),
+                    length, fingerprint(channel, length));
+        }
+        Put put = new Put(Bytes.toBytes(file));
+        put.addColumn(family, OFFSET, Bytes.toBytes(checkpoint.offset()));
+        put.addColumn(family, PENDING, Bytes.toBytes(checkpoint.pending()));
+        put.addColumn(family, ROWS, Bytes.toBytes(checkpoint.rows()));
+        put.addColumn(family, FINGERPRINT_LENGTH, Bytes.toBytes(checkpoint.fingerprintLength()));
+        put.addColumn(family, FINGERPRINT, Bytes.toBytes(checkpoint.fingerprint()));
+        put.addColumn(family, UPDATED_AT, Bytes.toBytes(System.currentTimeMillis()));
+        try (Table table = connection.getTable(tableName)) {
+            table.put(put);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * 检查文件是否还是记录检查点时的那个文件（没有被截断，开头的内容没有变化）
+     */
+    public static boolean matches(Checkpoint checkpoint, FileChannel channel) throws IOException {
+        return channel.size() >= checkpoint.offset()
+                && fingerprint(channel, checkpoint.fingerprintLength()) == checkpoint.fingerprint();
+    }
+
+    private static long fingerprint(FileChannel channel, long length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) length);
+        while (buf.hasRemaining() && channel.read(buf, buf.position()) > 0) {
+            // 读满 length 字节
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        return crc.getValue();
+    }
+
+    // --- 类型排行榜 ---
+
+    public boolean rankingsPending() throws IOException {
+        try (Table table = connection.getTable(tableName)) {
+            byte[] value = table.get(new Get(RANKINGS_ROW).addColumn(family, RANKINGS_PENDING))
+                    .getValue(family, RANKINGS_PENDING);
+            return value != null && Bytes.toBoolean(value);
+        }
+    }
+
+    public void setRankingsPending(boolean pending) throws IOException {
+        try (Table table = connection.getTable(tableName)) {
+            table.put(new Put(RANKINGS_ROW).addColumn(family, RANKINGS_PENDING, Bytes.toBytes(pending)));
+        }
+    }
+
+    private long readLong(Result result, byte[] qualifier) {
+        byte[] value = result.getValue(family, qualifier);
+        return value == null ? 0 : Bytes.toLong(value);
+    }
+}
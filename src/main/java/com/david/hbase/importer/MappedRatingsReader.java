@@ -0,0 +1,375 @@
+package com.david.hbase.importer;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * MovieLens ratings.csv 专用解析器：
+ * 通过 FileChannel.map 内存映射文件，按行边界切分为多个分块由多个线程并行解析，
+ * 数字字段直接从映射的字节解析为基本类型写入 {@link RatingBatch}，每行不创建 String。
+ * 遇到带引号的行时，仅对该行回退到 commons-csv 解析。
+ *
+ * 指定字节范围时只解析 [from, to) 内的行（增量导入从检查点继续），表头仍从文件开头读取；
+ * from 必须是行首，to 必须是行首或文件末尾。
+ */
+public class MappedRatingsReader implements RatingsReader {
+    private static final Logger logger = LoggerFactory.getLogger(MappedRatingsReader.class);
+
+    // 单个映射分块的最大字节数（MappedByteBuffer 上限为 2GB）
+    private static final long MAX_CHUNK_BYTES = 256L << 20;
+    // 每个解析线程分到的分块数，分块多一些可以平衡各线程的负载
+    private static final int CHUNKS_PER_THREAD = 4;
+    // 查找行尾时每次读取的字节数
+    private static final int SCAN_WINDOW = 4096;
+    // 解析失败的数字字段
+    static final long INVALID = Long.MIN_VALUE;
+
+    private final String path;
+    private final int parserThreads;
+    // 解析的字节范围，to < 0 表示到文件末尾
+    private final long from;
+    private final long to;
+    private final AtomicLong skippedRows = new AtomicLong();
+
+    public MappedRatingsReader(String path, int parserThreads) {
+        this(path, parserThreads, 0, -1);
+    }
+
+    public MappedRatingsReader(String path, int parserThreads, long from, long to) {
+        this.path = path;
+        this.parserThreads = Math.max(1, parserThreads);
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public long read(Supplier<RatingBatch> batches, BatchConsumer consumer) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long headerEnd = nextLineStart(channel, 0, fileSize);
+            Layout layout = Layout.parse(readString(channel, 0, headerEnd));
+
+            long start = Math.max(headerEnd, from);
+            long size = to < 0 ? fileSize : Math.min(to, fileSize);
+            if (start >= size) {
+                return 0;
+            }
+            List<Chunk> chunks = mapChunks(channel, start, size);
+            logger.info("内存映射解析 {}：[{}, {}) 共 {} 字节，{} 个分块，{} 个解析线程",
+                    path, start, size, size - start, chunks.size(), parserThreads);
+
+            ExecutorService pool = Executors.newFixedThreadPool(parserThreads,
+                    PipelinedRatingsImporter.namedThreads("ratings-parser"));
+            try {
+                List<Future<Long>> futures = new ArrayList<>(chunks.size());
+                for (Chunk chunk : chunks) {
+                    futures.add(pool.submit(() -> parseChunk(chunk, layout, batches, consumer)));
+                }
+                long parsed = 0;
+                for (Future<Long> future : futures) {
+                    parsed += future.get();
+                }
+                return parsed;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException io) throw io;
+                if (cause instanceof InterruptedException ie) throw ie;
+                throw new IOException("解析评分文件失败：" + path, cause);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    public long skippedRows() {
+        return skippedRows.get();
+    }
+
+    // --- 分块 ---
+
+    /**
+     * 映射的分块及其在文件中的起始位置
+     */
+    private record Chunk(long start, MappedByteBuffer buf) {
+    }
+
+    /**
+     * 把 [start, size) 按行边界切分并映射为多个只读缓冲区
+     */
+    private List<Chunk> mapChunks(FileChannel channel, long start, long size) throws IOException {
+        long dataBytes = size - start;
+        int chunkCount = (int) Math.max((long) parserThreads * CHUNKS_PER_THREAD,
+                (dataBytes + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        long chunkBytes = Math.max(1, dataBytes / chunkCount);
+
+        List<Chunk> chunks = new ArrayList<>(chunkCount);
+        long chunkStart = start;
+        while (chunkStart < size) {
+            long chunkEnd = chunkStart + chunkBytes >= size
+                    ? size
+                    : nextLineStart(channel, chunkStart + chunkBytes, size);
+            chunks.add(new Chunk(chunkStart, channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart)));
+            chunkStart = chunkEnd;
+        }
+        return chunks;
+    }
+
+    /**
+     * 返回 from 之后第一个换行符的下一个位置（文件末尾则返回 size）
+     */
+    static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long pos = from;
+        while (pos < size) {
+            window.clear();
+            int n = channel.read(window, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (window.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /**
+     * 最后一个完整行的结束位置（最后一个换行符的下一个位置），没有换行符时返回 0。
+     * 跟随正在追加的文件时，最后一行可能还没写完，只读到这里
+     */
+    static long lastLineEnd(FileChannel channel, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        long end = size;
+        while (end > 0) {
+            long start = Math.max(0, end - SCAN_WINDOW);
+            window.clear().limit((int) (end - start));
+            channel.read(window, start);
+            for (int i = (int) (end - start) - 1; i >= 0; i--) {
+                if (window.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private static String readString(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) (to - from));
+        channel.read(buf, from);
+        return new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8);
+    }
+
+    // --- 行解析 ---
+
+    private long parseChunk(Chunk chunk, Layout layout,
+                            Supplier<RatingBatch> batches, BatchConsumer consumer) throws IOException, InterruptedException {
+        MappedByteBuffer buf = chunk.buf();
+        long parsed = 0;
+        int limit = buf.limit();
+        long[] fields = new long[4];
+        RatingBatch batch = batches.get();
+
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            boolean quoted = false;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n') {
+                if (buf.get(lineEnd) == '"') {
+                    quoted = true;
+                }
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && buf.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+
+            if (contentEnd > lineStart) {
+                boolean ok = quoted
+                        ? parseQuotedLine(buf, lineStart, contentEnd, layout, fields)
+                        : parseLine(buf, lineStart, contentEnd, layout, fields);
+                if (ok) {
+                    parsed++;
+                    if (batch.isEmpty()) {
+                        batch.setPosition(chunk.start() + lineStart);
+                    }
+                    if (batch.add((int) fields[0], (int) fields[1], (int) fields[2], fields[3])) {
+                        consumer.accept(batch);
+                        batch = batches.get();
+                    }
+                } else {
+                    skippedRows.incrementAndGet();
+                    logger.warn("跳过无效评分记录：{}", decode(buf, lineStart, contentEnd));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+        return parsed;
+    }
+
+    /**
+     * 直接在映射字节上切分字段并解析数字，结果按 userId/movieId/半星评分/时间戳 写入 out
+     */
+    private static boolean parseLine(ByteBuffer buf, int from, int to, Layout layout, long[] out) {
+        int column = 0;
+        int fieldStart = from;
+        int found = 0;
+        for (int i = from; i <= to; i++) {
+            if (i == to || buf.get(i) == ',') {
+                int slot = layout.slotOf(column);
+                if (slot >= 0) {
+                    long value = slot == 2 ? parseRatingX2(buf, fieldStart, i) : parseLong(buf, fieldStart, i);
+                    if (value == INVALID) {
+                        return false;
+                    }
+                    out[slot] = value;
+                    found++;
+                }
+                column++;
+                fieldStart = i + 1;
+            }
+        }
+        return found == 4 && out[0] <= Integer.MAX_VALUE && out[1] <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * 带引号的行交给 commons-csv 解析（极少出现，允许分配）
+     */
+    private static boolean parseQuotedLine(ByteBuffer buf, int from, int to, Layout layout, long[] out) {
+        try (CSVParser parser = CSVParser.parse(decode(buf, from, to), CSVFormat.DEFAULT)) {
+            List<CSVRecord> records = parser.getRecords();
+            if (records.size() != 1 || records.get(0).size() < layout.columns) {
+                return false;
+            }
+            CSVRecord record = records.get(0);
+            out[0] = Integer.parseInt(record.get(layout.userCol).trim());
+            out[1] = Integer.parseInt(record.get(layout.movieCol).trim());
+            out[2] = RatingBatch.parseRatingX2(record.get(layout.ratingCol).trim());
+            out[3] = Long.parseLong(record.get(layout.timestampCol).trim());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    static long parseLong(ByteBuffer buf, int from, int to) {
+        while (from < to && buf.get(from) == ' ') from++;
+        while (to > from && buf.get(to - 1) == ' ') to--;
+        if (from == to) {
+            return INVALID;
+        }
+        boolean negative = buf.get(from) == '-';
+        if (negative) from++;
+        if (from == to || to - from > 18) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9) {
+                return INVALID;
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 解析 "4.5" 形式的评分为半星数（四舍五入到 0.5），整数部分可以省略（".5"）；超过 5.0 的评分无效
+     */
+    static long parseRatingX2(ByteBuffer buf, int from, int to) {
+        while (from < to && buf.get(from) == ' ') from++;
+        while (to > from && buf.get(to - 1) == ' ') to--;
+        if (from < to && buf.get(from) == '-') {
+            // 负数（包括 "-0.5" 这种整数部分为 0 的）
+            return INVALID;
+        }
+        int dot = from;
+        while (dot < to && buf.get(dot) != '.') dot++;
+        long integer = dot == from && to - dot > 1 ? 0 : parseLong(buf, from, dot);
+        if (integer == INVALID || integer > RatingBatch.MAX_RATING_X2 / 2) {
+            return INVALID;
+        }
+        // 以百分位计算，只看前两位小数
+        long hundredths = integer * 100;
+        int scale = 10;
+        for (int i = dot + 1; i < to && scale > 0; i++, scale /= 10) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9) {
+                return INVALID;
+            }
+            hundredths += (long) d * scale;
+        }
+        long x2 = (hundredths * 2 + 50) / 100;
+        return x2 > RatingBatch.MAX_RATING_X2 ? INVALID : x2;
+    }
+
+    private static String decode(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buf.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 表头中四个字段所在的列号
+     */
+    private record Layout(int userCol, int movieCol, int ratingCol, int timestampCol, int columns) {
+
+        static Layout parse(String header) throws IOException {
+            String[] names = header.replace("\uFEFF", "").trim().split(",");
+            int user = -1, movie = -1, rating = -1, ts = -1;
+            for (int i = 0; i < names.length; i++) {
+                switch (names[i].trim().replace("\"", "")) {
+                    case "userId" -> user = i;
+                    case "movieId" -> movie = i;
+                    case "rating" -> rating = i;
+                    case "timestamp" -> ts = i;
+                    default -> { }
+                }
+            }
+            if (user < 0 || movie < 0 || rating < 0 || ts < 0) {
+                throw new IOException("评分文件表头缺少必要字段：" + header.trim());
+            }
+            return new Layout(user, movie, rating, ts, names.length);
+        }
+
+        /**
+         * 列号对应的输出槽位：0=userId 1=movieId 2=rating 3=timestamp，其他列返回 -1
+         */
+        int slotOf(int column) {
+            if (column == userCol) return 0;
+            if (column == movieCol) return 1;
+            if (column == ratingCol) return 2;
+            if (column == timestampCol) return 3;
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.RatingsSchema;
+import com.david.hbase.schema.SimilarityFormat;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 电影相似度（“喜欢 X 的用户也喜欢”）：按 Region 并行扫描评分索引表（movieId + userId），
+ * 构建每部电影的稀疏评分向量，计算每部电影与其他电影的余弦/调整余弦相似度，保留前 K 个写入相似度表。
+ *
+ * 不构建电影 × 电影的全量矩阵：评分以两份 CSR（按电影、按用户，原始类型数组，每条评分约 10 字节）驻留内存，
+ * 电影按 {@value #LEAF_MOVIES} 部一块交给 ForkJoin 并行计算。计算某部电影时，
+ * 沿“电影 -> 评过它的用户 -> 这些用户评过的电影”累加点积到每个线程复用的稠密累加数组（长度为电影数），
+ * 算完取前 K 个后清零被触及的位置，内存与 K、线程数成正比，与电影对的数量无关。
+ * ml-25m（约 2500 万条评分）需要约 250 MB 堆。
+ *
+ * 调整余弦：评分先减去该用户的平均分，消除“有人打分普遍偏高”的影响。
+ * 共同评分人数少于 minCommon 的电影对不计入（少量共同评分的相似度不可信）；
+ * maxUserRatings > 0 时跳过评分条数超过该值的用户（计算量与每个用户评分条数的平方成正比）。
+ */
+public class MovieSimilarityJob {
+    private static final Logger logger = LoggerFactory.getLogger(MovieSimilarityJob.class);
+    // ForkJoin 叶子任务处理的电影数
+    private static final int LEAF_MOVIES = 32;
+    // 进度输出间隔（电影数）
+    private static final int REPORT_MOVIES = 5000;
+
+    public enum Metric {
+        COSINE,
+        ADJUSTED_COSINE;
+
+        public static Metric parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Connection connection;
+    private final TableName indexTable;
+    private final byte[] refFamily;
+    private final TableName similarityTable;
+    private final Metric metric;
+    private final int topK;
+    private final int minCommon;
+    private final int minRatings;
+    private final int maxUserRatings;
+    private final int scanThreads;
+    private final int computeThreads;
+
+    public MovieSimilarityJob(Connection connection, String indexTable, String refFamily, String similarityTable,
+                              Metric metric, int topK, int minCommon, int minRatings, int maxUserRatings,
+                              int scanThreads, int computeThreads) {
+        this.connection = connection;
+        this.indexTable = TableName.valueOf(indexTable);
+        this.refFamily = Bytes.toBytes(refFamily);
+        this.similarityTable = TableName.valueOf(similarityTable);
+        this.metric = metric;
+        this.topK = topK;
+        this.minCommon = Math.max(1, minCommon);
+        this.minRatings = Math.max(1, minRatings);
+        this.maxUserRatings = maxUserRatings;
+        this.scanThreads = Math.max(1, scanThreads);
+        this.computeThreads = computeThreads > 0 ? computeThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 重新计算所有电影的相似电影，返回写入的电影数
+     */
+    public int run() throws IOException {
+        long startMillis = System.currentTimeMillis();
+        RatingsSchema schema = RatingsSchema.forTable(connection, indexTable);
+        List<Chunk> chunks = scanRegions(schema);
+        Vectors vectors = Vectors.build(chunks, metric, minRatings);
+        chunks.clear();
+        logger.info("评分向量构建完成：{} 部电影，{} 个用户，{} 条评分，耗时 {} ms",
+                vectors.movies, vectors.users, vectors.nnz, System.currentTimeMillis() - startMillis);
+
+        long computeStart = System.currentTimeMillis();
+        long updatedAt = System.currentTimeMillis();
+        AtomicInteger done = new AtomicInteger();
+        ThreadLocal<Accumulator> accumulators = ThreadLocal.withInitial(() -> new Accumulator(vectors.movies, topK));
+        ForkJoinPool pool = new ForkJoinPool(computeThreads);
+        try (BufferedMutator mutator = connection.getBufferedMutator(similarityTable)) {
+            pool.invoke(new Block(vectors, 0, vectors.movies, accumulators, mutator, updatedAt, done));
+            mutator.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        logger.info("电影相似度计算完成：{} 部电影（{}，前 {} 个，{} 线程），计算耗时 {} ms，总耗时 {} ms",
+                vectors.movies, metric.label(), topK, computeThreads,
+                System.currentTimeMillis() - computeStart, System.currentTimeMillis() - startMillis);
+        return vectors.movies;
+    }
+
+    // --- 扫描 ---
+
+    /**
+     * 按 Region 并行扫描，只读评分列；结果按 Region 分块保存（同一块内同一电影的行连续）
+     */
+    private List<Chunk> scanRegions(RatingsSchema schema) throws IOException {
+        byte[] ratingQualifier = schema.ratingQualifier();
+        Scan scan = new Scan();
+        scan.addColumn(refFamily, ratingQualifier);
+        return new RegionParallelScanner(connection, indexTable, scanThreads, 5000).scan(scan, () -> new Chunk() {
+            @Override
+            public void accept(Result result) {
+                byte[] rating = result.getValue(refFamily, ratingQualifier);
+                if (rating != null) {
+                    byte[] row = result.getRow();
+                    add(schema.firstId(row), schema.secondId(row), schema.decodeRatingX2(rating));
+                }
+            }
+        });
+    }
+
+    /**
+     * 一个 Region 的评分：连续相同 movieId 的行合并为一段
+     */
+    private abstract static class Chunk implements RegionParallelScanner.RegionSink<Chunk> {
+        int[] runMovie = new int[64];
+        int[] runEnd = new int[64];
+        int runs;
+        int[] users = new int[1024];
+        byte[] ratings = new byte[1024];
+        int size;
+
+        void add(int movieId, int userId, int ratingX2) {
+            if (runs == 0 || runMovie[runs - 1] != movieId) {
+                if (runs == runMovie.length) {
+                    runMovie = Arrays.copyOf(runMovie, runs * 2);
+                    runEnd = Arrays.copyOf(runEnd, runs * 2);
+                }
+                runMovie[runs++] = movieId;
+            }
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+                ratings = Arrays.copyOf(ratings, size * 2);
+            }
+            users[size] = userId;
+            ratings[size++] = (byte) ratingX2;
+            runEnd[runs - 1] = size;
+        }
+
+        @Override
+        public Chunk finish() {
+            return this;
+        }
+    }
+
+    // --- 向量 ---
+
+    /**
+     * 两份 CSR：按电影（稠密电影下标 -> 用户下标、评分）和按用户（稠密用户下标 -> 电影下标、评分）
+     */
+    private static final class Vectors {
+        int movies;
+        int users;
+        long nnz;
+        int[] movieIds;
+        int[] movieStart;
+        int[] movieUsers;
+        byte[] movieRatings;
+        int[] userStart;
+        int[] userMovies;
+        byte[] userRatings;
+        // 调整余弦时每个用户的平均分（余弦时全为 0）
+        float[] userMean;
+        float[] norms;
+
+        static Vectors build(List<Chunk> chunks, Metric metric, int minRatings) {
+            Vectors v = new Vectors();
+            int maxMovieId = 0;
+            int maxUserId = 0;
+            for (Chunk chunk : chunks) {
+                for (int r = 0; r < chunk.runs; r++) {
+                    maxMovieId = Math.max(maxMovieId, chunk.runMovie[r]);
+                }
+                for (int i = 0; i < chunk.size; i++) {
+                    maxUserId = Math.max(maxUserId, chunk.users[i]);
+                }
+            }
+
+            // 每部电影的评分条数（加盐时同一电影分布在多个块中）
+            int[] movieCount = new int[maxMovieId + 1];
+            for (Chunk chunk : chunks) {
+                int begin = 0;
+                for (int r = 0; r < chunk.runs; r++) {
+                    movieCount[chunk.runMovie[r]] += chunk.runEnd[r] - begin;
+                    begin = chunk.runEnd[r];
+                }
+            }
+            int[] movieIndex = new int[maxMovieId + 1];
+            Arrays.fill(movieIndex, -1);
+            int[] movieIds = new int[maxMovieId + 1];
+            for (int id = 0; id <= maxMovieId; id++) {
+                if (movieCount[id] >= minRatings) {
+                    movieIndex[id] = v.movies;
+                    movieIds[v.movies++] = id;
+                }
+            }
+            v.movieIds = Arrays.copyOf(movieIds, v.movies);
+
+            // 按电影的 CSR，同时给用户分配稠密下标、累加用户平均分
+            v.movieStart = new int[v.movies + 1];
+            for (int m = 0; m < v.movies; m++) {
+                v.movieStart[m + 1] = v.movieStart[m] + movieCount[v.movieIds[m]];
+            }
+            v.nnz = v.movieStart[v.movies];
+            v.movieUsers = new int[v.movieStart[v.movies]];
+            v.movieRatings = new byte[v.movieStart[v.movies]];
+            int[] fill = Arrays.copyOf(v.movieStart, v.movies);
+            int[] userIndex = new int[maxUserId + 1];
+            Arrays.fill(userIndex, -1);
+            long[] userSum = new long[maxUserId + 1];
+            int[] userCount = new int[maxUserId + 1];
+            for (Chunk chunk : chunks) {
+                int begin = 0;
+                for (int r = 0; r < chunk.runs; r++) {
+                    int m = movieIndex[chunk.runMovie[r]];
+                    for (int i = begin; i < chunk.runEnd[r]; i++) {
+                        int user = chunk.users[i];
+                        userSum[user] += chunk.ratings[i];
+                        userCount[user]++;
+                        if (m < 0) {
+                            continue;
+                        }
+                        if (userIndex[user] < 0) {
+                            userIndex[user] = v.users++;
+                        }
+                        int p = fill[m]++;
+                        v.movieUsers[p] = userIndex[user];
+                        v.movieRatings[p] = chunk.ratings[i];
+                    }
+                    begin = chunk.runEnd[r];
+                }
+            }
+
+            v.userMean = new float[v.users];
+            if (metric == Metric.ADJUSTED_COSINE) {
+                for (int id = 0; id <= maxUserId; id++) {
+                    if (userIndex[id] >= 0) {
+                        v.userMean[userIndex[id]] = userSum[id] * 0.5f / userCount[id];
+                    }
+                }
+            }
+
+            // 按用户的 CSR（转置）
+            v.userStart = new int[v.users + 1];
+            for (int u : v.movieUsers) {
+                v.userStart[u + 1]++;
+            }
+            for (int u = 0; u < v.users; u++) {
+                v.userStart[u + 1] += v.userStart[u];
+            }
+            v.userMovies = new int[v.movieUsers.length];
+            v.userRatings = new byte[v.movieUsers.length];
+            fill = Arrays.copyOf(v.userStart, v.users);
+            for (int m = 0; m < v.movies; m++) {
+                for (int p = v.movieStart[m]; p < v.movieStart[m + 1]; p++) {
+                    int q = fill[v.movieUsers[p]]++;
+                    v.userMovies[q] = m;
+                    v.userRatings[q] = v.movieRatings[p];
+                }
+            }
+
+            v.norms = new float[v.movies];
+            for (int m = 0; m < v.movies; m++) {
+                double sum = 0;
+                for (int p = v.movieStart[m]; p < v.movieStart[m + 1]; p++) {
+                    float x = v.value(v.movieUsers[p], v.movieRatings[p]);
+                    sum += x * x;
+                }
+                v.norms[m] = (float) Math.sqrt(sum);
+            }
+            return v;
+        }
+
+        float value(int user, byte ratingX2) {
+            return ratingX2 * 0.5f - userMean[user];
+        }
+    }
+
+    // --- 计算 ---
+
+    /**
+     * 每个线程复用的累加数组和前 K 个的小顶堆
+     */
+    private static final class Accumulator {
+        final float[] dot;
+        final int[] common;
+        final int[] touched;
+        final int[] heapMovie;
+        final float[] heapScore;
+        final int[] heapCommon;
+        int heapSize;
+
+        Accumulator(int movies, int topK) {
+            dot = new float[movies];
+            common = new int[movies];
+            touched = new int[movies];
+            heapMovie = new int[topK];
+            heapScore = new float[topK];
+            heapCommon = new int[topK];
+        }
+
+        void offer(int movie, float score, int shared) {
+            if (heapSize < heapMovie.length) {
+                int i = heapSize++;
+                while (i > 0 && heapScore[(i - 1) >>> 1] > score) {
+                    int parent = (i - 1) >>> 1;
+                    set(i, heapMovie[parent], heapScore[parent], heapCommon[parent]);
+                    i = parent;
+                }
+                set(i, movie, score, shared);
+            } else if (heapMovie.length > 0 && score > heapScore[0]) {
+                // 替换堆顶后下沉
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= heapSize) {
+                        break;
+                    }
+                    if (child + 1 < heapSize && heapScore[child + 1] < heapScore[child]) {
+                        child++;
+                    }
+                    if (heapScore[child] >= score) {
+                        break;
+                    }
+                    set(i, heapMovie[child], heapScore[child], heapCommon[child]);
+                    i = child;
+                }
+                set(i, movie, score, shared);
+            }
+        }
+
+        private void set(int i, int movie, float score, int shared) {
+            heapMovie[i] = movie;
+            heapScore[i] = score;
+            heapCommon[i] = shared;
+        }
+    }
+
+    private final class Block extends RecursiveAction {
+        private final Vectors v;
+        private final int from;
+        private final int to;
+        private final ThreadLocal<Accumulator> accumulators;
+        private final BufferedMutator mutator;
+        private final long updatedAt;
+        private final AtomicInteger done;
+
+        Block(Vectors v, int from, int to, ThreadLocal<Accumulator> accumulators,
+              BufferedMutator mutator, long updatedAt, AtomicInteger done) {
+            this.v = v;
+            this.from = from;
+            this.to = to;
+            this.accumulators = accumulators;
+            this.mutator = mutator;
+            this.updatedAt = updatedAt;
+            this.done = done;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_MOVIES) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Block(v, from, mid, accumulators, mutator, updatedAt, done),
+                        new Block(v, mid, to, accumulators, mutator, updatedAt, done));
+                return;
+            }
+            Accumulator acc = accumulators.get();
+            List<Mutation> puts = new ArrayList<>(to - from);
+            for (int m = from; m < to; m++) {
+                puts.add(neighbours(m, acc));
+            }
+            try {
+                mutator.mutate(puts);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int total = done.addAndGet(to - from);
+            if (total / REPORT_MOVIES != (total - (to - from)) / REPORT_MOVIES) {
+                logger.info("相似度计算进度：{} / {} 部电影", total, v.movies);
+            }
+        }
+
+        private Put neighbours(int m, Accumulator acc) {
+            int touchedCount = 0;
+            for (int p = v.movieStart[m]; p < v.movieStart[m + 1]; p++) {
+                int user = v.movieUsers[p];
+                if (maxUserRatings > 0 && v.userStart[user + 1] - v.userStart[user] > maxUserRatings) {
+                    continue;
+                }
+                float x = v.value(user, v.movieRatings[p]);
+                for (int q = v.userStart[user]; q < v.userStart[user + 1]; q++) {
+                    int other = v.userMovies[q];
+                    if (other == m) {
+                        continue;
+                    }
+                    if (acc.common[other]++ == 0) {
+                        acc.touched[touchedCount++] = other;
+                    }
+                    acc.dot[other] += x * v.value(user, v.userRatings[q]);
+                }
+            }
+
+            acc.heapSize = 0;
+            for (int t = 0; t < touchedCount; t++) {
+                int other = acc.touched[t];
+                float denominator = v.norms[m] * v.norms[other];
+                if (acc.common[other] >= minCommon && denominator > 0) {
+                    acc.offer(other, acc.dot[other] / denominator, acc.common[other]);
+                }
+                acc.dot[other] = 0;
+                acc.common[other] = 0;
+            }
+
+            // 堆中元素按相似度降序输出
+            int count = acc.heapSize;
+            int[] ids = new int[count];
+            float[] scores = new float[count];
+            int[] shared = new int[count];
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Float.compare(acc.heapScore[b], acc.heapScore[a]));
+            for (int i = 0; i < count; i++) {
+                ids[i] = v.movieIds[acc.heapMovie[order[i]]];
+                scores[i] = acc.heapScore[order[i]];
+                shared[i] = acc.heapCommon[order[i]];
+            }
+
+            Put put = new Put(SimilarityFormat.rowKey(v.movieIds[m]));
+            put.addColumn(SimilarityFormat.FAMILY, SimilarityFormat.NEIGHBOURS,
+                    SimilarityFormat.encode(ids, scores, shared, count));
+            put.addColumn(SimilarityFormat.FAMILY, SimilarityFormat.METRIC, Bytes.toBytes(metric.label()));
+            put.addColumn(SimilarityFormat.FAMILY, SimilarityFormat.UPDATED_AT, Bytes.toBytes(updatedAt));
+            return put;
+        }
+    }
+
+    // 独立入口：离线重算电影相似度
+    public static void main(String[] args) {
+        try {
+            HBaseDataImporter.initConnection();
+            HBaseDataImporter.rebuildMovieSimilarity();
+        } catch (Exception e) {
+            logger.error("电影相似度计算失败", e);
+        } finally {
+            HBaseDataImporter.closeConnection();
+        }
+    }
+}
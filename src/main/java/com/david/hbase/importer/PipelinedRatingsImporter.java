@@ -0,0 +1,277 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.RatingsSchema;
+import com.david.hbase.schema.TimeIndexFormat;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流水线式评分导入：
+ * 解析阶段（{@link RatingsReader}，可以是多个线程）把 ratings.csv 解析为 {@link RatingBatch} 放入有界队列，
+ * N 个写入线程各自持有评分表和索引表的 BufferedMutator 并行写入。
+ * 队列写满时解析线程阻塞（背压），运行期间定期输出吞吐量；写入条数、每批写入耗时和队列深度计入 {@link ImportMetrics}。
+ */
+public class PipelinedRatingsImporter {
+    private static final Logger logger = LoggerFactory.getLogger(PipelinedRatingsImporter.class);
+
+    // 写入线程的结束标记
+    private static final RatingBatch END_OF_STREAM = new RatingBatch(0);
+    // 吞吐量输出间隔（秒）
+    private static final int REPORT_INTERVAL_SECONDS = 5;
+    // 入队等待超时，超时后检查写入线程是否已失败
+    private static final long OFFER_TIMEOUT_MS = 200;
+
+    private final Connection connection;
+    private final RatingsSchema schema;
+    private final TableName ratingsTable;
+    private final TableName indexTable;
+    private final String scoreFamily;
+    private final String refFamily;
+    private final int writerThreads;
+    private final int batchSize;
+    private final long writeBufferSize;
+
+    private final BlockingQueue<RatingBatch> queue;
+    // 写完的批次回收复用
+    private final ConcurrentLinkedQueue<RatingBatch> freeBatches = new ConcurrentLinkedQueue<>();
+    private final AtomicLong parsedRows = new AtomicLong();
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // 评分统计预聚合（可选）
+    private RatingStatsAggregator stats;
+    // 时间索引表（可选）
+    private TimeIndexFormat timeFormat;
+    private TableName timeIndexTable;
+    private String timeFamily;
+
+    public PipelinedRatingsImporter(Connection connection, RatingsSchema schema,
+                                    String ratingsTable, String scoreFamily,
+                                    String indexTable, String refFamily,
+                                    int writerThreads, int batchSize,
+                                    int queueCapacity, long writeBufferSize) {
+        this.connection = connection;
+        this.schema = schema;
+        this.ratingsTable = TableName.valueOf(ratingsTable);
+        this.indexTable = TableName.valueOf(indexTable);
+        this.scoreFamily = scoreFamily;
+        this.refFamily = refFamily;
+        this.writerThreads = writerThreads;
+        this.batchSize = batchSize;
+        this.writeBufferSize = writeBufferSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * 写入的同时把每批评分累加到统计预聚合器（为 null 时不统计）
+     */
+    public void setStatsAggregator(RatingStatsAggregator stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * 同时写入时间索引表（format 为 null 时不写）
+     */
+    public void setTimeIndex(TimeIndexFormat format, String timeIndexTable, String timeFamily) {
+        this.timeFormat = format;
+        this.timeIndexTable = format == null ? null : TableName.valueOf(timeIndexTable);
+        this.timeFamily = timeFamily;
+    }
+
+    /**
+     * 执行导入，返回写入的评分条数
+     */
+    public long run(RatingsReader reader) throws IOException {
+        ExecutorService writers = Executors.newFixedThreadPool(writerThreads, namedThreads("ratings-writer"));
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(namedThreads("ratings-progress"));
+        long startNanos = System.nanoTime();
+
+        ImportMetrics.trackQueue(queue);
+        for (int i = 0; i < writerThreads; i++) {
+            writers.execute(this::writeLoop);
+        }
+        AtomicLong lastWritten = new AtomicLong();
+        reporter.scheduleAtFixedRate(() -> reportProgress(startNanos, lastWritten),
+                REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        try {
+            reader.read(this::takeFreeBatch, this::publish);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            signalEndOfStream();
+            writers.shutdown();
+            awaitQuietly(writers);
+            reporter.shutdownNow();
+            ImportMetrics.trackQueue(null);
+        }
+
+        Throwable error = failure.get();
+        if (error != null) {
+            throw new IOException("流水线导入失败，已写入 " + writtenRows.get() + " 条", error);
+        }
+
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 0.001);
+        logger.info("流水线导入完成：写入 {} 条，跳过 {} 条，耗时 {} 秒，平均 {} 条/秒",
+                writtenRows.get(), reader.skippedRows(), String.format("%.1f", seconds),
+                (long) (writtenRows.get() / seconds));
+        return writtenRows.get();
+    }
+
+    // --- 解析阶段 ---
+
+    /**
+     * 把批次放入队列；队列满时阻塞等待，写入线程失败时立即终止
+     */
+    private void publish(RatingBatch batch) throws InterruptedException, IOException {
+        parsedRows.addAndGet(batch.size());
+        while (!queue.offer(batch, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) {
+                throw new IOException("写入线程已失败，停止解析", failure.get());
+            }
+        }
+    }
+
+    private RatingBatch takeFreeBatch() {
+        RatingBatch batch = freeBatches.poll();
+        return batch != null ? batch : new RatingBatch(batchSize);
+    }
+
+    private void signalEndOfStream() {
+        try {
+            for (int i = 0; i < writerThreads; i++) {
+                while (!queue.offer(END_OF_STREAM, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (failure.get() != null) {
+                        // 已失败：丢弃未写入的批次，保证存活的写入线程能收到结束标记
+                        queue.clear();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- 写入阶段 ---
+
+    private void writeLoop() {
+        RatingPutEncoder encoder = new RatingPutEncoder(schema, scoreFamily, refFamily);
+        if (timeFormat != null) {
+            encoder.withTimeIndex(timeFormat, timeFamily);
+        }
+        List<Put> dataPuts = new ArrayList<>(batchSize);
+        List<Put> indexPuts = new ArrayList<>(batchSize);
+        List<Put> timePuts = new ArrayList<>(timeFormat == null ? 0 : batchSize);
+        Timer dataTimer = ImportMetrics.batchWrite(ratingsTable);
+        Timer indexTimer = ImportMetrics.batchWrite(indexTable);
+        Timer timeTimer = timeFormat == null ? null : ImportMetrics.batchWrite(timeIndexTable);
+
+        try (BufferedMutator dataMutator = connection.getBufferedMutator(mutatorParams(ratingsTable));
+             BufferedMutator indexMutator = connection.getBufferedMutator(mutatorParams(indexTable));
+             BufferedMutator timeMutator = timeFormat == null ? null
+                     : connection.getBufferedMutator(mutatorParams(timeIndexTable))) {
+            while (true) {
+                RatingBatch batch = queue.take();
+                if (batch == END_OF_STREAM) {
+                    break;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    dataPuts.add(encoder.dataPut(batch, i));
+                    indexPuts.add(encoder.indexPut(batch, i));
+                    if (timeMutator != null) {
+                        timePuts.add(encoder.timeIndexPut(batch, i));
+                    }
+                }
+                long start = System.nanoTime();
+                dataMutator.mutate(dataPuts);
+                ImportMetrics.recordSince(dataTimer, start);
+                start = System.nanoTime();
+                indexMutator.mutate(indexPuts);
+                ImportMetrics.recordSince(indexTimer, start);
+                if (timeMutator != null) {
+                    start = System.nanoTime();
+                    timeMutator.mutate(timePuts);
+                    ImportMetrics.recordSince(timeTimer, start);
+                }
+                writtenRows.addAndGet(batch.size());
+                ImportMetrics.ROWS.increment(batch.size());
+                if (stats != null) {
+                    stats.add(batch);
+                }
+
+                dataPuts.clear();
+                indexPuts.clear();
+                timePuts.clear();
+                batch.clear();
+                freeBatches.offer(batch);
+            }
+            flush(dataMutator, ratingsTable);
+            flush(indexMutator, indexTable);
+            if (timeMutator != null) {
+                flush(timeMutator, timeIndexTable);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (Throwable e) {
+            logger.error("评分写入线程失败", e);
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private static void flush(BufferedMutator mutator, TableName table) throws IOException {
+        long start = System.nanoTime();
+        mutator.flush();
+        ImportMetrics.recordSince(ImportMetrics.flush(table), start);
+    }
+
+    private BufferedMutatorParams mutatorParams(TableName tableName) {
+        return new BufferedMutatorParams(tableName).writeBufferSize(writeBufferSize);
+    }
+
+    // --- 进度与线程工具 ---
+
+    private void reportProgress(long startNanos, AtomicLong lastWritten) {
+        long written = writtenRows.get();
+        long delta = written - lastWritten.getAndSet(written);
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 0.001);
+        logger.info("导入进度：已解析 {} 条，已写入 {} 条，当前 {} 条/秒，平均 {} 条/秒，队列 {}/{}",
+                parsedRows.get(), written, delta / REPORT_INTERVAL_SECONDS, (long) (written / seconds),
+                queue.size(), queue.size() + queue.remainingCapacity());
+    }
+
+    private static void awaitQuietly(ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("等待写入线程结束...");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
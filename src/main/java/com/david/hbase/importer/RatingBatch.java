@@ -0,0 +1,100 @@
+package com.david.hbase.importer;
+
+/**
+ * 评分数据的列式批次：解析阶段把一批评分写入并行的基本类型数组，
+ * 写入阶段再逐行编码为 Put。批次对象在流水线中循环复用，避免每行创建中间对象。
+ */
+public final class RatingBatch {
+    // 最高 5.0 星（半星数 10），与查询参数、统计直方图的范围相同
+    public static final int MAX_RATING_X2 = 10;
+
+    private final int[] userIds;
+    private final int[] movieIds;
+    // 评分以“半星数”保存（4.5 -> 9），MovieLens 的评分都是 0.5 的整数倍
+    private final byte[] ratingsX2;
+    private final long[] timestamps;
+    private int size;
+    // 首行在文件中的位置（由解析器设置），多线程解析时用来恢复各批次在文件中的先后顺序
+    private long position;
+
+    public RatingBatch(int capacity) {
+        this.userIds = new int[capacity];
+        this.movieIds = new int[capacity];
+        this.ratingsX2 = new byte[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * 追加一条评分，返回追加后批次是否已满
+     */
+    public boolean add(int userId, int movieId, int ratingX2, long timestamp) {
+        userIds[size] = userId;
+        movieIds[size] = movieId;
+        ratingsX2[size] = (byte) ratingX2;
+        timestamps[size] = timestamp;
+        size++;
+        return size >= userIds.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return userIds.length;
+    }
+
+    public boolean isFull() {
+        return size >= userIds.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+        position = 0;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
+    public int userId(int i) {
+        return userIds[i];
+    }
+
+    public int movieId(int i) {
+        return movieIds[i];
+    }
+
+    public int ratingX2(int i) {
+        return ratingsX2[i];
+    }
+
+    public long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    /**
+     * 把 CSV 中的评分文本（如 "4.5"）转换为半星数。带负号的评分（包括 "-0"）和四舍五入后超过 5.0 的评分视为格式错误
+     * （与 {@link MappedRatingsReader} 的字节解析规则一致）
+     */
+    public static int parseRatingX2(String rating) {
+        double value = Double.parseDouble(rating);
+        // Double.compare 把 -0.0 排在 0.0 之前，带负号的评分一律无效；NaN 也不满足 value < 6
+        if (!(Double.compare(value, 0.0) >= 0 && value < 6)) {
+            throw new NumberFormatException("评分超出范围：" + rating);
+        }
+        int x2 = (int) Math.round(value * 2);
+        if (x2 > MAX_RATING_X2) {
+            throw new NumberFormatException("评分超出范围：" + rating);
+        }
+        return x2;
+    }
+}
@@ -0,0 +1,119 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.RatingsSchema;
+import com.david.hbase.schema.TimeIndexFormat;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.List;
+
+/**
+ * 把 {@link RatingBatch} 中的一行按 {@link RatingsSchema} 编码为评分表/索引表的 Put（或批量导入用的 Cell）。
+ * 行键先写入可复用的字节缓冲区，再由 Put/KeyValue 拷贝，每行不创建中间 String。
+ * 每个写入线程持有一个实例，非线程安全。
+ */
+public final class RatingPutEncoder {
+    private final RatingsSchema schema;
+    private final byte[] dataFamily;
+    private final byte[] indexFamily;
+    private final byte[] keyBuf;
+    private final byte[] tsBuf = new byte[20];
+    // 时间索引（可选）
+    private TimeIndexFormat timeFormat;
+    private byte[] timeFamily;
+    private byte[] timeKeyBuf;
+
+    public RatingPutEncoder(RatingsSchema schema, String dataFamily, String indexFamily) {
+        this.schema = schema;
+        this.dataFamily = Bytes.toBytes(dataFamily);
+        this.indexFamily = Bytes.toBytes(indexFamily);
+        this.keyBuf = new byte[schema.maxRowKeyLength()];
+    }
+
+    /**
+     * 同时编码时间索引表的行
+     */
+    public RatingPutEncoder withTimeIndex(TimeIndexFormat format, String family) {
+        this.timeFormat = format;
+        this.timeFamily = Bytes.toBytes(family);
+        this.timeKeyBuf = new byte[format.rowKeyLength()];
+        return this;
+    }
+
+    /**
+     * 评分表 Put，行键 userId + movieId
+     */
+    public Put dataPut(RatingBatch batch, int i) {
+        int len = schema.writeRowKey(keyBuf, batch.userId(i), batch.movieId(i));
+        return buildPut(len, dataFamily, batch, i);
+    }
+
+    /**
+     * 索引表 Put，行键 movieId + userId
+     */
+    public Put indexPut(RatingBatch batch, int i) {
+        int len = schema.writeRowKey(keyBuf, batch.movieId(i), batch.userId(i));
+        return buildPut(len, indexFamily, batch, i);
+    }
+
+    /**
+     * 时间索引表 Put，行键 时间戳 + userId + movieId；评分与版本 2 相同，1 字节半星数
+     */
+    public Put timeIndexPut(RatingBatch batch, int i) {
+        int len = timeFormat.writeRowKey(timeKeyBuf, batch.timestamp(i), batch.userId(i), batch.movieId(i));
+        Put put = new Put(timeKeyBuf, 0, len);
+        put.addColumn(timeFamily, TimeIndexFormat.RATING, RatingsSchema.V2.encodeRating(batch.ratingX2(i)));
+        return put;
+    }
+
+    /**
+     * 时间索引表的 Cell
+     */
+    public void timeIndexCells(RatingBatch batch, int i, long cellTimestamp, List<Cell> out) {
+        int len = timeFormat.writeRowKey(timeKeyBuf, batch.timestamp(i), batch.userId(i), batch.movieId(i));
+        byte[] rating = RatingsSchema.V2.encodeRating(batch.ratingX2(i));
+        out.add(new KeyValue(timeKeyBuf, 0, len, timeFamily, 0, timeFamily.length,
+                TimeIndexFormat.RATING, 0, TimeIndexFormat.RATING.length,
+                cellTimestamp, KeyValue.Type.Put, rating, 0, rating.length));
+    }
+
+    /**
+     * 评分表的 Cell（批量导入直接写 HFile 时使用），按列名顺序追加到 out
+     */
+    public void dataCells(RatingBatch batch, int i, long cellTimestamp, List<Cell> out) {
+        int len = schema.writeRowKey(keyBuf, batch.userId(i), batch.movieId(i));
+        buildCells(len, dataFamily, batch, i, cellTimestamp, out);
+    }
+
+    /**
+     * 索引表的 Cell，按列名顺序追加到 out
+     */
+    public void indexCells(RatingBatch batch, int i, long cellTimestamp, List<Cell> out) {
+        int len = schema.writeRowKey(keyBuf, batch.movieId(i), batch.userId(i));
+        buildCells(len, indexFamily, batch, i, cellTimestamp, out);
+    }
+
+    private void buildCells(int keyLen, byte[] family, RatingBatch batch, int i, long cellTimestamp, List<Cell> out) {
+        byte[] ratingQualifier = schema.ratingQualifier();
+        byte[] timestampQualifier = schema.timestampQualifier();
+        byte[] rating = schema.encodeRating(batch.ratingX2(i));
+        int tsLen = schema.writeTimestamp(tsBuf, batch.timestamp(i));
+        // 两个版本的评分列名都排在时间戳列名之前（rating < timestamp，r < t），满足 HFile 的列顺序
+        out.add(new KeyValue(keyBuf, 0, keyLen, family, 0, family.length,
+                ratingQualifier, 0, ratingQualifier.length,
+                cellTimestamp, KeyValue.Type.Put, rating, 0, rating.length));
+        out.add(new KeyValue(keyBuf, 0, keyLen, family, 0, family.length,
+                timestampQualifier, 0, timestampQualifier.length,
+                cellTimestamp, KeyValue.Type.Put, tsBuf, 0, tsLen));
+    }
+
+    private Put buildPut(int keyLen, byte[] family, RatingBatch batch, int i) {
+        Put put = new Put(keyBuf, 0, keyLen);
+        put.addColumn(family, schema.ratingQualifier(), schema.encodeRating(batch.ratingX2(i)));
+        int tsLen = schema.writeTimestamp(tsBuf, batch.timestamp(i));
+        put.addColumn(family, schema.timestampQualifier(), Bytes.copy(tsBuf, 0, tsLen));
+        return put;
+    }
+}
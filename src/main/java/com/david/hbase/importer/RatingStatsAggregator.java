@@ -0,0 +1,249 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.RatingStatsFormat;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 导入评分时在内存中预聚合每个电影、每个用户的评分直方图，导入结束后一次性写入统计表。两种写法：
+ *   {@link #overwrite} 全量导入到空评分表：直方图就是这些电影/用户的全部评分，以 Put 写入绝对值，重复导入结果不变
+ *                     （评分表已有评分时直方图不完整，改由 {@link RatingStatsRecounter} 重新计数）
+ *   {@link #flush}     增量导入：直方图是变化量（可以为负，见 {@link #adjust}），以 Increment 累加到已有统计上
+ *
+ * MovieLens 的 ID 是连续的小整数，直方图按 ID 直接下标存放在 int 数组里；
+ * 超出范围的 ID 放到 HashMap 中。写入线程共享一个实例，按批次加锁。
+ */
+public class RatingStatsAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(RatingStatsAggregator.class);
+
+    private final Histograms movies = new Histograms();
+    private final Histograms users = new Histograms();
+    private long skipped;
+
+    /**
+     * 累加一批评分
+     */
+    public synchronized void add(RatingBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            int x2 = batch.ratingX2(i);
+            if (x2 < 0 || x2 >= RatingStatsFormat.BUCKETS) {
+                skipped++;
+                continue;
+            }
+            movies.add(batch.movieId(i), x2, 1);
+            users.add(batch.userId(i), x2, 1);
+        }
+    }
+
+    /**
+     * 调整一条评分的计数：delta 为 1 表示新增，-1 表示撤销（重新评分时先撤销旧评分再加上新评分）
+     */
+    public synchronized void adjust(int userId, int movieId, int ratingX2, int delta) {
+        if (ratingX2 < 0 || ratingX2 >= RatingStatsFormat.BUCKETS) {
+            skipped++;
+            return;
+        }
+        movies.add(movieId, ratingX2, delta);
+        users.add(userId, ratingX2, delta);
+    }
+
+    /**
+     * 本次导入中有评分的电影ID（用于增量重建类型排行榜）
+     */
+    public synchronized int[] movieIds() {
+        return movies.idArray();
+    }
+
+    /**
+     * 本次导入中有评分的用户ID
+     */
+    public synchronized int[] userIds() {
+        return users.idArray();
+    }
+
+    /**
+     * 把预聚合结果作为变化量以 Increment 累加到统计表，返回写入的行数
+     */
+    public long flush(Connection connection, TableName statsTable, byte[] family, int batchSize) throws IOException {
+        return write(connection, statsTable, family, batchSize, false);
+    }
+
+    /**
+     * 把预聚合结果作为绝对值以 Put 覆盖统计表中对应的行（全部 11 个档位都写入），返回写入的行数
+     */
+    public long overwrite(Connection connection, TableName statsTable, byte[] family,
+                          int batchSize) throws IOException {
+        return write(connection, statsTable, family, batchSize, true);
+    }
+
+    private synchronized long write(Connection connection, TableName statsTable, byte[] family, int batchSize,
+                                    boolean overwrite) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long rows;
+        try (Table table = connection.getTable(statsTable)) {
+            List<Row> mutations = new ArrayList<>(batchSize);
+            rows = movies.flush(RatingStatsFormat.MOVIE, table, family, mutations, batchSize, overwrite)
+                    + users.flush(RatingStatsFormat.USER, table, family, mutations, batchSize, overwrite);
+            submit(table, mutations);
+        }
+        if (skipped > 0) {
+            logger.warn("评分统计跳过 {} 条超出 0~5 分的评分", skipped);
+        }
+        logger.info("评分统计写入完成：{} 个电影、{} 个用户，耗时 {} ms",
+                movies.ids(), users.ids(), System.currentTimeMillis() - startMillis);
+        return rows;
+    }
+
+    private static void submit(Table table, List<Row> mutations) throws IOException {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        try {
+            table.batch(mutations, new Object[mutations.size()]);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("写入评分统计被中断");
+        }
+        mutations.clear();
+    }
+
+    /**
+     * 一类主体（电影或用户）的直方图：ID 较小时按下标存放，否则放入 HashMap
+     */
+    private static final class Histograms {
+        // 超过该值的 ID 不再按下标存放，避免稀疏 ID 撑大数组
+        private static final int MAX_DENSE_ID = 1 << 22;
+
+        private int[] dense = new int[0];
+        private final Map<Integer, int[]> sparse = new HashMap<>();
+
+        void add(int id, int x2, int delta) {
+            if (id >= 0 && id < MAX_DENSE_ID) {
+                int offset = id * RatingStatsFormat.BUCKETS;
+                if (offset >= dense.length) {
+                    int ids = Math.min(MAX_DENSE_ID, Math.max(id + 1, dense.length / RatingStatsFormat.BUCKETS * 2));
+                    dense = Arrays.copyOf(dense, ids * RatingStatsFormat.BUCKETS);
+                }
+                dense[offset + x2] += delta;
+            } else {
+                sparse.computeIfAbsent(id, k -> new int[RatingStatsFormat.BUCKETS])[x2] += delta;
+            }
+        }
+
+        long ids() {
+            long count = sparse.values().stream().filter(histogram -> hasRatings(histogram, 0)).count();
+            for (int offset = 0; offset < dense.length; offset += RatingStatsFormat.BUCKETS) {
+                if (hasRatings(dense, offset)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int[] idArray() {
+            int[] ids = new int[(int) ids()];
+            int n = 0;
+            for (int offset = 0; offset < dense.length; offset += RatingStatsFormat.BUCKETS) {
+                if (hasRatings(dense, offset)) {
+                    ids[n++] = offset / RatingStatsFormat.BUCKETS;
+                }
+            }
+            for (Map.Entry<Integer, int[]> entry : sparse.entrySet()) {
+                if (hasRatings(entry.getValue(), 0)) {
+                    ids[n++] = entry.getKey();
+                }
+            }
+            return ids;
+        }
+
+        long flush(byte type, Table table, byte[] family, List<Row> mutations, int batchSize,
+                   boolean overwrite) throws IOException {
+            long rows = 0;
+            for (int offset = 0; offset < dense.length; offset += RatingStatsFormat.BUCKETS) {
+                if (hasRatings(dense, offset)) {
+                    int id = offset / RatingStatsFormat.BUCKETS;
+                    mutations.add(overwrite ? put(type, id, dense, offset, family)
+                            : increment(type, id, dense, offset, family));
+                    rows++;
+                    if (mutations.size() >= batchSize) {
+                        submit(table, mutations);
+                    }
+                }
+            }
+            for (Map.Entry<Integer, int[]> entry : sparse.entrySet()) {
+                if (!hasRatings(entry.getValue(), 0)) {
+                    continue;
+                }
+                mutations.add(overwrite ? put(type, entry.getKey(), entry.getValue(), 0, family)
+                        : increment(type, entry.getKey(), entry.getValue(), 0, family));
+                rows++;
+                if (mutations.size() >= batchSize) {
+                    submit(table, mutations);
+                }
+            }
+            return rows;
+        }
+
+        private static boolean hasRatings(int[] histogram, int offset) {
+            for (int x2 = 0; x2 < RatingStatsFormat.BUCKETS; x2++) {
+                if (histogram[offset + x2] != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Increment increment(byte type, int id, int[] histogram, int offset, byte[] family) {
+            Increment increment = new Increment(RatingStatsFormat.rowKey(type, id));
+            long count = 0;
+            long sumX2 = 0;
+            for (int x2 = 0; x2 < RatingStatsFormat.BUCKETS; x2++) {
+                int n = histogram[offset + x2];
+                if (n != 0) {
+                    increment.addColumn(family, RatingStatsFormat.bucketQualifier(x2), n);
+                    count += n;
+                    sumX2 += (long) n * x2;
+                }
+            }
+            increment.addColumn(family, RatingStatsFormat.COUNT, count);
+            increment.addColumn(family, RatingStatsFormat.SUM, sumX2);
+            // 只需要累加，不需要服务端返回累加后的值
+            increment.setReturnResults(false);
+            return increment;
+        }
+
+        /**
+         * 绝对值：计数器列写入 8 字节 long（与 Increment 的格式相同，之后的增量导入可以继续累加），
+         * 为 0 的档位也写入，覆盖上一次导入留下的值
+         */
+        private static Put put(byte type, int id, int[] histogram, int offset, byte[] family) {
+            Put put = new Put(RatingStatsFormat.rowKey(type, id));
+            long count = 0;
+            long sumX2 = 0;
+            for (int x2 = 0; x2 < RatingStatsFormat.BUCKETS; x2++) {
+                int n = histogram[offset + x2];
+                put.addColumn(family, RatingStatsFormat.bucketQualifier(x2), Bytes.toBytes((long) n));
+                count += n;
+                sumX2 += (long) n * x2;
+            }
+            put.addColumn(family, RatingStatsFormat.COUNT, Bytes.toBytes(count));
+            put.addColumn(family, RatingStatsFormat.SUM, Bytes.toBytes(sumX2));
+            return put;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.RatingStatsFormat;
+import com.david.hbase.schema.RatingsSchema;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 从评分表/索引表重新计数指定电影和用户的评分直方图，以 Put 覆盖统计行（没有评分时删除该行）。
+ * 统计可能与表中的评分不一致时使用：增量导入中断后恢复，或全量导入写入已有数据的表。
+ * 每个 ID 按行键前缀扫描一次（加盐时每个桶一次），多个 ID 分片并行。
+ */
+public class RatingStatsRecounter {
+    // 每个任务处理的 ID 数
+    private static final int SLICE = 256;
+
+    private final Connection connection;
+    private final RatingsSchema schema;
+    private final TableName statsTable;
+    private final byte[] statsFamily;
+    private final int threads;
+
+    public RatingStatsRecounter(Connection connection, RatingsSchema schema, TableName statsTable, byte[] statsFamily,
+                                int threads) {
+        this.connection = connection;
+        this.schema = schema;
+        this.statsTable = statsTable;
+        this.statsFamily = statsFamily;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * 按主ID前缀扫描 source（电影 -> 索引表，用户 -> 评分表），重新统计直方图并覆盖统计行
+     */
+    public void recount(byte type, int[] ids, TableName source, byte[] family) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+                PipelinedRatingsImporter.namedThreads("stats-recount"));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < ids.length; from += SLICE) {
+                int[] slice = Arrays.copyOfRange(ids, from, Math.min(ids.length, from + SLICE));
+                futures.add(pool.submit(() -> {
+                    recountSlice(type, slice, source, family);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("重新计数评分统计被中断", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("重新计数评分统计失败", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void recountSlice(byte type, int[] ids, TableName source, byte[] family) throws IOException {
+        byte[] ratingQualifier = schema.ratingQualifier();
+        List<Put> puts = new ArrayList<>(ids.length);
+        List<Delete> deletes = new ArrayList<>();
+        try (Table sourceTable = connection.getTable(source);
+             Table stats = connection.getTable(statsTable)) {
+            for (int id : ids) {
+                long[] histogram = new long[RatingStatsFormat.BUCKETS];
+                for (byte[] prefix : schema.prefixes(id)) {
+                    Scan scan = new Scan().setStartStopRowForPrefixScan(prefix).addColumn(family, ratingQualifier);
+                    try (ResultScanner scanner = sourceTable.getScanner(scan)) {
+                        for (Result result : scanner) {
+                            int x2 = schema.decodeRatingX2(result.getValue(family, ratingQualifier));
+                            if (x2 >= 0 && x2 < RatingStatsFormat.BUCKETS) {
+                                histogram[x2]++;
+                            }
+                        }
+                    }
+                }
+                byte[] row = RatingStatsFormat.rowKey(type, id);
+                Put put = statsPut(row, histogram);
+                if (put != null) {
+                    puts.add(put);
+                } else {
+                    deletes.add(new Delete(row).addFamily(statsFamily));
+                }
+            }
+            stats.put(puts);
+            if (!deletes.isEmpty()) {
+                stats.delete(deletes);
+            }
+        }
+    }
+
+    /**
+     * 覆盖一行统计：计数器列写入 8 字节 long（与 Increment 的格式相同，之后可以继续累加）；没有评分时返回 null（删除该行）
+     */
+    private Put statsPut(byte[] row, long[] histogram) {
+        long count = 0;
+        long sumX2 = 0;
+        for (int x2 = 0; x2 < histogram.length; x2++) {
+            count += histogram[x2];
+            sumX2 += histogram[x2] * x2;
+        }
+        if (count == 0) {
+            return null;
+        }
+        Put put = new Put(row);
+        for (int x2 = 0; x2 < histogram.length; x2++) {
+            put.addColumn(statsFamily, RatingStatsFormat.bucketQualifier(x2), Bytes.toBytes(histogram[x2]));
+        }
+        put.addColumn(statsFamily, RatingStatsFormat.COUNT, Bytes.toBytes(count));
+        put.addColumn(statsFamily, RatingStatsFormat.SUM, Bytes.toBytes(sumX2));
+        return put;
+    }
+}
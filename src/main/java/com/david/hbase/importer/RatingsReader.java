@@ -0,0 +1,31 @@
+package com.david.hbase.importer;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * ratings.csv 解析器：把文件解析为 {@link RatingBatch} 交给下游。
+ * 批次对象由下游提供（便于回收复用），解析器填满一批就调用一次 consumer。
+ * 批次内的评分按文件顺序排列；多线程解析时批次的到达顺序不固定，
+ * 按 {@link RatingBatch#position()}（首行在文件中的位置，只用于比较先后）排序即为文件顺序。
+ */
+public interface RatingsReader {
+
+    /**
+     * 接收一个已填满（或最后一个未填满）的批次；可能被多个解析线程并发调用
+     */
+    @FunctionalInterface
+    interface BatchConsumer {
+        void accept(RatingBatch batch) throws IOException, InterruptedException;
+    }
+
+    /**
+     * 解析整个文件，返回解析成功的评分条数
+     */
+    long read(Supplier<RatingBatch> batches, BatchConsumer consumer) throws IOException, InterruptedException;
+
+    /**
+     * 因格式错误被跳过的行数
+     */
+    long skippedRows();
+}
@@ -0,0 +1,150 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.RatingsSchema;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.RandomRowFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 评分表/索引表的预分裂规划：
+ * 从评分文件或已有的评分表中蓄水池采样 (userId, movieId)，按目标存储格式编码为行键并排序，
+ * 取等分位点作为 Region 边界，使每个 Region 分到的数据量大致相同。
+ * 分裂点截断到“桶号 + 主ID”前缀，同一个主ID（同一用户/同一电影）的行不会跨 Region。
+ */
+public class SplitPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(SplitPlanner.class);
+
+    private final int[] userIds;
+    private final int[] movieIds;
+    private final Random random = new Random(42);
+    private int size;
+    private long seen;
+
+    private SplitPlanner(int maxSamples) {
+        this.userIds = new int[maxSamples];
+        this.movieIds = new int[maxSamples];
+    }
+
+    /**
+     * 从评分文件采样
+     */
+    public static SplitPlanner sampleRatingsFile(RatingsReader reader, int maxSamples, int batchSize) throws IOException {
+        SplitPlanner planner = new SplitPlanner(maxSamples);
+        try {
+            reader.read(() -> new RatingBatch(batchSize), batch -> {
+                synchronized (planner) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        planner.offer(batch.userId(i), batch.movieId(i));
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("采样评分文件被中断", e);
+        }
+        logger.info("从评分文件采样 {} / {} 条", planner.size, planner.seen);
+        return planner;
+    }
+
+    /**
+     * 从已有的评分表（行键 userId + movieId）采样，按该表自身的存储格式解码
+     * @param chance 每行被服务端 RandomRowFilter 选中的概率
+     */
+    public static SplitPlanner sampleRatingsTable(Connection connection, TableName ratingsTable,
+                                                  int maxSamples, float chance) throws IOException {
+        RatingsSchema schema = RatingsSchema.forTable(connection, ratingsTable);
+        SplitPlanner planner = new SplitPlanner(maxSamples);
+
+        Scan scan = new Scan();
+        scan.setFilter(new FilterList(new RandomRowFilter(chance), new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+        scan.setCaching(1000);
+        scan.setCacheBlocks(false);
+        try (Table table = connection.getTable(ratingsTable);
+             ResultScanner scanner = table.getScanner(scan)) {
+            for (Result result : scanner) {
+                byte[] row = result.getRow();
+                planner.offer(schema.firstId(row), schema.secondId(row));
+            }
+        }
+        logger.info("从表 [{}] 采样 {} 条", ratingsTable, planner.size);
+        return planner;
+    }
+
+    private void offer(int userId, int movieId) {
+        seen++;
+        int slot;
+        if (size < userIds.length) {
+            slot = size++;
+        } else {
+            long r = (long) (random.nextDouble() * seen);
+            if (r >= userIds.length) {
+                return;
+            }
+            slot = (int) r;
+        }
+        userIds[slot] = userId;
+        movieIds[slot] = movieId;
+    }
+
+    /**
+     * 评分表（userId + movieId）的分裂点
+     */
+    public byte[][] ratingsSplitKeys(RatingsSchema schema, int regions) {
+        return splitKeys(schema, regions, false);
+    }
+
+    /**
+     * 索引表（movieId + userId）的分裂点
+     */
+    public byte[][] indexSplitKeys(RatingsSchema schema, int regions) {
+        return splitKeys(schema, regions, true);
+    }
+
+    private byte[][] splitKeys(RatingsSchema schema, int regions, boolean movieFirst) {
+        if (regions <= 1 || size == 0) {
+            return null;
+        }
+        byte[] buf = new byte[schema.maxRowKeyLength()];
+        byte[][] prefixes = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            int first = movieFirst ? movieIds[i] : userIds[i];
+            int second = movieFirst ? userIds[i] : movieIds[i];
+            schema.writeRowKey(buf, first, second);
+            int bucket = schema.saltLength() > 0 ? buf[0] & 0xFF : 0;
+            prefixes[i] = schema.prefix(bucket, first);
+        }
+        Arrays.sort(prefixes, Bytes.BYTES_COMPARATOR);
+
+        // 等分位点，去掉重复值（热门主ID占多个分位时合并）
+        List<byte[]> splits = new ArrayList<>(regions - 1);
+        for (int r = 1; r < regions; r++) {
+            byte[] candidate = prefixes[(int) ((long) r * size / regions)];
+            if (splits.isEmpty() || Bytes.compareTo(splits.get(splits.size() - 1), candidate) < 0) {
+                splits.add(candidate);
+            }
+        }
+        // 第一个 Region 的起始键为空，分裂点不能是最小值本身
+        if (!splits.isEmpty() && Bytes.equals(splits.get(0), prefixes[0])) {
+            splits.remove(0);
+        }
+        logger.info("{} 计划分裂点 {} 个（目标 {} 个Region，存储格式 {}）",
+                movieFirst ? "索引表" : "评分表", splits.size(), regions, schema);
+        return splits.toArray(new byte[0][]);
+    }
+}
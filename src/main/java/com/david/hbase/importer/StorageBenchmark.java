@@ -0,0 +1,157 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.schema.RatingsSchema;
+import org.apache.hadoop.hbase.RegionMetrics;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.Size;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.RandomRowFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 存储配置的效果对比：统计评分表/索引表的存储大小（压缩前后、StoreFile 数），
+ * 并对随机采样的行测量单行 Get 和按主ID前缀扫描的延迟（p50 / p95 / p99）。
+ * 在修改存储模板（{@link StorageProfile}）并 major compaction 前后各执行一次，对比两次的输出。
+ *
+ * 先按采样的行各执行一次（冷，部分块需要从 HDFS 读取），再重复 rounds 轮（热，块缓存命中）。
+ */
+public class StorageBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(StorageBenchmark.class);
+
+    private final Connection connection;
+    private final int samples;
+    private final int rounds;
+
+    public StorageBenchmark(Connection connection, int samples, int rounds) {
+        this.connection = connection;
+        this.samples = samples;
+        this.rounds = Math.max(1, rounds);
+    }
+
+    /**
+     * 对一张评分表/索引表执行对比测试并输出结果
+     */
+    public void run(String table) throws IOException {
+        TableName tableName = TableName.valueOf(table);
+        RatingsSchema schema = RatingsSchema.forTable(connection, tableName);
+        reportSize(tableName);
+
+        List<byte[]> rows = sampleRows(tableName);
+        if (rows.isEmpty()) {
+            logger.warn("[{}] 没有数据，跳过延迟测试", table);
+            return;
+        }
+        try (Table t = connection.getTable(tableName)) {
+            long[] gets = new long[rows.size()];
+            long[] scans = new long[rows.size()];
+            long scannedRows = 0;
+            for (int round = 0; round <= rounds; round++) {
+                for (int i = 0; i < rows.size(); i++) {
+                    long start = System.nanoTime();
+                    t.get(new Get(rows.get(i)));
+                    gets[i] = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    scannedRows += prefixScan(t, schema, schema.firstId(rows.get(i)));
+                    scans[i] = System.nanoTime() - start;
+                }
+                String phase = round == 0 ? "冷" : "热 " + round + "/" + rounds;
+                logger.info("[{}] {}：Get {}；前缀扫描 {}（平均每次 {} 行）", table, phase,
+                        percentiles(gets), percentiles(scans), scannedRows / rows.size());
+                scannedRows = 0;
+            }
+        }
+    }
+
+    private void reportSize(TableName tableName) throws IOException {
+        long storeBytes = 0;
+        long uncompressedBytes = 0;
+        int storeFiles = 0;
+        int regions = 0;
+        try (Admin admin = connection.getAdmin()) {
+            for (ServerName server : admin.getRegionServers()) {
+                for (RegionMetrics region : admin.getRegionMetrics(server, tableName)) {
+                    storeBytes += (long) region.getStoreFileSize().get(Size.Unit.BYTE);
+                    uncompressedBytes += (long) region.getUncompressedStoreFileSize().get(Size.Unit.BYTE);
+                    storeFiles += region.getStoreFileCount();
+                    regions++;
+                }
+            }
+            for (ColumnFamilyDescriptor family : admin.getDescriptor(tableName).getColumnFamilies()) {
+                logger.info("[{}] 列族 {}：BLOOM={} ENCODING={} COMPRESSION={} BLOCKSIZE={}",
+                        tableName, family.getNameAsString(), family.getBloomFilterType(),
+                        family.getDataBlockEncoding(), family.getCompressionType(), family.getBlocksize());
+            }
+        }
+        logger.info("[{}] 存储大小 {} MB（压缩前 {} MB），{} 个 StoreFile，{} 个Region（未 flush 的 MemStore 不计入）",
+                tableName, storeBytes >> 20, uncompressedBytes >> 20, storeFiles, regions);
+    }
+
+    /**
+     * 随机采样 samples 行的行键（只取行键，不读列值）
+     */
+    private List<byte[]> sampleRows(TableName tableName) throws IOException {
+        long totalRows = estimateRows(tableName);
+        float chance = totalRows <= 0 ? 1f : Math.min(1f, samples * 2f / totalRows);
+        Scan scan = new Scan()
+                .setFilter(new FilterList(new RandomRowFilter(chance), new FirstKeyOnlyFilter(), new KeyOnlyFilter()))
+                .setCaching(1000)
+                .setCacheBlocks(false)
+                .setLimit(samples);
+        List<byte[]> rows = new ArrayList<>(samples);
+        try (Table t = connection.getTable(tableName); ResultScanner scanner = t.getScanner(scan)) {
+            for (Result result : scanner) {
+                rows.add(result.getRow());
+            }
+        }
+        return rows;
+    }
+
+    private long estimateRows(TableName tableName) throws IOException {
+        long rows = 0;
+        try (Admin admin = connection.getAdmin()) {
+            for (ServerName server : admin.getRegionServers()) {
+                for (RegionMetrics region : admin.getRegionMetrics(server, tableName)) {
+                    // 评分表每行约 30~40 字节（压缩前）
+                    rows += (long) region.getUncompressedStoreFileSize().get(Size.Unit.BYTE) / 32;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static long prefixScan(Table table, RatingsSchema schema, int first) throws IOException {
+        long rows = 0;
+        for (byte[] prefix : schema.prefixes(first)) {
+            try (ResultScanner scanner = table.getScanner(new Scan().setStartStopRowForPrefixScan(prefix).setCaching(1000))) {
+                for (Result ignored : scanner) {
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %.2f ms / p95 %.2f ms / p99 %.2f ms",
+                sorted[percentileIndex(sorted.length, 0.50)] / 1e6,
+                sorted[percentileIndex(sorted.length, 0.95)] / 1e6,
+                sorted[percentileIndex(sorted.length, 0.99)] / 1e6);
+    }
+
+    private static int percentileIndex(int n, double p) {
+        return Math.min(n - 1, (int) Math.ceil(p * n) - 1);
+    }
+}
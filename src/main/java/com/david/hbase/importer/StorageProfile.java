@@ -0,0 +1,195 @@
+package com.david.hbase.importer;
+
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * 表的存储配置模板（列族属性）：Bloom 过滤器、数据块编码、压缩算法、块大小、块缓存、TTL、版本数。
+ * 在配置文件中声明：
+ *   storage.profile.&lt;模板名&gt;.bloom / encoding / compression / block.size / block.cache /
+ *                            in.memory / prefetch / ttl.seconds / versions / bloom.prefix.length
+ *   storage.table.&lt;表名&gt; = &lt;模板名&gt;（未指定的表使用 default 模板，none 表示不修改任何属性）
+ * 未配置的属性保持 HBase 的默认值。建表时应用到每个列族；已有的表通过 {@link #apply} 计算出新的列族描述，
+ * 由 {@link HBaseDataImporter#applyStorageProfiles()} 在线修改（modifyColumnFamily）。
+ */
+public final class StorageProfile {
+    public static final StorageProfile NONE = new StorageProfile("none");
+    private static final String PROFILE_PREFIX = "storage.profile.";
+    private static final String TABLE_PREFIX = "storage.table.";
+    // ROWPREFIX_FIXED_LENGTH 类型的 Bloom 过滤器使用的前缀长度（列族配置项）
+    private static final String BLOOM_PREFIX_LENGTH_KEY = "RowPrefixBloomFilter.prefix_length";
+
+    private final String name;
+    private BloomType bloom;
+    private Integer bloomPrefixLength;
+    private DataBlockEncoding encoding;
+    private Compression.Algorithm compression;
+    private Integer blockSize;
+    private Boolean blockCache;
+    private Boolean inMemory;
+    private Boolean prefetch;
+    private Integer ttlSeconds;
+    private Integer versions;
+
+    private StorageProfile(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 读取表使用的模板；表和 default 都没有配置时返回 {@link #NONE}
+     */
+    public static StorageProfile forTable(Properties props, String tableName) {
+        String name = props.getProperty(TABLE_PREFIX + tableName, "default").trim();
+        if (NONE.name.equals(name)) {
+            return NONE;
+        }
+        StorageProfile profile = parse(props, name);
+        if (profile == null && !props.containsKey(TABLE_PREFIX + tableName)) {
+            return NONE;
+        }
+        if (profile == null) {
+            throw new IllegalArgumentException("表 [" + tableName + "] 使用的存储模板 [" + name + "] 未配置");
+        }
+        return profile;
+    }
+
+    private static StorageProfile parse(Properties props, String name) {
+        String prefix = PROFILE_PREFIX + name + ".";
+        if (props.stringPropertyNames().stream().noneMatch(key -> key.startsWith(prefix))) {
+            return null;
+        }
+        StorageProfile p = new StorageProfile(name);
+        String value;
+        if ((value = get(props, prefix + "bloom")) != null) {
+            p.bloom = BloomType.valueOf(value.toUpperCase(Locale.ROOT));
+        }
+        if ((value = get(props, prefix + "bloom.prefix.length")) != null) {
+            p.bloomPrefixLength = Integer.parseInt(value);
+        }
+        if ((value = get(props, prefix + "encoding")) != null) {
+            p.encoding = DataBlockEncoding.valueOf(value.toUpperCase(Locale.ROOT));
+        }
+        if ((value = get(props, prefix + "compression")) != null) {
+            p.compression = Compression.getCompressionAlgorithmByName(value.toLowerCase(Locale.ROOT));
+        }
+        if ((value = get(props, prefix + "block.size")) != null) {
+            p.blockSize = Integer.parseInt(value);
+        }
+        if ((value = get(props, prefix + "block.cache")) != null) {
+            p.blockCache = Boolean.parseBoolean(value);
+        }
+        if ((value = get(props, prefix + "in.memory")) != null) {
+            p.inMemory = Boolean.parseBoolean(value);
+        }
+        if ((value = get(props, prefix + "prefetch")) != null) {
+            p.prefetch = Boolean.parseBoolean(value);
+        }
+        if ((value = get(props, prefix + "ttl.seconds")) != null) {
+            p.ttlSeconds = Integer.parseInt(value);
+        }
+        if ((value = get(props, prefix + "versions")) != null) {
+            p.versions = Integer.parseInt(value);
+        }
+        if (p.bloom == BloomType.ROWPREFIX_FIXED_LENGTH && p.bloomPrefixLength == null) {
+            throw new IllegalArgumentException("存储模板 [" + name + "] 的 ROWPREFIX_FIXED_LENGTH 需要配置 bloom.prefix.length");
+        }
+        return p;
+    }
+
+    private static String get(Properties props, String key) {
+        String value = props.getProperty(key);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * 在 base 的基础上应用模板中配置的属性，返回新的列族描述
+     */
+    public ColumnFamilyDescriptor apply(ColumnFamilyDescriptor base) {
+        ColumnFamilyDescriptorBuilder builder = ColumnFamilyDescriptorBuilder.newBuilder(base);
+        if (bloom != null) {
+            builder.setBloomFilterType(bloom);
+        }
+        if (bloomPrefixLength != null) {
+            builder.setConfiguration(BLOOM_PREFIX_LENGTH_KEY, String.valueOf(bloomPrefixLength));
+        }
+        if (encoding != null) {
+            builder.setDataBlockEncoding(encoding);
+        }
+        if (compression != null) {
+            builder.setCompressionType(compression);
+        }
+        if (blockSize != null) {
+            builder.setBlocksize(blockSize);
+        }
+        if (blockCache != null) {
+            builder.setBlockCacheEnabled(blockCache);
+        }
+        if (inMemory != null) {
+            builder.setInMemory(inMemory);
+        }
+        if (prefetch != null) {
+            builder.setPrefetchBlocksOnOpen(prefetch);
+        }
+        if (ttlSeconds != null) {
+            builder.setTimeToLive(ttlSeconds);
+        }
+        if (versions != null) {
+            builder.setMaxVersions(versions);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 当前列族与模板不一致的属性（“属性: 当前值 -> 模板值”），一致时返回空列表
+     */
+    public List<String> differences(ColumnFamilyDescriptor current) {
+        ColumnFamilyDescriptor target = apply(current);
+        List<String> diffs = new ArrayList<>();
+        diff(diffs, "BLOOMFILTER", current.getBloomFilterType(), target.getBloomFilterType());
+        diff(diffs, BLOOM_PREFIX_LENGTH_KEY, current.getConfigurationValue(BLOOM_PREFIX_LENGTH_KEY),
+                target.getConfigurationValue(BLOOM_PREFIX_LENGTH_KEY));
+        diff(diffs, "DATA_BLOCK_ENCODING", current.getDataBlockEncoding(), target.getDataBlockEncoding());
+        diff(diffs, "COMPRESSION", current.getCompressionType(), target.getCompressionType());
+        diff(diffs, "BLOCKSIZE", current.getBlocksize(), target.getBlocksize());
+        diff(diffs, "BLOCKCACHE", current.isBlockCacheEnabled(), target.isBlockCacheEnabled());
+        diff(diffs, "IN_MEMORY", current.isInMemory(), target.isInMemory());
+        diff(diffs, "PREFETCH_BLOCKS_ON_OPEN", current.isPrefetchBlocksOnOpen(), target.isPrefetchBlocksOnOpen());
+        diff(diffs, "TTL", current.getTimeToLive(), target.getTimeToLive());
+        diff(diffs, "VERSIONS", current.getMaxVersions(), target.getMaxVersions());
+        return diffs;
+    }
+
+    private static void diff(List<String> diffs, String attribute, Object current, Object target) {
+        if (!Objects.equals(current, target)) {
+            diffs.add(attribute + ": " + current + " -> " + target);
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        if (bloom != null) parts.add("bloom=" + bloom + (bloomPrefixLength != null ? "(" + bloomPrefixLength + ")" : ""));
+        if (encoding != null) parts.add("encoding=" + encoding);
+        if (compression != null) parts.add("compression=" + compression.getName());
+        if (blockSize != null) parts.add("blockSize=" + blockSize);
+        if (blockCache != null) parts.add("blockCache=" + blockCache);
+        if (inMemory != null) parts.add("inMemory=" + inMemory);
+        if (prefetch != null) parts.add("prefetch=" + prefetch);
+        if (ttlSeconds != null) parts.add("ttl=" + ttlSeconds + "s");
+        if (versions != null) parts.add("versions=" + versions);
+        return name + parts;
+    }
+}
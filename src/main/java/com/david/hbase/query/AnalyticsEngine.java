@@ -0,0 +1,478 @@
+package com.david.hbase.query;
+
+import com.david.hbase.schema.AnalyticsSnapshotFormat;
+import com.david.hbase.schema.ColumnFile;
+import com.david.hbase.schema.RatingsSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.david.hbase.importer.HBaseDataImporter.getProperty;
+import static com.david.hbase.schema.AnalyticsSnapshotFormat.*;
+
+/**
+ * 分析查询：读取 AnalyticsExportJob 导出的本地列式快照（见 {@link AnalyticsSnapshotFormat}），
+ * 按评分年份、评分、类型、上映年份中的 0~2 个维度分组，计算每组的评分条数和平均分，不访问 HBase。
+ *
+ * 快照整体载入堆内的原始类型数组（评分、年份各 1 字节/条）。聚合按电影切段交给 ForkJoin 并行，
+ * 每个线程有自己的计数/求和数组，最后合并，线程之间不共享可写数据：
+ *   评分级的维度（年份、评分）在每部电影的评分段内逐条累加到一个小直方图，循环体只有数组读和加法，
+ *   不分组时退化为对评分列求和，JIT 可以自动向量化；
+ *   电影级的维度（类型、上映年份）不逐条展开，整部电影的直方图一次加到它所属的每个组（一部电影可以有多个类型）。
+ * 快照文件更新（snapshot.properties 的修改时间变化）后，下一次查询重新载入；同一快照上的查询结果按分组维度缓存。
+ */
+public final class AnalyticsEngine {
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsEngine.class);
+    private static final Path DIR = Paths.get(getProperty("analytics.snapshot.dir", "analytics-snapshot"));
+    private static final int THREADS = threads(getProperty("analytics.threads", "0"));
+    // 每个线程分到的段数：各电影的评分条数差别很大，多切几段让线程之间负载均衡
+    private static final int SPLITS_PER_THREAD = 8;
+    private static final ForkJoinPool POOL = new ForkJoinPool(THREADS);
+    private static final int MAX_DIMENSIONS = 2;
+
+    private static final Object loadLock = new Object();
+    private static volatile Snapshot snapshot;
+
+    private AnalyticsEngine() {
+    }
+
+    /**
+     * 分组维度：评分级（每条评分一个值）或电影级（同一电影的评分相同，类型可以有多个）
+     */
+    public enum Dimension {
+        YEAR("year", false),
+        RATING("rating", false),
+        GENRE("genre", true),
+        RELEASE_YEAR("releaseYear", true);
+
+        private final String param;
+        private final boolean perMovie;
+
+        Dimension(String param, boolean perMovie) {
+            this.param = param;
+            this.perMovie = perMovie;
+        }
+
+        public String param() {
+            return param;
+        }
+
+        static Dimension parse(String value) {
+            for (Dimension d : values()) {
+                if (d.param.equalsIgnoreCase(value)) {
+                    return d;
+                }
+            }
+            throw new IllegalArgumentException("不支持的分组维度：" + value + "（可用：year / rating / genre / releaseYear）");
+        }
+    }
+
+    /**
+     * 启动时预加载快照；快照还没有导出时返回 false（分析接口返回 404，导出后自动载入）
+     */
+    public static boolean preload() throws IOException {
+        return current() != null;
+    }
+
+    /**
+     * groupBy 为逗号分隔的维度（为空时只统计总数），快照不存在时返回 null；维度无效时抛出 IllegalArgumentException
+     */
+    public static Map<String, Object> query(String groupBy) throws IOException {
+        List<Dimension> dimensions = parseGroupBy(groupBy);
+        Snapshot s = current();
+        if (s == null) {
+            return null;
+        }
+        String key = String.join(",", dimensions.stream().map(Dimension::param).toList());
+        Map<String, Object> cached = s.results.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Map<String, Object> result = s.aggregate(dimensions);
+        s.results.putIfAbsent(key, result);
+        return result;
+    }
+
+    /**
+     * 直接读取 dir 中的快照并聚合，不经过当前快照和结果缓存
+     */
+    static Map<String, Object> aggregate(Path dir, String groupBy) throws IOException {
+        List<Dimension> dimensions = parseGroupBy(groupBy);
+        return Snapshot.load(dir, FileTime.fromMillis(0)).aggregate(dimensions);
+    }
+
+    static List<Dimension> parseGroupBy(String groupBy) {
+        List<Dimension> dimensions = new ArrayList<>();
+        if (groupBy == null || groupBy.isBlank()) {
+            return dimensions;
+        }
+        for (String part : groupBy.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            Dimension d = Dimension.parse(part.trim());
+            if (dimensions.contains(d)) {
+                throw new IllegalArgumentException("分组维度重复：" + d.param);
+            }
+            dimensions.add(d);
+        }
+        if (dimensions.size() > MAX_DIMENSIONS) {
+            throw new IllegalArgumentException("最多按 " + MAX_DIMENSIONS + " 个维度分组");
+        }
+        return dimensions;
+    }
+
+    /**
+     * 当前快照：清单文件的修改时间变化时重新载入；清单文件不存在（还没有导出，或正在替换目录）时沿用已载入的快照
+     */
+    private static Snapshot current() throws IOException {
+        Path manifest = DIR.resolve(MANIFEST);
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(manifest);
+        } catch (NoSuchFileException e) {
+            return snapshot;
+        }
+        Snapshot s = snapshot;
+        if (s != null && s.modified.equals(modified)) {
+            return s;
+        }
+        synchronized (loadLock) {
+            s = snapshot;
+            if (s != null && s.modified.equals(modified)) {
+                return s;
+            }
+            try {
+                s = Snapshot.load(DIR, modified);
+            } catch (NoSuchFileException e) {
+                logger.warn("分析快照正在替换，沿用已载入的快照：{}", e.getMessage());
+                return snapshot;
+            }
+            snapshot = s;
+            return s;
+        }
+    }
+
+    private static int threads(String value) {
+        int n = Integer.parseInt(value);
+        return n > 0 ? n : Runtime.getRuntime().availableProcessors();
+    }
+
+    // --- 快照 ---
+
+    private static final class Snapshot {
+        final FileTime modified;
+        final long exportedAt;
+        final int rows;
+        final int movies;
+        final int[] offsets;
+        final byte[] ratings;
+        final byte[] years;
+        final String[] yearDictionary;
+        final long[] genreMasks;
+        final String[] genres;
+        final int[] releaseYears;
+        final String[] releaseYearDictionary;
+        final Map<String, Map<String, Object>> results = new ConcurrentHashMap<>();
+
+        private Snapshot(FileTime modified, Properties manifest, ColumnFile rating, ColumnFile year,
+                         ColumnFile offset, ColumnFile genre, ColumnFile releaseYear) {
+            this.modified = modified;
+            this.exportedAt = Long.parseLong(manifest.getProperty(EXPORTED_AT, "0"));
+            this.ratings = rating.bytes();
+            this.rows = ratings.length;
+            this.years = year.bytes();
+            this.yearDictionary = year.dictionary();
+            this.offsets = offset.ints();
+            this.movies = offsets.length - 1;
+            this.genreMasks = genre.longs();
+            this.genres = genre.dictionary();
+            this.releaseYears = releaseYear.ints();
+            this.releaseYearDictionary = releaseYear.dictionary();
+        }
+
+        static Snapshot load(Path dir, FileTime modified) throws IOException {
+            long start = System.currentTimeMillis();
+            Properties manifest = new Properties();
+            try (InputStream in = Files.newInputStream(dir.resolve(MANIFEST))) {
+                manifest.load(in);
+            }
+            Snapshot s = new Snapshot(modified, manifest,
+                    ColumnFile.read(dir.resolve(RATING)),
+                    ColumnFile.read(dir.resolve(RATING_YEAR)),
+                    ColumnFile.read(dir.resolve(MOVIE_OFFSET)),
+                    ColumnFile.read(dir.resolve(MOVIE_GENRES)),
+                    ColumnFile.read(dir.resolve(MOVIE_RELEASE_YEAR)));
+            if (s.offsets[s.movies] != s.rows || s.years.length != s.rows) {
+                throw new IOException("分析快照的列长度不一致：" + dir);
+            }
+            logger.info("分析快照载入完成：{} 条评分，{} 部电影，耗时 {} ms",
+                    s.rows, s.movies, System.currentTimeMillis() - start);
+            return s;
+        }
+
+        int cardinality(Dimension d) {
+            return switch (d) {
+                case YEAR -> yearDictionary.length;
+                case RATING -> RATING_LEVELS;
+                case GENRE -> genres.length;
+                case RELEASE_YEAR -> releaseYearDictionary.length;
+            };
+        }
+
+        String label(Dimension d, int code) {
+            return switch (d) {
+                case YEAR -> yearDictionary[code];
+                case RATING -> RatingsSchema.formatRatingX2(code);
+                case GENRE -> genres[code];
+                case RELEASE_YEAR -> releaseYearDictionary[code];
+            };
+        }
+
+        Map<String, Object> aggregate(List<Dimension> dimensions) {
+            long start = System.currentTimeMillis();
+            Layout layout = new Layout(this, dimensions);
+
+            // 按评分条数把电影切成若干段，每段一个任务
+            int parts = Math.max(1, Math.min(movies, THREADS * SPLITS_PER_THREAD));
+            List<Callable<Partial>> tasks = new ArrayList<>(parts);
+            int from = 0;
+            for (int p = 1; p <= parts; p++) {
+                int to = p == parts ? movies : movieAtRow((long) rows * p / parts);
+                if (to > from) {
+                    int m0 = from;
+                    int m1 = to;
+                    tasks.add(() -> aggregate(layout, m0, m1));
+                }
+                from = Math.max(from, to);
+            }
+            long[] count = new long[layout.cells];
+            long[] sum = new long[layout.cells];
+            try {
+                for (Future<Partial> future : POOL.invokeAll(tasks)) {
+                    Partial partial = future.get();
+                    for (int c = 0; c < layout.cells; c++) {
+                        count[c] += partial.count[c];
+                        sum[c] += partial.sum[c];
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("分析查询被中断", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("分析查询失败", e.getCause());
+            }
+
+            List<Map<String, Object>> groups = layout.groups(this, count, sum);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("groupBy", dimensions.stream().map(Dimension::param).toList());
+            result.put("exportedAt", exportedAt);
+            result.put("ratings", rows);
+            result.put("groups", groups);
+            logger.debug("分析查询 {}：{} 组，{} 个任务，耗时 {} ms",
+                    dimensions, groups.size(), tasks.size(), System.currentTimeMillis() - start);
+            return result;
+        }
+
+        /**
+         * 第 row 条评分所在电影的下标（offsets 中最后一个不大于 row 的位置）
+         */
+        private int movieAtRow(long row) {
+            int lo = 0;
+            int hi = movies;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (offsets[mid] <= row) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return Math.min(movies, lo);
+        }
+
+        /**
+         * 一段电影 [m0, m1) 的聚合
+         */
+        private Partial aggregate(Layout layout, int m0, int m1) {
+            Partial out = new Partial(layout.cells);
+            long[] histCount = new long[layout.rowCells];
+            long[] histSum = new long[layout.rowCells];
+            int[] movieKeys = new int[Math.max(1, genres.length)];
+            for (int m = m0; m < m1; m++) {
+                int from = offsets[m];
+                int to = offsets[m + 1];
+                if (from == to) {
+                    continue;
+                }
+                int keys = layout.movieKeys(this, m, movieKeys);
+                if (keys == 0) {
+                    continue;
+                }
+                rowHistogram(layout, from, to, histCount, histSum);
+                for (int k = 0; k < keys; k++) {
+                    int base = movieKeys[k] * layout.rowCells;
+                    for (int c = 0; c < layout.rowCells; c++) {
+                        out.count[base + c] += histCount[c];
+                        out.sum[base + c] += histSum[c];
+                    }
+                }
+                Arrays.fill(histCount, 0);
+                Arrays.fill(histSum, 0);
+            }
+            return out;
+        }
+
+        /**
+         * 一部电影的评分段 [from, to) 按评分级维度累加到直方图
+         */
+        private void rowHistogram(Layout layout, int from, int to, long[] histCount, long[] histSum) {
+            byte[] r = ratings;
+            byte[] y = years;
+            if (layout.rowCells == 1) {
+                long s = 0;
+                for (int i = from; i < to; i++) {
+                    s += r[i];
+                }
+                histCount[0] = to - from;
+                histSum[0] = s;
+            } else if (layout.ratingStride == 0) {
+                for (int i = from; i < to; i++) {
+                    int k = y[i] & 0xFF;
+                    histCount[k]++;
+                    histSum[k] += r[i];
+                }
+            } else {
+                // 按评分分组时，组内的评分都相同，总和 = 条数 × 半星数
+                int yearStride = layout.yearStride;
+                int ratingStride = layout.ratingStride;
+                for (int i = from; i < to; i++) {
+                    histCount[(y[i] & 0xFF) * yearStride + r[i] * ratingStride]++;
+                }
+                for (int k = 0; k < histCount.length; k++) {
+                    histSum[k] = histCount[k] * ((k / ratingStride) % RATING_LEVELS);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个任务的结果
+     */
+    private static final class Partial {
+        final long[] count;
+        final long[] sum;
+
+        Partial(int cells) {
+            count = new long[cells];
+            sum = new long[cells];
+        }
+    }
+
+    /**
+     * 组号的编排：组号 = 电影级组号 × 评分级组数 + 评分级组号，每一级内按维度顺序行优先
+     */
+    private static final class Layout {
+        final List<Dimension> dimensions;
+        final int rowCells;
+        final int cells;
+        final int yearStride;
+        final int ratingStride;
+        final int genreStride;
+        final int releaseYearStride;
+        // 各维度在完整组号中的步长（按 dimensions 顺序）
+        final int[] strides;
+        final int[] cardinalities;
+
+        Layout(Snapshot s, List<Dimension> dimensions) {
+            this.dimensions = dimensions;
+            Map<Dimension, Integer> local = new EnumMap<>(Dimension.class);
+            int rowCells = 1;
+            int movieCells = 1;
+            for (int i = dimensions.size() - 1; i >= 0; i--) {
+                Dimension d = dimensions.get(i);
+                if (d.perMovie) {
+                    local.put(d, movieCells);
+                    movieCells *= s.cardinality(d);
+                } else {
+                    local.put(d, rowCells);
+                    rowCells *= s.cardinality(d);
+                }
+            }
+            this.rowCells = rowCells;
+            this.cells = Math.multiplyExact(rowCells, movieCells);
+            this.yearStride = local.getOrDefault(Dimension.YEAR, 0);
+            this.ratingStride = local.getOrDefault(Dimension.RATING, 0);
+            this.genreStride = local.getOrDefault(Dimension.GENRE, 0);
+            this.releaseYearStride = local.getOrDefault(Dimension.RELEASE_YEAR, 0);
+            this.strides = new int[dimensions.size()];
+            this.cardinalities = new int[dimensions.size()];
+            for (int i = 0; i < dimensions.size(); i++) {
+                Dimension d = dimensions.get(i);
+                strides[i] = d.perMovie ? local.get(d) * rowCells : local.get(d);
+                cardinalities[i] = s.cardinality(d);
+            }
+        }
+
+        /**
+         * 电影 m 所属的电影级组号，写入 keys，返回个数（按类型分组时，没有类型的电影不属于任何组）
+         */
+        int movieKeys(Snapshot s, int m, int[] keys) {
+            int base = s.releaseYears[m] * releaseYearStride;
+            if (genreStride == 0) {
+                keys[0] = base;
+                return 1;
+            }
+            int n = 0;
+            for (long mask = s.genreMasks[m]; mask != 0; mask &= mask - 1) {
+                keys[n++] = base + Long.numberOfTrailingZeros(mask) * genreStride;
+            }
+            return n;
+        }
+
+        /**
+         * 非空的组，按维度顺序、字典顺序排列
+         */
+        List<Map<String, Object>> groups(Snapshot s, long[] count, long[] sum) {
+            List<int[]> codes = new ArrayList<>();
+            for (int c = 0; c < cells; c++) {
+                if (count[c] == 0) {
+                    continue;
+                }
+                int[] code = new int[dimensions.size() + 1];
+                for (int i = 0; i < dimensions.size(); i++) {
+                    code[i] = (c / strides[i]) % cardinalities[i];
+                }
+                code[dimensions.size()] = c;
+                codes.add(code);
+            }
+            codes.sort(Arrays::compare);
+
+            List<Map<String, Object>> groups = new ArrayList<>(codes.size());
+            for (int[] code : codes) {
+                int c = code[dimensions.size()];
+                Map<String, Object> group = new LinkedHashMap<>();
+                for (int i = 0; i < dimensions.size(); i++) {
+                    group.put(dimensions.get(i).param(), s.label(dimensions.get(i), code[i]));
+                }
+                group.put("count", count[c]);
+                group.put("avgRating", Math.round(sum[c] * 10000.0 / (2.0 * count[c])) / 10000.0);
+                groups.add(group);
+            }
+            return groups;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.david.hbase.query;
+
+import com.david.hbase.schema.GenreIndexFormat;
+import com.david.hbase.schema.RatingStatsFormat;
+import com.david.hbase.schema.RatingsSchema;
+import com.david.hbase.schema.SimilarityFormat;
+import com.david.hbase.schema.TimeIndexFormat;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.david.hbase.importer.HBaseDataImporter.*;
+
+/**
+ * 基于 AsyncConnection / AsyncTable 的非阻塞查询，所有方法返回 CompletableFuture。
+ * 相互独立的 RPC 同时发出：按标题查评分时，标题 -> movieId 的 Get 与读取索引表存储格式并行；
+ * 加盐表的各个桶也是同时扫描，而不是依次打开扫描器。
+ *
+ * 只在分页（有上限）的查询中使用 scanAll；不限条数的全量/流式查询仍走 {@link HBaseQueryer}，
+ * 由虚拟线程承载阻塞调用。AsyncTable 是轻量对象，不需要关闭。
+ */
+public final class AsyncHBaseQueryer {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncHBaseQueryer.class);
+
+    // 运行阻塞代码（标题字典的批量补齐、全量查询）的虚拟线程
+    private static final ExecutorService BLOCKING = Executors.newVirtualThreadPerTaskExecutor();
+
+    private AsyncHBaseQueryer() {
+    }
+
+    private static AsyncTable<AdvancedScanResultConsumer> table(String name) {
+        return getAsyncConnection().getTable(TableName.valueOf(name));
+    }
+
+    // 计时的单行 Get
+    private static CompletableFuture<Result> get(String tableName, Get get) {
+        return QueryMetrics.time(tableName, QueryMetrics.Op.GET, table(tableName).get(get));
+    }
+
+    /**
+     * 在虚拟线程上执行阻塞查询
+     */
+    public static <T> CompletableFuture<T> supplyBlocking(BlockingQuery<T> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return query.call();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, BLOCKING);
+    }
+
+    @FunctionalInterface
+    public interface BlockingQuery<T> {
+        T call() throws IOException;
+    }
+
+    // =======================================================================
+    // 电影详情、movieId
+    // =======================================================================
+    public static CompletableFuture<Map<String, String>> queryMovieDetail(String movieTitle) {
+        if (movieTitle == null || movieTitle.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String title = TitleSearchIndex.resolveTitle(movieTitle.trim());
+        Get get = new Get(Bytes.toBytes(title));
+        get.addFamily(Bytes.toBytes(INFO_CF));
+        return get(MOVIES_INFO_TABLE, get)
+                .thenApply(result -> result.isEmpty() ? null : HBaseQueryer.movieDetail(title, result));
+    }
+
+    /**
+     * 标题 -> movieId：标题索引中有这个标题时不发 RPC，没有时（索引未就绪或电影在索引构建之后导入）查 movies_info
+     */
+    public static CompletableFuture<String> queryMovieId(String exactTitle) {
+        String indexed = TitleSearchIndex.lookupMovieId(exactTitle);
+        if (indexed != null) {
+            return CompletableFuture.completedFuture(indexed);
+        }
+        Get get = new Get(Bytes.toBytes(exactTitle));
+        get.addColumn(Bytes.toBytes(INFO_CF), Bytes.toBytes("movieId"));
+        return get(MOVIES_INFO_TABLE, get).thenApply(result -> result.isEmpty() ? null
+                : Bytes.toString(result.getValue(Bytes.toBytes(INFO_CF), Bytes.toBytes("movieId"))));
+    }
+
+    // =======================================================================
+    // 评分统计、类型排行榜
+    // =======================================================================
+    public static CompletableFuture<Map<String, Object>> queryMovieStats(String movieId) {
+        Integer id = movieId == null ? null : HBaseQueryer.parseId(movieId);
+        if (id == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return getRatingStats(RatingStatsFormat.MOVIE, id).thenApply(stats -> {
+            if (stats != null) {
+                stats.put("movieId", String.valueOf(id));
+            }
+            return stats;
+        });
+    }
+
+    public static CompletableFuture<Map<String, Object>> queryMovieStatsByTitle(String movieTitle) {
+        String title = movieTitle == null ? null : TitleSearchIndex.resolveTitle(movieTitle.trim());
+        if (title == null || title.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return queryMovieId(title)
+                .thenCompose(movieId -> movieId == null ? CompletableFuture.completedFuture(null) : queryMovieStats(movieId))
+                .thenApply(stats -> {
+                    if (stats != null) {
+                        stats.put("movieTitle", title);
+                    }
+                    return stats;
+                });
+    }
+
+    public static CompletableFuture<Map<String, Object>> queryUserStats(String userId) {
+        Integer id = userId == null ? null : HBaseQueryer.parseId(userId);
+        if (id == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return getRatingStats(RatingStatsFormat.USER, id).thenApply(stats -> {
+            if (stats != null) {
+                stats.put("userId", String.valueOf(id));
+            }
+            return stats;
+        });
+    }
+
+    private static CompletableFuture<Map<String, Object>> getRatingStats(byte type, int id) {
+        byte[] family = Bytes.toBytes(STATS_CF);
+        Get get = new Get(RatingStatsFormat.rowKey(type, id));
+        get.addFamily(family);
+        return get(STATS_TABLE, get).thenApply(result -> RatingStatsFormat.decode(result, family));
+    }
+
+    public static CompletableFuture<Map<String, Object>> queryGenreTop(String genre, int limit) {
+        if (genre == null || genre.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String trimmed = genre.trim();
+        Get get = new Get(Bytes.toBytes(trimmed));
+        get.addFamily(GenreIndexFormat.TOP_FAMILY);
+        return get(GENRE_INDEX_TABLE, get).thenApply(result -> HBaseQueryer.genreTop(trimmed, result, limit));
+    }
+
+    // =======================================================================
+    // 分页查询评分
+    // =======================================================================
+
+    /**
+     * 分页查询用户评分：各个桶同时扫描，标题在虚拟线程上批量解析
+     */
+    public static CompletableFuture<RatingsPage> queryUserRatingsPage(String userId, RatingQuery query,
+                                                                      String cursor, int limit) {
+        if (query.isSorted()) {
+            // Top-K 要扫描全部满足条件的行，走阻塞查询
+            return supplyBlocking(() -> HBaseQueryer.queryUserRatingsPage(userId, query, cursor, limit));
+        }
+        Integer userIdValue = userId == null ? null : HBaseQueryer.parseId(userId);
+        if (userIdValue == null) {
+            return CompletableFuture.completedFuture(new RatingsPage(List.of(), null));
+        }
+        byte[] after = HBaseQueryer.decodeCursor(cursor);
+        byte[] family = Bytes.toBytes(SCORE_CF);
+        TableName tableName = TableName.valueOf(RATINGS_DATA_TABLE);
+
+        return RatingsSchema.forTableAsync(getAsyncConnection(), tableName).thenCompose(schema -> {
+            if (query.needsClientFilter(schema)) {
+                return supplyBlocking(() -> HBaseQueryer.queryUserRatingsPage(userId, query, cursor, limit));
+            }
+            return scanPage(tableName, family, schema, query, userIdValue, after, limit)
+                    .thenApplyAsync(rows -> {
+                        // 先取游标：appendUserRatings 会清空传入的页
+                        String next = nextCursor(schema, rows, limit);
+                        List<RatingRecord> items = new ArrayList<>(rows.size());
+                        try {
+                            HBaseQueryer.appendUserRatings(userIdValue,
+                                    new ArrayList<>(rows.subList(0, Math.min(limit, rows.size()))),
+                                    schema, family, query.project(items::add));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        QueryMetrics.recordRows("user_ratings", rows.size(), items.size());
+                        return new RatingsPage(items, next);
+                    }, BLOCKING);
+        });
+    }
+
+    /**
+     * 分页查询电影评分：标题 -> movieId 与索引表存储格式同时获取，再同时扫描各个桶
+     */
+    public static CompletableFuture<RatingsPage> queryMovieRatingsPage(String movieTitle, RatingQuery query,
+                                                                       String cursor, int limit) {
+        if (query.isSorted()) {
+            return supplyBlocking(() -> HBaseQueryer.queryMovieRatingsPage(movieTitle, query, cursor, limit));
+        }
+        String title = movieTitle == null ? null : TitleSearchIndex.resolveTitle(movieTitle.trim());
+        if (title == null || title.isEmpty()) {
+            return CompletableFuture.completedFuture(new RatingsPage(List.of(), null));
+        }
+        byte[] after = HBaseQueryer.decodeCursor(cursor);
+        byte[] family = Bytes.toBytes(REF_CF);
+        TableName tableName = TableName.valueOf(MOVIE_INDEX_TABLE);
+
+        CompletableFuture<String> movieIdFuture = queryMovieId(title);
+        CompletableFuture<RatingsSchema> schemaFuture = RatingsSchema.forTableAsync(getAsyncConnection(), tableName);
+        return movieIdFuture.thenCombine(schemaFuture, (movieId, schema) -> new Object[]{movieId, schema})
+                .thenCompose(pair -> {
+                    String movieId = (String) pair[0];
+                    RatingsSchema schema = (RatingsSchema) pair[1];
+                    Integer movieIdValue = movieId == null ? null : HBaseQueryer.parseId(movieId);
+                    if (movieIdValue == null) {
+                        logger.info("未找到电影 [{}] 的ID，无法查询评分", title);
+                        return CompletableFuture.completedFuture(new RatingsPage(List.of(), null));
+                    }
+                    if (query.needsClientFilter(schema)) {
+                        return supplyBlocking(() -> HBaseQueryer.queryMovieRatingsPage(movieTitle, query, cursor, limit));
+                    }
+                    return scanPage(tableName, family, schema, query, movieIdValue, after, limit).thenApply(rows -> {
+                        List<RatingRecord> items = new ArrayList<>(rows.size());
+                        RatingSink sink = query.project(items::add);
+                        try {
+                            for (int i = 0; i < rows.size() && i < limit; i++) {
+                                sink.accept(HBaseQueryer.movieRating(title, movieIdValue, schema, rows.get(i), family));
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        QueryMetrics.recordRows("movie_ratings", rows.size(), items.size());
+                        return new RatingsPage(items, nextCursor(schema, rows, limit));
+                    });
+                });
+    }
+
+    // =======================================================================
+    // 相似电影：一次 Get，标题在虚拟线程上批量解析
+    // =======================================================================
+    public static CompletableFuture<Map<String, Object>> querySimilarMovies(String movieId, int limit) {
+        Integer id = movieId == null ? null : HBaseQueryer.parseId(movieId);
+        if (id == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Get get = new Get(SimilarityFormat.rowKey(id));
+        get.addFamily(SimilarityFormat.FAMILY);
+        return get(SIMILARITY_TABLE, get).thenApplyAsync(result -> {
+            try {
+                return HBaseQueryer.similarMovies(id, result, limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, BLOCKING);
+    }
+
+    public static CompletableFuture<Map<String, Object>> querySimilarMoviesByTitle(String movieTitle, int limit) {
+        String title = movieTitle == null ? null : TitleSearchIndex.resolveTitle(movieTitle.trim());
+        if (title == null || title.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return queryMovieId(title)
+                .thenCompose(movieId -> movieId == null ? CompletableFuture.completedFuture(null)
+                        : querySimilarMovies(movieId, limit))
+                .thenApply(similar -> {
+                    if (similar != null) {
+                        similar.put("movieTitle", title);
+                    }
+                    return similar;
+                });
+    }
+
+    // =======================================================================
+    // 按时间段查询评分（时间索引表）
+    // =======================================================================
+
+    /**
+     * 查询 [from, to) 秒内提交的评分，按时间戳升序分页返回。
+     * 每个盐桶只扫描 [from, to) 之间的连续行（各桶同时扫描，每桶最多 limit + 1 行），
+     * 再按时间戳归并；cursor 为上一页返回的 nextCursor
+     */
+    public static CompletableFuture<RatingsPage> queryRatingsByTime(long from, long to, String cursor, int limit) {
+        if (from < 0 || from >= to) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("时间范围无效：from 必须小于 to 且不为负数"));
+        }
+        byte[] after = HBaseQueryer.decodeCursor(cursor);
+        TableName tableName = TableName.valueOf(TIME_INDEX_TABLE);
+        return TimeIndexFormat.forTableAsync(getAsyncConnection(), tableName).thenCompose(format -> {
+            if (after != null) {
+                long ts = format.unsaltedTimestamp(after);
+                if (ts < from || ts >= to) {
+                    throw new IllegalArgumentException("游标不属于当前查询");
+                }
+            }
+            AsyncTable<AdvancedScanResultConsumer> table = getAsyncConnection().getTable(tableName);
+            byte[] family = Bytes.toBytes(TIME_INDEX_CF);
+            List<CompletableFuture<List<Result>>> buckets = new ArrayList<>(format.scanBuckets());
+            for (int salt = 0; salt < format.scanBuckets(); salt++) {
+                Scan scan = new Scan();
+                scan.addColumn(family, TimeIndexFormat.RATING);
+                scan.withStopRow(format.timeKey(salt, to), false);
+                if (after != null) {
+                    scan.withStartRow(format.saltedKey(salt, after), false);
+                } else {
+                    scan.withStartRow(format.timeKey(salt, from), true);
+                }
+                scan.setCaching(limit + 1);
+                scan.setLimit(limit + 1);
+                buckets.add(QueryMetrics.time(TIME_INDEX_TABLE, QueryMetrics.Op.SCAN, table.scanAll(scan)));
+            }
+            return CompletableFuture.allOf(buckets.toArray(new CompletableFuture[0])).thenApplyAsync(ignored -> {
+                List<Result> rows = new ArrayList<>();
+                for (CompletableFuture<List<Result>> bucket : buckets) {
+                    rows.addAll(bucket.join());
+                }
+                // 去掉盐桶号后的行键以时间戳开头，按它排序即按时间排序
+                int salt = format.saltLength();
+                rows.sort((a, b) -> Bytes.compareTo(a.getRow(), salt, a.getRow().length - salt,
+                        b.getRow(), salt, b.getRow().length - salt));
+                try {
+                    QueryMetrics.recordRows("ratings_by_time", rows.size(), Math.min(limit, rows.size()));
+                    return timeRatingsPage(format, family, rows, limit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, BLOCKING);
+        });
+    }
+
+    private static RatingsPage timeRatingsPage(TimeIndexFormat format, byte[] family, List<Result> rows,
+                                               int limit) throws IOException {
+        int n = Math.min(limit, rows.size());
+        int[] movieIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            movieIds[i] = format.movieId(rows.get(i).getRow());
+        }
+        String[] titles = MovieTitleCache.resolve(movieIds, n);
+
+        List<RatingRecord> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            byte[] row = rows.get(i).getRow();
+            byte[] rating = rows.get(i).getValue(family, TimeIndexFormat.RATING);
+            items.add(new RatingRecord(format.userId(row), movieIds[i], titles[i],
+                    rating == null ? RatingRecord.NO_RATING : RatingsSchema.V2.decodeRatingX2(rating),
+                    format.timestamp(row)));
+        }
+        String next = rows.size() > limit
+                ? HBaseQueryer.encodeCursor(format.unsaltedKey(rows.get(limit - 1).getRow())) : null;
+        return new RatingsPage(items, next);
+    }
+
+    /**
+     * 每个桶一次 scanAll（每桶最多 limit + 1 行），全部完成后按去掉桶号的行键归并，保留前 limit + 1 行
+     */
+    private static CompletableFuture<List<Result>> scanPage(TableName tableName, byte[] family, RatingsSchema schema,
+                                                            RatingQuery query, int first, byte[] after, int limit) {
+        if (after != null && !Bytes.startsWith(after, schema.unsaltedKey(schema.prefix(0, first)))) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("游标不属于当前查询"));
+        }
+        AsyncTable<AdvancedScanResultConsumer> table = getAsyncConnection().getTable(tableName);
+        Scan template = HBaseQueryer.newRatingsScan(schema, family, query, limit, limit + 1);
+        byte[][] prefixes = schema.prefixes(first);
+        List<CompletableFuture<List<Result>>> buckets = new ArrayList<>(prefixes.length);
+        try {
+            for (int bucket = 0; bucket < prefixes.length; bucket++) {
+                Scan scan = new Scan(template);
+                scan.setStartStopRowForPrefixScan(prefixes[bucket]);
+                if (after != null) {
+                    scan.withStartRow(schema.saltedKey(bucket, after), false);
+                }
+                buckets.add(QueryMetrics.time(tableName.getNameAsString(), QueryMetrics.Op.SCAN, table.scanAll(scan)));
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        int salt = schema.saltLength();
+        return CompletableFuture.allOf(buckets.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<Result> merged = new ArrayList<>();
+            for (CompletableFuture<List<Result>> bucket : buckets) {
+                merged.addAll(bucket.join());
+            }
+            if (buckets.size() > 1) {
+                merged.sort((a, b) -> Bytes.compareTo(a.getRow(), salt, a.getRow().length - salt,
+                        b.getRow(), salt, b.getRow().length - salt));
+            }
+            return merged.size() > limit + 1 ? merged.subList(0, limit + 1) : merged;
+        });
+    }
+
+    private static String nextCursor(RatingsSchema schema, List<Result> rows, int limit) {
+        return rows.size() > limit ? HBaseQueryer.encodeCursor(schema, rows.get(limit - 1)) : null;
+    }
+
+    /**
+     * 去掉 CompletableFuture 包装的异常，得到原始原因
+     */
+    public static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof UncheckedIOException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,193 @@
+package com.david.hbase.query;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static com.david.hbase.importer.HBaseDataImporter.getProperty;
+
+/**
+ * 按接口类型隔离的并发上限（舱壁）：每类查询最多同时执行 limit 个，超出的请求立即以
+ * {@link BulkheadRejectedException} 失败（接口返回 429），不排队等待。
+ * 这样一批长的前缀扫描占满自己的份额后，单行 Get 类的查询仍然可以执行。
+ *
+ * 配置 bulkhead.&lt;名称&gt;.latency.ms 后上限按延迟自适应（AIMD）：
+ *   - 查询耗时超过 latency.ms 或失败时，上限乘以 backoff（每个 latency.ms 周期最多减一次，避免同一批慢查询连续减半）；
+ *   - 否则在并发数达到上限的一半以上时加一，直到 max。
+ * 未配置 latency.ms 时上限固定为 limit。
+ *
+ * 计数同时注册到 Metrics.globalRegistry（标签 bulkhead 为名称）：
+ *   movielens.bulkhead.calls{result}   获得名额（accepted）和被拒绝（rejected）的请求数
+ *   movielens.bulkhead.slow            超过 latency.ms 或失败、触发减小上限判断的查询数
+ *   movielens.bulkhead.limit / in.flight  当前上限、正在执行的查询数
+ */
+public final class Bulkhead {
+    private static final Logger logger = LoggerFactory.getLogger(Bulkhead.class);
+
+    // 单行/少量行的 Get：电影详情、统计、排行榜、相似电影
+    public static final Bulkhead LOOKUP = fromProperties("lookup", 256, 0);
+    // 前缀/范围扫描：电影的所有评分、用户评分、按时间查询
+    public static final Bulkhead SCAN = fromProperties("scan", 32, 500);
+    // 流式输出（NDJSON），占用时间取决于客户端的读取速度
+    public static final Bulkhead STREAM = fromProperties("stream", 16, 0);
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyNanos;
+    private final double backoff;
+
+    // 以下字段由 this 保护
+    private double limit;
+    private int inFlight;
+    private long lastDecrease;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder slow = new LongAdder();
+
+    public Bulkhead(String name, int initialLimit, int minLimit, int maxLimit, long latencyMillis, double backoff) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        this.backoff = backoff;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.lastDecrease = System.nanoTime();
+        registerMeters(Metrics.globalRegistry);
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        for (Map.Entry<String, LongAdder> calls : Map.of("accepted", accepted, "rejected", rejected).entrySet()) {
+            FunctionCounter.builder("movielens.bulkhead.calls", calls.getValue(), LongAdder::sum)
+                    .description("舱壁放行/拒绝的请求数")
+                    .tag("bulkhead", name)
+                    .tag("result", calls.getKey())
+                    .register(registry);
+        }
+        FunctionCounter.builder("movielens.bulkhead.slow", slow, LongAdder::sum)
+                .description("超过延迟目标或失败的查询数")
+                .tag("bulkhead", name)
+                .register(registry);
+        Gauge.builder("movielens.bulkhead.limit", this, Bulkhead::limit)
+                .description("当前的并发上限")
+                .tag("bulkhead", name)
+                .register(registry);
+        Gauge.builder("movielens.bulkhead.in.flight", this, Bulkhead::inFlight)
+                .description("正在执行的查询数")
+                .tag("bulkhead", name)
+                .register(registry);
+    }
+
+    /**
+     * 读取 bulkhead.&lt;name&gt;.limit / min / max / latency.ms / backoff
+     */
+    private static Bulkhead fromProperties(String name, int defaultLimit, long defaultLatencyMillis) {
+        String prefix = "bulkhead." + name + ".";
+        int initial = Integer.parseInt(getProperty(prefix + "limit", String.valueOf(defaultLimit)));
+        long latencyMillis = Long.parseLong(getProperty(prefix + "latency.ms", String.valueOf(defaultLatencyMillis)));
+        int min = Integer.parseInt(getProperty(prefix + "min", String.valueOf(latencyMillis > 0 ? Math.max(1, initial / 8) : initial)));
+        int max = Integer.parseInt(getProperty(prefix + "max", String.valueOf(latencyMillis > 0 ? initial * 4 : initial)));
+        double backoff = Double.parseDouble(getProperty(prefix + "backoff", "0.8"));
+        return new Bulkhead(name, initial, min, max, latencyMillis, backoff);
+    }
+
+    /**
+     * 在上限内发起查询，查询完成（成功或失败）后释放名额；超出上限时返回失败的 future
+     */
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> query) {
+        if (!tryAcquire()) {
+            return CompletableFuture.failedFuture(new BulkheadRejectedException(name));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = query.get();
+        } catch (RuntimeException e) {
+            release(start, e);
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, error) -> release(start, error));
+    }
+
+    /**
+     * 占用一个名额，超出上限时返回 false；成功时调用方必须调用 {@link #release(long, Throwable)}
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected.increment();
+            return false;
+        }
+        inFlight++;
+        accepted.increment();
+        return true;
+    }
+
+    /**
+     * 释放名额，并按查询耗时（start 为 System.nanoTime()）调整上限；error 为查询的异常（成功时为 null），
+     * 参数错误（IllegalArgumentException）不算作过载
+     */
+    public synchronized void release(long start, Throwable error) {
+        long now = System.nanoTime();
+        int concurrent = inFlight--;
+        if (latencyNanos <= 0) {
+            return;
+        }
+        boolean failed = error != null && !(AsyncHBaseQueryer.unwrap(error) instanceof IllegalArgumentException);
+        if (failed || now - start > latencyNanos) {
+            slow.increment();
+            if (now - lastDecrease >= latencyNanos && limit > minLimit) {
+                double previous = limit;
+                limit = Math.max(minLimit, limit * backoff);
+                lastDecrease = now;
+                if ((int) previous != (int) limit) {
+                    logger.info("[{}] 查询变慢，并发上限 {} -> {}", name, (int) previous, (int) limit);
+                }
+            }
+        } else if (concurrent * 2 >= limit && limit < maxLimit) {
+            // 加法增长：每个上限周期大约加一
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("limit", (int) limit);
+        stats.put("minLimit", minLimit);
+        stats.put("maxLimit", maxLimit);
+        stats.put("adaptive", latencyNanos > 0);
+        stats.put("inFlight", inFlight);
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("slow", slow.sum());
+        return stats;
+    }
+
+    public static List<Map<String, Object>> allStats() {
+        return List.of(LOOKUP.stats(), SCAN.stats(), STREAM.stats());
+    }
+}
@@ -0,0 +1,18 @@
+package com.david.hbase.query;
+
+/**
+ * 查询超出了所属舱壁（{@link Bulkhead}）的并发上限，接口返回 429
+ */
+public class BulkheadRejectedException extends RuntimeException {
+    private final String bulkhead;
+
+    public BulkheadRejectedException(String bulkhead) {
+        // 拒绝是正常的流控结果，不需要堆栈
+        super("查询繁忙（" + bulkhead + " 并发已达上限），请稍后重试", null, false, false);
+        this.bulkhead = bulkhead;
+    }
+
+    public String getBulkhead() {
+        return bulkhead;
+    }
+}
@@ -0,0 +1,141 @@
+package com.david.hbase.query;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.david.hbase.importer.HBaseDataImporter.*;
+
+/**
+ * 热点查询（电影详情、电影的所有评分）的结果缓存，位于 {@link AsyncHBaseQueryer} 之前：
+ * 少数热门电影占了大部分请求，命中时不访问 HBase；同一部电影的并发请求合并为一次查询。
+ *
+ * 评分结果按条数计权重（query.cache.max.weight），详情每条计 1；超过 query.cache.ttl.seconds 的结果重新查询。
+ * 导入程序写入数据后会更新数据同步标记：同进程内立即清空，
+ * 其他进程（如 Web 服务）由后台线程每 query.cache.refresh.seconds 秒检查标记后清空。
+ * 未命中时的查询受 {@link Bulkhead} 限流，命中缓存的请求不占用名额。
+ */
+public final class CachedQueryer {
+    private static final Logger logger = LoggerFactory.getLogger(CachedQueryer.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(getProperty("query.cache.enabled", "true"));
+    private static final int MAX_ENTRIES = Integer.parseInt(getProperty("query.cache.max.entries", "10000"));
+    private static final long MAX_WEIGHT = Long.parseLong(getProperty("query.cache.max.weight", "2000000"));
+    private static final long TTL_SECONDS = Long.parseLong(getProperty("query.cache.ttl.seconds", "300"));
+    private static final int REFRESH_SECONDS = Integer.parseInt(getProperty("query.cache.refresh.seconds", "10"));
+
+    private static final QueryResultCache<String, Map<String, String>> DETAILS =
+            new QueryResultCache<>("detail", MAX_ENTRIES, MAX_WEIGHT, TTL_SECONDS, detail -> 1);
+    private static final QueryResultCache<RatingsKey, List<RatingRecord>> MOVIE_RATINGS =
+            new QueryResultCache<>("allRatings", MAX_ENTRIES, MAX_WEIGHT, TTL_SECONDS, List::size);
+    private static final QueryResultCache<PageKey, RatingsPage> MOVIE_RATINGS_PAGES =
+            new QueryResultCache<>("allRatingsPage", MAX_ENTRIES, MAX_WEIGHT, TTL_SECONDS, page -> page.items().size());
+
+    // 当前缓存对应的数据同步标记时间（-1 表示尚未读取）
+    private static volatile long loadedSyncTime = -1;
+    private static ScheduledExecutorService refresher;
+
+    private CachedQueryer() {
+    }
+
+    private record RatingsKey(String title, RatingQuery query) {
+    }
+
+    private record PageKey(String title, RatingQuery query, String cursor, int limit) {
+    }
+
+    /**
+     * 读取当前的数据同步标记，并启动后台检查
+     */
+    public static synchronized void start() throws IOException {
+        if (!ENABLED || refresher != null) {
+            return;
+        }
+        loadedSyncTime = readDataChangeTime();
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "query-cache-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(CachedQueryer::invalidateIfChanged,
+                REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+        addDataChangeListener(CachedQueryer::invalidateAll);
+        logger.info("查询结果缓存已启用：最多 {} 条、权重 {}，TTL {} 秒", MAX_ENTRIES, MAX_WEIGHT, TTL_SECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    // =======================================================================
+    // 查询
+    // =======================================================================
+    public static CompletableFuture<Map<String, String>> queryMovieDetail(String movieTitle) {
+        if (!ENABLED || movieTitle == null) {
+            return Bulkhead.LOOKUP.call(() -> AsyncHBaseQueryer.queryMovieDetail(movieTitle));
+        }
+        return DETAILS.get(movieTitle.trim(), key -> Bulkhead.LOOKUP.call(() -> AsyncHBaseQueryer.queryMovieDetail(key)));
+    }
+
+    public static CompletableFuture<List<RatingRecord>> queryMovieRatingsByTitle(String movieTitle,
+                                                                                 RatingQuery query) {
+        if (!ENABLED || movieTitle == null) {
+            return Bulkhead.SCAN.call(() -> AsyncHBaseQueryer.supplyBlocking(
+                    () -> HBaseQueryer.queryMovieRatingsByTitle(movieTitle, query)));
+        }
+        return MOVIE_RATINGS.get(new RatingsKey(movieTitle.trim(), query), key -> Bulkhead.SCAN.call(
+                () -> AsyncHBaseQueryer.supplyBlocking(() -> HBaseQueryer.queryMovieRatingsByTitle(key.title(), key.query()))));
+    }
+
+    public static CompletableFuture<RatingsPage> queryMovieRatingsPage(String movieTitle, RatingQuery query,
+                                                                      String cursor, int limit) {
+        if (!ENABLED || movieTitle == null) {
+            return Bulkhead.SCAN.call(() -> AsyncHBaseQueryer.queryMovieRatingsPage(movieTitle, query, cursor, limit));
+        }
+        return MOVIE_RATINGS_PAGES.get(new PageKey(movieTitle.trim(), query, cursor, limit), key -> Bulkhead.SCAN.call(
+                () -> AsyncHBaseQueryer.queryMovieRatingsPage(key.title(), key.query(), key.cursor(), key.limit())));
+    }
+
+    // =======================================================================
+    // 失效与统计
+    // =======================================================================
+
+    /**
+     * 清空所有查询结果
+     */
+    public static void invalidateAll() {
+        DETAILS.invalidateAll();
+        MOVIE_RATINGS.invalidateAll();
+        MOVIE_RATINGS_PAGES.invalidateAll();
+        logger.info("数据已更新，查询结果缓存已清空");
+    }
+
+    /**
+     * 各个缓存的命中、未命中、合并次数和比例
+     */
+    public static List<Map<String, Object>> stats() {
+        return List.of(DETAILS.stats(), MOVIE_RATINGS.stats(), MOVIE_RATINGS_PAGES.stats());
+    }
+
+    private static void invalidateIfChanged() {
+        try {
+            long syncTime = readDataChangeTime();
+            if (syncTime != loadedSyncTime) {
+                loadedSyncTime = syncTime;
+                invalidateAll();
+            }
+        } catch (Exception e) {
+            logger.warn("检查数据同步标记失败：{}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package com.david.hbase.query;
+
+import com.david.hbase.importer.HBaseDataImporter;
+import com.david.hbase.importer.RatingBatch;
+import com.david.hbase.importer.RatingsReader;
+import com.david.hbase.schema.RatingsSchema;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 进程内的列式存储：启动时把 movies.csv / ratings.csv 全部载入内存，详情和评分查询不再经过 ZooKeeper 和 RPC。
+ *
+ * 评分按用户、按电影各保存一份 {@link RatingsCsr}（堆外），查询时二分找到分组，组内的顺序与 HBase 行键相同
+ * （用户评分按 movieId、电影评分按 userId，按评分表存储格式的行键顺序：版本 1 为十进制文本序，版本 2 为数值序），
+ * 所以分页、过滤、投影、排序的结果与同一存储格式的 HBase 后端一致。
+ * 电影的 movieId / 标题 / 类型在堆上，按 movieId 排序，用户评分的标题按 movieId 二分查找。
+ *
+ * 配置了快照文件时，载入 CSV 后把各列写出到快照，文件头记录两个 CSV 的路径、大小和修改时间以及组内顺序；
+ * 下次启动若这些都没有变化，直接映射快照文件，不再解析 CSV。
+ * 单个快照文件不能超过 2GB（约 8000 万条评分）。
+ */
+public final class ColumnarMovieStore implements MovieStore {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarMovieStore.class);
+
+    // 快照文件头：魔数、版本、电影数、评分数、用户数、有评分的电影数、字符串区的位置、评分列的位置、
+    // 组内顺序（存储格式版本），之后是各 CSV 的大小、修改时间和路径
+    private static final int SNAPSHOT_MAGIC = 0x4D4C4353;
+    // 版本 3：重复的 (用户, 电影) 只保留文件中最后一条，此前的快照可能含有重复评分
+    private static final int SNAPSHOT_VERSION = 3;
+    private static final int FIXED_HEADER_BYTES = 48;
+    // 解析 ratings.csv 时每批的行数
+    private static final int READ_BATCH = 8192;
+
+    // 按 movieId 升序
+    private final int[] movieIds;
+    private final String[] titles;
+    private final String[] genres;
+    // 标题 -> 电影下标
+    private final Map<String, Integer> byTitle;
+    private final RatingsCsr byUser;
+    private final RatingsCsr byMovie;
+    // 组内顺序
+    private final RatingsSchema order;
+
+    private ColumnarMovieStore(int[] movieIds, String[] titles, String[] genres, RatingsCsr byUser,
+                               RatingsCsr byMovie, RatingsSchema order) {
+        this.movieIds = movieIds;
+        this.titles = titles;
+        this.genres = genres;
+        this.byTitle = new HashMap<>(titles.length * 2);
+        for (int i = 0; i < titles.length; i++) {
+            byTitle.put(titles[i], i);
+        }
+        this.byUser = byUser;
+        this.byMovie = byMovie;
+        this.order = order;
+    }
+
+    /**
+     * 快照来源的 CSV：规范化的绝对路径、大小和修改时间
+     */
+    private record Source(String path, long size, long modified) {
+
+        /**
+         * 文件不存在时返回 null
+         */
+        static Source of(String csv) throws IOException {
+            Path path = Paths.get(csv).toAbsolutePath().normalize();
+            if (!Files.isRegularFile(path)) {
+                return null;
+            }
+            return new Source(path.toString(), Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        }
+    }
+
+    /**
+     * snapshot 为 null 时总是从 CSV 载入；否则快照与 CSV、组内顺序都一致时映射快照，不然从 CSV 载入后写出快照。
+     * order 为评分表的存储格式，决定组内的行键顺序
+     */
+    public static ColumnarMovieStore load(String moviesPath, String ratingsPath, Path snapshot,
+                                          RatingsSchema order) throws IOException {
+        long start = System.currentTimeMillis();
+        ColumnarMovieStore store;
+        if (snapshot != null && isFresh(snapshot, moviesPath, ratingsPath, order)) {
+            store = readSnapshot(snapshot, order);
+            logger.info("已映射列式存储快照 {}：{} 部电影，{} 条评分，耗时 {} ms",
+                    snapshot, store.titles.length, store.byUser.rows(), System.currentTimeMillis() - start);
+            return store;
+        }
+        // 载入之前记录来源，载入期间 CSV 被修改时下次启动会重新载入
+        Source[] sources = {Source.of(moviesPath), Source.of(ratingsPath)};
+        store = loadCsv(moviesPath, ratingsPath, order);
+        logger.info("已从 CSV 载入列式存储：{} 部电影，{} 个用户，{} 条评分，耗时 {} ms",
+                store.titles.length, store.byUser.groups(), store.byUser.rows(), System.currentTimeMillis() - start);
+        if (snapshot != null) {
+            store.writeSnapshot(snapshot, sources);
+            logger.info("列式存储快照已写出：{}（{} 字节）", snapshot, Files.size(snapshot));
+        }
+        return store;
+    }
+
+    /**
+     * 快照存在、版本和组内顺序相同，且每个 CSV 不存在（只用快照启动）或路径、大小、修改时间都与快照记录的一致
+     */
+    private static boolean isFresh(Path snapshot, String moviesPath, String ratingsPath,
+                                   RatingsSchema order) throws IOException {
+        if (!Files.isRegularFile(snapshot)) {
+            return false;
+        }
+        Source[] recorded;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer fixed = readFully(channel, 0, FIXED_HEADER_BYTES);
+            if (fixed == null || fixed.getInt(0) != SNAPSHOT_MAGIC || fixed.getInt(4) != SNAPSHOT_VERSION) {
+                logger.info("快照 {} 的格式版本不同，重新从 CSV 载入", snapshot);
+                return false;
+            }
+            if (fixed.getInt(40) != order.version()) {
+                logger.info("快照 {} 按存储格式版本 {} 排序，当前为版本 {}，重新从 CSV 载入",
+                        snapshot, fixed.getInt(40), order.version());
+                return false;
+            }
+            long dataPosition = fixed.getLong(32);
+            ByteBuffer sources = readFully(channel, FIXED_HEADER_BYTES, (int) (dataPosition - FIXED_HEADER_BYTES));
+            if (sources == null) {
+                throw new IOException("列式存储快照不完整：" + snapshot);
+            }
+            recorded = readSources(sources);
+        }
+        String[] csvs = {moviesPath, ratingsPath};
+        for (int i = 0; i < csvs.length; i++) {
+            Source current = Source.of(csvs[i]);
+            if (current != null && !current.equals(recorded[i])) {
+                logger.info("{} 与快照记录的来源 {} 不同（当前 {}），重新从 CSV 载入", csvs[i], recorded[i], current);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 从 position 读取 length 字节（小端），文件不够长时返回 null
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                return null;
+            }
+        }
+        return buf.flip();
+    }
+
+    /**
+     * 用存储中的标题构建标题检索索引（自动补全和标题纠错不再扫描 movies_info）
+     */
+    public void loadTitleIndex() {
+        String[] ids = new String[movieIds.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = String.valueOf(movieIds[i]);
+        }
+        TitleSearchIndex.load(titles, ids);
+    }
+
+    // =======================================================================
+    // 查询（都在调用线程上完成，返回已完成的 future）
+    // =======================================================================
+    @Override
+    public CompletableFuture<Map<String, String>> queryMovieDetail(String movieTitle) {
+        int movie = movieIndex(movieTitle);
+        if (movie < 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<String, String> details = new LinkedHashMap<>();
+        details.put("title", titles[movie]);
+        details.put("movieId", String.valueOf(movieIds[movie]));
+        details.put("genres", genres[movie]);
+        return CompletableFuture.completedFuture(details);
+    }
+
+    @Override
+    public CompletableFuture<List<RatingRecord>> queryUserRatings(String userId, RatingQuery query) {
+        List<RatingRecord> items = new ArrayList<>();
+        return complete(() -> {
+            scanUser(userId, query, null, 0, items::add);
+            return items;
+        });
+    }
+
+    @Override
+    public CompletableFuture<RatingsPage> queryUserRatingsPage(String userId, RatingQuery query, String cursor,
+                                                               int limit) {
+        List<RatingRecord> items = new ArrayList<>();
+        return complete(() -> {
+            if (query.isSorted()) {
+                HBaseQueryer.checkSortedPage(cursor);
+            }
+            String next = scanUser(userId, query, cursor, limit, items::add);
+            return new RatingsPage(items, next);
+        });
+    }
+
+    @Override
+    public void streamUserRatings(String userId, RatingSink sink) throws IOException {
+        scanUser(userId, RatingQuery.ALL, null, 0, sink);
+    }
+
+    @Override
+    public CompletableFuture<List<RatingRecord>> queryMovieRatings(String movieTitle, RatingQuery query) {
+        List<RatingRecord> items = new ArrayList<>();
+        return complete(() -> {
+            scanMovie(movieTitle, query, null, 0, items::add);
+            return items;
+        });
+    }
+
+    @Override
+    public CompletableFuture<RatingsPage> queryMovieRatingsPage(String movieTitle, RatingQuery query, String cursor,
+                                                                int limit) {
+        List<RatingRecord> items = new ArrayList<>();
+        return complete(() -> {
+            if (query.isSorted()) {
+                HBaseQueryer.checkSortedPage(cursor);
+            }
+            String next = scanMovie(movieTitle, query, cursor, limit, items::add);
+            return new RatingsPage(items, next);
+        });
+    }
+
+    @Override
+    public void streamMovieRatings(String movieTitle, RatingSink sink) throws IOException {
+        scanMovie(movieTitle, RatingQuery.ALL, null, 0, sink);
+    }
+
+    private static <T> CompletableFuture<T> complete(AsyncHBaseQueryer.BlockingQuery<T> query) {
+        try {
+            return CompletableFuture.completedFuture(query.call());
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private String scanUser(String userId, RatingQuery query, String cursor, int limit,
+                            RatingSink sink) throws IOException {
+        Integer after = decodeCursor(cursor);
+        Integer user = userId == null ? null : HBaseQueryer.parseId(userId);
+        int group = user == null ? -1 : byUser.find(user);
+        if (group < 0) {
+            return null;
+        }
+        return scan(byUser, group, query, after, limit, query.project(sink), "user_ratings",
+                row -> {
+                    int movieId = byUser.other(row);
+                    return new RatingRecord(user, movieId, title(movieId), byUser.ratingX2(row), byUser.timestamp(row));
+                });
+    }
+
+    private String scanMovie(String movieTitle, RatingQuery query, String cursor, int limit,
+                             RatingSink sink) throws IOException {
+        Integer after = decodeCursor(cursor);
+        int movie = movieIndex(movieTitle);
+        int group = movie < 0 ? -1 : byMovie.find(movieIds[movie]);
+        if (group < 0) {
+            return null;
+        }
+        int movieId = movieIds[movie];
+        String title = titles[movie];
+        return scan(byMovie, group, query, after, limit, query.project(sink), "movie_ratings",
+                row -> new RatingRecord(byMovie.other(row), movieId, title, byMovie.ratingX2(row), byMovie.timestamp(row)));
+    }
+
+    @FunctionalInterface
+    private interface RowMapper {
+        RatingRecord map(int row);
+    }
+
+    /**
+     * 扫描一个分组中游标之后的行，逐条交给 sink；limit <= 0 表示不限条数。
+     * 返回下一页的游标，没有更多数据时返回 null；排序查询只返回前 query.topK() 条
+     */
+    private static String scan(RatingsCsr csr, int group, RatingQuery query, Integer after, int limit,
+                               RatingSink sink, String metric, RowMapper mapper) throws IOException {
+        int from = csr.from(group);
+        int to = csr.to(group);
+        if (query.isSorted()) {
+            int[] top = topK(csr, from, to, query);
+            for (int row : top) {
+                sink.accept(mapper.map(row));
+            }
+            QueryMetrics.recordRows(metric, to - from, top.length);
+            return null;
+        }
+
+        boolean filtered = query.hasFilters();
+        int row = after == null ? from : csr.after(from, to, after);
+        int scanStart = row;
+        long count = 0;
+        int last = -1;
+        String next = null;
+        for (; row < to; row++) {
+            if (filtered && !query.matches(csr.ratingX2(row), csr.timestamp(row))) {
+                continue;
+            }
+            if (limit > 0 && count == limit) {
+                next = encodeCursor(csr.other(last));
+                break;
+            }
+            sink.accept(mapper.map(row));
+            last = row;
+            count++;
+        }
+        QueryMetrics.recordRows(metric, row - scanStart, count);
+        return next;
+    }
+
+    /**
+     * 大小为 K 的小顶堆（保存行号），返回评分最高/最新的 K 行，从大到小
+     */
+    private static int[] topK(RatingsCsr csr, int from, int to, RatingQuery query) {
+        boolean byRating = query.sort() == RatingQuery.Sort.RATING;
+        int[] heap = new int[Math.min(query.topK(), to - from)];
+        int size = 0;
+        for (int row = from; row < to; row++) {
+            if (!query.matches(csr.ratingX2(row), csr.timestamp(row))) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = row;
+                siftUp(csr, byRating, heap, size++);
+            } else if (size > 0 && compare(csr, byRating, row, heap[0]) > 0) {
+                heap[0] = row;
+                siftDown(csr, byRating, heap, size);
+            }
+        }
+        // 依次弹出堆顶（最小值）放到末尾，得到从大到小的顺序
+        int[] sorted = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            sorted[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(csr, byRating, heap, size);
+        }
+        return sorted;
+    }
+
+    // 评分（同分按时间）或时间比较
+    private static int compare(RatingsCsr csr, boolean byRating, int a, int b) {
+        if (byRating) {
+            int c = Integer.compare(csr.ratingX2(a), csr.ratingX2(b));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Long.compare(csr.timestamp(a), csr.timestamp(b));
+    }
+
+    private static void siftUp(RatingsCsr csr, boolean byRating, int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(csr, byRating, heap[i], heap[parent]) >= 0) {
+                return;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(RatingsCsr csr, boolean byRating, int[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && compare(csr, byRating, heap[left], heap[smallest]) < 0) {
+                smallest = left;
+            }
+            if (right < size && compare(csr, byRating, heap[right], heap[smallest]) < 0) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(heap, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+
+    // 与 HBase 后端一样先经过标题检索索引（容忍大小写、冠词位置、省略年份），再精确匹配
+    private int movieIndex(String movieTitle) {
+        if (movieTitle == null || movieTitle.trim().isEmpty()) {
+            return -1;
+        }
+        String title = TitleSearchIndex.resolveTitle(movieTitle.trim());
+        Integer movie = title == null ? null : byTitle.get(title);
+        return movie == null ? -1 : movie;
+    }
+
+    private String title(int movieId) {
+        int movie = Arrays.binarySearch(movieIds, movieId);
+        return movie < 0 ? null : titles[movie];
+    }
+
+    // 游标为上一页最后一行的另一个 ID（4 字节），只在同一后端内有效
+    private static String encodeCursor(int lastId) {
+        return HBaseQueryer.encodeCursor(ByteBuffer.allocate(4).putInt(lastId).array());
+    }
+
+    private static Integer decodeCursor(String cursor) {
+        byte[] bytes = HBaseQueryer.decodeCursor(cursor);
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length != 4) {
+            throw new IllegalArgumentException("无效的游标：" + cursor);
+        }
+        return ByteBuffer.wrap(bytes).getInt();
+    }
+
+    // =======================================================================
+    // 从 CSV 载入
+    // =======================================================================
+    private static ColumnarMovieStore loadCsv(String moviesPath, String ratingsPath,
+                                              RatingsSchema order) throws IOException {
+        List<Object[]> movies = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(moviesPath), StandardCharsets.UTF_8);
+             CSVParser csvParser = new CSVParser(reader, HBaseDataImporter.CSV_WITH_HEADER)) {
+            for (CSVRecord record : csvParser) {
+                // 与 importMoviesData() 相同的清洗
+                movies.add(new Object[]{Integer.parseInt(record.get("movieId").trim()),
+                        record.get("title").trim().replaceAll("^\"|\"$", ""), record.get("genres").trim()});
+            }
+        }
+        movies.sort(Comparator.comparingInt(movie -> (Integer) movie[0]));
+        int[] movieIds = new int[movies.size()];
+        String[] titles = new String[movies.size()];
+        String[] genres = new String[movies.size()];
+        for (int i = 0; i < movieIds.length; i++) {
+            movieIds[i] = (Integer) movies.get(i)[0];
+            titles[i] = (String) movies.get(i)[1];
+            genres[i] = (String) movies.get(i)[2];
+        }
+
+        // 按文件大小预估行数（每行约 25 字节），不够时再扩容
+        Columns columns = new Columns((int) Math.min(Integer.MAX_VALUE - 8, Files.size(Paths.get(ratingsPath)) / 25 + 16));
+        RatingsReader reader = HBaseDataImporter.newRatingsReader(ratingsPath);
+        try {
+            reader.read(() -> new RatingBatch(READ_BATCH), columns::append);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("载入评分数据被中断");
+        }
+        if (reader.skippedRows() > 0) {
+            logger.warn("ratings.csv 中有 {} 行格式错误，已跳过", reader.skippedRows());
+        }
+
+        // 多线程解析时批次的到达顺序不固定，先恢复文件顺序，重复的评分才能按“后写覆盖先写”去重
+        columns.sortByPosition();
+        RatingsCsr byUser = RatingsCsr.build(columns.userIds, columns.movieIds, columns.ratingsX2,
+                columns.timestamps, columns.size, order);
+        RatingsCsr byMovie = RatingsCsr.build(columns.movieIds, columns.userIds, columns.ratingsX2,
+                columns.timestamps, columns.size, order);
+        return new ColumnarMovieStore(movieIds, titles, genres, byUser, byMovie, order);
+    }
+
+    /**
+     * 解析阶段的堆上列（解析线程并发追加），构建完 CSR 后丢弃
+     */
+    private static final class Columns {
+        int[] userIds;
+        int[] movieIds;
+        byte[] ratingsX2;
+        long[] timestamps;
+        int size;
+        // 每个批次一项：{批次首行在文件中的位置, 在列中的起始行, 行数}
+        final List<long[]> batches = new ArrayList<>();
+
+        Columns(int capacity) {
+            userIds = new int[capacity];
+            movieIds = new int[capacity];
+            ratingsX2 = new byte[capacity];
+            timestamps = new long[capacity];
+        }
+
+        synchronized void append(RatingBatch batch) {
+            int n = batch.size();
+            if (size + n > userIds.length) {
+                int capacity = Math.max(size + n, userIds.length + (userIds.length >> 1));
+                userIds = Arrays.copyOf(userIds, capacity);
+                movieIds = Arrays.copyOf(movieIds, capacity);
+                ratingsX2 = Arrays.copyOf(ratingsX2, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            batches.add(new long[]{batch.position(), size, n});
+            for (int i = 0; i < n; i++) {
+                userIds[size] = batch.userId(i);
+                movieIds[size] = batch.movieId(i);
+                ratingsX2[size] = (byte) batch.ratingX2(i);
+                timestamps[size] = batch.timestamp(i);
+                size++;
+            }
+        }
+
+        /**
+         * 按批次在文件中的位置重排各列（批次内已是文件顺序）；已经有序时不复制
+         */
+        void sortByPosition() {
+            List<long[]> sorted = new ArrayList<>(batches);
+            sorted.sort(Comparator.comparingLong(b -> b[0]));
+            if (sorted.equals(batches)) {
+                return;
+            }
+            int[] users = new int[size];
+            int[] movies = new int[size];
+            byte[] ratings = new byte[size];
+            long[] times = new long[size];
+            int to = 0;
+            for (long[] b : sorted) {
+                int from = (int) b[1];
+                int n = (int) b[2];
+                System.arraycopy(userIds, from, users, to, n);
+                System.arraycopy(movieIds, from, movies, to, n);
+                System.arraycopy(ratingsX2, from, ratings, to, n);
+                System.arraycopy(timestamps, from, times, to, n);
+                to += n;
+            }
+            userIds = users;
+            movieIds = movies;
+            ratingsX2 = ratings;
+            timestamps = times;
+        }
+    }
+
+    // =======================================================================
+    // 快照：文件头 | 来源 | 按用户的各列 | 按电影的各列 | 电影（movieId、标题、类型）
+    // =======================================================================
+    private void writeSnapshot(Path snapshot, Source[] sources) throws IOException {
+        Path parent = snapshot.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, snapshot.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                byte[] sourceBytes = writeSources(sources);
+                long dataPosition = RatingsCsr.align(FIXED_HEADER_BYTES + sourceBytes.length);
+                ByteBuffer header = ByteBuffer.allocate((int) dataPosition).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(movieIds.length).putInt(byUser.rows())
+                        .putInt(byUser.groups()).putInt(byMovie.groups())
+                        .putLong(dataPosition + byUser.byteSize() + byMovie.byteSize())
+                        .putLong(dataPosition)
+                        .putInt(order.version())
+                        .putInt(0)
+                        .put(sourceBytes)
+                        .clear();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                byUser.writeTo(channel);
+                byMovie.writeTo(channel);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                for (int i = 0; i < movieIds.length; i++) {
+                    out.writeInt(movieIds[i]);
+                    out.writeUTF(titles[i]);
+                    out.writeUTF(genres[i]);
+                }
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 来源依次为：是否存在（1 字节）、大小、修改时间、路径（UTF）
+     */
+    private static byte[] writeSources(Source[] sources) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Source source : sources) {
+            out.writeBoolean(source != null);
+            if (source != null) {
+                out.writeLong(source.size());
+                out.writeLong(source.modified());
+                out.writeUTF(source.path());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Source[] readSources(ByteBuffer buf) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf.array(), 0, buf.limit()));
+        Source[] sources = new Source[2];
+        for (int i = 0; i < sources.length; i++) {
+            if (in.readBoolean()) {
+                long size = in.readLong();
+                long modified = in.readLong();
+                sources[i] = new Source(in.readUTF(), size, modified);
+            }
+        }
+        return sources;
+    }
+
+    private static ColumnarMovieStore readSnapshot(Path snapshot, RatingsSchema order) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            file.order(ByteOrder.LITTLE_ENDIAN);
+            if (file.getInt(0) != SNAPSHOT_MAGIC || file.getInt(4) != SNAPSHOT_VERSION) {
+                throw new IOException("不是有效的列式存储快照（或版本不同）：" + snapshot);
+            }
+            int movies = file.getInt(8);
+            int rows = file.getInt(12);
+            int users = file.getInt(16);
+            int ratedMovies = file.getInt(20);
+            long stringsPosition = file.getLong(24);
+            long dataPosition = file.getLong(32);
+
+            // 评分列直接切自映射的文件，不复制
+            RatingsCsr byUser = RatingsCsr.slice(file, dataPosition, users, rows, order);
+            RatingsCsr byMovie = RatingsCsr.slice(file, dataPosition + byUser.byteSize(), ratedMovies, rows, order);
+
+            int[] movieIds = new int[movies];
+            String[] titles = new String[movies];
+            String[] genres = new String[movies];
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(stringsPosition))));
+            for (int i = 0; i < movies; i++) {
+                movieIds[i] = in.readInt();
+                titles[i] = in.readUTF();
+                genres[i] = in.readUTF();
+            }
+            return new ColumnarMovieStore(movieIds, titles, genres, byUser, byMovie, order);
+        }
+    }
+}
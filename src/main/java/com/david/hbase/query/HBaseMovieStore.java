@@ -0,0 +1,50 @@
+package com.david.hbase.query;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 查询 HBase：详情和电影评分经过查询结果缓存（未命中时计入 LOOKUP / SCAN 舱壁），
+ * 用户评分的分页查询用异步客户端，全量和流式查询在虚拟线程上走阻塞客户端
+ */
+final class HBaseMovieStore implements MovieStore {
+
+    @Override
+    public CompletableFuture<Map<String, String>> queryMovieDetail(String movieTitle) {
+        return CachedQueryer.queryMovieDetail(movieTitle);
+    }
+
+    @Override
+    public CompletableFuture<List<RatingRecord>> queryUserRatings(String userId, RatingQuery query) {
+        return AsyncHBaseQueryer.supplyBlocking(() -> HBaseQueryer.queryUserRatings(userId, query));
+    }
+
+    @Override
+    public CompletableFuture<RatingsPage> queryUserRatingsPage(String userId, RatingQuery query, String cursor,
+                                                               int limit) {
+        return AsyncHBaseQueryer.queryUserRatingsPage(userId, query, cursor, limit);
+    }
+
+    @Override
+    public void streamUserRatings(String userId, RatingSink sink) throws IOException {
+        HBaseQueryer.streamUserRatings(userId, sink);
+    }
+
+    @Override
+    public CompletableFuture<List<RatingRecord>> queryMovieRatings(String movieTitle, RatingQuery query) {
+        return CachedQueryer.queryMovieRatingsByTitle(movieTitle, query);
+    }
+
+    @Override
+    public CompletableFuture<RatingsPage> queryMovieRatingsPage(String movieTitle, RatingQuery query, String cursor,
+                                                                int limit) {
+        return CachedQueryer.queryMovieRatingsPage(movieTitle, query, cursor, limit);
+    }
+
+    @Override
+    public void streamMovieRatings(String movieTitle, RatingSink sink) throws IOException {
+        HBaseQueryer.streamMovieRatings(movieTitle, sink);
+    }
+}
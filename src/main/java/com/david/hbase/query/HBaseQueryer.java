@@ -1,5 +1,9 @@
 package com.david.hbase.query;
 
+import com.david.hbase.schema.GenreIndexFormat;
+import com.david.hbase.schema.RatingStatsFormat;
+import com.david.hbase.schema.RatingsSchema;
+import com.david.hbase.schema.SimilarityFormat;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -8,6 +12,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +23,10 @@ import static com.david.hbase.importer.HBaseDataImporter.*;
 public class HBaseQueryer {
     // 日志对象
     private static final Logger logger = LoggerFactory.getLogger(HBaseQueryer.class);
+    // 按用户查询评分时，每页记录统一解析一次标题（同时作为扫描的 caching）
+    private static final int TITLE_BATCH_SIZE = 500;
+    // 流式输出时每次 RPC 取回的行数：整个结果都要读完，取大一些减少往返
+    private static final int STREAM_CACHING = Integer.parseInt(getProperty("query.stream.caching", "2000"));
 
     // =======================================================================
     // 1. 查询电影详情（按名称）
@@ -28,71 +37,150 @@ public class HBaseQueryer {
             return null;
         }
 
+        // 先在内存标题索引中解析（容忍大小写、冠词位置、省略年份），索引中没有的标题按输入精确查询
+        String title = TitleSearchIndex.resolveTitle(movieTitle.trim());
+
         TableName tableName = TableName.valueOf(MOVIES_INFO_TABLE);
         try (Table table = getConnection().getTable(tableName)) {
-            Get get = new Get(Bytes.toBytes(movieTitle.trim()));
+            Get get = new Get(Bytes.toBytes(title));
             get.addFamily(Bytes.toBytes(INFO_CF));
 
-            Result result = table.get(get);
+            Result result = QueryMetrics.get(table, get);
             if (result.isEmpty()) {
                 logger.info("未找到电影 [{}] 的详情", movieTitle);
                 return null;
             }
-
-            // 封装结果
-            Map<String, String> details = new LinkedHashMap<>();
-            details.put("title", movieTitle);
-            details.put("movieId", Bytes.toString(
-                    result.getValue(
-                            Bytes.toBytes(INFO_CF),
-                            Bytes.toBytes("movieId"))));
-            details.put("genres", Bytes.toString(result.getValue(Bytes.toBytes(INFO_CF), Bytes.toBytes("genres"))));
-
-            return details;
+            return movieDetail(title, result);
         } catch (IOException e) {
             logger.error("查询电影详情失败：{}", e.getMessage(), e);
             throw e; // 向上抛出，让调用方处理
         }
     }
 
+    static Map<String, String> movieDetail(String title, Result result) {
+        // 封装结果
+        Map<String, String> details = new LinkedHashMap<>();
+        details.put("title", title);
+        details.put("movieId", Bytes.toString(
+                result.getValue(
+                        Bytes.toBytes(INFO_CF),
+                        Bytes.toBytes("movieId"))));
+        details.put("genres", Bytes.toString(result.getValue(Bytes.toBytes(INFO_CF), Bytes.toBytes("genres"))));
+
+        return details;
+    }
+
     // =======================================================================
     // 2. 查询用户的所有评分（按用户ID）
     // =======================================================================
-    public static List<Map<String, String>> queryUserRatings(String userId) throws IOException {
+    public static List<RatingRecord> queryUserRatings(String userId) throws IOException {
+        return queryUserRatings(userId, RatingQuery.ALL);
+    }
+
+    /**
+     * 按条件查询用户评分；指定排序时只返回前 query.topK() 条
+     */
+    public static List<RatingRecord> queryUserRatings(String userId, RatingQuery query) throws IOException {
+        List<RatingRecord> ratingsList = new ArrayList<>();
+        scanUserRatings(userId, query, null, 0, TITLE_BATCH_SIZE, ratingsList::add);
+        return ratingsList;
+    }
+
+    /**
+     * 分页查询用户评分：最多 limit 条，从 cursor（上一页返回的 nextCursor）之后开始
+     */
+    public static RatingsPage queryUserRatingsPage(String userId, String cursor, int limit) throws IOException {
+        return queryUserRatingsPage(userId, RatingQuery.ALL, cursor, limit);
+    }
+
+    public static RatingsPage queryUserRatingsPage(String userId, RatingQuery query, String cursor,
+                                                   int limit) throws IOException {
+        if (query.isSorted()) {
+            checkSortedPage(cursor);
+            return new RatingsPage(queryUserRatings(userId, query), null);
+        }
+        List<RatingRecord> items = new ArrayList<>();
+        // 多取一行判断是否还有下一页
+        String next = scanUserRatings(userId, query, cursor, limit, limit + 1, items::add);
+        return new RatingsPage(items, next);
+    }
+
+    /**
+     * 流式查询用户评分：扫描到一页就交给 sink，不在内存中攒完整结果
+     */
+    public static void streamUserRatings(String userId, RatingSink sink) throws IOException {
+        streamUserRatings(userId, RatingQuery.ALL, sink);
+    }
+
+    public static void streamUserRatings(String userId, RatingQuery query, RatingSink sink) throws IOException {
+        scanUserRatings(userId, query, null, 0, STREAM_CACHING, sink);
+    }
+
+    /**
+     * 扫描用户评分并逐条交给 sink；limit <= 0 表示不限条数。
+     * 返回下一页的游标，没有更多数据时返回 null
+     */
+    private static String scanUserRatings(String userId, RatingQuery query, String cursor, int limit, int caching,
+                                          RatingSink sink) throws IOException {
         if (userId == null || userId.trim().isEmpty()) {
             logger.warn("查询用户评分失败：用户ID为空");
-            return new ArrayList<>();
+            return null;
         }
         userId = userId.trim();
+        Integer userIdValue = parseId(userId);
+        if (userIdValue == null) {
+            logger.warn("查询用户评分失败：用户ID [{}] 不是数字", userId);
+            return null;
+        }
 
         TableName tableName = TableName.valueOf(RATINGS_DATA_TABLE);
-        List<Map<String, String>> ratingsList = new ArrayList<>();
 
         try (Table table = getConnection().getTable(tableName)) {
-            // 扫描行键前缀为 "userId_" 的记录
-            Scan scan = new Scan();
-            scan.setRowPrefixFilter(Bytes.toBytes(userId + "_"));
-            scan.addFamily(Bytes.toBytes(SCORE_CF));
-
-            ResultScanner scanner = table.getScanner(scan);
-            for (Result result : scanner) {
-                String rowKey = Bytes.toString(result.getRow());
-                String movieId = rowKey.substring(rowKey.indexOf('_') + 1);
-                String movieTitle = getMovieTitleByMovieId(movieId);
-
-                // 封装单条评分记录
-                Map<String, String> record = new LinkedHashMap<>();
-                record.put("userId", userId);
-                record.put("movieId", movieId);
-                record.put("movieTitle", movieTitle);
-                record.put("rating", Bytes.toString(result.getValue(Bytes.toBytes(SCORE_CF), Bytes.toBytes("rating"))));
-                record.put("timestamp", Bytes.toString(result.getValue(Bytes.toBytes(SCORE_CF), Bytes.toBytes("timestamp"))));
-
-                ratingsList.add(record);
+            RatingsSchema schema = RatingsSchema.forTable(getConnection(), tableName);
+            byte[] family = Bytes.toBytes(SCORE_CF);
+
+            // 扫描行键前缀为 userId 的记录（加盐时扇出到每个桶），游标之前的行不再读取
+            Scan scan = newRatingsScan(schema, family, query, limit, caching);
+            RatingSink projected = query.project(sink);
+            RatingQuery.TopK topK = query.isSorted() ? query.newTopK(schema, family) : null;
+
+            // 每攒满一页再统一解析标题（字典 + 一次批量 Get）；Top-K 查询只为入选的行解析标题
+            int pageSize = limit > 0 ? Math.min(limit, TITLE_BATCH_SIZE) : TITLE_BATCH_SIZE;
+            List<Result> page = new ArrayList<>(pageSize);
+            long count = 0;
+            String next = null;
+            try (PrefixScanner scanner = PrefixScanner.open(table, scan, schema, userIdValue, decodeCursor(cursor))) {
+                Result result;
+                Result last = null;
+                while ((result = scanner.next()) != null) {
+                    if (!query.matches(schema, result, family)) {
+                        continue;
+                    }
+                    if (topK != null) {
+                        topK.offer(result);
+                        continue;
+                    }
+                    if (limit > 0 && count == limit) {
+                        next = encodeCursor(schema, last);
+                        break;
+                    }
+                    page.add(result);
+                    last = result;
+                    count++;
+                    if (page.size() >= pageSize) {
+                        appendUserRatings(userIdValue, page, schema, family, projected);
+                    }
+                }
+                if (topK != null) {
+                    page.addAll(topK.sorted());
+                    count = page.size();
+                }
+                appendUserRatings(userIdValue, page, schema, family, projected);
+                QueryMetrics.recordRows("user_ratings", scanner.rowsScanned(), count);
             }
 
-            logger.info("查询到用户 [{}] 的 {} 条评分记录", userId, ratingsList.size());
-            return ratingsList;
+            logger.info("查询到用户 [{}] 的 {} 条评分记录", userId, count);
+            return next;
         } catch (IOException e) {
             logger.error("查询用户评分失败：{}", e.getMessage(), e);
             throw e;
@@ -102,91 +190,409 @@ public class HBaseQueryer {
     // =======================================================================
     // 3. 查询电影的所有评分（按电影名称）
     // =======================================================================
-    public static List<Map<String, String>> queryMovieRatingsByTitle(String movieTitle) throws IOException {
+    public static List<RatingRecord> queryMovieRatingsByTitle(String movieTitle) throws IOException {
+        return queryMovieRatingsByTitle(movieTitle, RatingQuery.ALL);
+    }
+
+    /**
+     * 按条件查询电影评分；指定排序时只返回前 query.topK() 条
+     */
+    public static List<RatingRecord> queryMovieRatingsByTitle(String movieTitle,
+                                                              RatingQuery query) throws IOException {
+        List<RatingRecord> ratingsList = new ArrayList<>();
+        scanMovieRatings(movieTitle, query, null, 0, 0, ratingsList::add);
+        return ratingsList;
+    }
+
+    /**
+     * 分页查询电影评分：最多 limit 条，从 cursor（上一页返回的 nextCursor）之后开始
+     */
+    public static RatingsPage queryMovieRatingsPage(String movieTitle, String cursor, int limit) throws IOException {
+        return queryMovieRatingsPage(movieTitle, RatingQuery.ALL, cursor, limit);
+    }
+
+    public static RatingsPage queryMovieRatingsPage(String movieTitle, RatingQuery query, String cursor,
+                                                    int limit) throws IOException {
+        if (query.isSorted()) {
+            checkSortedPage(cursor);
+            return new RatingsPage(queryMovieRatingsByTitle(movieTitle, query), null);
+        }
+        List<RatingRecord> items = new ArrayList<>();
+        String next = scanMovieRatings(movieTitle, query, cursor, limit, limit + 1, items::add);
+        return new RatingsPage(items, next);
+    }
+
+    /**
+     * 流式查询电影评分：每扫描到一行就交给 sink
+     */
+    public static void streamMovieRatings(String movieTitle, RatingSink sink) throws IOException {
+        streamMovieRatings(movieTitle, RatingQuery.ALL, sink);
+    }
+
+    public static void streamMovieRatings(String movieTitle, RatingQuery query, RatingSink sink) throws IOException {
+        scanMovieRatings(movieTitle, query, null, 0, STREAM_CACHING, sink);
+    }
+
+    /**
+     * 扫描电影评分并逐条交给 sink；limit <= 0 表示不限条数，caching <= 0 使用客户端默认值。
+     * 返回下一页的游标，没有更多数据时返回 null
+     */
+    private static String scanMovieRatings(String movieTitle, RatingQuery query, String cursor, int limit,
+                                           int caching, RatingSink sink) throws IOException {
         if (movieTitle == null || movieTitle.trim().isEmpty()) {
             logger.warn("查询电影评分失败：电影名称为空");
-            return new ArrayList<>();
+            return null;
         }
-        movieTitle = movieTitle.trim();
+        byte[] after = decodeCursor(cursor);
+        movieTitle = TitleSearchIndex.resolveTitle(movieTitle.trim());
 
         // 先通过电影名称获取movieId
         String movieId = getMovieIdByTitle(movieTitle);
         if (movieId == null) {
             logger.info("未找到电影 [{}] 的ID，无法查询评分", movieTitle);
-            return new ArrayList<>();
+            return null;
+        }
+
+        Integer movieIdValue = parseId(movieId);
+        if (movieIdValue == null) {
+            logger.warn("电影 [{}] 的ID [{}] 不是数字，无法查询评分", movieTitle, movieId);
+            return null;
         }
 
         TableName tableName = TableName.valueOf(MOVIE_INDEX_TABLE);
-        List<Map<String, String>> ratingsList = new ArrayList<>();
 
         try (Table table = getConnection().getTable(tableName)) {
-            // 扫描行键前缀为 "movieId_" 的记录
-            Scan scan = new Scan();
-            scan.setRowPrefixFilter(Bytes.toBytes(movieId + "_"));
-            scan.addFamily(Bytes.toBytes(REF_CF));
-
-            ResultScanner scanner = table.getScanner(scan);
-            for (Result result : scanner) {
-                String rowKey = Bytes.toString(result.getRow());
-                String userId = rowKey.substring(rowKey.indexOf('_') + 1);
-
-                // 封装单条评分记录
-                Map<String, String> record = new LinkedHashMap<>();
-                record.put("movieTitle", movieTitle);
-                record.put("movieId", movieId);
-                record.put("userId", userId);
-                record.put("rating", Bytes.toString(result.getValue(Bytes.toBytes(REF_CF), Bytes.toBytes("rating"))));
-                record.put("timestamp", Bytes.toString(result.getValue(Bytes.toBytes(REF_CF), Bytes.toBytes("timestamp"))));
-
-                ratingsList.add(record);
+            RatingsSchema schema = RatingsSchema.forTable(getConnection(), tableName);
+            byte[] family = Bytes.toBytes(REF_CF);
+
+            // 扫描行键前缀为 movieId 的记录（加盐时扇出到每个桶），游标之前的行不再读取
+            Scan scan = newRatingsScan(schema, family, query, limit, caching);
+            RatingSink projected = query.project(sink);
+            RatingQuery.TopK topK = query.isSorted() ? query.newTopK(schema, family) : null;
+
+            long count = 0;
+            long scanned;
+            String next = null;
+            try (PrefixScanner scanner = PrefixScanner.open(table, scan, schema, movieIdValue, after)) {
+                Result result;
+                Result last = null;
+                while ((result = scanner.next()) != null) {
+                    if (!query.matches(schema, result, family)) {
+                        continue;
+                    }
+                    if (topK != null) {
+                        topK.offer(result);
+                        continue;
+                    }
+                    if (limit > 0 && count == limit) {
+                        next = encodeCursor(schema, last);
+                        break;
+                    }
+                    projected.accept(movieRating(movieTitle, movieIdValue, schema, result, family));
+                    last = result;
+                    count++;
+                }
+                scanned = scanner.rowsScanned();
+            }
+            if (topK != null) {
+                for (Result ranked : topK.sorted()) {
+                    projected.accept(movieRating(movieTitle, movieIdValue, schema, ranked, family));
+                    count++;
+                }
             }
+            QueryMetrics.recordRows("movie_ratings", scanned, count);
 
-            logger.info("查询到电影 [{}] 的 {} 条评分记录", movieTitle, ratingsList.size());
-            return ratingsList;
+            logger.info("查询到电影 [{}] 的 {} 条评分记录", movieTitle, count);
+            return next;
         } catch (IOException e) {
             logger.error("查询电影评分失败：{}", e.getMessage(), e);
             throw e;
         }
     }
 
+    static RatingRecord movieRating(String movieTitle, int movieId, RatingsSchema schema,
+                                    Result result, byte[] family) {
+        // 封装单条评分记录
+        return new RatingRecord(schema.secondId(result.getRow()), movieId, movieTitle,
+                ratingX2(schema, result, family), timestamp(schema, result, family));
+    }
+
     // =======================================================================
-    // 辅助方法：通过movieId查电影名称
+    // 4. 查询电影/用户的评分统计（统计表中一次 Get）
     // =======================================================================
-    private static String getMovieTitleByMovieId(String movieId) throws IOException {
-        if (movieId == null || movieId.trim().isEmpty()) {
-            return "未知电影（ID为空）"; // 增强参数校验，处理空字符串
+    public static Map<String, Object> queryMovieStats(String movieId) throws IOException {
+        Integer id = movieId == null ? null : parseId(movieId);
+        if (id == null) {
+            logger.warn("查询电影评分统计失败：电影ID [{}] 无效", movieId);
+            return null;
+        }
+        Map<String, Object> stats = getRatingStats(RatingStatsFormat.MOVIE, id);
+        if (stats != null) {
+            stats.put("movieId", String.valueOf(id));
         }
-        movieId = movieId.trim(); // 去除空格，与索引表RowKey格式保持一致
+        return stats;
+    }
 
-        // 从索引表查询（而非原电影表），索引表RowKey=movieId
-        TableName indexTableName = TableName.valueOf(MOVIE_ID_TITLE_INDEX_TABLE);
-        try (Table indexTable = getConnection().getTable(indexTableName)) {
-            // 1. 创建Get对象，按movieId（索引表RowKey）精确查询
-            Get get = new Get(Bytes.toBytes(movieId));
-            // 2. 只查询需要的列（索引表的cf.idx:title），减少数据传输
-            get.addColumn(Bytes.toBytes(INDEX_CF), Bytes.toBytes("title"));
+    public static Map<String, Object> queryMovieStatsByTitle(String movieTitle) throws IOException {
+        if (movieTitle == null || movieTitle.trim().isEmpty()) {
+            logger.warn("查询电影评分统计失败：电影名称为空");
+            return null;
+        }
+        String title = TitleSearchIndex.resolveTitle(movieTitle.trim());
+        String movieId = title == null ? null : getMovieIdByTitle(title);
+        if (movieId == null) {
+            logger.info("未找到电影 [{}] 的ID，无法查询评分统计", movieTitle);
+            return null;
+        }
+        Map<String, Object> stats = queryMovieStats(movieId);
+        if (stats != null) {
+            stats.put("movieTitle", title);
+        }
+        return stats;
+    }
 
-            // 3. 执行查询
-            Result result = indexTable.get(get);
+    public static Map<String, Object> queryUserStats(String userId) throws IOException {
+        Integer id = userId == null ? null : parseId(userId);
+        if (id == null) {
+            logger.warn("查询用户评分统计失败：用户ID [{}] 无效", userId);
+            return null;
+        }
+        Map<String, Object> stats = getRatingStats(RatingStatsFormat.USER, id);
+        if (stats != null) {
+            stats.put("userId", String.valueOf(id));
+        }
+        return stats;
+    }
 
-            // 4. 解析结果：存在则返回标题，否则返回默认值
-            if (!result.isEmpty()) {
-                byte[] titleBytes = result.getValue(Bytes.toBytes(INDEX_CF), Bytes.toBytes("title"));
-                return titleBytes != null ? Bytes.toString(titleBytes) : "未知电影（标题为空）";
-            } else {
-                return "未知电影（ID：" + movieId + "）";
-            }
+    private static Map<String, Object> getRatingStats(byte type, int id) throws IOException {
+        try (Table table = getConnection().getTable(TableName.valueOf(STATS_TABLE))) {
+            byte[] family = Bytes.toBytes(STATS_CF);
+            Get get = new Get(RatingStatsFormat.rowKey(type, id));
+            get.addFamily(family);
+            return RatingStatsFormat.decode(QueryMetrics.get(table, get), family);
+        } catch (IOException e) {
+            logger.error("查询评分统计失败：{}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    // =======================================================================
+    // 5. 查询类型排行榜（类型索引表中一次 Get，只读 top 列族）
+    // =======================================================================
+    public static Map<String, Object> queryGenreTop(String genre, int limit) throws IOException {
+        if (genre == null || genre.trim().isEmpty()) {
+            logger.warn("查询类型排行榜失败：类型为空");
+            return null;
+        }
+        genre = genre.trim();
+
+        try (Table table = getConnection().getTable(TableName.valueOf(GENRE_INDEX_TABLE))) {
+            Get get = new Get(Bytes.toBytes(genre));
+            get.addFamily(GenreIndexFormat.TOP_FAMILY);
+            return genreTop(genre, QueryMetrics.get(table, get), limit);
+        } catch (IOException e) {
+            logger.error("查询类型排行榜失败：{}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    static Map<String, Object> genreTop(String genre, Result result, int limit) {
+        byte[] value = result.getValue(GenreIndexFormat.TOP_FAMILY, GenreIndexFormat.TOP_VALUE);
+        if (value == null) {
+            logger.info("类型 [{}] 没有排行榜", genre);
+            return null;
+        }
+
+        List<GenreIndexFormat.RankedMovie> ranking = GenreIndexFormat.decodeRanking(value);
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < ranking.size() && (limit <= 0 || i < limit); i++) {
+            items.add(GenreIndexFormat.toMap(i + 1, ranking.get(i)));
+        }
+        byte[] updatedAt = result.getValue(GenreIndexFormat.TOP_FAMILY, GenreIndexFormat.TOP_UPDATED_AT);
+
+        Map<String, Object> top = new LinkedHashMap<>();
+        top.put("genre", genre);
+        top.put("updatedAt", updatedAt == null ? null : Bytes.toLong(updatedAt));
+        top.put("items", items);
+        return top;
+    }
+
+    // =======================================================================
+    // 6. 查询相似电影（相似度表中一次 Get）
+    // =======================================================================
+    public static Map<String, Object> querySimilarMovies(String movieId, int limit) throws IOException {
+        Integer id = movieId == null ? null : parseId(movieId);
+        if (id == null) {
+            logger.warn("查询相似电影失败：电影ID [{}] 无效", movieId);
+            return null;
+        }
+        try (Table table = getConnection().getTable(TableName.valueOf(SIMILARITY_TABLE))) {
+            Get get = new Get(SimilarityFormat.rowKey(id));
+            get.addFamily(SimilarityFormat.FAMILY);
+            return similarMovies(id, QueryMetrics.get(table, get), limit);
+        } catch (IOException e) {
+            logger.error("查询相似电影失败：{}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    public static Map<String, Object> querySimilarMoviesByTitle(String movieTitle, int limit) throws IOException {
+        if (movieTitle == null || movieTitle.trim().isEmpty()) {
+            logger.warn("查询相似电影失败：电影名称为空");
+            return null;
+        }
+        String title = TitleSearchIndex.resolveTitle(movieTitle.trim());
+        String movieId = title == null ? null : getMovieIdByTitle(title);
+        if (movieId == null) {
+            logger.info("未找到电影 [{}] 的ID，无法查询相似电影", movieTitle);
+            return null;
+        }
+        Map<String, Object> similar = querySimilarMovies(movieId, limit);
+        if (similar != null) {
+            similar.put("movieTitle", title);
+        }
+        return similar;
+    }
+
+    /**
+     * 解码相似电影并批量解析标题（标题字典 + 一次批量 Get）
+     */
+    static Map<String, Object> similarMovies(int movieId, Result result, int limit) throws IOException {
+        byte[] value = result.getValue(SimilarityFormat.FAMILY, SimilarityFormat.NEIGHBOURS);
+        if (value == null) {
+            logger.info("电影 [{}] 没有相似度数据", movieId);
+            return null;
+        }
+        List<SimilarityFormat.Neighbour> neighbours = SimilarityFormat.decode(value);
+        int n = limit > 0 ? Math.min(limit, neighbours.size()) : neighbours.size();
+        int[] movieIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            movieIds[i] = neighbours.get(i).movieId();
+        }
+        String[] titles = MovieTitleCache.resolve(movieIds, n);
+
+        List<Map<String, Object>> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            items.add(SimilarityFormat.toMap(i + 1, neighbours.get(i), titles[i]));
+        }
+        byte[] metric = result.getValue(SimilarityFormat.FAMILY, SimilarityFormat.METRIC);
+        byte[] updatedAt = result.getValue(SimilarityFormat.FAMILY, SimilarityFormat.UPDATED_AT);
+
+        Map<String, Object> similar = new LinkedHashMap<>();
+        similar.put("movieId", String.valueOf(movieId));
+        similar.put("metric", metric == null ? null : Bytes.toString(metric));
+        similar.put("updatedAt", updatedAt == null ? null : Bytes.toLong(updatedAt));
+        similar.put("items", items);
+        return similar;
+    }
+
+    // =======================================================================
+    // 辅助方法：按查询方式设置扫描参数
+    // =======================================================================
+    static Scan newRatingsScan(RatingsSchema schema, byte[] family, RatingQuery query, int limit, int caching) {
+        Scan scan = new Scan();
+        // 有条件只能在客户端过滤时，服务端不能截断
+        boolean bounded = limit > 0 && !query.needsClientFilter(schema);
+        // 投影列、评分/时间范围过滤器下推到 RegionServer
+        query.applyTo(scan, schema, family, bounded ? limit + 1 : 0);
+        if (caching > 0) {
+            scan.setCaching(caching);
+        }
+        if (bounded) {
+            // 分页：每个桶最多需要 limit + 1 行，多余的行服务端不再返回
+            scan.setLimit(limit + 1);
+        } else if (caching == STREAM_CACHING || query.isSorted()) {
+            // 流式/Top-K 全量扫描：结果只读一次，不挤占块缓存
+            scan.setCacheBlocks(false);
+        }
+        return scan;
+    }
+
+    static void checkSortedPage(String cursor) {
+        if (cursor != null && !cursor.isBlank()) {
+            throw new IllegalArgumentException("指定 sort 时返回前 limit 条，不支持游标");
         }
     }
 
+    // =======================================================================
+    // 辅助方法：分页游标（去掉桶号的最后一行行键，URL 安全的 Base64）
+    // =======================================================================
+    static String encodeCursor(RatingsSchema schema, Result last) {
+        return encodeCursor(schema.unsaltedKey(last.getRow()));
+    }
+
+    static String encodeCursor(byte[] unsaltedKey) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(unsaltedKey);
+    }
+
+    static byte[] decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return Base64.getUrlDecoder().decode(cursor.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的游标：" + cursor);
+        }
+    }
+
+    // =======================================================================
+    // 辅助方法：按评分表的存储格式解码评分和时间戳列
+    // =======================================================================
+    static int ratingX2(RatingsSchema schema, Result result, byte[] family) {
+        byte[] rating = result.getValue(family, schema.ratingQualifier());
+        return rating == null ? RatingRecord.NO_RATING : schema.decodeRatingX2(rating);
+    }
+
+    static long timestamp(RatingsSchema schema, Result result, byte[] family) {
+        byte[] timestamp = result.getValue(family, schema.timestampQualifier());
+        return timestamp == null ? RatingRecord.NO_TIMESTAMP : schema.decodeTimestamp(timestamp);
+    }
+
+    static Integer parseId(String id) {
+        try {
+            return Integer.valueOf(id.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // =======================================================================
+    // 辅助方法：把一页评分记录连同电影标题加入结果（标题一次性批量解析）
+    // =======================================================================
+    static void appendUserRatings(int userId, List<Result> page, RatingsSchema schema,
+                                  byte[] family, RatingSink sink) throws IOException {
+        if (page.isEmpty()) {
+            return;
+        }
+        int[] movieIds = new int[page.size()];
+        for (int i = 0; i < movieIds.length; i++) {
+            movieIds[i] = schema.secondId(page.get(i).getRow());
+        }
+        String[] titles = MovieTitleCache.resolve(movieIds, movieIds.length);
+
+        for (int i = 0; i < movieIds.length; i++) {
+            // 封装单条评分记录
+            Result result = page.get(i);
+            sink.accept(new RatingRecord(userId, movieIds[i], titles[i],
+                    ratingX2(schema, result, family), timestamp(schema, result, family)));
+        }
+        page.clear();
+    }
+
     // =======================================================================
     // 辅助方法：通过电影名称查movieId
     // =======================================================================
     private static String getMovieIdByTitle(String movieTitle) throws IOException {
+        // 标题索引中有这个标题时直接取索引中的 movieId，没有时（电影可能在索引构建之后导入）查 movies_info
+        String indexed = TitleSearchIndex.lookupMovieId(movieTitle);
+        if (indexed != null) {
+            return indexed;
+        }
         TableName tableName = TableName.valueOf(MOVIES_INFO_TABLE);
         try (Table table = getConnection().getTable(tableName)) {
             Get get = new Get(Bytes.toBytes(movieTitle));
-            Result result = table.get(get);
+            Result result = QueryMetrics.get(table, get);
             if (!result.isEmpty()) {
                 return Bytes.toString(result.getValue(Bytes.toBytes(INFO_CF), Bytes.toBytes("movieId")));
             }
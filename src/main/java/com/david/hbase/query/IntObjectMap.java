@@ -0,0 +1,73 @@
+package com.david.hbase.query;
+
+import java.util.Arrays;
+
+/**
+ * int 为键的开放寻址哈希表（线性探测），避免 Integer 装箱和 HashMap.Node 的开销。
+ * 容量固定，达到上限后不再接受新键；不支持删除。非线程安全。
+ */
+final class IntObjectMap<V> {
+    private final int[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    IntObjectMap(int maxSize) {
+        this.maxSize = maxSize;
+        // 装载因子不超过 0.5
+        int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int i = slot(key);
+        Object value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == key) {
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * 写入键值，表已满且键不存在时返回 false
+     */
+    boolean put(int key, V value) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= maxSize) {
+            return false;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private int slot(int key) {
+        // 乘法哈希打散连续的 movieId
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,32 @@
+package com.david.hbase.query;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 电影详情、用户评分、电影评分三个接口的数据来源。
+ * 由 query.backend 选择实现（见 {@link MovieStores}）：
+ *   - hbase：{@link HBaseMovieStore}，查询 HBase（带结果缓存和舱壁）；
+ *   - memory：{@link ColumnarMovieStore}，启动时把 CSV 载入堆外列式数组，查询不发起任何 RPC。
+ *
+ * 参数和返回值的约定与 {@link HBaseQueryer} 相同：查不到时详情为 null、评分为空列表；
+ * 参数（游标等）无效时返回以 IllegalArgumentException 失败的 future。
+ */
+public interface MovieStore {
+
+    CompletableFuture<Map<String, String>> queryMovieDetail(String movieTitle);
+
+    CompletableFuture<List<RatingRecord>> queryUserRatings(String userId, RatingQuery query);
+
+    CompletableFuture<RatingsPage> queryUserRatingsPage(String userId, RatingQuery query, String cursor, int limit);
+
+    void streamUserRatings(String userId, RatingSink sink) throws IOException;
+
+    CompletableFuture<List<RatingRecord>> queryMovieRatings(String movieTitle, RatingQuery query);
+
+    CompletableFuture<RatingsPage> queryMovieRatingsPage(String movieTitle, RatingQuery query, String cursor, int limit);
+
+    void streamMovieRatings(String movieTitle, RatingSink sink) throws IOException;
+}
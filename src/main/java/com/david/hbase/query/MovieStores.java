@@ -0,0 +1,44 @@
+package com.david.hbase.query;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import static com.david.hbase.importer.HBaseDataImporter.*;
+
+/**
+ * 按 query.backend 选择详情/评分接口的数据来源：hbase（默认）或 memory（{@link ColumnarMovieStore}）
+ */
+public final class MovieStores {
+    private static final String BACKEND = getProperty("query.backend", "hbase");
+    private static final String SNAPSHOT_PATH = getProperty("memory.snapshot.path", "");
+
+    private static volatile MovieStore store = new HBaseMovieStore();
+
+    private MovieStores() {
+    }
+
+    public static MovieStore get() {
+        return store;
+    }
+
+    public static boolean isMemory() {
+        return "memory".equalsIgnoreCase(BACKEND);
+    }
+
+    /**
+     * memory 后端：载入列式存储（有新的快照时直接映射），并用其中的标题构建标题检索索引；hbase 后端不做任何事
+     */
+    public static synchronized void start() throws IOException {
+        if (!isMemory()) {
+            if (!"hbase".equalsIgnoreCase(BACKEND)) {
+                throw new IllegalArgumentException("query.backend 只能是 hbase 或 memory：" + BACKEND);
+            }
+            return;
+        }
+        // 组内顺序按配置的存储格式（与建表时相同），不连接 HBase 读取表属性
+        ColumnarMovieStore columnar = ColumnarMovieStore.load(getMoviesPath(), getRatingsPath(),
+                SNAPSHOT_PATH.isEmpty() ? null : Paths.get(SNAPSHOT_PATH), getConfiguredRatingsSchema());
+        columnar.loadTitleIndex();
+        store = columnar;
+    }
+}
@@ -0,0 +1,247 @@
+package com.david.hbase.query;
+
+import com.david.hbase.importer.RegionParallelScanner;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.david.hbase.importer.HBaseDataImporter.*;
+
+/**
+ * 进程内的 movieId -> 电影标题字典。
+ * 启动时从 movie_id_title_index 全量加载，未命中的 movieId 用一次批量 Get 补齐，
+ * 避免按用户查询评分时每条记录单独查一次标题（N+1 次 RPC）。
+ *
+ * 字典容量有上限（title.cache.max.entries），满了以后新标题不再缓存、直接查表。
+ * syncMovieIdTitleIndex() 完成后会写入同步标记：同进程内立即重新加载，
+ * 其他进程（如 Web 服务）由后台线程每 title.cache.refresh.seconds 秒检查标记后重新加载。
+ */
+public final class MovieTitleCache {
+    private static final Logger logger = LoggerFactory.getLogger(MovieTitleCache.class);
+
+    private static final byte[] TITLE = Bytes.toBytes("title");
+    private static final int MAX_ENTRIES = Integer.parseInt(getProperty("title.cache.max.entries", "200000"));
+    private static final int REFRESH_SECONDS = Integer.parseInt(getProperty("title.cache.refresh.seconds", "60"));
+
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static IntObjectMap<String> titles = new IntObjectMap<>(MAX_ENTRIES);
+    // 当前字典对应的同步标记时间（-1 表示尚未加载）
+    private static volatile long loadedSyncTime = -1;
+    private static ScheduledExecutorService refresher;
+
+    private MovieTitleCache() {
+    }
+
+    /**
+     * 预热字典，并启动后台刷新
+     */
+    public static synchronized void start() throws IOException {
+        reload();
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "title-cache-refresher");
+                t.setDaemon(true);
+                return t;
+            });
+            refresher.scheduleWithFixedDelay(MovieTitleCache::refreshIfSynced,
+                    REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+            addTitleIndexListener(MovieTitleCache::refreshQuietly);
+        }
+    }
+
+    public static synchronized void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * 按 Region 并行扫描 movie_id_title_index 重建字典，完成后整体替换
+     */
+    public static void reload() throws IOException {
+        long start = System.currentTimeMillis();
+        long syncTime = readSyncTime();
+        IntObjectMap<String> fresh = new IntObjectMap<>(MAX_ENTRIES);
+
+        Scan scan = new Scan();
+        scan.addColumn(Bytes.toBytes(INDEX_CF), TITLE);
+        // 各 Region 的结果先分别收集，再在当前线程写入字典（IntObjectMap 非线程安全）
+        List<Part> parts = parallelScanner(MOVIE_ID_TITLE_INDEX_TABLE).scan(scan, Part::new);
+        int skipped = 0;
+        for (Part part : parts) {
+            skipped += part.skipped;
+            for (int i = 0; i < part.size; i++) {
+                if (!fresh.put(part.movieIds[i], part.titles.get(i))) {
+                    skipped++;
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            titles = fresh;
+            loadedSyncTime = syncTime;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("电影标题字典加载完成：{} 条，跳过 {} 条，耗时 {} ms",
+                fresh.size(), skipped, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 批量解析标题：先查字典，未命中的 movieId 合并为一次批量 Get
+     */
+    public static String[] resolve(int[] movieIds, int count) throws IOException {
+        String[] result = new String[count];
+        List<Integer> missing = null;
+
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                result[i] = titles.get(movieIds[i]);
+                if (result[i] == null) {
+                    if (missing == null) {
+                        missing = new ArrayList<>();
+                    }
+                    missing.add(i);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        QueryMetrics.recordTitleLookups(count - (missing == null ? 0 : missing.size()),
+                missing == null ? 0 : missing.size());
+        if (missing != null) {
+            fetchMissing(movieIds, missing, result);
+        }
+        return result;
+    }
+
+    private static void fetchMissing(int[] movieIds, List<Integer> missing, String[] result) throws IOException {
+        byte[] family = Bytes.toBytes(INDEX_CF);
+        List<Get> gets = new ArrayList<>(missing.size());
+        for (int i : missing) {
+            Get get = new Get(Bytes.toBytes(String.valueOf(movieIds[i])));
+            get.addColumn(family, TITLE);
+            gets.add(get);
+        }
+
+        Result[] results;
+        try (Table table = getConnection().getTable(TableName.valueOf(MOVIE_ID_TITLE_INDEX_TABLE))) {
+            results = QueryMetrics.get(table, gets);
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int k = 0; k < results.length; k++) {
+                int i = missing.get(k);
+                if (results[k].isEmpty()) {
+                    result[i] = "未知电影（ID：" + movieIds[i] + "）";
+                    continue;
+                }
+                byte[] title = results[k].getValue(family, TITLE);
+                if (title == null) {
+                    result[i] = "未知电影（标题为空）";
+                    continue;
+                }
+                result[i] = Bytes.toString(title);
+                titles.put(movieIds[i], result[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("批量补齐 {} 个电影标题", missing.size());
+    }
+
+    public static int size() {
+        lock.readLock().lock();
+        try {
+            return titles.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- 刷新 ---
+
+    private static void refreshIfSynced() {
+        try {
+            long syncTime = readSyncTime();
+            if (syncTime != loadedSyncTime) {
+                logger.info("检测到标题索引已重新同步，重新加载字典");
+                reload();
+            }
+        } catch (Exception e) {
+            logger.warn("检查标题索引同步标记失败：{}", e.getMessage());
+        }
+    }
+
+    private static void refreshQuietly() {
+        try {
+            reload();
+        } catch (IOException e) {
+            logger.warn("重新加载电影标题字典失败：{}", e.getMessage());
+        }
+    }
+
+    private static long readSyncTime() throws IOException {
+        try (Table table = getConnection().getTable(TableName.valueOf(MOVIE_ID_TITLE_INDEX_TABLE))) {
+            Get get = new Get(Bytes.toBytes(TITLE_INDEX_SYNC_ROW));
+            get.addColumn(Bytes.toBytes(INDEX_CF), Bytes.toBytes(TITLE_INDEX_SYNC_COLUMN));
+            byte[] value = table.get(get).getValue(Bytes.toBytes(INDEX_CF), Bytes.toBytes(TITLE_INDEX_SYNC_COLUMN));
+            return value == null ? 0 : Bytes.toLong(value);
+        }
+    }
+
+    /**
+     * 一个 Region 的 movieId -> 标题
+     */
+    private static final class Part implements RegionParallelScanner.RegionSink<Part> {
+        int[] movieIds = new int[256];
+        final List<String> titles = new ArrayList<>();
+        int size;
+        int skipped;
+
+        @Override
+        public void accept(Result result) {
+            Integer movieId = parseMovieId(result.getRow());
+            byte[] title = result.getValue(Bytes.toBytes(INDEX_CF), TITLE);
+            if (movieId == null || title == null) {
+                skipped++;
+                return;
+            }
+            if (size == movieIds.length) {
+                movieIds = Arrays.copyOf(movieIds, size * 2);
+            }
+            movieIds[size++] = movieId;
+            titles.add(Bytes.toString(title));
+        }
+
+        @Override
+        public Part finish() {
+            return this;
+        }
+    }
+
+    private static Integer parseMovieId(byte[] row) {
+        try {
+            return Integer.valueOf(Bytes.toString(row).trim());
+        } catch (NumberFormatException e) {
+            // 同步标记等非电影行
+            return null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.david.hbase.query;
+
+import com.david.hbase.schema.RatingsSchema;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按主ID前缀扫描评分表/索引表。
+ * 不加盐时就是一次普通的前缀扫描；加盐时每个桶打开一个扫描器，
+ * 按去掉桶号后的行键做多路归并，输出顺序与不加盐时相同（按次ID排序）。
+ * 从打开到关闭的耗时计入 {@link QueryMetrics} 中该表的 scan 计时器。
+ */
+public final class PrefixScanner implements Closeable {
+    private final List<ResultScanner> scanners = new ArrayList<>();
+    private final PriorityQueue<Head> heads;
+    private final Timer timer;
+    private final long startNanos = System.nanoTime();
+    private long rows;
+    private boolean closed;
+
+    private PrefixScanner(int saltLength, Timer timer) {
+        this.timer = timer;
+        this.heads = new PriorityQueue<>((a, b) -> Bytes.compareTo(
+                a.row, saltLength, a.row.length - saltLength,
+                b.row, saltLength, b.row.length - saltLength));
+    }
+
+    /**
+     * 以 template 为模板（列、缓存等设置），对每个桶的前缀各打开一个扫描器
+     */
+    public static PrefixScanner open(Table table, Scan template, RatingsSchema schema, int first) throws IOException {
+        return open(table, template, schema, first, null);
+    }
+
+    /**
+     * 从不加盐的行键 after 之后（不含）继续扫描，用于分页游标；after 为 null 时从头扫描。
+     * 每个桶的起始行都下推到 Scan，已经返回过的行不会再从服务端读出
+     */
+    public static PrefixScanner open(Table table, Scan template, RatingsSchema schema, int first,
+                                     byte[] after) throws IOException {
+        if (after != null && !Bytes.startsWith(after, schema.unsaltedKey(schema.prefix(0, first)))) {
+            throw new IllegalArgumentException("游标不属于当前查询");
+        }
+        PrefixScanner scanner = new PrefixScanner(schema.saltLength(),
+                QueryMetrics.rpc(table.getName().getNameAsString(), QueryMetrics.Op.SCAN));
+        try {
+            byte[][] prefixes = schema.prefixes(first);
+            for (int bucket = 0; bucket < prefixes.length; bucket++) {
+                Scan scan = new Scan(template);
+                scan.setStartStopRowForPrefixScan(prefixes[bucket]);
+                if (after != null) {
+                    scan.withStartRow(schema.saltedKey(bucket, after), false);
+                }
+                ResultScanner bucketScanner = table.getScanner(scan);
+                scanner.scanners.add(bucketScanner);
+                scanner.advance(bucketScanner);
+            }
+        } catch (IOException | RuntimeException e) {
+            scanner.close();
+            throw e;
+        }
+        return scanner;
+    }
+
+    private void advance(ResultScanner scanner) throws IOException {
+        Result next = scanner.next();
+        if (next != null) {
+            heads.add(new Head(next, scanner));
+        }
+    }
+
+    /**
+     * 下一条结果，扫描结束返回 null
+     */
+    public Result next() throws IOException {
+        Head head = heads.poll();
+        if (head == null) {
+            return null;
+        }
+        advance(head.scanner);
+        rows++;
+        return head.result;
+    }
+
+    /**
+     * 已经取出的行数
+     */
+    public long rowsScanned() {
+        return rows;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        for (ResultScanner scanner : scanners) {
+            scanner.close();
+        }
+        heads.clear();
+    }
+
+    private static final class Head {
+        final Result result;
+        final byte[] row;
+        final ResultScanner scanner;
+
+        Head(Result result, ResultScanner scanner) {
+            this.result = result;
+            this.row = result.getRow();
+            this.scanner = scanner;
+        }
+    }
+}
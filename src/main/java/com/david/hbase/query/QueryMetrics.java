@@ -0,0 +1,161 @@
+package com.david.hbase.query;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询路径的 Micrometer 指标，注册到 Metrics.globalRegistry（Web 服务中由 Actuator 以 Prometheus 格式暴露）：
+ *   movielens.hbase.rpc{table, op}        每次 Get / 批量 Get / 扫描的耗时（次数即 RPC 数，扫描计从打开到关闭）
+ *   movielens.query.rows.fetched{query}    每次评分查询从 HBase 取回的行数（服务端过滤之后、客户端过滤之前）
+ *   movielens.query.rows.returned{query}   每次评分查询返回给调用方的行数
+ *   movielens.title.lookups{source}       每次批量解析标题时字典命中（dictionary）和查表补齐（table）的个数
+ *   movielens.query.errors{phase, exception}  接口出错的次数：返回 500（response）或流式输出中途中断（stream）
+ * 各接口的延迟由 Spring 的 http.server.requests 记录（百分位见 application.properties）。
+ *
+ * 指标对象按表名/查询名缓存，热路径上只有一次 ConcurrentHashMap 读取和 record 调用，不分配对象。
+ */
+public final class QueryMetrics {
+    public enum Op {
+        GET("get"), BATCH_GET("batch_get"), SCAN("scan");
+
+        private final String tag;
+
+        Op(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final MeterRegistry registry = Metrics.globalRegistry;
+
+    // 表名 -> 按 Op 序号排列的计时器
+    private static final ConcurrentHashMap<String, Timer[]> rpcTimers = new ConcurrentHashMap<>();
+    // 查询名 -> {取回行数, 返回行数}
+    private static final ConcurrentHashMap<String, DistributionSummary[]> rowSummaries = new ConcurrentHashMap<>();
+
+    private static final DistributionSummary TITLES_FROM_DICTIONARY = titleLookups("dictionary");
+    private static final DistributionSummary TITLES_FROM_TABLE = titleLookups("table");
+
+    private QueryMetrics() {
+    }
+
+    public static Timer rpc(String table, Op op) {
+        Timer[] timers = rpcTimers.get(table);
+        if (timers == null) {
+            timers = rpcTimers.computeIfAbsent(table, QueryMetrics::newRpcTimers);
+        }
+        return timers[op.ordinal()];
+    }
+
+    private static Timer[] newRpcTimers(String table) {
+        Op[] ops = Op.values();
+        Timer[] timers = new Timer[ops.length];
+        for (Op op : ops) {
+            timers[op.ordinal()] = Timer.builder("movielens.hbase.rpc")
+                    .description("HBase 客户端调用耗时")
+                    .tag("table", table)
+                    .tag("op", op.tag)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        return timers;
+    }
+
+    /**
+     * 计时的单行 Get
+     */
+    public static Result get(Table table, Get get) throws IOException {
+        Timer timer = rpc(table.getName().getNameAsString(), Op.GET);
+        long start = System.nanoTime();
+        try {
+            return table.get(get);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 计时的批量 Get
+     */
+    public static Result[] get(Table table, List<Get> gets) throws IOException {
+        Timer timer = rpc(table.getName().getNameAsString(), Op.BATCH_GET);
+        long start = System.nanoTime();
+        try {
+            return table.get(gets);
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 异步调用完成（成功或失败）时记录耗时
+     */
+    public static <T> CompletableFuture<T> time(String table, Op op, CompletableFuture<T> future) {
+        Timer timer = rpc(table, op);
+        long start = System.nanoTime();
+        return future.whenComplete((result, error) -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * 记录一次评分查询取回/返回的行数
+     */
+    public static void recordRows(String query, long fetched, long returned) {
+        DistributionSummary[] summaries = rowSummaries.get(query);
+        if (summaries == null) {
+            summaries = rowSummaries.computeIfAbsent(query, QueryMetrics::newRowSummaries);
+        }
+        summaries[0].record(fetched);
+        summaries[1].record(returned);
+    }
+
+    private static DistributionSummary[] newRowSummaries(String query) {
+        return new DistributionSummary[]{
+                DistributionSummary.builder("movielens.query.rows.fetched")
+                        .description("每次查询从 HBase 取回的行数")
+                        .tag("query", query)
+                        .register(registry),
+                DistributionSummary.builder("movielens.query.rows.returned")
+                        .description("每次查询返回的行数")
+                        .tag("query", query)
+                        .register(registry)
+        };
+    }
+
+    /**
+     * 记录一次批量标题解析中字典命中和查表补齐的个数
+     */
+    public static void recordTitleLookups(int fromDictionary, int fromTable) {
+        TITLES_FROM_DICTIONARY.record(fromDictionary);
+        TITLES_FROM_TABLE.record(fromTable);
+    }
+
+    /**
+     * 记录一次接口错误；错误路径不在热路径上，计数器不单独缓存
+     */
+    public static void recordError(String phase, Throwable error) {
+        Counter.builder("movielens.query.errors")
+                .description("接口出错的次数")
+                .tag("phase", phase)
+                .tag("exception", error.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    private static DistributionSummary titleLookups(String source) {
+        return DistributionSummary.builder("movielens.title.lookups")
+                .description("每次批量解析的标题个数")
+                .tag("source", source)
+                .register(registry);
+    }
+}
@@ -0,0 +1,238 @@
+package com.david.hbase.query;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 查询结果的读穿缓存：
+ *   - 按最近最少使用淘汰，同时限制条数（maxEntries）和总权重（maxWeight，如评分条数），超过 TTL 的结果视为过期；
+ *   - 相同键的并发请求合并：第一个请求发起查询，之后到达的请求共用同一个 future，查询完成前不会重复扫描；
+ *   - 查询失败不缓存；结果为 null（未找到）也缓存，避免不存在的标题反复查表；
+ *   - invalidateAll() 清空缓存，清空前发起、清空后才完成的查询结果不再写入（可能是旧数据），之后的请求也不再合并到这些查询。
+ * 缓存的结果被多个请求共享，调用方不能修改。
+ *
+ * 计数同时注册到 Metrics.globalRegistry（标签 cache 为缓存名）：
+ *   movielens.cache.requests{result}   命中（hit）、未命中并发起查询（miss）、合并到进行中的查询（coalesced）的请求数
+ *   movielens.cache.load.failures      查询失败次数
+ *   movielens.cache.removals{cause}    因容量淘汰（size）、过期（expired）移除的条数
+ *   movielens.cache.invalidations      invalidateAll() 次数
+ *   movielens.cache.entries / weight / loading  当前条数、总权重、进行中的查询数
+ */
+public final class QueryResultCache<K, V> {
+    private final String name;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final ToLongFunction<V> weigher;
+
+    // 按访问顺序排列（最久未访问的在前），由 this 保护
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+    // 每次 invalidateAll() 加一
+    private long generation;
+    // 正在查询的键 -> 查询结果（合并并发请求）
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryResultCache(String name, int maxEntries, long maxWeight, long ttlSeconds, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.weigher = weigher;
+        registerMeters(Metrics.globalRegistry);
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        requestCounter(registry, "hit", hits);
+        requestCounter(registry, "miss", misses);
+        requestCounter(registry, "coalesced", coalesced);
+        FunctionCounter.builder("movielens.cache.load.failures", loadFailures, LongAdder::sum)
+                .description("缓存未命中后查询失败的次数")
+                .tag("cache", name)
+                .register(registry);
+        removalCounter(registry, "size", evictions);
+        removalCounter(registry, "expired", expirations);
+        FunctionCounter.builder("movielens.cache.invalidations", invalidations, LongAdder::sum)
+                .description("清空缓存的次数")
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("movielens.cache.entries", this, QueryResultCache::size)
+                .description("缓存的条数")
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("movielens.cache.weight", this, QueryResultCache::weight)
+                .description("缓存的总权重")
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("movielens.cache.loading", loading, Map::size)
+                .description("进行中的查询数")
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    private void requestCounter(MeterRegistry registry, String result, LongAdder counter) {
+        FunctionCounter.builder("movielens.cache.requests", counter, LongAdder::sum)
+                .description("缓存请求数")
+                .tag("cache", name)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private void removalCounter(MeterRegistry registry, String cause, LongAdder counter) {
+        FunctionCounter.builder("movielens.cache.removals", counter, LongAdder::sum)
+                .description("从缓存移除的条数")
+                .tag("cache", name)
+                .tag("cause", cause)
+                .register(registry);
+    }
+
+    private synchronized double size() {
+        return entries.size();
+    }
+
+    private synchronized double weight() {
+        return weight;
+    }
+
+    private record Entry<V>(V value, long weight, long loadedAt) {
+    }
+
+    /**
+     * 读取缓存；未命中时由 loader 查询（同一个键同时只查询一次），成功后写入缓存
+     */
+    public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.loadedAt < ttlNanos) {
+                    hits.increment();
+                    return CompletableFuture.completedFuture(entry.value);
+                }
+                remove(key, entry);
+                expirations.increment();
+            }
+            loadGeneration = generation;
+        }
+
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, created);
+        if (inFlight != null) {
+            coalesced.increment();
+            return inFlight.copy();
+        }
+        misses.increment();
+        CompletableFuture<V> load;
+        try {
+            load = loader.apply(key);
+        } catch (RuntimeException e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((value, error) -> {
+            // 先写入缓存再移出 loading：之后到达的请求要么合并到 loading，要么命中缓存
+            if (error == null) {
+                put(key, value, loadGeneration);
+            } else {
+                loadFailures.increment();
+            }
+            loading.remove(key, created);
+            if (error == null) {
+                created.complete(value);
+            } else {
+                created.completeExceptionally(error);
+            }
+        });
+        return created.copy();
+    }
+
+    private synchronized void put(K key, V value, long loadGeneration) {
+        if (loadGeneration != generation || maxEntries <= 0) {
+            return;
+        }
+        long w = Math.max(1, value == null ? 1 : weigher.applyAsLong(value));
+        if (w > maxWeight) {
+            // 单个结果超过总权重上限，不缓存
+            return;
+        }
+        Entry<V> previous = entries.put(key, new Entry<>(value, w, System.nanoTime()));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += w;
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        entries.remove(key);
+        weight -= entry.weight;
+    }
+
+    /**
+     * 清空缓存（数据被导入程序修改后调用）。进行中的查询不再接受合并，之后的请求重新查询
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+        generation++;
+        // 进行中的查询完成时按 (key, future) 移除，不会误删之后新发起的查询
+        loading.clear();
+        invalidations.increment();
+    }
+
+    /**
+     * 命中率等统计：hitRatio = 命中 / 请求，coalescedRatio = 合并到进行中查询的请求 / 未命中缓存的请求
+     */
+    public synchronized Map<String, Object> stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        long c = coalesced.sum();
+        long requests = h + m + c;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("entries", entries.size());
+        stats.put("weight", weight);
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxWeight", maxWeight);
+        stats.put("requests", requests);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("coalesced", c);
+        stats.put("loadFailures", loadFailures.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("inFlight", loading.size());
+        stats.put("hitRatio", requests == 0 ? 0.0 : round((double) h / requests));
+        stats.put("coalescedRatio", m + c == 0 ? 0.0 : round((double) c / (m + c)));
+        return stats;
+    }
+
+    private static double round(double ratio) {
+        return Math.round(ratio * 10000) / 10000.0;
+    }
+}
@@ -0,0 +1,295 @@
+package com.david.hbase.query;
+
+import com.david.hbase.schema.RatingsSchema;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+
+import java.util.*;
+
+/**
+ * 评分查询的过滤、投影、排序条件。
+ * 评分区间和时间戳窗口转换为 SingleColumnValueFilter，在 RegionServer 上丢弃不满足的行；
+ * 分页时再加 PageFilter，每个 Region 返回的行数有上限；投影只读取需要的列。
+ *
+ * 按值比较要求字节序与数值序一致：两种存储格式的评分（"4.5" / 1 字节半星数）都满足；
+ * 时间戳只有版本 2（8 字节大端）满足，版本 1 的十进制字符串时间戳在客户端过滤。
+ *
+ * 指定排序时为 Top-K 查询：扫描满足条件的行，用大小为 K 的堆保留评分最高/最新的 K 条，不保留全部结果。
+ */
+public record RatingQuery(Integer minRatingX2, Integer maxRatingX2, Long fromTimestamp, Long toTimestamp,
+                          Set<String> fields, Sort sort, int topK) {
+    public static final RatingQuery ALL = new RatingQuery(null, null, null, null, null, null, 0);
+    public static final String RATING = "rating";
+    public static final String TIMESTAMP = "timestamp";
+
+    public enum Sort {
+        // 评分从高到低（同分按时间从新到旧）
+        RATING,
+        // 时间从新到旧
+        TIMESTAMP
+    }
+
+    /**
+     * 解析接口参数，参数无效时抛出 IllegalArgumentException
+     * @param minRating 最低评分（含），如 "3.5"
+     * @param maxRating 最高评分（含）
+     * @param from      时间戳下限（含，秒）
+     * @param to        时间戳上限（不含，秒）
+     * @param fields    返回的评分列，逗号分隔：rating,timestamp
+     * @param sort      rating / timestamp，指定时返回前 limit 条
+     */
+    public static RatingQuery parse(String minRating, String maxRating, Long from, Long to,
+                                    String fields, String sort, int limit) {
+        Integer min = parseRating(minRating);
+        Integer max = parseRating(maxRating);
+        if (min != null && max != null && min > max) {
+            throw new IllegalArgumentException("minRating 不能大于 maxRating");
+        }
+        if ((from != null && from < 0) || (to != null && to < 0)) {
+            throw new IllegalArgumentException("时间戳不能为负数");
+        }
+        if (from != null && to != null && from >= to) {
+            throw new IllegalArgumentException("from 必须小于 to");
+        }
+        Set<String> projection = null;
+        if (fields != null && !fields.isBlank()) {
+            projection = new LinkedHashSet<>();
+            for (String field : fields.split(",")) {
+                String f = field.trim();
+                if (!f.equals(RATING) && !f.equals(TIMESTAMP)) {
+                    throw new IllegalArgumentException("fields 只能包含 rating、timestamp：" + f);
+                }
+                projection.add(f);
+            }
+        }
+        Sort order = null;
+        if (sort != null && !sort.isBlank()) {
+            try {
+                order = Sort.valueOf(sort.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("sort 只能是 rating 或 timestamp：" + sort);
+            }
+        }
+        return new RatingQuery(min, max, from, to, projection, order, order == null ? 0 : limit);
+    }
+
+    private static Integer parseRating(String rating) {
+        if (rating == null || rating.isBlank()) {
+            return null;
+        }
+        try {
+            int x2 = (int) Math.round(Double.parseDouble(rating.trim()) * 2);
+            if (x2 < 0 || x2 > 10) {
+                throw new IllegalArgumentException("评分必须在 0~5 之间：" + rating);
+            }
+            return x2;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的评分：" + rating);
+        }
+    }
+
+    public boolean isSorted() {
+        return sort != null;
+    }
+
+    public boolean hasFilters() {
+        return minRatingX2 != null || maxRatingX2 != null || fromTimestamp != null || toTimestamp != null;
+    }
+
+    /**
+     * 是否有条件无法下推、只能在客户端过滤（版本 1 的时间戳窗口）。
+     * 这时服务端不能限制返回行数，否则过滤后可能凑不满一页
+     */
+    boolean needsClientFilter(RatingsSchema schema) {
+        return filtersTimestamp() && !schema.timestampsSortable();
+    }
+
+    private boolean filtersTimestamp() {
+        return fromTimestamp != null || toTimestamp != null;
+    }
+
+    // --- 下推到 Scan ---
+
+    /**
+     * 设置投影列、值过滤器；pageLimit > 0 时再加 PageFilter
+     */
+    void applyTo(Scan scan, RatingsSchema schema, byte[] family, int pageLimit) {
+        if (fields == null) {
+            scan.addFamily(family);
+        } else {
+            // 过滤、排序用到的列必须读取，返回前再按投影去掉
+            if (fields.contains(RATING) || minRatingX2 != null || maxRatingX2 != null || sort == Sort.RATING) {
+                scan.addColumn(family, schema.ratingQualifier());
+            }
+            if (fields.contains(TIMESTAMP) || filtersTimestamp() || sort != null) {
+                scan.addColumn(family, schema.timestampQualifier());
+            }
+            if (fields.isEmpty()) {
+                // 只要行键（movieId/userId）时仍需读一列，否则整行不返回
+                scan.addColumn(family, schema.ratingQualifier());
+            }
+        }
+
+        FilterList filters = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+        if (minRatingX2 != null) {
+            filters.addFilter(valueFilter(family, schema.ratingQualifier(), CompareOperator.GREATER_OR_EQUAL,
+                    schema.encodeRating(minRatingX2)));
+        }
+        if (maxRatingX2 != null) {
+            filters.addFilter(valueFilter(family, schema.ratingQualifier(), CompareOperator.LESS_OR_EQUAL,
+                    schema.encodeRating(maxRatingX2)));
+        }
+        if (schema.timestampsSortable()) {
+            // 只有非负时间戳的字节序是数值序，负时间戳的编码排在所有非负时间戳之后（查询参数已保证上下限非负）
+            byte[] qualifier = schema.timestampQualifier();
+            if (fromTimestamp != null) {
+                filters.addFilter(valueFilter(family, qualifier, CompareOperator.GREATER_OR_EQUAL,
+                        schema.encodeTimestamp(fromTimestamp)));
+                filters.addFilter(valueFilter(family, qualifier, CompareOperator.LESS_OR_EQUAL,
+                        schema.encodeTimestamp(Long.MAX_VALUE)));
+            }
+            if (toTimestamp != null) {
+                SingleColumnValueFilter before = valueFilter(family, qualifier, CompareOperator.LESS,
+                        schema.encodeTimestamp(toTimestamp));
+                if (fromTimestamp != null) {
+                    filters.addFilter(before);
+                } else {
+                    // 没有下限时负时间戳也满足 ts < to
+                    filters.addFilter(new FilterList(FilterList.Operator.MUST_PASS_ONE, before,
+                            valueFilter(family, qualifier, CompareOperator.GREATER_OR_EQUAL,
+                                    schema.encodeTimestamp(Long.MIN_VALUE))));
+                }
+            }
+        }
+        if (pageLimit > 0) {
+            // 放在值过滤器之后，只计入通过过滤的行
+            filters.addFilter(new PageFilter(pageLimit));
+        }
+        if (!filters.getFilters().isEmpty()) {
+            scan.setFilter(filters);
+        }
+    }
+
+    private static SingleColumnValueFilter valueFilter(byte[] family, byte[] qualifier, CompareOperator op, byte[] value) {
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(family, qualifier, op, new BinaryComparator(value));
+        // 缺少该列的行也丢弃
+        filter.setFilterIfMissing(true);
+        return filter;
+    }
+
+    // --- 客户端 ---
+
+    /**
+     * 客户端再校验一次（版本 1 的时间戳只能在这里过滤）
+     */
+    boolean matches(RatingsSchema schema, Result result, byte[] family) {
+        if (minRatingX2 != null || maxRatingX2 != null) {
+            byte[] rating = result.getValue(family, schema.ratingQualifier());
+            if (rating == null) {
+                return false;
+            }
+            int x2 = schema.decodeRatingX2(rating);
+            if ((minRatingX2 != null && x2 < minRatingX2) || (maxRatingX2 != null && x2 > maxRatingX2)) {
+                return false;
+            }
+        }
+        if (filtersTimestamp()) {
+            byte[] timestamp = result.getValue(family, schema.timestampQualifier());
+            if (timestamp == null) {
+                return false;
+            }
+            long ts = schema.decodeTimestamp(timestamp);
+            return (fromTimestamp == null || ts >= fromTimestamp) && (toTimestamp == null || ts < toTimestamp);
+        }
+        return true;
+    }
+
+    /**
+     * 按已解码的评分、时间戳校验（内存列存储使用）
+     */
+    boolean matches(int ratingX2, long timestamp) {
+        if ((minRatingX2 != null && ratingX2 < minRatingX2) || (maxRatingX2 != null && ratingX2 > maxRatingX2)) {
+            return false;
+        }
+        return (fromTimestamp == null || timestamp >= fromTimestamp) && (toTimestamp == null || timestamp < toTimestamp);
+    }
+
+    /**
+     * 按投影去掉记录中没有要求返回的评分列
+     */
+    RatingSink project(RatingSink sink) {
+        if (fields == null) {
+            return sink;
+        }
+        boolean keepRating = fields.contains(RATING);
+        boolean keepTimestamp = fields.contains(TIMESTAMP);
+        return record -> sink.accept(record.project(keepRating, keepTimestamp));
+    }
+
+    TopK newTopK(RatingsSchema schema, byte[] family) {
+        return new TopK(schema, family);
+    }
+
+    /**
+     * 大小为 K 的小顶堆：堆顶是当前入选的最小值，新行比堆顶大时替换
+     */
+    final class TopK {
+        private final RatingsSchema schema;
+        private final byte[] family;
+        private final PriorityQueue<Ranked> heap;
+
+        private TopK(RatingsSchema schema, byte[] family) {
+            this.schema = schema;
+            this.family = family;
+            this.heap = new PriorityQueue<>(topK + 1);
+        }
+
+        void offer(Result result) {
+            byte[] ts = result.getValue(family, schema.timestampQualifier());
+            long timestamp = ts == null ? Long.MIN_VALUE : schema.decodeTimestamp(ts);
+            long primary;
+            if (sort == Sort.RATING) {
+                byte[] rating = result.getValue(family, schema.ratingQualifier());
+                primary = rating == null ? Long.MIN_VALUE : schema.decodeRatingX2(rating);
+            } else {
+                primary = timestamp;
+            }
+            if (heap.size() < topK) {
+                heap.add(new Ranked(primary, timestamp, result));
+            } else if (compare(primary, timestamp, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(new Ranked(primary, timestamp, result));
+            }
+        }
+
+        /**
+         * 从大到小
+         */
+        List<Result> sorted() {
+            List<Ranked> ranked = new ArrayList<>(heap);
+            ranked.sort(Comparator.reverseOrder());
+            List<Result> results = new ArrayList<>(ranked.size());
+            for (Ranked r : ranked) {
+                results.add(r.result);
+            }
+            return results;
+        }
+
+        private static int compare(long primary, long secondary, Ranked other) {
+            int c = Long.compare(primary, other.primary);
+            return c != 0 ? c : Long.compare(secondary, other.secondary);
+        }
+
+        private record Ranked(long primary, long secondary, Result result) implements Comparable<Ranked> {
+            @Override
+            public int compareTo(Ranked o) {
+                return TopK.compare(primary, secondary, o);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.david.hbase.query;
+
+/**
+ * 一条评分记录。ID、评分、时间戳都是基本类型，每条记录只有这一个对象和（共享的）标题字符串，
+ * 不再为每行创建 LinkedHashMap 和数字字符串。
+ *
+ * 评分以半星数保存（4.5 -> 9）；按投影去掉、或表中缺少该列时，ratingX2 为 {@link #NO_RATING}，
+ * timestamp 为 {@link #NO_TIMESTAMP}，序列化时省略该字段。
+ */
+public record RatingRecord(int userId, int movieId, String movieTitle, int ratingX2, long timestamp) {
+    public static final int NO_RATING = -1;
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    public boolean hasRating() {
+        return ratingX2 != NO_RATING;
+    }
+
+    public boolean hasTimestamp() {
+        return timestamp != NO_TIMESTAMP;
+    }
+
+    public float rating() {
+        return ratingX2 / 2f;
+    }
+
+    /**
+     * 按投影去掉评分/时间戳；不需要去掉时返回自身
+     */
+    public RatingRecord project(boolean keepRating, boolean keepTimestamp) {
+        if ((keepRating || !hasRating()) && (keepTimestamp || !hasTimestamp())) {
+            return this;
+        }
+        return new RatingRecord(userId, movieId, movieTitle, keepRating ? ratingX2 : NO_RATING,
+                keepTimestamp ? timestamp : NO_TIMESTAMP);
+    }
+}
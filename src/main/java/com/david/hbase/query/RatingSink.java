@@ -0,0 +1,11 @@
+package com.david.hbase.query;
+
+import java.io.IOException;
+
+/**
+ * 接收扫描出的评分记录（流式输出时边扫描边写出）
+ */
+@FunctionalInterface
+public interface RatingSink {
+    void accept(RatingRecord record) throws IOException;
+}
@@ -0,0 +1,273 @@
+package com.david.hbase.query;
+
+import com.david.hbase.schema.RatingsSchema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 按一个 ID 分组的评分列（CSR：压缩稀疏行）：
+ *   keys      有序、去重的分组 ID（userId 或 movieId）
+ *   offsets   第 k 组的评分在 [offsets[k], offsets[k+1]) 中
+ *   others    每条评分的另一个 ID（按用户分组时为 movieId），组内按评分表存储格式的行键顺序排列
+ *             （{@link RatingsSchema#compareIds}：版本 1 按十进制文本，版本 2 按数值），与 HBase 的扫描顺序一致
+ *   ratings   半星数
+ *   times     时间戳（秒）
+ * 同一对 ID 出现多次时只保留文件中最后一次（HBase 中同一行键后写的 Put 覆盖先写的），组内的 others 不重复。
+ * 所有列都在堆外（直接内存，或从快照文件映射），不占用 Java 堆，也不受 GC 扫描。
+ * 查询时先在 keys 中二分找到分组（keys 按数值排序，只在内部查找），游标再在组内按同一顺序二分定位。
+ */
+final class RatingsCsr {
+    // 组内 others 的顺序
+    private final RatingsSchema order;
+    // 各列的字节缓冲区，按文件中的顺序排列（写快照时依次写出）
+    private final ByteBuffer[] columns;
+    private final IntBuffer keys;
+    private final IntBuffer offsets;
+    private final IntBuffer others;
+    private final ByteBuffer ratings;
+    private final LongBuffer times;
+
+    private RatingsCsr(RatingsSchema order, ByteBuffer keys, ByteBuffer offsets, ByteBuffer others, ByteBuffer ratings,
+                       ByteBuffer times) {
+        this.order = order;
+        this.columns = new ByteBuffer[]{keys, offsets, others, ratings, times};
+        this.keys = keys.asIntBuffer();
+        this.offsets = offsets.asIntBuffer();
+        this.others = others.asIntBuffer();
+        this.ratings = ratings;
+        this.times = times.asLongBuffer();
+    }
+
+    /**
+     * 由堆上的原始列构建：按分组 ID 计数排序，组内再按另一个 ID 在 keyOrder 中的顺序排序。
+     * 原始列须按文件顺序排列，重复的 (分组 ID, 另一个 ID) 只保留行号最大（文件中最后）的一行
+     */
+    static RatingsCsr build(int[] groupIds, int[] otherIds, byte[] ratingsX2, long[] timestamps, int n,
+                            RatingsSchema keyOrder) {
+        int[] groupKeys = distinct(groupIds, n);
+        int k = groupKeys.length;
+
+        // 每行所在的分组下标，以及各组的起始位置
+        int[] group = new int[n];
+        int[] start = new int[k + 1];
+        for (int i = 0; i < n; i++) {
+            group[i] = Arrays.binarySearch(groupKeys, groupIds[i]);
+            start[group[i] + 1]++;
+        }
+        for (int g = 0; g < k; g++) {
+            start[g + 1] += start[g];
+        }
+        int[] order = new int[n];
+        int[] next = Arrays.copyOf(start, k);
+        for (int i = 0; i < n; i++) {
+            order[next[group[i]]++] = i;
+        }
+
+        // 组内按另一个 ID 的名次排序：(名次 << 32 | 原行号) 排序后还原行号；
+        // 同一名次（重复的评分）按行号相邻，只保留最后一个，其余行向前压缩
+        int[] values = distinct(otherIds, n);
+        int[] ranks = ranks(values, keyOrder);
+        int maxGroup = 0;
+        for (int g = 0; g < k; g++) {
+            maxGroup = Math.max(maxGroup, start[g + 1] - start[g]);
+        }
+        long[] scratch = new long[maxGroup];
+        int rows = 0;
+        for (int g = 0; g < k; g++) {
+            int from = start[g];
+            int size = start[g + 1] - from;
+            for (int j = 0; j < size; j++) {
+                int row = order[from + j];
+                scratch[j] = ((long) ranks[Arrays.binarySearch(values, otherIds[row])] << 32) | row;
+            }
+            Arrays.sort(scratch, 0, size);
+            start[g] = rows;
+            for (int j = 0; j < size; j++) {
+                if (j + 1 < size && scratch[j] >>> 32 == scratch[j + 1] >>> 32) {
+                    continue;
+                }
+                order[rows++] = (int) scratch[j];
+            }
+        }
+        start[k] = rows;
+
+        RatingsCsr csr = allocate(keyOrder, k, rows);
+        csr.keys.put(0, groupKeys);
+        csr.offsets.put(0, start);
+        for (int j = 0; j < rows; j++) {
+            int row = order[j];
+            csr.others.put(j, otherIds[row]);
+            csr.ratings.put(j, ratingsX2[row]);
+            csr.times.put(j, timestamps[row]);
+        }
+        return csr;
+    }
+
+    /**
+     * 前 n 个值去重后按数值排序
+     */
+    private static int[] distinct(int[] ids, int n) {
+        int[] sorted = Arrays.copyOf(ids, n);
+        Arrays.parallelSort(sorted);
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (k == 0 || sorted[k - 1] != sorted[i]) {
+                sorted[k++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, k);
+    }
+
+    /**
+     * values（按数值排序、去重）中每个 ID 在 order 中的名次
+     */
+    private static int[] ranks(int[] values, RatingsSchema order) {
+        Integer[] ordered = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ordered[i] = values[i];
+        }
+        Arrays.sort(ordered, order::compareIds);
+        int[] ranks = new int[values.length];
+        for (int rank = 0; rank < ordered.length; rank++) {
+            ranks[Arrays.binarySearch(values, ordered[rank])] = rank;
+        }
+        return ranks;
+    }
+
+    private static RatingsCsr allocate(RatingsSchema order, int groups, int rows) {
+        return new RatingsCsr(order, direct(groups * 4L), direct((groups + 1) * 4L), direct(rows * 4L), direct(rows),
+                direct(rows * 8L));
+    }
+
+    private static ByteBuffer direct(long bytes) {
+        return ByteBuffer.allocateDirect(Math.toIntExact(bytes)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // --- 查询 ---
+
+    int groups() {
+        return keys.capacity();
+    }
+
+    int rows() {
+        return others.capacity();
+    }
+
+    /**
+     * 分组 ID 对应的分组下标，不存在时返回 -1
+     */
+    int find(int key) {
+        int lo = 0;
+        int hi = keys.capacity() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int k = keys.get(mid);
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    int from(int group) {
+        return offsets.get(group);
+    }
+
+    int to(int group) {
+        return offsets.get(group + 1);
+    }
+
+    /**
+     * [from, to) 中第一条 otherId 排在 after 之后的位置（分页游标之后的第一行）
+     */
+    int after(int from, int to, int after) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (order.compareIds(others.get(mid), after) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    int other(int row) {
+        return others.get(row);
+    }
+
+    int ratingX2(int row) {
+        return ratings.get(row);
+    }
+
+    long timestamp(int row) {
+        return times.get(row);
+    }
+
+    // --- 快照 ---
+
+    /**
+     * 写出的字节数（各列按 8 字节对齐）
+     */
+    long byteSize() {
+        long size = 0;
+        for (ByteBuffer column : columns) {
+            size += align(column.capacity());
+        }
+        return size;
+    }
+
+    /**
+     * 依次写出各列（小端，8 字节对齐）；分组数和行数由调用方记录在文件头中
+     */
+    void writeTo(FileChannel channel) throws IOException {
+        for (ByteBuffer column : columns) {
+            ByteBuffer buf = column.duplicate().clear();
+            long length = buf.remaining();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            ByteBuffer padding = ByteBuffer.allocate((int) (align(length) - length));
+            while (padding.hasRemaining()) {
+                channel.write(padding);
+            }
+        }
+    }
+
+    /**
+     * 从映射的快照文件中按位置切出各列（不复制）
+     */
+    static RatingsCsr slice(ByteBuffer file, long position, int groups, int rows, RatingsSchema order) {
+        long p = position;
+        ByteBuffer keys = slice(file, p, groups * 4L);
+        p += align(keys.capacity());
+        ByteBuffer offsets = slice(file, p, (groups + 1) * 4L);
+        p += align(offsets.capacity());
+        ByteBuffer others = slice(file, p, rows * 4L);
+        p += align(others.capacity());
+        ByteBuffer ratings = slice(file, p, rows);
+        p += align(ratings.capacity());
+        ByteBuffer times = slice(file, p, rows * 8L);
+        return new RatingsCsr(order, keys, offsets, others, ratings, times);
+    }
+
+    private static ByteBuffer slice(ByteBuffer file, long position, long length) {
+        return file.slice(Math.toIntExact(position), Math.toIntExact(length)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,9 @@
+package com.david.hbase.query;
+
+import java.util.List;
+
+/**
+ * 一页评分记录。nextCursor 为 null 表示已经是最后一页，否则原样传回即可取下一页
+ */
+public record RatingsPage(List<RatingRecord> items, String nextCursor) {
+}
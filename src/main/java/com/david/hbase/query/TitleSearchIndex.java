@@ -0,0 +1,462 @@
+package com.david.hbase.query;
+
+import com.david.hbase.importer.RegionParallelScanner;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.david.hbase.importer.HBaseDataImporter.*;
+
+/**
+ * 电影标题的内存检索索引（不区分大小写、忽略标点和重音）：
+ *   - 整个标题的前缀匹配（"toy st" -> Toy Story (1995)）
+ *   - 标题中任意单词的前缀匹配，多个词同时命中（"story toy"、"matrix" -> Matrix, The (1999)）
+ *   - 精确标题的近似解析：大小写/标点不同、冠词前置（"The Matrix (1999)"）、省略年份或冠词且不重名时，
+ *     直接得到 movies_info 中的行键；索引中不存在的标题原样返回，由调用方按输入精确查询 HBase
+ *     （索引构建之后导入的电影在下一次重建前也能按精确标题查到）
+ *
+ * 启动时按 Region 并行扫描 movies_info 构建，之后每 search.index.refresh.seconds 秒在后台重建；
+ * 每 search.index.check.seconds 秒检查一次数据更新标记，标记变化（其他进程导入了数据）时立即重建。
+ * 新索引构建完成后整体替换（查询无锁，读取 volatile 快照）。
+ */
+public final class TitleSearchIndex {
+    private static final Logger logger = LoggerFactory.getLogger(TitleSearchIndex.class);
+
+    private static final int REFRESH_SECONDS = Integer.parseInt(getProperty("search.index.refresh.seconds", "300"));
+    private static final int CHECK_SECONDS = Integer.parseInt(getProperty("search.index.check.seconds", "30"));
+    private static final int SCAN_THREADS = Integer.parseInt(getProperty("search.index.scan.threads", "4"));
+    // 前缀范围很大时（如只输入一个字母）最多检查的候选数，保证查询耗时有上限
+    private static final int MAX_CANDIDATES = 2000;
+    private static final Pattern YEAR_SUFFIX = Pattern.compile("\\s*\\(\\d{4}\\)\\s*$");
+    // MovieLens 把冠词放在标题末尾："Matrix, The (1999)"
+    private static final Pattern TRAILING_ARTICLE = Pattern.compile(
+            "^(.+), (the|a|an|les|la|le|l'|il|das|der|die|el)(\\s*\\(.*)?$", Pattern.CASE_INSENSITIVE);
+
+    private static volatile Snapshot snapshot;
+    // 当前索引对应的数据更新标记时间（-1 表示未知，下一次检查时重建）
+    private static volatile long loadedChangeTime = -1;
+    private static ScheduledExecutorService refresher;
+
+    private TitleSearchIndex() {
+    }
+
+    /**
+     * 构建索引，并启动后台定期重建
+     */
+    public static synchronized void start() throws IOException {
+        reload();
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "title-search-refresher");
+                t.setDaemon(true);
+                return t;
+            });
+            refresher.scheduleWithFixedDelay(TitleSearchIndex::reloadQuietly,
+                    REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+            refresher.scheduleWithFixedDelay(TitleSearchIndex::reloadIfChanged,
+                    CHECK_SECONDS, CHECK_SECONDS, TimeUnit.SECONDS);
+            addTitleIndexListener(TitleSearchIndex::reloadQuietly);
+            addDataChangeListener(TitleSearchIndex::reloadQuietly);
+        }
+    }
+
+    public static synchronized void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    public static boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * 按 Region 并行扫描 movies_info，构建新索引后整体替换
+     */
+    public static void reload() throws IOException {
+        long start = System.currentTimeMillis();
+        // 先读标记再扫描：扫描期间写入的数据会让标记变化，下一次检查时再重建
+        long changeTime = readChangeTimeQuietly();
+        List<String> titles = new ArrayList<>();
+        List<String> movieIds = new ArrayList<>();
+        for (List<String[]> part : scanMovies()) {
+            for (String[] row : part) {
+                titles.add(row[0]);
+                movieIds.add(row[1]);
+            }
+        }
+        load(titles.toArray(new String[0]), movieIds.toArray(new String[0]));
+        loadedChangeTime = changeTime;
+        logger.info("标题检索索引构建完成：{} 部电影，{} 个词，耗时 {} ms",
+                titles.size(), snapshot.tokens.length, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 用给定的标题和 movieId 构建索引（内存列存储加载数据后调用，不访问 HBase）
+     */
+    public static void load(String[] titles, String[] movieIds) {
+        snapshot = new Snapshot(titles, movieIds);
+    }
+
+    private static void reloadIfChanged() {
+        try {
+            long changeTime = readDataChangeTime();
+            if (changeTime != loadedChangeTime) {
+                logger.info("检测到数据更新标记变化，重建标题检索索引");
+                reload();
+            }
+        } catch (Exception e) {
+            logger.warn("检查数据更新标记失败：{}", e.getMessage());
+        }
+    }
+
+    private static long readChangeTimeQuietly() {
+        try {
+            return readDataChangeTime();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static void reloadQuietly() {
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.warn("重建标题检索索引失败：{}", e.getMessage());
+        }
+    }
+
+    private static List<List<String[]>> scanMovies() throws IOException {
+        byte[] family = Bytes.toBytes(INFO_CF);
+        byte[] movieIdColumn = Bytes.toBytes("movieId");
+        Scan scan = new Scan();
+        scan.addColumn(family, movieIdColumn);
+        return new RegionParallelScanner(getConnection(), TableName.valueOf(MOVIES_INFO_TABLE), SCAN_THREADS, 1000)
+                .scan(scan, () -> new RegionParallelScanner.RegionSink<List<String[]>>() {
+                    private final List<String[]> rows = new ArrayList<>();
+
+                    @Override
+                    public void accept(Result result) {
+                        byte[] movieId = result.getValue(family, movieIdColumn);
+                        rows.add(new String[]{Bytes.toString(result.getRow()),
+                                movieId == null ? null : Bytes.toString(movieId)});
+                    }
+
+                    @Override
+                    public List<String[]> finish() {
+                        return rows;
+                    }
+                });
+    }
+
+    // --- 查询 ---
+
+    /**
+     * 自动补全：整个标题前缀匹配的排在前面，其次是所有输入词都命中标题中单词前缀的；
+     * 同一类中标题短的优先
+     */
+    public static List<Map<String, String>> search(String query, int limit) {
+        Snapshot current = snapshot;
+        List<Map<String, String>> hits = new ArrayList<>();
+        String normalized = normalize(query);
+        if (current == null || normalized.isEmpty() || limit <= 0) {
+            return hits;
+        }
+
+        BitSet seen = new BitSet(current.titles.length);
+        List<Integer> prefixHits = new ArrayList<>();
+        int[] range = prefixRange(current.keys, normalized);
+        for (int k = range[0]; k < range[1] && prefixHits.size() < MAX_CANDIDATES; k++) {
+            int title = current.keyTitle[k];
+            if (!seen.get(title)) {
+                seen.set(title);
+                prefixHits.add(title);
+            }
+        }
+
+        List<Integer> tokenHits = new ArrayList<>();
+        String[] words = normalized.split(" ");
+        // 以命中范围最小的词驱动，其余词逐个校验
+        int[] driver = null;
+        for (String word : words) {
+            int[] r = prefixRange(current.tokens, word);
+            if (driver == null || r[1] - r[0] < driver[1] - driver[0]) {
+                driver = r;
+            }
+        }
+        for (int k = driver[0]; k < driver[1] && tokenHits.size() < MAX_CANDIDATES; k++) {
+            int title = current.tokenTitle[k];
+            if (!seen.get(title) && current.matchesAll(title, words)) {
+                seen.set(title);
+                tokenHits.add(title);
+            }
+        }
+
+        Comparator<Integer> byLength = Comparator.<Integer>comparingInt(i -> current.titles[i].length())
+                .thenComparing(i -> current.titles[i]);
+        prefixHits.sort(byLength);
+        tokenHits.sort(byLength);
+        for (List<Integer> group : List.of(prefixHits, tokenHits)) {
+            for (int title : group) {
+                if (hits.size() >= limit) {
+                    return hits;
+                }
+                Map<String, String> hit = new LinkedHashMap<>();
+                hit.put("title", current.titles[title]);
+                hit.put("movieId", current.movieIds[title]);
+                hits.add(hit);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 把用户输入的标题解析为 movies_info 中的行键。
+     * 索引未就绪或索引中找不到时原样返回，由调用方按输入精确查询（索引可能还没包含刚导入的电影）
+     */
+    public static String resolveTitle(String input) {
+        Snapshot current = snapshot;
+        if (current == null || input == null) {
+            return input;
+        }
+        int title = current.resolve(input);
+        return title < 0 ? input : current.titles[title];
+    }
+
+    /**
+     * 标题对应的 movieId；索引未就绪或索引中没有时返回 null，调用方需要自行查 HBase
+     */
+    public static String lookupMovieId(String exactTitle) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        Integer title = current.exact.get(exactTitle);
+        return title == null ? null : current.movieIds[title];
+    }
+
+    // --- 归一化 ---
+
+    /**
+     * 小写、去掉重音符号，非字母数字替换为空格并合并
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int len = sb.length();
+        return len > 0 && sb.charAt(len - 1) == ' ' ? sb.substring(0, len - 1) : sb.toString();
+    }
+
+    /**
+     * 冠词后置的标题还原为正常语序："Matrix, The (1999)" -> "The Matrix (1999)"
+     */
+    private static String articleFirst(String title) {
+        Matcher m = TRAILING_ARTICLE.matcher(title);
+        if (!m.matches()) {
+            return null;
+        }
+        return m.group(2) + " " + m.group(1) + (m.group(3) == null ? "" : m.group(3));
+    }
+
+    /**
+     * 去掉后置冠词："Matrix, The (1999)" -> "Matrix (1999)"
+     */
+    private static String withoutArticle(String title) {
+        Matcher m = TRAILING_ARTICLE.matcher(title);
+        return m.matches() ? m.group(1) + (m.group(3) == null ? "" : m.group(3)) : null;
+    }
+
+    private static String withoutYear(String title) {
+        return YEAR_SUFFIX.matcher(title).replaceFirst("");
+    }
+
+    /**
+     * 有序数组中以 prefix 开头的下标范围 [from, to)
+     */
+    private static int[] prefixRange(String[] sorted, String prefix) {
+        int from = lowerBound(sorted, prefix);
+        int to = from;
+        while (to < sorted.length && sorted[to].startsWith(prefix)) {
+            to++;
+        }
+        return new int[]{from, to};
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 不可变的索引快照
+     */
+    private static final class Snapshot {
+        final String[] titles;
+        final String[] movieIds;
+        // 原始标题 -> 下标
+        final Map<String, Integer> exact;
+        // 归一化的完整标题（两种冠词语序），按字典序排列，keyTitle 为对应的标题下标
+        final String[] keys;
+        final int[] keyTitle;
+        // 标题中的单词，按字典序排列，tokenTitle 为对应的标题下标
+        final String[] tokens;
+        final int[] tokenTitle;
+        final String[][] titleTokens;
+        // 归一化的完整标题 / 去掉年份（和后置冠词）的标题 -> 标题下标（重名时为多个）
+        final Map<String, int[]> byNormalized = new HashMap<>();
+        final Map<String, int[]> byBaseName = new HashMap<>();
+
+        Snapshot(String[] titles, String[] movieIds) {
+            this.titles = titles;
+            this.movieIds = movieIds;
+            this.exact = new HashMap<>(titles.length * 2);
+            this.titleTokens = new String[titles.length][];
+
+            List<String> keyList = new ArrayList<>(titles.length * 2);
+            List<Integer> keyOwners = new ArrayList<>(titles.length * 2);
+            List<String> tokenList = new ArrayList<>(titles.length * 4);
+            List<Integer> tokenOwners = new ArrayList<>(titles.length * 4);
+
+            for (int i = 0; i < titles.length; i++) {
+                String title = titles[i];
+                exact.put(title, i);
+                String normalized = normalize(title);
+                addKey(keyList, keyOwners, byNormalized, normalized, i);
+                addTo(byBaseName, normalize(withoutYear(title)), i);
+                String reordered = articleFirst(title);
+                if (reordered != null) {
+                    addKey(keyList, keyOwners, byNormalized, normalize(reordered), i);
+                    addTo(byBaseName, normalize(withoutYear(reordered)), i);
+                    addTo(byBaseName, normalize(withoutYear(withoutArticle(title))), i);
+                }
+
+                titleTokens[i] = normalized.isEmpty() ? new String[0] : normalized.split(" ");
+                for (String token : new LinkedHashSet<>(Arrays.asList(titleTokens[i]))) {
+                    tokenList.add(token);
+                    tokenOwners.add(i);
+                }
+            }
+
+            Integer[] keyOrder = sortedOrder(keyList);
+            this.keys = new String[keyOrder.length];
+            this.keyTitle = new int[keyOrder.length];
+            for (int k = 0; k < keyOrder.length; k++) {
+                keys[k] = keyList.get(keyOrder[k]);
+                keyTitle[k] = keyOwners.get(keyOrder[k]);
+            }
+            Integer[] tokenOrder = sortedOrder(tokenList);
+            this.tokens = new String[tokenOrder.length];
+            this.tokenTitle = new int[tokenOrder.length];
+            for (int k = 0; k < tokenOrder.length; k++) {
+                tokens[k] = tokenList.get(tokenOrder[k]);
+                tokenTitle[k] = tokenOwners.get(tokenOrder[k]);
+            }
+        }
+
+        private static void addKey(List<String> keyList, List<Integer> owners, Map<String, int[]> byKey,
+                                   String key, int title) {
+            keyList.add(key);
+            owners.add(title);
+            addTo(byKey, key, title);
+        }
+
+        private static void addTo(Map<String, int[]> map, String key, int title) {
+            map.merge(key, new int[]{title}, (a, b) -> {
+                for (int t : a) {
+                    if (t == title) {
+                        return a;
+                    }
+                }
+                int[] merged = Arrays.copyOf(a, a.length + 1);
+                merged[a.length] = title;
+                return merged;
+            });
+        }
+
+        private static Integer[] sortedOrder(List<String> values) {
+            Integer[] order = new Integer[values.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(values::get));
+            return order;
+        }
+
+        /**
+         * 标题的每个输入词都能匹配到某个单词的前缀
+         */
+        boolean matchesAll(int title, String[] words) {
+            for (String word : words) {
+                boolean found = false;
+                for (String token : titleTokens[title]) {
+                    if (token.startsWith(word)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 精确 -> 归一化后相同 -> 去掉年份后唯一；找不到或有歧义返回 -1
+         */
+        int resolve(String input) {
+            String trimmed = input.trim();
+            Integer exactHit = exact.get(trimmed);
+            if (exactHit != null) {
+                return exactHit;
+            }
+            int[] hits = byNormalized.get(normalize(trimmed));
+            if (hits != null && hits.length == 1) {
+                return hits[0];
+            }
+            if (hits == null) {
+                hits = byBaseName.get(normalize(withoutYear(trimmed)));
+                if (hits != null && hits.length == 1) {
+                    return hits[0];
+                }
+            }
+            return -1;
+        }
+    }
+}
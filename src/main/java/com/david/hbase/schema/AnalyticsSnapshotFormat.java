@@ -0,0 +1,81 @@
+package com.david.hbase.schema;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分析快照（AnalyticsExportJob 导出，AnalyticsEngine 读取）的目录结构，每列一个 {@link ColumnFile}：
+ *   评分（按电影排序，第 m 部电影的评分在 [movie_offset[m], movie_offset[m+1]) 中）
+ *     rating.col              半星数（字典为 "0.0" ~ "5.0"，下标即半星数）
+ *     rating_year.col         评分年份（UTC）
+ *   电影
+ *     movie_id.col            movieId，升序
+ *     movie_offset.col        每部电影评分的起始位置（电影数 + 1 项）
+ *     movie_genres.col        类型（位集合）
+ *     movie_release_year.col  上映年份（取自标题末尾的 "(1995)"，没有时为 unknown）
+ *   snapshot.properties       导出时间、行数等，最后写入；读取方以它的修改时间判断快照是否更新
+ * 导出先写到临时目录，完成后整体替换，读取方不会看到写了一半的快照。
+ */
+public final class AnalyticsSnapshotFormat {
+    public static final String RATING = "rating.col";
+    public static final String RATING_YEAR = "rating_year.col";
+    public static final String MOVIE_ID = "movie_id.col";
+    public static final String MOVIE_OFFSET = "movie_offset.col";
+    public static final String MOVIE_GENRES = "movie_genres.col";
+    public static final String MOVIE_RELEASE_YEAR = "movie_release_year.col";
+    public static final String MANIFEST = "snapshot.properties";
+
+    public static final String EXPORTED_AT = "exportedAt";
+    public static final String RATINGS = "ratings";
+    public static final String MOVIES = "movies";
+
+    public static final String UNKNOWN = "unknown";
+    // 半星数 0 ~ 10
+    public static final int RATING_LEVELS = 11;
+
+    private static final Pattern RELEASE_YEAR = Pattern.compile("\\((\\d{4})\\)\\s*$");
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 2200;
+    // 每年 1 月 1 日 0 点（UTC）的秒数，按时间戳二分查年份，不为每行创建日期对象
+    private static final long[] YEAR_STARTS = new long[LAST_YEAR - FIRST_YEAR + 1];
+
+    static {
+        for (int y = FIRST_YEAR; y <= LAST_YEAR; y++) {
+            YEAR_STARTS[y - FIRST_YEAR] = LocalDate.of(y, 1, 1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        }
+    }
+
+    private AnalyticsSnapshotFormat() {
+    }
+
+    /**
+     * 评分字典：下标为半星数
+     */
+    public static String[] ratingDictionary() {
+        String[] dictionary = new String[RATING_LEVELS];
+        for (int x2 = 0; x2 < RATING_LEVELS; x2++) {
+            dictionary[x2] = RatingsSchema.formatRatingX2(x2);
+        }
+        return dictionary;
+    }
+
+    /**
+     * 时间戳（秒）所在的年份（UTC），超出 1900 ~ 2200 时取边界
+     */
+    public static int yearOf(long timestamp) {
+        int i = Arrays.binarySearch(YEAR_STARTS, timestamp);
+        int index = i >= 0 ? i : -i - 2;
+        return FIRST_YEAR + Math.max(0, index);
+    }
+
+    /**
+     * 标题末尾的上映年份，没有时返回 unknown
+     */
+    public static String releaseYear(String title) {
+        Matcher m = RELEASE_YEAR.matcher(title);
+        return m.find() ? m.group(1) : UNKNOWN;
+    }
+}
@@ -0,0 +1,251 @@
+package com.david.hbase.schema;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 分析快照的列文件：一列一个文件，按 {@value #CHUNK_ROWS} 行分块，每块单独用 Deflate 压缩（读取时各块并行解压）。
+ *
+ * 文件头（大端）：魔数、版本、类型、每个值的字节数、行数、每块行数、字典（字符串）、块数；之后每块为压缩后长度 + 压缩数据，
+ * 解压后是小端的定长值。三种类型：
+ *   PLAIN       原始整数（movieId、偏移量），4 字节
+ *   DICTIONARY  字典编码：值为字典下标，按字典大小取 1/2/4 字节
+ *   BITSET      多值字典编码：值为字典下标的位集合（如电影的类型），8 字节，字典最多 64 项
+ */
+public final class ColumnFile {
+    public static final int CHUNK_ROWS = 65536;
+    private static final int MAGIC = 0x4D4C4346;
+    private static final int VERSION = 1;
+
+    public enum Kind {
+        PLAIN,
+        DICTIONARY,
+        BITSET
+    }
+
+    private final Kind kind;
+    private final int width;
+    private final int rows;
+    private final String[] dictionary;
+    // 解压后的值（小端），长度为 rows * width
+    private final ByteBuffer values;
+
+    private ColumnFile(Kind kind, int width, int rows, String[] dictionary, ByteBuffer values) {
+        this.kind = kind;
+        this.width = width;
+        this.rows = rows;
+        this.dictionary = dictionary;
+        this.values = values;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public String[] dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * 1 字节的字典下标（字典不超过 256 项时）
+     */
+    public byte[] bytes() {
+        checkWidth(1);
+        byte[] out = new byte[rows];
+        values.get(0, out);
+        return out;
+    }
+
+    /**
+     * 整数值或任意宽度的字典下标
+     */
+    public int[] ints() {
+        int[] out = new int[rows];
+        switch (width) {
+            case 1 -> {
+                for (int i = 0; i < rows; i++) {
+                    out[i] = values.get(i) & 0xFF;
+                }
+            }
+            case 2 -> {
+                for (int i = 0; i < rows; i++) {
+                    out[i] = values.getShort(i * 2) & 0xFFFF;
+                }
+            }
+            case 4 -> values.asIntBuffer().get(0, out);
+            default -> throw new IllegalStateException("不是整数列（每个值 " + width + " 字节）");
+        }
+        return out;
+    }
+
+    /**
+     * 位集合
+     */
+    public long[] longs() {
+        checkWidth(8);
+        long[] out = new long[rows];
+        values.asLongBuffer().get(0, out);
+        return out;
+    }
+
+    private void checkWidth(int expected) {
+        if (width != expected) {
+            throw new IllegalStateException("列的每个值为 " + width + " 字节，不是 " + expected + " 字节");
+        }
+    }
+
+    // --- 写入 ---
+
+    public static void writeInts(Path file, int[] values, int rows) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(rows * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buf.asIntBuffer().put(values, 0, rows);
+        write(file, Kind.PLAIN, 4, new String[0], buf, rows);
+    }
+
+    /**
+     * 字典编码列：codes 为 dictionary 的下标，宽度按字典大小选择
+     */
+    public static void writeCodes(Path file, String[] dictionary, int[] codes, int rows) throws IOException {
+        int width = dictionary.length <= 256 ? 1 : dictionary.length <= 65536 ? 2 : 4;
+        ByteBuffer buf = ByteBuffer.allocate(rows * width).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < rows; i++) {
+            switch (width) {
+                case 1 -> buf.put(i, (byte) codes[i]);
+                case 2 -> buf.putShort(i * 2, (short) codes[i]);
+                default -> buf.putInt(i * 4, codes[i]);
+            }
+        }
+        write(file, Kind.DICTIONARY, width, dictionary, buf, rows);
+    }
+
+    public static void writeCodes(Path file, String[] dictionary, byte[] codes, int rows) throws IOException {
+        if (dictionary.length > 256) {
+            throw new IllegalArgumentException("1 字节下标的字典不能超过 256 项");
+        }
+        write(file, Kind.DICTIONARY, 1, dictionary, ByteBuffer.wrap(codes, 0, rows).slice(), rows);
+    }
+
+    public static void writeBitsets(Path file, String[] dictionary, long[] bitsets, int rows) throws IOException {
+        if (dictionary.length > 64) {
+            throw new IllegalArgumentException("位集合列的字典不能超过 64 项");
+        }
+        ByteBuffer buf = ByteBuffer.allocate(rows * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buf.asLongBuffer().put(bitsets, 0, rows);
+        write(file, Kind.BITSET, 8, dictionary, buf, rows);
+    }
+
+    private static void write(Path file, Kind kind, int width, String[] dictionary, ByteBuffer values,
+                              int rows) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(kind.ordinal());
+            out.writeByte(width);
+            out.writeInt(rows);
+            out.writeInt(CHUNK_ROWS);
+            out.writeInt(dictionary.length);
+            for (String entry : dictionary) {
+                out.writeUTF(entry);
+            }
+            int chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+            out.writeInt(chunks);
+
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            byte[] input = new byte[CHUNK_ROWS * width];
+            byte[] output = new byte[input.length + 64];
+            try {
+                for (int c = 0; c < chunks; c++) {
+                    int length = Math.min(CHUNK_ROWS, rows - c * CHUNK_ROWS) * width;
+                    values.get(c * CHUNK_ROWS * width, input, 0, length);
+                    deflater.reset();
+                    deflater.setInput(input, 0, length);
+                    deflater.finish();
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 16);
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(output);
+                        compressed.write(output, 0, n);
+                    }
+                    out.writeInt(compressed.size());
+                    compressed.writeTo(out);
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    // --- 读取 ---
+
+    public static ColumnFile read(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("不是有效的列文件（或版本不同）：" + file);
+        }
+        Kind kind = Kind.values()[in.readByte()];
+        int width = in.readByte();
+        int rows = in.readInt();
+        int chunkRows = in.readInt();
+        String[] dictionary = new String[in.readInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = in.readUTF();
+        }
+        int chunks = in.readInt();
+
+        // 先定位各块，再并行解压到各自的位置
+        int[] offsets = new int[chunks];
+        int[] lengths = new int[chunks];
+        int position = data.length - in.available();
+        for (int c = 0; c < chunks; c++) {
+            if (position + 4 > data.length) {
+                throw new IOException("列文件数据不完整：" + file);
+            }
+            lengths[c] = ByteBuffer.wrap(data, position, 4).getInt();
+            offsets[c] = position + 4;
+            position = offsets[c] + lengths[c];
+            if (lengths[c] < 0 || position > data.length) {
+                throw new IOException("列文件数据不完整：" + file);
+            }
+        }
+        byte[] values = new byte[rows * width];
+        try {
+            IntStream.range(0, chunks).parallel().forEach(c -> inflate(file, data, offsets[c], lengths[c], values,
+                    c * chunkRows * width, Math.min(chunkRows, rows - c * chunkRows) * width));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new ColumnFile(kind, width, rows, dictionary,
+                ByteBuffer.wrap(values).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private static void inflate(Path file, byte[] data, int offset, int compressedLength, byte[] values, int from,
+                                int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, compressedLength);
+            int done = 0;
+            while (done < length) {
+                int n = inflater.inflate(values, from + done, length - done);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new UncheckedIOException(new IOException("列文件数据不完整：" + file));
+                }
+                done += n;
+            }
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("列文件数据损坏：" + file, e));
+        } finally {
+            inflater.end();
+        }
+    }
+}
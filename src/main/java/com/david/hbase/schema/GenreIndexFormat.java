@@ -0,0 +1,92 @@
+package com.david.hbase.schema;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 类型索引表（genre_index）的存储格式，每个类型一行，行键为类型名（如 "Comedy"）：
+ *   m 列族  倒排索引，列名为 4 字节大端 movieId，值为电影标题
+ *   top 列族 预计算的排行榜，列 v 为按贝叶斯加权平均分排序的前 N 部电影（二进制编码），
+ *           列 updatedAt 为生成时间；查询排行榜只读这一个列族
+ */
+public final class GenreIndexFormat {
+    public static final byte[] MEMBERS_FAMILY = Bytes.toBytes("m");
+    public static final byte[] TOP_FAMILY = Bytes.toBytes("top");
+    public static final byte[] TOP_VALUE = Bytes.toBytes("v");
+    public static final byte[] TOP_UPDATED_AT = Bytes.toBytes("updatedAt");
+
+    private GenreIndexFormat() {
+    }
+
+    public static byte[] memberQualifier(int movieId) {
+        return Bytes.toBytes(movieId);
+    }
+
+    public static int memberMovieId(byte[] qualifier) {
+        return Bytes.toInt(qualifier);
+    }
+
+    /**
+     * 排行榜中的一部电影
+     */
+    public record RankedMovie(int movieId, String title, long count, double average, double score) {
+    }
+
+    /**
+     * 编码排行榜：条数 + 每条（movieId、评分条数、平均分、加权分、标题）
+     */
+    public static byte[] encodeRanking(List<RankedMovie> ranking) {
+        List<byte[]> titles = new ArrayList<>(ranking.size());
+        int size = Bytes.SIZEOF_INT;
+        for (RankedMovie movie : ranking) {
+            byte[] title = movie.title() == null ? new byte[0] : movie.title().getBytes(StandardCharsets.UTF_8);
+            titles.add(title);
+            size += Bytes.SIZEOF_INT + Bytes.SIZEOF_LONG + 2 * Bytes.SIZEOF_DOUBLE + Bytes.SIZEOF_INT + title.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(ranking.size());
+        for (int i = 0; i < ranking.size(); i++) {
+            RankedMovie movie = ranking.get(i);
+            buf.putInt(movie.movieId()).putLong(movie.count())
+                    .putDouble(movie.average()).putDouble(movie.score())
+                    .putInt(titles.get(i).length).put(titles.get(i));
+        }
+        return buf.array();
+    }
+
+    public static List<RankedMovie> decodeRanking(byte[] value) {
+        ByteBuffer buf = ByteBuffer.wrap(value);
+        int n = buf.getInt();
+        List<RankedMovie> ranking = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int movieId = buf.getInt();
+            long count = buf.getLong();
+            double average = buf.getDouble();
+            double score = buf.getDouble();
+            byte[] title = new byte[buf.getInt()];
+            buf.get(title);
+            ranking.add(new RankedMovie(movieId, new String(title, StandardCharsets.UTF_8), count, average, score));
+        }
+        return ranking;
+    }
+
+    /**
+     * 展示用的结构：名次从 1 开始，分数保留 3 位小数
+     */
+    public static Map<String, Object> toMap(int rank, RankedMovie movie) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("rank", rank);
+        item.put("movieId", String.valueOf(movie.movieId()));
+        item.put("movieTitle", movie.title());
+        item.put("count", movie.count());
+        item.put("average", Math.round(movie.average() * 1000) / 1000.0);
+        item.put("score", Math.round(movie.score() * 1000) / 1000.0);
+        return item;
+    }
+}
@@ -0,0 +1,88 @@
+package com.david.hbase.schema;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 评分统计表（rating_stats）的存储格式。
+ * 每个电影/用户一行，行键为 1 字节类型（'m' 电影 / 'u' 用户）+ 4 字节大端 ID，
+ * 列全部是 8 字节计数器（HBase Increment），增量导入时直接累加：
+ *   n      评分条数
+ *   s      评分总和（半星数，4.5 记为 9）
+ *   h0~h10 各个半星档位的条数（h9 即 4.5 分的条数）
+ * 最低分/最高分由直方图中第一个/最后一个非零档位得出，不单独存储
+ * （最值不能累加，单独存储需要先读后写）。
+ */
+public final class RatingStatsFormat {
+    public static final byte MOVIE = 'm';
+    public static final byte USER = 'u';
+    // 0 ~ 5 分共 11 个半星档位
+    public static final int BUCKETS = 11;
+
+    public static final byte[] COUNT = Bytes.toBytes("n");
+    public static final byte[] SUM = Bytes.toBytes("s");
+    private static final byte[][] HISTOGRAM = new byte[BUCKETS][];
+
+    static {
+        for (int x2 = 0; x2 < BUCKETS; x2++) {
+            HISTOGRAM[x2] = Bytes.toBytes("h" + x2);
+        }
+    }
+
+    private RatingStatsFormat() {
+    }
+
+    public static byte[] rowKey(byte type, int id) {
+        byte[] row = new byte[1 + Bytes.SIZEOF_INT];
+        row[0] = type;
+        Bytes.putInt(row, 1, id);
+        return row;
+    }
+
+    /**
+     * 半星档位的列名
+     */
+    public static byte[] bucketQualifier(int ratingX2) {
+        return HISTOGRAM[ratingX2];
+    }
+
+    /**
+     * 把一行统计解码为展示用的结构，行不存在时返回 null
+     */
+    public static Map<String, Object> decode(Result result, byte[] family) {
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+        long count = readCounter(result, family, COUNT);
+        long sumX2 = readCounter(result, family, SUM);
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        int min = -1;
+        int max = -1;
+        for (int x2 = 0; x2 < BUCKETS; x2++) {
+            long n = readCounter(result, family, HISTOGRAM[x2]);
+            if (n > 0) {
+                histogram.put(RatingsSchema.formatRatingX2(x2), n);
+                min = min < 0 ? x2 : min;
+                max = x2;
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", count);
+        stats.put("sum", sumX2 / 2.0);
+        stats.put("average", count == 0 ? null : Math.round(sumX2 * 500.0 / count) / 1000.0);
+        stats.put("min", min < 0 ? null : RatingsSchema.formatRatingX2(min));
+        stats.put("max", max < 0 ? null : RatingsSchema.formatRatingX2(max));
+        stats.put("histogram", histogram);
+        return stats;
+    }
+
+    private static long readCounter(Result result, byte[] family, byte[] qualifier) {
+        byte[] value = result.getValue(family, qualifier);
+        return value == null ? 0 : Bytes.toLong(value);
+    }
+}
@@ -0,0 +1,561 @@
+package com.david.hbase.schema;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.AsyncConnection;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 评分表（ratings_data）和评分索引表（movie_ratings_index）的存储格式。
+ * 两张表的行键都是“主ID + 次ID”（评分表 userId+movieId，索引表 movieId+userId），
+ * 列为评分和时间戳。
+ *
+ * 版本 1：UTF-8 字符串，行键 "userId_movieId"，评分 "4.5"，时间戳十进制字符串。
+ * 版本 2：二进制，行键为两个定长大端 int（翻转符号位，按数值排序），
+ *         评分为 1 字节半星数（4.5 -> 9），时间戳为 8 字节 long，列名缩短为 r / t。
+ *
+ * 加盐（可选，两个版本都支持）：行键前加 1 字节桶号 = hash(不加盐的行键) % 桶数，
+ * 连续的 ID 被打散到各个桶，避免写入热点；代价是按主ID的前缀扫描需要扇出到每个桶。
+ *
+ * 版本号和桶数在建表时写入表属性 {@link #VERSION_ATTRIBUTE}、{@link #SALT_ATTRIBUTE}，
+ * 没有这些属性的旧表按版本 1、不加盐读取。
+ */
+public abstract class RatingsSchema {
+    // 表属性：评分存储格式版本
+    public static final String VERSION_ATTRIBUTE = "movielens.ratings.schema";
+    // 表属性：加盐桶数
+    public static final String SALT_ATTRIBUTE = "movielens.ratings.salt.buckets";
+    // 桶号占 1 字节
+    public static final int MAX_SALT_BUCKETS = 256;
+
+    public static final RatingsSchema V1 = new StringSchema(0);
+    public static final RatingsSchema V2 = new BinarySchema(0);
+
+    // 表名 -> 存储格式（读表属性需要一次 RPC，结果缓存）
+    private static final Map<TableName, RatingsSchema> TABLE_SCHEMAS = new ConcurrentHashMap<>();
+
+    private final int saltBuckets;
+
+    RatingsSchema(int saltBuckets) {
+        if (saltBuckets < 0 || saltBuckets > MAX_SALT_BUCKETS) {
+            throw new IllegalArgumentException("加盐桶数必须在 0~" + MAX_SALT_BUCKETS + " 之间：" + saltBuckets);
+        }
+        this.saltBuckets = saltBuckets;
+    }
+
+    public static RatingsSchema forVersion(int version) {
+        switch (version) {
+            case 1:
+                return V1;
+            case 2:
+                return V2;
+            default:
+                throw new IllegalArgumentException("不支持的评分存储格式版本：" + version);
+        }
+    }
+
+    /**
+     * 读取表属性中的存储格式版本和加盐桶数（缓存）
+     */
+    public static RatingsSchema forTable(Connection connection, TableName tableName) throws IOException {
+        RatingsSchema cached = TABLE_SCHEMAS.get(tableName);
+        if (cached != null) {
+            return cached;
+        }
+        try (Admin admin = connection.getAdmin()) {
+            RatingsSchema schema = fromDescriptor(admin.getDescriptor(tableName));
+            TABLE_SCHEMAS.put(tableName, schema);
+            return schema;
+        }
+    }
+
+    /**
+     * 异步读取表属性（缓存命中时直接返回已完成的 future）
+     */
+    public static CompletableFuture<RatingsSchema> forTableAsync(AsyncConnection connection, TableName tableName) {
+        RatingsSchema cached = TABLE_SCHEMAS.get(tableName);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return connection.getAdmin().getDescriptor(tableName).thenApply(descriptor -> {
+            RatingsSchema schema = fromDescriptor(descriptor);
+            TABLE_SCHEMAS.put(tableName, schema);
+            return schema;
+        });
+    }
+
+    private static RatingsSchema fromDescriptor(TableDescriptor descriptor) {
+        String version = descriptor.getValue(VERSION_ATTRIBUTE);
+        String salt = descriptor.getValue(SALT_ATTRIBUTE);
+        return (version == null ? V1 : forVersion(Integer.parseInt(version.trim())))
+                .withSaltBuckets(salt == null ? 0 : Integer.parseInt(salt.trim()));
+    }
+
+    /**
+     * 表被重建后清除缓存的版本
+     */
+    public static void invalidate(TableName tableName) {
+        TABLE_SCHEMAS.remove(tableName);
+    }
+
+    /**
+     * 建表时写入的表属性
+     */
+    public Map<String, String> tableAttributes() {
+        return Map.of(VERSION_ATTRIBUTE, String.valueOf(version()),
+                SALT_ATTRIBUTE, String.valueOf(saltBuckets));
+    }
+
+    /**
+     * 同一版本、指定加盐桶数的存储格式
+     */
+    public abstract RatingsSchema withSaltBuckets(int buckets);
+
+    public abstract int version();
+
+    public int saltBuckets() {
+        return saltBuckets;
+    }
+
+    /**
+     * 行键开头的桶号长度（不加盐为 0）
+     */
+    public int saltLength() {
+        return saltBuckets > 0 ? 1 : 0;
+    }
+
+    public abstract byte[] ratingQualifier();
+
+    public abstract byte[] timestampQualifier();
+
+    // --- 行键 ---
+
+    /**
+     * 把行键写入 buf，返回行键长度
+     */
+    public int writeRowKey(byte[] buf, int first, int second) {
+        int salt = saltLength();
+        int end = writeUnsaltedKey(buf, salt, first, second);
+        if (salt > 0) {
+            buf[0] = (byte) bucketOf(buf, salt, end);
+        }
+        return end;
+    }
+
+    public byte[] rowKey(int first, int second) {
+        byte[] buf = new byte[maxRowKeyLength()];
+        int len = writeRowKey(buf, first, second);
+        return len == buf.length ? buf : Bytes.copy(buf, 0, len);
+    }
+
+    public int maxRowKeyLength() {
+        return saltLength() + maxUnsaltedKeyLength();
+    }
+
+    /**
+     * 某个主ID下所有行的前缀（用于前缀扫描）。加盐时每个桶一个前缀，需要逐个扫描后合并
+     */
+    public byte[][] prefixes(int first) {
+        byte[] unsalted = unsaltedPrefix(first);
+        if (saltBuckets == 0) {
+            return new byte[][]{unsalted};
+        }
+        byte[][] prefixes = new byte[saltBuckets][];
+        for (int bucket = 0; bucket < saltBuckets; bucket++) {
+            prefixes[bucket] = saltedPrefix(bucket, unsalted);
+        }
+        return prefixes;
+    }
+
+    /**
+     * 指定桶中某个主ID的前缀（预分裂时作为 Region 边界）
+     */
+    public byte[] prefix(int bucket, int first) {
+        byte[] unsalted = unsaltedPrefix(first);
+        return saltBuckets == 0 ? unsalted : saltedPrefix(bucket, unsalted);
+    }
+
+    /**
+     * 去掉桶号后的行键（与桶无关，用作分页游标）
+     */
+    public byte[] unsaltedKey(byte[] row) {
+        int salt = saltLength();
+        return salt == 0 ? row : Bytes.copy(row, salt, row.length - salt);
+    }
+
+    /**
+     * 不加盐的行键放到指定桶中（不加盐时原样返回）
+     */
+    public byte[] saltedKey(int bucket, byte[] unsaltedKey) {
+        return saltBuckets == 0 ? unsaltedKey : saltedPrefix(bucket, unsaltedKey);
+    }
+
+    private static byte[] saltedPrefix(int bucket, byte[] unsalted) {
+        byte[] prefix = new byte[unsalted.length + 1];
+        prefix[0] = (byte) bucket;
+        System.arraycopy(unsalted, 0, prefix, 1, unsalted.length);
+        return prefix;
+    }
+
+    /**
+     * 两个 ID 在行键中的先后顺序（不加盐部分的字节序）：版本 1 按十进制文本（"10" 在 "9" 之前），版本 2 按数值
+     */
+    public int compareIds(int a, int b) {
+        return Integer.compare(a, b);
+    }
+
+    public int firstId(byte[] row) {
+        return readFirstId(row, saltLength());
+    }
+
+    public int secondId(byte[] row) {
+        return readSecondId(row, saltLength());
+    }
+
+    /**
+     * 桶号：对不加盐部分做 FNV-1a 哈希后取模
+     */
+    int bucketOf(byte[] buf, int from, int to) {
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash ^= buf[i] & 0xFF;
+            hash *= 0x01000193;
+        }
+        return (hash & Integer.MAX_VALUE) % saltBuckets;
+    }
+
+    /**
+     * 从 offset 开始写入不加盐的行键，返回结束位置
+     */
+    protected abstract int writeUnsaltedKey(byte[] buf, int offset, int first, int second);
+
+    protected abstract int maxUnsaltedKeyLength();
+
+    protected abstract byte[] unsaltedPrefix(int first);
+
+    protected abstract int readFirstId(byte[] row, int offset);
+
+    protected abstract int readSecondId(byte[] row, int offset);
+
+    // --- 列值 ---
+
+    public abstract byte[] encodeRating(int ratingX2);
+
+    public abstract int decodeRatingX2(byte[] value);
+
+    /**
+     * 把时间戳写入 buf（长度至少 20），返回写入的字节数
+     */
+    public abstract int writeTimestamp(byte[] buf, long timestamp);
+
+    public byte[] encodeTimestamp(long timestamp) {
+        byte[] buf = new byte[20];
+        int len = writeTimestamp(buf, timestamp);
+        return Bytes.copy(buf, 0, len);
+    }
+
+    public abstract long decodeTimestamp(byte[] value);
+
+    /**
+     * 非负时间戳的字节序是否与数值序一致（可以用 BinaryComparator 在服务端按范围过滤）。
+     * 版本 2 的负时间戳是补码，编码排在所有非负时间戳之后，按范围过滤时需要单独处理
+     */
+    public boolean timestampsSortable() {
+        return false;
+    }
+
+    /**
+     * 评分的展示文本，两种版本都输出 "4.5" 的形式
+     */
+    public String formatRating(byte[] value) {
+        return value == null ? null : formatRatingX2(decodeRatingX2(value));
+    }
+
+    public static String formatRatingX2(int ratingX2) {
+        return (ratingX2 / 2) + (ratingX2 % 2 == 0 ? ".0" : ".5");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RatingsSchema other
+                && other.version() == version() && other.saltBuckets == saltBuckets;
+    }
+
+    @Override
+    public int hashCode() {
+        return version() * 31 + saltBuckets;
+    }
+
+    @Override
+    public String toString() {
+        return "v" + version() + (saltBuckets > 0 ? "/salt" + saltBuckets : "");
+    }
+
+    // =======================================================================
+    // 版本 1：字符串
+    // =======================================================================
+    private static final class StringSchema extends RatingsSchema {
+        private static final byte[] RATING = Bytes.toBytes("rating");
+        private static final byte[] TIMESTAMP = Bytes.toBytes("timestamp");
+        private static final byte SEPARATOR = '_';
+        // 评分值缓存：下标为半星数，"0.0" ~ "5.0"
+        private static final byte[][] RATING_VALUES = new byte[11][];
+
+        static {
+            for (int x2 = 0; x2 < RATING_VALUES.length; x2++) {
+                RATING_VALUES[x2] = Bytes.toBytes(formatRatingX2(x2));
+            }
+        }
+
+        StringSchema(int saltBuckets) {
+            super(saltBuckets);
+        }
+
+        @Override
+        public RatingsSchema withSaltBuckets(int buckets) {
+            return buckets == saltBuckets() ? this : new StringSchema(buckets);
+        }
+
+        @Override
+        public int version() {
+            return 1;
+        }
+
+        @Override
+        public byte[] ratingQualifier() {
+            return RATING;
+        }
+
+        @Override
+        public byte[] timestampQualifier() {
+            return TIMESTAMP;
+        }
+
+        @Override
+        protected int writeUnsaltedKey(byte[] buf, int offset, int first, int second) {
+            int pos = writeDecimal(buf, offset, first);
+            buf[pos++] = SEPARATOR;
+            return writeDecimal(buf, pos, second);
+        }
+
+        @Override
+        protected int maxUnsaltedKeyLength() {
+            return 23;
+        }
+
+        @Override
+        protected byte[] unsaltedPrefix(int first) {
+            return Bytes.toBytes(first + "_");
+        }
+
+        @Override
+        public int compareIds(int a, int b) {
+            // ASCII 文本的 String 顺序与字节序相同
+            return Integer.toString(a).compareTo(Integer.toString(b));
+        }
+
+        @Override
+        protected int readFirstId(byte[] row, int offset) {
+            return (int) parseDecimal(row, offset, separatorIndex(row, offset));
+        }
+
+        @Override
+        protected int readSecondId(byte[] row, int offset) {
+            return (int) parseDecimal(row, separatorIndex(row, offset) + 1, row.length);
+        }
+
+        @Override
+        public byte[] encodeRating(int ratingX2) {
+            if (ratingX2 >= 0 && ratingX2 < RATING_VALUES.length) {
+                return RATING_VALUES[ratingX2];
+            }
+            return Bytes.toBytes(formatRatingX2(ratingX2));
+        }
+
+        @Override
+        public int decodeRatingX2(byte[] value) {
+            return (int) Math.round(Double.parseDouble(Bytes.toString(value)) * 2);
+        }
+
+        @Override
+        public String formatRating(byte[] value) {
+            // 原样返回存储的文本
+            return value == null ? null : Bytes.toString(value);
+        }
+
+        @Override
+        public int writeTimestamp(byte[] buf, long timestamp) {
+            return writeDecimal(buf, 0, timestamp);
+        }
+
+        @Override
+        public long decodeTimestamp(byte[] value) {
+            return parseDecimal(value, 0, value.length);
+        }
+
+        private static int separatorIndex(byte[] row, int offset) {
+            for (int i = offset; i < row.length; i++) {
+                if (row[i] == SEPARATOR) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("无效的评分行键：" + Bytes.toStringBinary(row));
+        }
+
+        private static long parseDecimal(byte[] buf, int from, int to) {
+            boolean negative = from < to && buf[from] == '-';
+            long value = 0;
+            for (int i = negative ? from + 1 : from; i < to; i++) {
+                int d = buf[i] - '0';
+                if (d < 0 || d > 9) {
+                    throw new NumberFormatException("非数字字段：" + Bytes.toStringBinary(buf, from, to - from));
+                }
+                value = value * 10 + d;
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * 以十进制 ASCII 写入整数，返回写入后的位置
+         */
+        private static int writeDecimal(byte[] buf, int pos, long value) {
+            if (value == Long.MIN_VALUE) {
+                // 取负会溢出
+                byte[] text = Bytes.toBytes(Long.toString(value));
+                System.arraycopy(text, 0, buf, pos, text.length);
+                return pos + text.length;
+            }
+            if (value < 0) {
+                buf[pos++] = '-';
+                value = -value;
+            }
+            int digits = 1;
+            for (long v = value; v >= 10; v /= 10) {
+                digits++;
+            }
+            int end = pos + digits;
+            for (int p = end - 1; p >= pos; p--) {
+                buf[p] = (byte) ('0' + (value % 10));
+                value /= 10;
+            }
+            return end;
+        }
+    }
+
+    // =======================================================================
+    // 版本 2：二进制
+    // =======================================================================
+    private static final class BinarySchema extends RatingsSchema {
+        private static final byte[] RATING = Bytes.toBytes("r");
+        private static final byte[] TIMESTAMP = Bytes.toBytes("t");
+        private static final byte[][] RATING_VALUES = new byte[256][];
+
+        static {
+            for (int x2 = 0; x2 < RATING_VALUES.length; x2++) {
+                RATING_VALUES[x2] = new byte[]{(byte) x2};
+            }
+        }
+
+        BinarySchema(int saltBuckets) {
+            super(saltBuckets);
+        }
+
+        @Override
+        public RatingsSchema withSaltBuckets(int buckets) {
+            return buckets == saltBuckets() ? this : new BinarySchema(buckets);
+        }
+
+        @Override
+        public int version() {
+            return 2;
+        }
+
+        @Override
+        public byte[] ratingQualifier() {
+            return RATING;
+        }
+
+        @Override
+        public byte[] timestampQualifier() {
+            return TIMESTAMP;
+        }
+
+        @Override
+        protected int writeUnsaltedKey(byte[] buf, int offset, int first, int second) {
+            writeSortableInt(buf, offset, first);
+            writeSortableInt(buf, offset + Bytes.SIZEOF_INT, second);
+            return offset + 2 * Bytes.SIZEOF_INT;
+        }
+
+        @Override
+        protected int maxUnsaltedKeyLength() {
+            return 2 * Bytes.SIZEOF_INT;
+        }
+
+        @Override
+        protected byte[] unsaltedPrefix(int first) {
+            byte[] prefix = new byte[Bytes.SIZEOF_INT];
+            writeSortableInt(prefix, 0, first);
+            return prefix;
+        }
+
+        @Override
+        protected int readFirstId(byte[] row, int offset) {
+            return readSortableInt(row, offset);
+        }
+
+        @Override
+        protected int readSecondId(byte[] row, int offset) {
+            return readSortableInt(row, offset + Bytes.SIZEOF_INT);
+        }
+
+        @Override
+        public byte[] encodeRating(int ratingX2) {
+            return RATING_VALUES[ratingX2 & 0xFF];
+        }
+
+        @Override
+        public int decodeRatingX2(byte[] value) {
+            return value[0] & 0xFF;
+        }
+
+        @Override
+        public int writeTimestamp(byte[] buf, long timestamp) {
+            return Bytes.putLong(buf, 0, timestamp);
+        }
+
+        @Override
+        public byte[] encodeTimestamp(long timestamp) {
+            return Bytes.toBytes(timestamp);
+        }
+
+        @Override
+        public long decodeTimestamp(byte[] value) {
+            return Bytes.toLong(value);
+        }
+
+        @Override
+        public boolean timestampsSortable() {
+            // 大端补码 long：非负时间戳的字节序即数值序，负时间戳排在最后
+            return true;
+        }
+
+        /**
+         * 大端写入并翻转符号位，使负数排在正数之前（字节序即数值序）
+         */
+        private static void writeSortableInt(byte[] buf, int offset, int value) {
+            Bytes.putInt(buf, offset, value ^ Integer.MIN_VALUE);
+        }
+
+        private static int readSortableInt(byte[] buf, int offset) {
+            return Bytes.toInt(buf, offset) ^ Integer.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.david.hbase.schema;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 电影相似度表（movie_similarity）的存储格式，每部电影一行，行键为 4 字节大端 movieId，列族 n：
+ *   v         按相似度从高到低排列的前 K 个相似电影（二进制编码：条数 + 每条 movieId、相似度、共同评分人数）
+ *   metric    相似度算法（cosine / adjusted_cosine）
+ *   updatedAt 生成时间
+ * 查询相似电影只需一次 Get；标题不存储，查询时由标题字典解析。
+ */
+public final class SimilarityFormat {
+    public static final byte[] FAMILY = Bytes.toBytes("n");
+    public static final byte[] NEIGHBOURS = Bytes.toBytes("v");
+    public static final byte[] METRIC = Bytes.toBytes("metric");
+    public static final byte[] UPDATED_AT = Bytes.toBytes("updatedAt");
+
+    private static final int ENTRY_BYTES = Bytes.SIZEOF_INT + Bytes.SIZEOF_FLOAT + Bytes.SIZEOF_INT;
+
+    private SimilarityFormat() {
+    }
+
+    public static byte[] rowKey(int movieId) {
+        return Bytes.toBytes(movieId);
+    }
+
+    /**
+     * 一个相似电影
+     */
+    public record Neighbour(int movieId, float similarity, int common) {
+    }
+
+    /**
+     * 编码相似电影列表（调用方保证已按相似度降序排列）
+     */
+    public static byte[] encode(int[] movieIds, float[] similarities, int[] common, int count) {
+        ByteBuffer buf = ByteBuffer.allocate(Bytes.SIZEOF_INT + count * ENTRY_BYTES);
+        buf.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buf.putInt(movieIds[i]).putFloat(similarities[i]).putInt(common[i]);
+        }
+        return buf.array();
+    }
+
+    public static List<Neighbour> decode(byte[] value) {
+        ByteBuffer buf = ByteBuffer.wrap(value);
+        int n = buf.getInt();
+        List<Neighbour> neighbours = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            neighbours.add(new Neighbour(buf.getInt(), buf.getFloat(), buf.getInt()));
+        }
+        return neighbours;
+    }
+
+    /**
+     * 展示用的结构：名次从 1 开始，相似度保留 4 位小数
+     */
+    public static Map<String, Object> toMap(int rank, Neighbour neighbour, String title) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("rank", rank);
+        item.put("movieId", String.valueOf(neighbour.movieId()));
+        item.put("movieTitle", title);
+        item.put("similarity", Math.round(neighbour.similarity() * 10000) / 10000.0);
+        item.put("common", neighbour.common());
+        return item;
+    }
+}
@@ -0,0 +1,211 @@
+package com.david.hbase.schema;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.AsyncConnection;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按时间排序的评分索引表（ratings_time_index）的存储格式，用于“某个时间段内的所有评分”查询。
+ * 行键：[1 字节盐桶号] + 8 字节时间戳 + 4 字节 userId + 4 字节 movieId，
+ * 全部大端，同一个盐桶内按时间排序；只有一列 r（1 字节半星数），其余信息都在行键里。
+ * 查询只接受非负的时间范围，非负时间戳的大端字节序就是数值顺序，扫描的起止行直接由时间戳得出；
+ * 在时间戳前再加按天或按小时的时间桶不会减少扫描的行数，只让每行多 4 字节，所以不加。
+ *
+ * 同一时刻的写入集中在最新的时间戳上，不加盐会全部落到最后一个 Region；
+ * 盐桶号 = hash(userId, movieId) % 桶数，把同一时间段的评分打散到各个盐桶，
+ * 查询时每个盐桶扫描一段连续的时间范围，再按时间戳归并。
+ *
+ * 盐桶数在建表时写入表属性，查询端据此解码，与 {@link RatingsSchema} 的做法相同。
+ */
+public final class TimeIndexFormat {
+    // 表属性：加盐桶数（也用来识别时间索引表）
+    public static final String SALT_ATTRIBUTE = "movielens.time.salt.buckets";
+    // 早期的表在时间戳前带 4 字节时间桶，有这个属性的表需要删除重建
+    private static final String LEGACY_BUCKET_ATTRIBUTE = "movielens.time.bucket.seconds";
+    public static final byte[] RATING = Bytes.toBytes("r");
+
+    private static final int UNSALTED_KEY_LENGTH = Bytes.SIZEOF_LONG + 2 * Bytes.SIZEOF_INT;
+
+    // 表名 -> 存储格式（读表属性需要一次 RPC，结果缓存）
+    private static final Map<TableName, TimeIndexFormat> TABLE_FORMATS = new ConcurrentHashMap<>();
+
+    private final int saltBuckets;
+
+    public TimeIndexFormat(int saltBuckets) {
+        if (saltBuckets < 0 || saltBuckets > RatingsSchema.MAX_SALT_BUCKETS) {
+            throw new IllegalArgumentException("加盐桶数必须在 0~" + RatingsSchema.MAX_SALT_BUCKETS + " 之间：" + saltBuckets);
+        }
+        this.saltBuckets = saltBuckets;
+    }
+
+    /**
+     * 读取表属性中的盐桶数（缓存）
+     */
+    public static TimeIndexFormat forTable(Connection connection, TableName tableName) throws IOException {
+        TimeIndexFormat cached = TABLE_FORMATS.get(tableName);
+        if (cached != null) {
+            return cached;
+        }
+        try (Admin admin = connection.getAdmin()) {
+            TimeIndexFormat format = fromDescriptor(admin.getDescriptor(tableName));
+            TABLE_FORMATS.put(tableName, format);
+            return format;
+        }
+    }
+
+    public static CompletableFuture<TimeIndexFormat> forTableAsync(AsyncConnection connection, TableName tableName) {
+        TimeIndexFormat cached = TABLE_FORMATS.get(tableName);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return connection.getAdmin().getDescriptor(tableName).thenApply(descriptor -> {
+            TimeIndexFormat format = fromDescriptor(descriptor);
+            TABLE_FORMATS.put(tableName, format);
+            return format;
+        });
+    }
+
+    private static TimeIndexFormat fromDescriptor(TableDescriptor descriptor) {
+        String salt = descriptor.getValue(SALT_ATTRIBUTE);
+        if (salt == null) {
+            throw new IllegalStateException("表 [" + descriptor.getTableName() + "] 不是时间索引表");
+        }
+        if (descriptor.getValue(LEGACY_BUCKET_ATTRIBUTE) != null) {
+            throw new IllegalStateException("表 [" + descriptor.getTableName() + "] 是带时间桶前缀的旧格式，请删除后重新导入");
+        }
+        return new TimeIndexFormat(Integer.parseInt(salt.trim()));
+    }
+
+    /**
+     * 表被重建后清除缓存的格式
+     */
+    public static void invalidate(TableName tableName) {
+        TABLE_FORMATS.remove(tableName);
+    }
+
+    /**
+     * 建表时写入的表属性
+     */
+    public Map<String, String> tableAttributes() {
+        return Map.of(SALT_ATTRIBUTE, String.valueOf(saltBuckets));
+    }
+
+    /**
+     * 预分裂点：每个盐桶一个 Region
+     */
+    public byte[][] splitKeys() {
+        if (saltBuckets <= 1) {
+            return null;
+        }
+        byte[][] splits = new byte[saltBuckets - 1][];
+        for (int bucket = 1; bucket < saltBuckets; bucket++) {
+            splits[bucket - 1] = new byte[]{(byte) bucket};
+        }
+        return splits;
+    }
+
+    public int saltBuckets() {
+        return saltBuckets;
+    }
+
+    public int saltLength() {
+        return saltBuckets > 0 ? 1 : 0;
+    }
+
+    /**
+     * 扫描时需要扇出的盐桶数（不加盐为 1）
+     */
+    public int scanBuckets() {
+        return Math.max(1, saltBuckets);
+    }
+
+    public int rowKeyLength() {
+        return saltLength() + UNSALTED_KEY_LENGTH;
+    }
+
+    // --- 行键 ---
+
+    /**
+     * 把行键写入 buf，返回行键长度
+     */
+    public int writeRowKey(byte[] buf, long timestamp, int userId, int movieId) {
+        int offset = saltLength();
+        if (offset > 0) {
+            buf[0] = (byte) saltOf(userId, movieId);
+        }
+        offset = Bytes.putLong(buf, offset, timestamp);
+        offset = Bytes.putInt(buf, offset, userId);
+        return Bytes.putInt(buf, offset, movieId);
+    }
+
+    /**
+     * 指定盐桶中时间戳 timestamp 的第一行之前的位置（作为扫描的起止行）
+     */
+    public byte[] timeKey(int salt, long timestamp) {
+        byte[] key = new byte[saltLength() + Bytes.SIZEOF_LONG];
+        int offset = saltLength();
+        if (offset > 0) {
+            key[0] = (byte) salt;
+        }
+        Bytes.putLong(key, offset, timestamp);
+        return key;
+    }
+
+    public byte[] unsaltedKey(byte[] row) {
+        int salt = saltLength();
+        return salt == 0 ? row : Bytes.copy(row, salt, row.length - salt);
+    }
+
+    public byte[] saltedKey(int salt, byte[] unsaltedKey) {
+        if (saltBuckets == 0) {
+            return unsaltedKey;
+        }
+        byte[] key = new byte[unsaltedKey.length + 1];
+        key[0] = (byte) salt;
+        System.arraycopy(unsaltedKey, 0, key, 1, unsaltedKey.length);
+        return key;
+    }
+
+    public long timestamp(byte[] row) {
+        return Bytes.toLong(row, saltLength());
+    }
+
+    public int userId(byte[] row) {
+        return Bytes.toInt(row, saltLength() + Bytes.SIZEOF_LONG);
+    }
+
+    public int movieId(byte[] row) {
+        return Bytes.toInt(row, saltLength() + Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT);
+    }
+
+    /**
+     * 不加盐的行键中的时间戳（校验游标）
+     */
+    public long unsaltedTimestamp(byte[] unsaltedKey) {
+        if (unsaltedKey.length != UNSALTED_KEY_LENGTH) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        return Bytes.toLong(unsaltedKey, 0);
+    }
+
+    private int saltOf(int userId, int movieId) {
+        int hash = userId * 0x9E3779B9 + movieId;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return (hash & Integer.MAX_VALUE) % saltBuckets;
+    }
+
+    @Override
+    public String toString() {
+        return saltBuckets > 0 ? "salt" + saltBuckets : "unsalted";
+    }
+}
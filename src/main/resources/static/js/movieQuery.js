@@ -116,7 +116,8 @@ async function fetchData(endpoint, tableContainerId, collapsibleId, toggleId, is
         const data = await response.json();
 
         if (response.ok) {
-            renderTable(data, tableContainerId, isLargeData);
+            // 分页/排序查询返回 {items, nextCursor}
+            renderTable(Array.isArray(data.items) ? data.items : data, tableContainerId, isLargeData);
 
             // 确保结果区域默认是展开的 (如果之前是折叠状态)
             if (collapsibleId) {
@@ -145,6 +146,20 @@ function queryMovieDetail() {
     fetchData(endpoint, 'resultDetailTable', null, null, false);
 }
 
+// 评分查询的可选条件：最低评分、排序（排序时服务端只返回前 limit 条）
+function ratingFilterParams(minRatingId, sortId) {
+    const minRating = document.getElementById(minRatingId).value.trim();
+    const sort = document.getElementById(sortId).value;
+    let params = '';
+    if (minRating) {
+        params += `&minRating=${encodeURIComponent(minRating)}`;
+    }
+    if (sort) {
+        params += `&sort=${encodeURIComponent(sort)}`;
+    }
+    return params;
+}
+
 // 接口 2: 查询用户评分 (List<Map> -> 表格 + 折叠)
 function queryUserRatings() {
     const userId = document.getElementById('userIdInput').value.trim();
@@ -152,7 +167,8 @@ function queryUserRatings() {
         alert("请输入用户 ID！");
         return;
     }
-    const endpoint = `${BASE_URL}/userRatings?userId=${encodeURIComponent(userId)}`;
+    const endpoint = `${BASE_URL}/userRatings?userId=${encodeURIComponent(userId)}`
+        + ratingFilterParams('userMinRatingInput', 'userSortSelect');
     fetchData(endpoint, 'resultUserRatingsTable', 'userRatingsCollapsible', 'userRatingsToggleButton', true);
 }
 
@@ -163,6 +179,7 @@ function queryMovieAllRatings() {
         alert("请输入电影名称！");
         return;
     }
-    const endpoint = `${BASE_URL}/allRatings?title=${encodeURIComponent(title)}`;
+    const endpoint = `${BASE_URL}/allRatings?title=${encodeURIComponent(title)}`
+        + ratingFilterParams('movieMinRatingInput', 'movieSortSelect');
     fetchData(endpoint, 'resultAllRatingsTable', 'allRatingsCollapsible', 'allRatingsToggleButton', true);
 }
@@ -0,0 +1,80 @@
+package com.david.hbase.importer;
+
+import com.david.hbase.importer.IncrementalRatingsIngester.ParsedSegment;
+import com.david.hbase.importer.IncrementalRatingsIngester.StoredRatings;
+import com.david.hbase.schema.TimeIndexFormat;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.david.hbase.importer.IncrementalRatingsIngester.NO_RATING;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalRatingsIngesterTest {
+
+    private static final TimeIndexFormat FORMAT = new TimeIndexFormat(4);
+
+    @Test
+    void reRatingLeavesOneTimeIndexRowPerPair() throws Exception {
+        // 已有：(1, 10) @100，(3, 30) @500
+        // 分段：(1, 10) 重新评分 @200；(2, 20) 在分段中出现两次 @300、@400；(3, 30) 原样重写 @500
+        RatingBatch first = new RatingBatch(4);
+        first.setPosition(0);
+        first.add(1, 10, 8, 200);
+        first.add(2, 20, 6, 300);
+        RatingBatch second = new RatingBatch(4);
+        second.setPosition(100);
+        second.add(2, 20, 9, 400);
+        second.add(3, 30, 10, 500);
+        // 多线程解析时批次的到达顺序不固定
+        ParsedSegment segment = new ParsedSegment(List.of(second, first), 0);
+
+        long[] keys = segment.keys();
+        assertThat(keys).containsExactly(ParsedSegment.key(1, 10), ParsedSegment.key(2, 20), ParsedSegment.key(3, 30));
+        StoredRatings before = new StoredRatings(new byte[]{6, NO_RATING, 10}, new long[]{100, 0, 500});
+        StoredRatings after = new StoredRatings(new byte[]{8, 9, 10}, new long[]{200, 400, 500});
+
+        Map<String, long[]> timeIndex = new TreeMap<>();
+        put(timeIndex, 100, 1, 10);
+        put(timeIndex, 500, 3, 30);
+        List<RatingBatch> written = new ArrayList<>();
+        segment.read(() -> null, written::add);
+        for (RatingBatch batch : written) {
+            for (int i = 0; i < batch.size(); i++) {
+                put(timeIndex, batch.timestamp(i), batch.userId(i), batch.movieId(i));
+            }
+        }
+        for (byte[] row : IncrementalRatingsIngester.staleTimeIndexRows(FORMAT, segment, before, after)) {
+            timeIndex.remove(Bytes.toStringBinary(row));
+        }
+
+        assertThat(timeIndex.values()).containsExactlyInAnyOrder(
+                new long[]{200, 1, 10}, new long[]{400, 2, 20}, new long[]{500, 3, 30});
+    }
+
+    @Test
+    void recoveryStillCollapsesRepeatsWithinTheSegment() {
+        RatingBatch batch = new RatingBatch(4);
+        batch.add(2, 20, 6, 300);
+        batch.add(2, 20, 9, 400);
+        batch.add(5, 50, 7, 600);
+        ParsedSegment segment = new ParsedSegment(List.of(batch), 0);
+        StoredRatings after = new StoredRatings(new byte[]{9, 7}, new long[]{400, 600});
+
+        List<byte[]> stale = IncrementalRatingsIngester.staleTimeIndexRows(FORMAT, segment, null, after);
+        assertThat(stale).hasSize(1);
+        assertThat(FORMAT.timestamp(stale.get(0))).isEqualTo(300);
+        assertThat(FORMAT.userId(stale.get(0))).isEqualTo(2);
+        assertThat(FORMAT.movieId(stale.get(0))).isEqualTo(20);
+    }
+
+    private static void put(Map<String, long[]> timeIndex, long timestamp, int userId, int movieId) {
+        byte[] row = new byte[FORMAT.rowKeyLength()];
+        FORMAT.writeRowKey(row, timestamp, userId, movieId);
+        timeIndex.put(Bytes.toStringBinary(row), new long[]{timestamp, userId, movieId});
+    }
+}
@@ -0,0 +1,193 @@
+package com.david.hbase.importer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 内存映射解析器与 commons-csv 解析器（{@link CsvRatingsReader}）对同一个文件的解析结果必须相同
+ */
+class MappedRatingsReaderTest {
+
+    private static final String HEADER = "userId,movieId,rating,timestamp";
+
+    @TempDir
+    Path dir;
+
+    // --- 与 commons-csv 对比 ---
+
+    @Test
+    void linesSplitAcrossChunkBoundaries() throws Exception {
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < 1000; i++) {
+            csv.append(i % 97 + 1).append(',').append(i * 31 + 7).append(',')
+                    .append(i % 10 / 2.0 + 0.5).append(',').append(1_000_000_000L + i * 17L).append('\n');
+        }
+        // 3 个线程 × 每线程 4 个分块，分块边界按字节数计算，几乎都落在行中间
+        assertSameAsCsv(write(csv.toString()), 3, 1000, 0);
+    }
+
+    @Test
+    void crlfLineEndings() throws Exception {
+        String csv = HEADER + "\r\n1,10,4.5,1000\r\n2,20,3.0,2000\r\n3,30,0.5,3000\r\n";
+        assertSameAsCsv(write(csv), 2, 3, 0);
+    }
+
+    @Test
+    void missingTrailingNewline() throws Exception {
+        String csv = HEADER + "\n1,10,4.5,1000\n2,20,3.0,2000";
+        assertSameAsCsv(write(csv), 2, 2, 0);
+    }
+
+    @Test
+    void quotedLinesFallBackToCommonsCsv() throws Exception {
+        String csv = HEADER + ",comment\n"
+                + "1,10,4.5,1000,plain\n"
+                + "\"2\",\"20\",\"3.5\",\"2000\",\"quoted\"\n"
+                + "3,30,2.0,3000,\"with, comma\"\n";
+        assertSameAsCsv(write(csv), 2, 3, 0);
+    }
+
+    @Test
+    void ratingEdgeCases() throws Exception {
+        String csv = HEADER + "\n"
+                + "1,10,.5,1000\n"
+                + "2,20,5.0,2000\n"
+                + "3,30,-1,3000\n"
+                + "4,40,5,4000\n"
+                + "5,50, 3.5 ,5000\n"
+                + "6,60,100,6000\n";
+        // -1 和 100 在两个解析器中都视为格式错误
+        assertSameAsCsv(write(csv), 2, 4, 2);
+    }
+
+    @Test
+    void columnOrderFollowsHeader() throws Exception {
+        String csv = "timestamp,rating,movieId,userId\n1000,4.5,10,1\n2000,1.0,20,2\n";
+        assertSameAsCsv(write(csv), 1, 2, 0);
+    }
+
+    @Test
+    void byteRangeReadsOnlyWholeLinesInside() throws Exception {
+        String header = HEADER + "\n";
+        String first = "1,10,4.5,1000\n";
+        String second = "2,20,3.0,2000\n";
+        Path file = write(header + first + second + "3,30,0.5,3000\n");
+        long from = header.length() + first.length();
+        long to = from + second.length();
+
+        List<String> rows = read(new MappedRatingsReader(file.toString(), 2, from, to));
+        assertThat(rows).containsExactly("2,20,6,2000");
+    }
+
+    // --- 字段解析 ---
+
+    @Test
+    void parseLong() {
+        assertThat(parseLong("12345")).isEqualTo(12345);
+        assertThat(parseLong(" 42 ")).isEqualTo(42);
+        assertThat(parseLong("-7")).isEqualTo(-7);
+        assertThat(parseLong("")).isEqualTo(MappedRatingsReader.INVALID);
+        assertThat(parseLong("-")).isEqualTo(MappedRatingsReader.INVALID);
+        assertThat(parseLong("1x")).isEqualTo(MappedRatingsReader.INVALID);
+        assertThat(parseLong("1234567890123456789")).isEqualTo(MappedRatingsReader.INVALID);
+    }
+
+    @Test
+    void parseRatingX2MatchesStringParser() {
+        for (String rating : new String[]{".5", "0.5", "5.0", "5", "5.", "4.5", "3.25", "3.24", "0", "5.2"}) {
+            assertThat(parseRatingX2(rating)).as(rating).isEqualTo(RatingBatch.parseRatingX2(rating));
+        }
+        // 超过 5.0 的评分（半星数放不进 byte 或超出统计直方图）视为格式错误
+        for (String rating : new String[]{"-1", "-0.5", "-0", ".", "", "abc", "4.x", "5.25", "5.5", "6", "64",
+                "100", "101"}) {
+            assertThat(parseRatingX2(rating)).as(rating).isEqualTo(MappedRatingsReader.INVALID);
+            assertThatThrownBy(() -> RatingBatch.parseRatingX2(rating)).as(rating)
+                    .isInstanceOf(NumberFormatException.class);
+        }
+    }
+
+    // --- 行边界 ---
+
+    @Test
+    void lastLineEnd() throws IOException {
+        assertThat(lastLineEnd("a\nb\n")).isEqualTo(4);
+        assertThat(lastLineEnd("a\nb")).isEqualTo(2);
+        assertThat(lastLineEnd("abc")).isZero();
+        assertThat(lastLineEnd("")).isZero();
+        // 最后一个换行符在查找窗口之外
+        assertThat(lastLineEnd("x\n" + "y".repeat(10_000))).isEqualTo(2);
+    }
+
+    @Test
+    void nextLineStart() throws IOException {
+        Path file = write("ab\ncd\n" + "e".repeat(10_000));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            assertThat(MappedRatingsReader.nextLineStart(channel, 0, size)).isEqualTo(3);
+            assertThat(MappedRatingsReader.nextLineStart(channel, 3, size)).isEqualTo(6);
+            assertThat(MappedRatingsReader.nextLineStart(channel, 6, size)).isEqualTo(size);
+        }
+    }
+
+    // --- 工具方法 ---
+
+    private void assertSameAsCsv(Path file, int threads, long expectedRows, long expectedSkipped) throws Exception {
+        MappedRatingsReader mapped = new MappedRatingsReader(file.toString(), threads);
+        CsvRatingsReader csv = new CsvRatingsReader(file.toString());
+        List<String> mappedRows = read(mapped);
+        List<String> csvRows = read(csv);
+
+        assertThat(mappedRows).hasSize((int) expectedRows).isEqualTo(csvRows);
+        assertThat(mapped.skippedRows()).isEqualTo(expectedSkipped).isEqualTo(csv.skippedRows());
+    }
+
+    /**
+     * 读出所有评分（userId,movieId,半星数,时间戳），排序后返回（多线程解析的批次顺序不固定）
+     */
+    private static List<String> read(RatingsReader reader) throws Exception {
+        List<String> rows = Collections.synchronizedList(new ArrayList<>());
+        long parsed = reader.read(() -> new RatingBatch(7), batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                rows.add(batch.userId(i) + "," + batch.movieId(i) + "," + batch.ratingX2(i) + "," + batch.timestamp(i));
+            }
+        });
+        assertThat(parsed).isEqualTo(rows.size());
+        List<String> sorted = new ArrayList<>(rows);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.writeString(Files.createTempFile(dir, "ratings", ".csv"), content, StandardCharsets.UTF_8);
+    }
+
+    private long lastLineEnd(String content) throws IOException {
+        try (FileChannel channel = FileChannel.open(write(content), StandardOpenOption.READ)) {
+            return MappedRatingsReader.lastLineEnd(channel, channel.size());
+        }
+    }
+
+    private static long parseLong(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return MappedRatingsReader.parseLong(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static long parseRatingX2(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return MappedRatingsReader.parseRatingX2(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
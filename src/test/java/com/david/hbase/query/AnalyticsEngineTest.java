@@ -0,0 +1,203 @@
+package com.david.hbase.query;
+
+import com.david.hbase.query.AnalyticsEngine.Dimension;
+import com.david.hbase.schema.ColumnFile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static com.david.hbase.schema.AnalyticsSnapshotFormat.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 按维度分组的结果与逐行统计的结果必须相同
+ */
+class AnalyticsEngineTest {
+
+    private static final int MOVIE_COUNT = 500;
+    private static final String[] GENRES = {"Action", "Comedy", "Drama", "Horror"};
+    private static final String[] YEARS = {"1996", "2000", "2005", "2010", "2015"};
+    private static final String[] RELEASE_YEARS = {"1950", "1980", "1995", "2001", UNKNOWN};
+
+    @TempDir
+    static Path dir;
+    private static int rows;
+    private static byte[] ratings;
+    private static byte[] years;
+    private static int[] offsets;
+    private static long[] genreMasks;
+    private static int[] releaseYears;
+
+    /**
+     * 随机生成一个快照，按导出任务的方式写出；评分超过一个块，部分电影没有评分或没有类型
+     */
+    @BeforeAll
+    static void writeSnapshot() throws IOException {
+        Random random = new Random(25);
+        offsets = new int[MOVIE_COUNT + 1];
+        genreMasks = new long[MOVIE_COUNT];
+        releaseYears = new int[MOVIE_COUNT];
+        for (int m = 0; m < MOVIE_COUNT; m++) {
+            int count = random.nextInt(10) == 0 ? 0 : random.nextInt(600);
+            offsets[m + 1] = offsets[m] + count;
+            genreMasks[m] = random.nextInt(1 << GENRES.length);
+            releaseYears[m] = random.nextInt(RELEASE_YEARS.length);
+        }
+        rows = offsets[MOVIE_COUNT];
+        assertThat(rows).isGreaterThan(ColumnFile.CHUNK_ROWS);
+        ratings = new byte[rows];
+        years = new byte[rows];
+        for (int i = 0; i < rows; i++) {
+            ratings[i] = (byte) random.nextInt(RATING_LEVELS);
+            years[i] = (byte) random.nextInt(YEARS.length);
+        }
+        int[] movieIds = new int[MOVIE_COUNT];
+        Arrays.setAll(movieIds, m -> m * 3 + 1);
+
+        ColumnFile.writeCodes(dir.resolve(RATING), ratingDictionary(), ratings, rows);
+        ColumnFile.writeCodes(dir.resolve(RATING_YEAR), YEARS, years, rows);
+        ColumnFile.writeInts(dir.resolve(MOVIE_ID), movieIds, MOVIE_COUNT);
+        ColumnFile.writeInts(dir.resolve(MOVIE_OFFSET), offsets, MOVIE_COUNT + 1);
+        ColumnFile.writeBitsets(dir.resolve(MOVIE_GENRES), GENRES, genreMasks, MOVIE_COUNT);
+        ColumnFile.writeCodes(dir.resolve(MOVIE_RELEASE_YEAR), RELEASE_YEARS, releaseYears, MOVIE_COUNT);
+        Properties manifest = new Properties();
+        manifest.setProperty(EXPORTED_AT, "1700000000000");
+        manifest.setProperty(RATINGS, Integer.toString(rows));
+        manifest.setProperty(MOVIES, Integer.toString(MOVIE_COUNT));
+        try (OutputStream out = Files.newOutputStream(dir.resolve(MANIFEST))) {
+            manifest.store(out, null);
+        }
+    }
+
+    @Test
+    void totalWithoutDimensions() throws IOException {
+        Map<String, Object> result = AnalyticsEngine.aggregate(dir, "");
+        assertThat(result)
+                .containsEntry("groupBy", List.of())
+                .containsEntry("exportedAt", 1700000000000L)
+                .containsEntry("ratings", rows);
+        assertThat(result.get("groups")).isEqualTo(expected(List.of()));
+    }
+
+    @Test
+    void singleDimensions() throws IOException {
+        for (String groupBy : new String[]{"year", "rating", "genre", "releaseYear"}) {
+            assertMatchesRowByRow(groupBy);
+        }
+    }
+
+    @Test
+    void dimensionPairs() throws IOException {
+        for (String groupBy : new String[]{"year,rating", "rating,year", "year,genre", "genre,rating",
+                "releaseYear,year", "genre,releaseYear", "releaseYear,genre", "rating,releaseYear"}) {
+            assertMatchesRowByRow(groupBy);
+        }
+    }
+
+    @Test
+    void invalidGroupBy() {
+        assertThatThrownBy(() -> AnalyticsEngine.aggregate(dir, "director"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AnalyticsEngine.aggregate(dir, "year,YEAR"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AnalyticsEngine.aggregate(dir, "year,rating,genre"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void assertMatchesRowByRow(String groupBy) throws IOException {
+        List<Dimension> dimensions = AnalyticsEngine.parseGroupBy(groupBy);
+        Map<String, Object> result = AnalyticsEngine.aggregate(dir, groupBy);
+        assertThat(result.get("groupBy")).isEqualTo(dimensions.stream().map(Dimension::param).toList());
+        assertThat(result.get("groups")).as(groupBy).isEqualTo(expected(dimensions));
+    }
+
+    /**
+     * 逐行统计：每条评分按各维度取值（按类型分组时每个类型各计一次），按维度顺序、字典下标排序
+     */
+    private static List<Map<String, Object>> expected(List<Dimension> dimensions) {
+        Map<List<Integer>, long[]> cells = new TreeMap<>((a, b) -> {
+            for (int i = 0; i < a.size(); i++) {
+                int c = Integer.compare(a.get(i), b.get(i));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        });
+        for (int m = 0; m < MOVIE_COUNT; m++) {
+            for (int i = offsets[m]; i < offsets[m + 1]; i++) {
+                List<List<Integer>> keys = new ArrayList<>();
+                keys.add(List.of());
+                for (Dimension d : dimensions) {
+                    List<Integer> codes = codes(d, m, i);
+                    List<List<Integer>> next = new ArrayList<>();
+                    for (List<Integer> key : keys) {
+                        for (int code : codes) {
+                            List<Integer> extended = new ArrayList<>(key);
+                            extended.add(code);
+                            next.add(extended);
+                        }
+                    }
+                    keys = next;
+                }
+                for (List<Integer> key : keys) {
+                    long[] cell = cells.computeIfAbsent(key, k -> new long[2]);
+                    cell[0]++;
+                    cell[1] += ratings[i];
+                }
+            }
+        }
+
+        List<Map<String, Object>> groups = new ArrayList<>();
+        cells.forEach((key, cell) -> {
+            Map<String, Object> group = new LinkedHashMap<>();
+            for (int i = 0; i < dimensions.size(); i++) {
+                group.put(dimensions.get(i).param(), label(dimensions.get(i), key.get(i)));
+            }
+            group.put("count", cell[0]);
+            group.put("avgRating", Math.round(cell[1] * 10000.0 / (2.0 * cell[0])) / 10000.0);
+            groups.add(group);
+        });
+        return groups;
+    }
+
+    private static List<Integer> codes(Dimension d, int movie, int row) {
+        return switch (d) {
+            case YEAR -> List.of((int) years[row]);
+            case RATING -> List.of((int) ratings[row]);
+            case RELEASE_YEAR -> List.of(releaseYears[movie]);
+            case GENRE -> {
+                List<Integer> genres = new ArrayList<>();
+                for (int g = 0; g < GENRES.length; g++) {
+                    if ((genreMasks[movie] & 1L << g) != 0) {
+                        genres.add(g);
+                    }
+                }
+                yield genres;
+            }
+        };
+    }
+
+    private static String label(Dimension d, int code) {
+        return switch (d) {
+            case YEAR -> YEARS[code];
+            case RATING -> ratingDictionary()[code];
+            case GENRE -> GENRES[code];
+            case RELEASE_YEAR -> RELEASE_YEARS[code];
+        };
+    }
+}
@@ -0,0 +1,180 @@
+package com.david.hbase.query;
+
+import com.david.hbase.schema.RatingsSchema;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ColumnarMovieStoreTest {
+
+    private static final String MOVIES = "movieId,title,genres\n"
+            + "2,Two (1995),Drama\n9,Nine (1995),Comedy\n10,Ten (1995),Drama\n100,Hundred (1995),Action\n";
+    private static final String RATINGS = "userId,movieId,rating,timestamp\n"
+            + "1,9,4.0,1000\n1,10,3.5,1001\n1,100,5.0,1002\n1,2,1.0,1003\n"
+            + "9,10,2.0,1004\n10,10,3.0,1005\n";
+
+    @TempDir
+    Path dir;
+    private Path movies;
+    private Path ratings;
+    private Path snapshot;
+
+    @BeforeEach
+    void writeCsv() throws IOException {
+        movies = Files.writeString(dir.resolve("movies.csv"), MOVIES, StandardCharsets.UTF_8);
+        ratings = Files.writeString(dir.resolve("ratings.csv"), RATINGS, StandardCharsets.UTF_8);
+        snapshot = dir.resolve("store.snapshot");
+    }
+
+    // --- 组内顺序 ---
+
+    @Test
+    void versionOneOrdersIdsAsText() throws IOException {
+        ColumnarMovieStore store = load(null, RatingsSchema.V1);
+        assertThat(movieIds(store, "1")).containsExactly(10, 100, 2, 9);
+
+        // 分页游标按同一顺序定位
+        RatingsPage first = store.queryUserRatingsPage("1", RatingQuery.ALL, null, 2).join();
+        assertThat(first.items()).extracting(RatingRecord::movieId).containsExactly(10, 100);
+        RatingsPage second = store.queryUserRatingsPage("1", RatingQuery.ALL, first.nextCursor(), 2).join();
+        assertThat(second.items()).extracting(RatingRecord::movieId).containsExactly(2, 9);
+        assertThat(second.nextCursor()).isNull();
+    }
+
+    @Test
+    void versionTwoOrdersIdsNumerically() throws IOException {
+        ColumnarMovieStore store = load(null, RatingsSchema.V2);
+        assertThat(movieIds(store, "1")).containsExactly(2, 9, 10, 100);
+
+        RatingsPage first = store.queryUserRatingsPage("1", RatingQuery.ALL, null, 2).join();
+        RatingsPage second = store.queryUserRatingsPage("1", RatingQuery.ALL, first.nextCursor(), 2).join();
+        assertThat(second.items()).extracting(RatingRecord::movieId).containsExactly(10, 100);
+    }
+
+    // --- 重复评分 ---
+
+    @Test
+    void duplicatePairsKeepTheLastLineInFile() throws IOException {
+        // 同一用户对 100 部电影各评两次，第二遍的评分覆盖第一遍（与 HBase 中后写的 Put 相同）；
+        // 文件足够长，两遍落在不同的解析分块中
+        StringBuilder csv = new StringBuilder("userId,movieId,rating,timestamp\n");
+        for (int pass = 0; pass < 2; pass++) {
+            for (int movieId = 1; movieId <= 100; movieId++) {
+                csv.append("7,").append(movieId).append(',').append(pass == 0 ? "1.0" : "4.5").append(',')
+                        .append(1000 + pass).append('\n');
+            }
+        }
+        csv.append("8,50,3.0,2000\n");
+        Files.writeString(ratings, csv.toString(), StandardCharsets.UTF_8);
+
+        for (RatingsSchema order : new RatingsSchema[]{RatingsSchema.V1, RatingsSchema.V2}) {
+            ColumnarMovieStore store = load(null, order);
+            List<RatingRecord> byUser = store.queryUserRatings("7", RatingQuery.ALL).join();
+            assertThat(byUser).hasSize(100).allSatisfy(r -> {
+                assertThat(r.ratingX2()).isEqualTo(9);
+                assertThat(r.timestamp()).isEqualTo(1001);
+            });
+            assertThat(byUser).extracting(RatingRecord::movieId).doesNotHaveDuplicates();
+
+            // 分页时游标之后不会漏掉或重复
+            List<Integer> paged = new ArrayList<>();
+            String cursor = null;
+            do {
+                RatingsPage page = store.queryUserRatingsPage("7", RatingQuery.ALL, cursor, 30).join();
+                page.items().forEach(r -> paged.add(r.movieId()));
+                cursor = page.nextCursor();
+            } while (cursor != null);
+            assertThat(paged).isEqualTo(byUser.stream().map(RatingRecord::movieId).toList());
+        }
+
+        // 按电影分组时同样只有一条
+        ColumnarMovieStore store = load(null, RatingsSchema.V2);
+        assertThat(store.queryMovieRatings("Nine (1995)", RatingQuery.ALL).join())
+                .extracting(RatingRecord::userId, RatingRecord::ratingX2).containsExactly(tuple(7, 9));
+    }
+
+    // --- 快照 ---
+
+    @Test
+    void snapshotIsMappedWhileSourcesAreUnchanged() throws IOException {
+        load(snapshot, RatingsSchema.V1);
+        assertThat(snapshot).isRegularFile();
+
+        // 内容改变但路径、大小、修改时间都不变：认为没有变化，仍然映射快照
+        rewriteKeepingSizeAndTime(ratings, RATINGS.replace("1,9,4.0", "1,9,3.0"));
+        ColumnarMovieStore store = load(snapshot, RatingsSchema.V1);
+        assertThat(store.queryUserRatings("1", RatingQuery.ALL).join())
+                .filteredOn(r -> r.movieId() == 9).extracting(RatingRecord::ratingX2).containsExactly(8);
+
+        // 只有快照、没有 CSV 时也能启动
+        Files.delete(movies);
+        Files.delete(ratings);
+        assertThat(movieIds(load(snapshot, RatingsSchema.V1), "1")).containsExactly(10, 100, 2, 9);
+    }
+
+    @Test
+    void sizeChangeReloadsEvenWithOlderModificationTime() throws IOException {
+        load(snapshot, RatingsSchema.V1);
+        FileTime modified = Files.getLastModifiedTime(ratings);
+        Files.writeString(ratings, RATINGS + "1,555,2.5,2000\n", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(ratings, FileTime.fromMillis(modified.toMillis() - 60_000));
+
+        assertThat(movieIds(load(snapshot, RatingsSchema.V1), "1")).contains(555);
+        // 重新写出的快照记录了新的来源
+        assertThat(movieIds(load(snapshot, RatingsSchema.V1), "1")).contains(555);
+    }
+
+    @Test
+    void differentSourcePathReloads() throws IOException {
+        load(snapshot, RatingsSchema.V1);
+        Path other = dir.resolve("other-ratings.csv");
+        Files.writeString(other, RATINGS.replace("1,9,4.0", "1,9,3.0"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(other, Files.getLastModifiedTime(ratings));
+
+        ColumnarMovieStore store = ColumnarMovieStore.load(movies.toString(), other.toString(), snapshot,
+                RatingsSchema.V1);
+        assertThat(store.queryUserRatings("1", RatingQuery.ALL).join())
+                .filteredOn(r -> r.movieId() == 9).extracting(RatingRecord::ratingX2).containsExactly(6);
+    }
+
+    @Test
+    void differentKeyOrderReloads() throws IOException {
+        load(snapshot, RatingsSchema.V1);
+        assertThat(movieIds(load(snapshot, RatingsSchema.V2), "1")).containsExactly(2, 9, 10, 100);
+        assertThat(movieIds(load(snapshot, RatingsSchema.V1), "1")).containsExactly(10, 100, 2, 9);
+    }
+
+    @Test
+    void unreadableSnapshotIsRebuilt() throws IOException {
+        Files.write(snapshot, new byte[]{1, 2, 3});
+        assertThat(movieIds(load(snapshot, RatingsSchema.V1), "1")).containsExactly(10, 100, 2, 9);
+        assertThat(Files.size(snapshot)).isGreaterThan(3);
+    }
+
+    private ColumnarMovieStore load(Path snapshot, RatingsSchema order) throws IOException {
+        return ColumnarMovieStore.load(movies.toString(), ratings.toString(), snapshot, order);
+    }
+
+    private static List<Integer> movieIds(ColumnarMovieStore store, String userId) {
+        return store.queryUserRatings(userId, RatingQuery.ALL).join().stream().map(RatingRecord::movieId).toList();
+    }
+
+    private static void rewriteKeepingSizeAndTime(Path file, String content) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        long size = Files.size(file);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        assertThat(Files.size(file)).isEqualTo(size);
+        Files.setLastModifiedTime(file, modified);
+    }
+}
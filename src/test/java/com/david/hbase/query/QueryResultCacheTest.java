@@ -0,0 +1,191 @@
+package com.david.hbase.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryResultCacheTest {
+
+    /**
+     * 记录每次查询，查询结果由测试手动完成
+     */
+    private static final class Loader implements Function<String, CompletableFuture<String>> {
+        final List<String> keys = new ArrayList<>();
+        final List<CompletableFuture<String>> loads = new ArrayList<>();
+
+        @Override
+        public synchronized CompletableFuture<String> apply(String key) {
+            keys.add(key);
+            CompletableFuture<String> future = new CompletableFuture<>();
+            loads.add(future);
+            return future;
+        }
+
+        /**
+         * 完成第 n 次查询
+         */
+        synchronized void complete(int n, String value) {
+            loads.get(n).complete(value);
+        }
+    }
+
+    private static QueryResultCache<String, String> cache(String name, int maxEntries, long maxWeight, long ttlSeconds) {
+        // 计数注册到全局 registry，每个测试用不同的缓存名
+        return new QueryResultCache<>("test-" + name, maxEntries, maxWeight, ttlSeconds, String::length);
+    }
+
+    private static String get(QueryResultCache<String, String> cache, String key) {
+        return cache.get(key, k -> CompletableFuture.completedFuture(k.toUpperCase())).join();
+    }
+
+    @Test
+    void concurrentRequestsShareOneLoad() {
+        QueryResultCache<String, String> cache = cache("coalesce", 10, 1000, 60);
+        Loader loader = new Loader();
+        CompletableFuture<String> first = cache.get("a", loader);
+        CompletableFuture<String> second = cache.get("a", loader);
+        assertThat(loader.keys).containsExactly("a");
+        assertThat(cache.stats()).containsEntry("inFlight", 1);
+
+        // 每个请求拿到的是副本，取消一个不影响其他请求
+        second.cancel(false);
+        loader.complete(0, "A");
+        assertThat(first.join()).isEqualTo("A");
+        assertThat(cache.get("a", loader).join()).isEqualTo("A");
+        assertThat(loader.keys).containsExactly("a");
+        assertThat(cache.stats())
+                .containsEntry("misses", 1L)
+                .containsEntry("coalesced", 1L)
+                .containsEntry("hits", 1L)
+                .containsEntry("inFlight", 0);
+    }
+
+    @Test
+    void invalidationDuringLoadDoesNotRepopulate() {
+        QueryResultCache<String, String> cache = cache("invalidate", 10, 1000, 60);
+        Loader loader = new Loader();
+        CompletableFuture<String> stale = cache.get("a", loader);
+        cache.invalidateAll();
+
+        // 清空之后的请求不合并到清空前发起的查询
+        CompletableFuture<String> fresh = cache.get("a", loader);
+        assertThat(loader.keys).containsExactly("a", "a");
+        assertThat(cache.stats()).containsEntry("coalesced", 0L);
+
+        // 旧查询先完成：调用方仍拿到结果，但不写入缓存，也不影响新查询
+        loader.complete(0, "old");
+        assertThat(stale.join()).isEqualTo("old");
+        assertThat(cache.stats()).containsEntry("entries", 0).containsEntry("inFlight", 1);
+        CompletableFuture<String> waiting = cache.get("a", loader);
+        assertThat(waiting).isNotDone();
+        assertThat(cache.stats()).containsEntry("coalesced", 1L);
+
+        loader.complete(1, "new");
+        assertThat(fresh.join()).isEqualTo("new");
+        assertThat(waiting.join()).isEqualTo("new");
+        assertThat(cache.get("a", loader).join()).isEqualTo("new");
+        assertThat(loader.keys).hasSize(2);
+    }
+
+    @Test
+    void loadCompletingAfterInvalidationIsDropped() {
+        QueryResultCache<String, String> cache = cache("invalidate-late", 10, 1000, 60);
+        Loader loader = new Loader();
+        CompletableFuture<String> stale = cache.get("a", loader);
+        cache.invalidateAll();
+        loader.complete(0, "old");
+        assertThat(stale.join()).isEqualTo("old");
+        assertThat(cache.stats()).containsEntry("entries", 0).containsEntry("weight", 0L);
+
+        // 下一次请求重新查询
+        CompletableFuture<String> next = cache.get("a", loader);
+        assertThat(loader.keys).hasSize(2);
+        loader.complete(1, "new");
+        assertThat(next.join()).isEqualTo("new");
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() {
+        QueryResultCache<String, String> expiring = cache("ttl-0", 10, 1000, 0);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, CompletableFuture<String>> loader =
+                k -> CompletableFuture.completedFuture(k + loads.incrementAndGet());
+        assertThat(expiring.get("a", loader).join()).isEqualTo("a1");
+        assertThat(expiring.get("a", loader).join()).isEqualTo("a2");
+        assertThat(expiring.stats()).containsEntry("expirations", 1L).containsEntry("hits", 0L);
+
+        QueryResultCache<String, String> lasting = cache("ttl-60", 10, 1000, 60);
+        assertThat(lasting.get("a", loader).join()).isEqualTo("a3");
+        assertThat(lasting.get("a", loader).join()).isEqualTo("a3");
+        assertThat(lasting.stats()).containsEntry("expirations", 0L).containsEntry("hits", 1L);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByCount() {
+        QueryResultCache<String, String> cache = cache("lru-count", 2, 1000, 60);
+        get(cache, "a");
+        get(cache, "b");
+        // 访问 a 之后，b 成为最久未访问的
+        get(cache, "a");
+        get(cache, "c");
+
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, CompletableFuture<String>> counting = k -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(k);
+        };
+        cache.get("a", counting).join();
+        cache.get("c", counting).join();
+        assertThat(loads).hasValue(0);
+        cache.get("b", counting).join();
+        assertThat(loads).hasValue(1);
+        assertThat(cache.stats()).containsEntry("evictions", 2L).containsEntry("entries", 2);
+    }
+
+    @Test
+    void evictsByWeight() {
+        QueryResultCache<String, String> cache = cache("lru-weight", 100, 10, 60);
+        get(cache, "aaaa");
+        get(cache, "bbbb");
+        assertThat(cache.stats()).containsEntry("weight", 8L);
+        // 再放入 4 超过上限 10，淘汰最久未访问的 aaaa
+        get(cache, "cccc");
+        assertThat(cache.stats()).containsEntry("weight", 8L).containsEntry("entries", 2).containsEntry("evictions", 1L);
+        // 单个结果超过上限时不缓存
+        get(cache, "x".repeat(11));
+        assertThat(cache.stats()).containsEntry("entries", 2);
+    }
+
+    @Test
+    void failuresAreNotCachedButNullsAre() {
+        QueryResultCache<String, String> cache = cache("failures", 10, 1000, 60);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, CompletableFuture<String>> failing = k -> {
+            loads.incrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("scan failed"));
+        };
+        assertThat(cache.get("a", failing)).isCompletedExceptionally();
+        assertThat(cache.get("a", failing)).isCompletedExceptionally();
+        assertThat(loads).hasValue(2);
+        assertThat(cache.stats()).containsEntry("loadFailures", 2L).containsEntry("inFlight", 0);
+
+        // loader 直接抛出异常也按查询失败处理
+        assertThat(cache.get("b", k -> {
+            throw new IllegalArgumentException("bad key");
+        })).isCompletedExceptionally();
+
+        Function<String, CompletableFuture<String>> missing = k -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        };
+        assertThat(cache.get("none", missing).join()).isNull();
+        assertThat(cache.get("none", missing).join()).isNull();
+        assertThat(loads).hasValue(3);
+    }
+}
@@ -0,0 +1,28 @@
+package com.david.hbase.query;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TitleSearchIndexTest {
+
+    @BeforeEach
+    void loadIndex() {
+        TitleSearchIndex.load(new String[]{"Matrix, The (1999)", "Toy Story (1995)"}, new String[]{"2571", "1"});
+    }
+
+    @Test
+    void resolvesApproximateTitles() {
+        assertThat(TitleSearchIndex.resolveTitle("The Matrix (1999)")).isEqualTo("Matrix, The (1999)");
+        assertThat(TitleSearchIndex.resolveTitle("toy story")).isEqualTo("Toy Story (1995)");
+        assertThat(TitleSearchIndex.lookupMovieId("Toy Story (1995)")).isEqualTo("1");
+    }
+
+    @Test
+    void titlesMissingFromTheIndexAreReturnedAsTyped() {
+        // 索引构建之后导入的电影：原样返回，由调用方按精确标题查询 HBase
+        assertThat(TitleSearchIndex.resolveTitle("Heat (1995)")).isEqualTo("Heat (1995)");
+        assertThat(TitleSearchIndex.lookupMovieId("Heat (1995)")).isNull();
+    }
+}
@@ -0,0 +1,137 @@
+package com.david.hbase.schema;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ColumnFileTest {
+    // 跨过多个块，最后一块不满
+    private static final int ROWS = ColumnFile.CHUNK_ROWS * 2 + 123;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void intsRoundTrip() throws IOException {
+        Random random = new Random(1);
+        int[] values = new int[ROWS + 10];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt();
+        }
+        values[0] = Integer.MIN_VALUE;
+        values[1] = Integer.MAX_VALUE;
+        Path file = dir.resolve("ints.col");
+        // 只写前 ROWS 个
+        ColumnFile.writeInts(file, values, ROWS);
+
+        ColumnFile column = ColumnFile.read(file);
+        assertThat(column.kind()).isEqualTo(ColumnFile.Kind.PLAIN);
+        assertThat(column.rows()).isEqualTo(ROWS);
+        assertThat(column.dictionary()).isEmpty();
+        assertThat(column.ints()).isEqualTo(Arrays.copyOf(values, ROWS));
+        assertThatThrownBy(column::longs).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void codesRoundTripForEachWidth() throws IOException {
+        // 字典大小决定每个值的字节数：1、2、4
+        for (int size : new int[]{3, 256, 300, 65536, 70000}) {
+            String[] dictionary = new String[size];
+            for (int i = 0; i < size; i++) {
+                dictionary[i] = "v" + i;
+            }
+            Random random = new Random(size);
+            int[] codes = new int[ROWS];
+            for (int i = 0; i < ROWS; i++) {
+                codes[i] = random.nextInt(size);
+            }
+            codes[0] = size - 1;
+            Path file = dir.resolve("codes-" + size + ".col");
+            ColumnFile.writeCodes(file, dictionary, codes, ROWS);
+
+            ColumnFile column = ColumnFile.read(file);
+            assertThat(column.kind()).isEqualTo(ColumnFile.Kind.DICTIONARY);
+            assertThat(column.dictionary()).containsExactly(dictionary);
+            assertThat(column.ints()).as("dictionary size %d", size).isEqualTo(codes);
+            if (size <= 256) {
+                byte[] bytes = column.bytes();
+                for (int i = 0; i < ROWS; i++) {
+                    assertThat(bytes[i] & 0xFF).isEqualTo(codes[i]);
+                }
+            } else {
+                assertThatThrownBy(column::bytes).isInstanceOf(IllegalStateException.class);
+            }
+        }
+    }
+
+    @Test
+    void byteCodesRoundTrip() throws IOException {
+        String[] dictionary = {"日", "月", "星"};
+        byte[] codes = new byte[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            codes[i] = (byte) (i % 3);
+        }
+        Path file = dir.resolve("bytes.col");
+        ColumnFile.writeCodes(file, dictionary, codes, ROWS);
+
+        ColumnFile column = ColumnFile.read(file);
+        assertThat(column.bytes()).isEqualTo(codes);
+        assertThat(column.dictionary()).containsExactly(dictionary);
+        assertThatThrownBy(() -> ColumnFile.writeCodes(file, new String[257], codes, ROWS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void bitsetsRoundTrip() throws IOException {
+        String[] dictionary = new String[64];
+        Arrays.setAll(dictionary, i -> "genre" + i);
+        Random random = new Random(64);
+        long[] masks = new long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            masks[i] = random.nextLong();
+        }
+        masks[0] = 0;
+        masks[1] = -1L;
+        Path file = dir.resolve("bitsets.col");
+        ColumnFile.writeBitsets(file, dictionary, masks, ROWS);
+
+        ColumnFile column = ColumnFile.read(file);
+        assertThat(column.kind()).isEqualTo(ColumnFile.Kind.BITSET);
+        assertThat(column.longs()).isEqualTo(masks);
+        assertThatThrownBy(column::ints).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> ColumnFile.writeBitsets(file, new String[65], masks, ROWS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void emptyColumn() throws IOException {
+        Path file = dir.resolve("empty.col");
+        ColumnFile.writeInts(file, new int[0], 0);
+        ColumnFile column = ColumnFile.read(file);
+        assertThat(column.rows()).isZero();
+        assertThat(column.ints()).isEmpty();
+    }
+
+    @Test
+    void rejectsForeignAndTruncatedFiles() throws IOException {
+        Path foreign = Files.write(dir.resolve("foreign.col"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThatThrownBy(() -> ColumnFile.read(foreign)).isInstanceOf(IOException.class);
+
+        int[] values = new int[ROWS];
+        Arrays.setAll(values, i -> i * 7);
+        Path file = dir.resolve("truncated.col");
+        ColumnFile.writeInts(file, values, ROWS);
+        byte[] data = Files.readAllBytes(file);
+        // 最后一块被截掉一半
+        Files.write(file, Arrays.copyOf(data, data.length - 200));
+        assertThatThrownBy(() -> ColumnFile.read(file)).isInstanceOf(IOException.class);
+    }
+}
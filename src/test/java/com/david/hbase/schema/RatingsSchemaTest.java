@@ -0,0 +1,190 @@
+package com.david.hbase.schema;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RatingsSchemaTest {
+
+    private static final int[] IDS = {Integer.MIN_VALUE, -65536, -256, -1, 0, 1, 255, 256, 65536, Integer.MAX_VALUE};
+    private static final long[] TIMESTAMPS = {Long.MIN_VALUE, -1_000_000L, -1, 0, 1, 255, 256, 1_700_000_000L,
+            Long.MAX_VALUE};
+
+    // --- 行键 ---
+
+    @Test
+    void rowKeysRoundTrip() {
+        for (RatingsSchema schema : schemas()) {
+            for (int first : IDS) {
+                for (int second : IDS) {
+                    byte[] row = schema.rowKey(first, second);
+                    assertThat(schema.firstId(row)).as("%s %d_%d", schema, first, second).isEqualTo(first);
+                    assertThat(schema.secondId(row)).as("%s %d_%d", schema, first, second).isEqualTo(second);
+                }
+            }
+        }
+    }
+
+    @Test
+    void binaryKeysSortNumericallyAcrossTheSignBit() {
+        RatingsSchema schema = RatingsSchema.V2;
+        byte[][] keys = new byte[IDS.length * IDS.length][];
+        int n = 0;
+        for (int first : IDS) {
+            for (int second : IDS) {
+                keys[n++] = schema.rowKey(first, second);
+            }
+        }
+        // IDS 已按数值升序，按字节排序后顺序不变
+        byte[][] sorted = keys.clone();
+        Arrays.sort(sorted, Bytes.BYTES_COMPARATOR);
+        assertThat(sorted).isDeepEqualTo(keys);
+    }
+
+    @Test
+    void stringKeysSortAsText() {
+        // 版本 1 按十进制字符串排序："10_..." 在 "9_..." 之前，负数的 '-' 排在数字之前
+        RatingsSchema schema = RatingsSchema.V1;
+        List<byte[]> keys = Arrays.asList(schema.rowKey(9, 1), schema.rowKey(10, 1), schema.rowKey(-1, 1));
+        keys.sort(Bytes.BYTES_COMPARATOR);
+        assertThat(keys).extracting(schema::firstId).containsExactly(-1, 10, 9);
+    }
+
+    @Test
+    void prefixesMatchRowKeys() {
+        for (RatingsSchema schema : schemas()) {
+            for (int first : IDS) {
+                byte[][] prefixes = schema.prefixes(first);
+                assertThat(prefixes.length).isEqualTo(Math.max(1, schema.saltBuckets()));
+                for (int second : IDS) {
+                    byte[] row = schema.rowKey(first, second);
+                    long matching = Arrays.stream(prefixes).filter(p -> Bytes.startsWith(row, p)).count();
+                    assertThat(matching).as("%s %d_%d", schema, first, second).isEqualTo(1);
+                }
+            }
+        }
+    }
+
+    @Test
+    void saltedKeysWrapUnsaltedKeys() {
+        for (RatingsSchema unsalted : new RatingsSchema[]{RatingsSchema.V1, RatingsSchema.V2}) {
+            RatingsSchema salted = unsalted.withSaltBuckets(16);
+            assertThat(salted.saltLength()).isEqualTo(1);
+            assertThat(unsalted.saltLength()).isZero();
+            for (int first : IDS) {
+                for (int second : IDS) {
+                    byte[] plain = unsalted.rowKey(first, second);
+                    byte[] row = salted.rowKey(first, second);
+                    int bucket = row[0] & 0xFF;
+
+                    assertThat(row).hasSize(plain.length + 1);
+                    assertThat(bucket).isLessThan(16);
+                    assertThat(salted.unsaltedKey(row)).isEqualTo(plain);
+                    assertThat(salted.saltedKey(bucket, plain)).isEqualTo(row);
+                    assertThat(salted.prefix(bucket, first)).isEqualTo(salted.prefixes(first)[bucket]);
+                    // 桶号只由不加盐的行键决定
+                    assertThat(salted.rowKey(first, second)[0] & 0xFF).isEqualTo(bucket);
+                }
+            }
+            assertThat(unsalted.unsaltedKey(unsalted.rowKey(1, 2))).isEqualTo(unsalted.rowKey(1, 2));
+            assertThat(unsalted.saltedKey(3, unsalted.rowKey(1, 2))).isEqualTo(unsalted.rowKey(1, 2));
+        }
+    }
+
+    @Test
+    void saltSpreadsConsecutiveIds() {
+        RatingsSchema salted = RatingsSchema.V2.withSaltBuckets(8);
+        int[] counts = new int[8];
+        for (int userId = 1; userId <= 8000; userId++) {
+            counts[salted.rowKey(userId, 1)[0]]++;
+        }
+        for (int count : counts) {
+            assertThat(count).isBetween(800, 1200);
+        }
+    }
+
+    @Test
+    void saltBucketsAreValidated() {
+        assertThatThrownBy(() -> RatingsSchema.V2.withSaltBuckets(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> RatingsSchema.V2.withSaltBuckets(RatingsSchema.MAX_SALT_BUCKETS + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(RatingsSchema.V2.withSaltBuckets(0)).isSameAs(RatingsSchema.V2);
+    }
+
+    // --- 列值 ---
+
+    @Test
+    void ratingsRoundTrip() {
+        for (RatingsSchema schema : new RatingsSchema[]{RatingsSchema.V1, RatingsSchema.V2}) {
+            for (int x2 = 0; x2 <= 10; x2++) {
+                byte[] value = schema.encodeRating(x2);
+                assertThat(schema.decodeRatingX2(value)).as("%s %d", schema, x2).isEqualTo(x2);
+                assertThat(schema.formatRating(value)).isEqualTo(RatingsSchema.formatRatingX2(x2));
+            }
+        }
+        assertThat(RatingsSchema.V1.encodeRating(9)).isEqualTo(Bytes.toBytes("4.5"));
+        assertThat(RatingsSchema.V2.encodeRating(9)).containsExactly(9);
+        // 超出缓存范围的半星数也能编码
+        assertThat(RatingsSchema.V1.decodeRatingX2(RatingsSchema.V1.encodeRating(21))).isEqualTo(21);
+    }
+
+    @Test
+    void ratingBytesSortNumerically() {
+        for (RatingsSchema schema : new RatingsSchema[]{RatingsSchema.V1, RatingsSchema.V2}) {
+            for (int x2 = 0; x2 < 10; x2++) {
+                assertThat(Bytes.compareTo(schema.encodeRating(x2), schema.encodeRating(x2 + 1)))
+                        .as("%s %d", schema, x2).isNegative();
+            }
+        }
+    }
+
+    @Test
+    void timestampsRoundTrip() {
+        for (RatingsSchema schema : new RatingsSchema[]{RatingsSchema.V1, RatingsSchema.V2}) {
+            for (long ts : TIMESTAMPS) {
+                assertThat(schema.decodeTimestamp(schema.encodeTimestamp(ts))).as("%s %d", schema, ts).isEqualTo(ts);
+            }
+        }
+    }
+
+    @Test
+    void timestampsSortableOnlyForNonNegativeValues() {
+        assertThat(RatingsSchema.V1.timestampsSortable()).isFalse();
+        RatingsSchema schema = RatingsSchema.V2;
+        assertThat(schema.timestampsSortable()).isTrue();
+
+        Comparator<Long> byBytes = (a, b) -> Bytes.compareTo(schema.encodeTimestamp(a), schema.encodeTimestamp(b));
+        List<Long> nonNegative = Arrays.stream(TIMESTAMPS).filter(ts -> ts >= 0).boxed().toList();
+        assertThat(nonNegative.stream().sorted(byBytes).toList()).isEqualTo(nonNegative);
+
+        // 负时间戳（补码）编码后排在所有非负时间戳之后，RatingQuery 下推过滤条件时需要单独处理
+        for (long negative : Arrays.stream(TIMESTAMPS).filter(ts -> ts < 0).toArray()) {
+            assertThat(byBytes.compare(negative, Long.MAX_VALUE)).as("%d", negative).isPositive();
+            assertThat(byBytes.compare(negative, Long.MIN_VALUE)).as("%d", negative).isGreaterThanOrEqualTo(0);
+        }
+    }
+
+    // --- 表属性 ---
+
+    @Test
+    void tableAttributes() {
+        RatingsSchema salted = RatingsSchema.V2.withSaltBuckets(32);
+        assertThat(salted.tableAttributes())
+                .containsEntry(RatingsSchema.VERSION_ATTRIBUTE, "2")
+                .containsEntry(RatingsSchema.SALT_ATTRIBUTE, "32");
+        assertThat(salted).isEqualTo(RatingsSchema.forVersion(2).withSaltBuckets(32)).isNotEqualTo(RatingsSchema.V2);
+        assertThat(salted.toString()).isEqualTo("v2/salt32");
+        assertThatThrownBy(() -> RatingsSchema.forVersion(3)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static RatingsSchema[] schemas() {
+        return new RatingsSchema[]{RatingsSchema.V1, RatingsSchema.V2,
+                RatingsSchema.V1.withSaltBuckets(16), RatingsSchema.V2.withSaltBuckets(16)};
+    }
+}
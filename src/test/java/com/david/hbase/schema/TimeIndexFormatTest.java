@@ -0,0 +1,68 @@
+package com.david.hbase.schema;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimeIndexFormatTest {
+
+    private static final long[] TIMESTAMPS = {0, 1, 255, 256, 86_399, 86_400, 1_700_000_000L, Long.MAX_VALUE};
+
+    @Test
+    void rowKeysRoundTrip() {
+        for (TimeIndexFormat format : new TimeIndexFormat[]{new TimeIndexFormat(0), new TimeIndexFormat(8)}) {
+            byte[] buf = new byte[format.rowKeyLength()];
+            for (long ts : TIMESTAMPS) {
+                int length = format.writeRowKey(buf, ts, 42, -7);
+                assertThat(length).isEqualTo(format.rowKeyLength()).isEqualTo(format.saltLength() + 16);
+                byte[] row = Arrays.copyOf(buf, length);
+                assertThat(format.timestamp(row)).isEqualTo(ts);
+                assertThat(format.userId(row)).isEqualTo(42);
+                assertThat(format.movieId(row)).isEqualTo(-7);
+                assertThat(format.unsaltedTimestamp(format.unsaltedKey(row))).isEqualTo(ts);
+                assertThat(format.saltedKey(format.saltLength() > 0 ? row[0] : 0, format.unsaltedKey(row))).isEqualTo(row);
+            }
+        }
+    }
+
+    @Test
+    void timeKeysBoundRowsOfTheSameSalt() {
+        TimeIndexFormat format = new TimeIndexFormat(4);
+        byte[] buf = new byte[format.rowKeyLength()];
+        byte[] prev = new byte[format.rowKeyLength()];
+        for (int i = 1; i < TIMESTAMPS.length; i++) {
+            long ts = TIMESTAMPS[i];
+            for (int userId = 1; userId <= 20; userId++) {
+                format.writeRowKey(buf, ts, userId, 1);
+                int salt = buf[0];
+                // 以 ts 为起始行时包含这一行，以 ts 为结束行（不含）时不包含
+                assertThat(Bytes.compareTo(format.timeKey(salt, ts), buf)).isNegative();
+                if (ts < Long.MAX_VALUE) {
+                    assertThat(Bytes.compareTo(buf, format.timeKey(salt, ts + 1))).isNegative();
+                }
+                // 前一个时间戳的行都在这一行之前
+                format.writeRowKey(prev, TIMESTAMPS[i - 1], Integer.MAX_VALUE, Integer.MAX_VALUE);
+                if (prev[0] == salt) {
+                    assertThat(Bytes.compareTo(prev, buf)).isNegative();
+                }
+            }
+        }
+    }
+
+    @Test
+    void tableAttributes() {
+        TimeIndexFormat format = new TimeIndexFormat(8);
+        assertThat(format.tableAttributes()).containsOnlyKeys(TimeIndexFormat.SALT_ATTRIBUTE)
+                .containsEntry(TimeIndexFormat.SALT_ATTRIBUTE, "8");
+        assertThat(format.splitKeys()).isDeepEqualTo(new byte[][]{{1}, {2}, {3}, {4}, {5}, {6}, {7}});
+        assertThat(new TimeIndexFormat(0).splitKeys()).isNull();
+        assertThat(format.scanBuckets()).isEqualTo(8);
+        assertThat(new TimeIndexFormat(0).scanBuckets()).isEqualTo(1);
+        assertThatThrownBy(() -> new TimeIndexFormat(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> format.unsaltedTimestamp(new byte[20])).isInstanceOf(IllegalArgumentException.class);
+    }
+}